@@ -0,0 +1,539 @@
+/*
+ * Copyright (c) 2018 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.commons;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigInteger;
+
+
+/**
+ * Renders numbers as text without intermediate objects.
+ *
+ * <p>Integers are written digit by digit into a caller-supplied character
+ * buffer. Floating point values are written with the fewest significant
+ * digits which parse back to exactly the same value, using the Schubfach
+ * algorithm by Raffaello Giulietti. The result is never longer than the
+ * output of {@code Double.toString()} and, unlike {@code NumberFormat}, no
+ * precision is lost.
+ *
+ * <p>Floating point values are formatted as in JavaScript (and therefore
+ * most JSON producers): plain notation is used for magnitudes from
+ * 10<sup>-6</sup> up to (but not including) 10<sup>21</sup> and integral
+ * values have no fractional part, e.g. {@code 1}, {@code 0.5},
+ * {@code 2226.06269592}, {@code 1.5e-8} and {@code 1e+21}. Non-finite values
+ * are written as {@code NaN}, {@code Infinity} and {@code -Infinity}. All
+ * output can be read with {@code Double.parseDouble()}.
+ *
+ * <p>All methods are static and thread-safe.
+ */
+public final class NumberText {
+
+  /** The size of a buffer large enough to hold the text of any number. */
+  public static final int MAX_LENGTH = 32;
+
+  private static final char[] DIGIT_TENS = new char[100];
+  private static final char[] DIGIT_ONES = new char[100];
+
+  private static final char[] NAN = "NaN".toCharArray();
+  private static final char[] INFINITY = "Infinity".toCharArray();
+  private static final char[] NEGATIVE_INFINITY = "-Infinity".toCharArray();
+
+  // double parameters
+  private static final int DOUBLE_Q_MIN = -1074;
+  private static final long DOUBLE_C_MIN = 1L << 52;
+  private static final int DOUBLE_C_TINY = 3;
+
+  // float parameters
+  private static final int FLOAT_Q_MIN = -149;
+  private static final long FLOAT_C_MIN = 1L << 23;
+  private static final int FLOAT_C_TINY = 8;
+
+  private static final long MASK_63 = 0x7FFFFFFFFFFFFFFFL;
+
+  /** Range of the decimal exponents in the table of powers of ten */
+  private static final int K_MIN = -324;
+  private static final int K_MAX = 292;
+
+  /**
+   * The 126-bit approximations of 10<sup>-k</sup> for all K_MIN <= k <= K_MAX
+   * as pairs of high and low 63-bit halves.
+   */
+  private static final long[] G = new long[(K_MAX - K_MIN + 1) * 2];
+
+  static {
+    for (int i = 0; i < 100; i++) {
+      DIGIT_TENS[i] = (char)('0' + i / 10);
+      DIGIT_ONES[i] = (char)('0' + i % 10);
+    }
+
+    // g = floor(10^-k * 2^r) + 1 where r places the product in [2^125, 2^126)
+    final BigInteger mask = BigInteger.ONE.shiftLeft(63).subtract(BigInteger.ONE);
+    for (int k = K_MIN; k <= K_MAX; k++) {
+      BigInteger g;
+      if (k <= 0) {
+        final BigInteger pow = BigInteger.TEN.pow(-k);
+        final int shift = 126 - pow.bitLength();
+        g = (shift >= 0) ? pow.shiftLeft(shift) : pow.shiftRight(-shift);
+      } else {
+        final BigInteger pow = BigInteger.TEN.pow(k);
+        g = BigInteger.ONE.shiftLeft(125 + pow.bitLength()).divide(pow);
+      }
+      g = g.add(BigInteger.ONE);
+      G[(k - K_MIN) * 2] = g.shiftRight(63).longValue();
+      G[(k - K_MIN) * 2 + 1] = g.and(mask).longValue();
+    }
+  }
+
+
+
+
+  /**
+   * Private constructor because everything is static
+   */
+  private NumberText() {}
+
+
+
+
+  /**
+   * @param value the value to render
+   *
+   * @return the decimal text of the value
+   */
+  public static String toString(final long value) {
+    final char[] buffer = new char[MAX_LENGTH];
+    return new String(buffer, 0, format(value, buffer, 0));
+  }
+
+
+
+
+  /**
+   * @param value the value to render as an unsigned 64-bit value
+   *
+   * @return the decimal text of the unsigned value
+   */
+  public static String toUnsignedString(final long value) {
+    final char[] buffer = new char[MAX_LENGTH];
+    return new String(buffer, 0, formatUnsigned(value, buffer, 0));
+  }
+
+
+
+
+  /**
+   * @param value the value to render
+   *
+   * @return the shortest text which parses back to the value
+   */
+  public static String toString(final double value) {
+    final char[] buffer = new char[MAX_LENGTH];
+    return new String(buffer, 0, format(value, buffer, 0));
+  }
+
+
+
+
+  /**
+   * @param value the value to render
+   *
+   * @return the shortest text which parses back to the value
+   */
+  public static String toString(final float value) {
+    final char[] buffer = new char[MAX_LENGTH];
+    return new String(buffer, 0, format(value, buffer, 0));
+  }
+
+
+
+
+  /**
+   * Write the decimal text of the value to the writer.
+   *
+   * @param value the value to write
+   * @param buffer scratch space of at least {@link #MAX_LENGTH} characters
+   * @param writer the writer to receive the text
+   *
+   * @throws IOException if the writer could not be written
+   */
+  public static void write(final long value, final char[] buffer, final Writer writer) throws IOException {
+    writer.write(buffer, 0, format(value, buffer, 0));
+  }
+
+
+
+
+  /**
+   * Write the shortest text of the value to the writer.
+   *
+   * @param value the value to write
+   * @param buffer scratch space of at least {@link #MAX_LENGTH} characters
+   * @param writer the writer to receive the text
+   *
+   * @throws IOException if the writer could not be written
+   */
+  public static void write(final double value, final char[] buffer, final Writer writer) throws IOException {
+    writer.write(buffer, 0, format(value, buffer, 0));
+  }
+
+
+
+
+  /**
+   * Place the decimal text of the value into the buffer.
+   *
+   * @param value the value to render
+   * @param buffer the buffer to receive the characters
+   * @param offset where in the buffer to place the first character
+   *
+   * @return the number of characters placed in the buffer (at most 20)
+   */
+  public static int format(final long value, final char[] buffer, final int offset) {
+    if (value < 0) {
+      // negating Long.MIN_VALUE leaves 2^63 when treated as unsigned
+      buffer[offset] = '-';
+      return formatUnsigned(-value, buffer, offset + 1) + 1;
+    }
+    return formatUnsigned(value, buffer, offset);
+  }
+
+
+
+
+  /**
+   * Place the decimal text of the unsigned 64-bit value into the buffer.
+   *
+   * @param value the value to render treated as unsigned
+   * @param buffer the buffer to receive the characters
+   * @param offset where in the buffer to place the first character
+   *
+   * @return the number of characters placed in the buffer (at most 20)
+   */
+  public static int formatUnsigned(long value, final char[] buffer, final int offset) {
+    final int length = unsignedLength(value);
+    int pos = offset + length;
+
+    if (value < 0) {
+      // one unsigned division brings the value into the signed range
+      final long quotient = (value >>> 1) / 5;
+      buffer[--pos] = (char)('0' + (value - quotient * 10));
+      value = quotient;
+    }
+
+    // two digits at a time
+    while (value >= 100) {
+      final long quotient = value / 100;
+      final int rem = (int)(value - quotient * 100);
+      value = quotient;
+      buffer[--pos] = DIGIT_ONES[rem];
+      buffer[--pos] = DIGIT_TENS[rem];
+    }
+    final int rem = (int)value;
+    buffer[--pos] = DIGIT_ONES[rem];
+    if (rem >= 10) {
+      buffer[--pos] = DIGIT_TENS[rem];
+    }
+    return length;
+  }
+
+
+
+
+  /**
+   * Place the shortest text which parses back to the value into the buffer.
+   *
+   * @param value the value to render
+   * @param buffer the buffer to receive the characters
+   * @param offset where in the buffer to place the first character
+   *
+   * @return the number of characters placed in the buffer (at most
+   *         {@link #MAX_LENGTH})
+   */
+  public static int format(final double value, final char[] buffer, final int offset) {
+    final long bits = Double.doubleToRawLongBits(value);
+    final long t = bits & 0x000FFFFFFFFFFFFFL;
+    final int bq = (int)(bits >>> 52) & 0x7FF;
+
+    if (bq == 0x7FF) {
+      return special(t != 0, bits < 0, buffer, offset);
+    }
+
+    int pos = offset;
+    if (bits < 0) {
+      buffer[pos++] = '-';
+    }
+
+    if (bq != 0) {
+      // normal value
+      final int mq = 1075 - bq;
+      final long c = DOUBLE_C_MIN | t;
+      if (mq > 0 && mq < 53) {
+        // integers need no conversion
+        final long f = c >> mq;
+        if (f << mq == c) {
+          return pos - offset + digits(f, 0, buffer, pos);
+        }
+      }
+      return pos - offset + toDecimal(-mq, c, 0, DOUBLE_Q_MIN, DOUBLE_C_MIN, buffer, pos);
+    } else if (t != 0) {
+      // subnormal value
+      if (t < DOUBLE_C_TINY) {
+        return pos - offset + toDecimal(DOUBLE_Q_MIN, 10 * t, -1, DOUBLE_Q_MIN, DOUBLE_C_MIN, buffer, pos);
+      }
+      return pos - offset + toDecimal(DOUBLE_Q_MIN, t, 0, DOUBLE_Q_MIN, DOUBLE_C_MIN, buffer, pos);
+    }
+    buffer[pos++] = '0';
+    return pos - offset;
+  }
+
+
+
+
+  /**
+   * Place the shortest text which parses back to the value into the buffer.
+   *
+   * @param value the value to render
+   * @param buffer the buffer to receive the characters
+   * @param offset where in the buffer to place the first character
+   *
+   * @return the number of characters placed in the buffer (at most
+   *         {@link #MAX_LENGTH})
+   */
+  public static int format(final float value, final char[] buffer, final int offset) {
+    final int bits = Float.floatToRawIntBits(value);
+    final int t = bits & 0x007FFFFF;
+    final int bq = (bits >>> 23) & 0xFF;
+
+    if (bq == 0xFF) {
+      return special(t != 0, bits < 0, buffer, offset);
+    }
+
+    int pos = offset;
+    if (bits < 0) {
+      buffer[pos++] = '-';
+    }
+
+    if (bq != 0) {
+      final int mq = 150 - bq;
+      final int c = (int)FLOAT_C_MIN | t;
+      if (mq > 0 && mq < 24) {
+        final int f = c >> mq;
+        if (f << mq == c) {
+          return pos - offset + digits(f, 0, buffer, pos);
+        }
+      }
+      return pos - offset + toDecimal(-mq, c, 0, FLOAT_Q_MIN, FLOAT_C_MIN, buffer, pos);
+    } else if (t != 0) {
+      if (t < FLOAT_C_TINY) {
+        return pos - offset + toDecimal(FLOAT_Q_MIN, 10 * t, -1, FLOAT_Q_MIN, FLOAT_C_MIN, buffer, pos);
+      }
+      return pos - offset + toDecimal(FLOAT_Q_MIN, t, 0, FLOAT_Q_MIN, FLOAT_C_MIN, buffer, pos);
+    }
+    buffer[pos++] = '0';
+    return pos - offset;
+  }
+
+
+
+
+  private static int special(final boolean nan, final boolean negative, final char[] buffer, final int offset) {
+    final char[] text = nan ? NAN : negative ? NEGATIVE_INFINITY : INFINITY;
+    System.arraycopy(text, 0, buffer, offset, text.length);
+    return text.length;
+  }
+
+
+
+
+  /**
+   * Find the shortest decimal in the rounding interval of c * 2^q, picking
+   * the one closest to the value if there is more than one.
+   */
+  private static int toDecimal(final int q, final long c, final int dk, final int qMin, final long cMin, final char[] buffer, final int offset) {
+    final int out = (int)c & 0x1;
+    final long cb = c << 2;
+    final long cbr = cb + 2;
+    final long cbl;
+    final int k;
+    if (c != cMin || q == qMin) {
+      cbl = cb - 2;
+      k = flog10pow2(q);
+    } else {
+      // the interval is asymmetric at powers of two
+      cbl = cb - 1;
+      k = flog10threeQuartersPow2(q);
+    }
+    final int h = q + flog2pow10(-k) + 2;
+
+    final long g1 = G[(k - K_MIN) * 2];
+    final long g0 = G[(k - K_MIN) * 2 + 1];
+
+    final long vb = rop(g1, g0, cb << h);
+    final long vbl = rop(g1, g0, cbl << h);
+    final long vbr = rop(g1, g0, cbr << h);
+
+    final long s = vb >> 2;
+    if (s >= 100) {
+      // try one digit less first
+      final long sp10 = 10 * multiplyHigh(s, 115292150460684698L << 4);
+      final long tp10 = sp10 + 10;
+      final boolean upin = vbl + out <= sp10 << 2;
+      final boolean wpin = (tp10 << 2) + out <= vbr;
+      if (upin != wpin) {
+        return digits(upin ? sp10 : tp10, k, buffer, offset);
+      }
+    }
+
+    final long t = s + 1;
+    final boolean uin = vbl + out <= s << 2;
+    final boolean win = (t << 2) + out <= vbr;
+    if (uin != win) {
+      return digits(uin ? s : t, k + dk, buffer, offset);
+    }
+
+    // both are in the interval, pick the closest (even on a tie)
+    final long cmp = vb - (s + t << 1);
+    return digits(cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : t, k + dk, buffer, offset);
+  }
+
+
+
+
+  /**
+   * Round to odd the product of g and cp, scaled down by 2^127.
+   */
+  private static long rop(final long g1, final long g0, final long cp) {
+    final long x1 = multiplyHigh(g0, cp);
+    final long y0 = g1 * cp;
+    final long y1 = multiplyHigh(g1, cp);
+    final long z = (y0 >>> 1) + x1;
+    final long vbp = y1 + (z >>> 63);
+    return vbp | (z & MASK_63) + MASK_63 >>> 63;
+  }
+
+
+
+
+  /**
+   * The high 64 bits of the 128-bit product of two longs.
+   */
+  private static long multiplyHigh(final long x, final long y) {
+    final long x1 = x >> 32;
+    final long x2 = x & 0xFFFFFFFFL;
+    final long y1 = y >> 32;
+    final long y2 = y & 0xFFFFFFFFL;
+    final long z2 = x2 * y2;
+    final long t = x1 * y2 + (z2 >>> 32);
+    long z1 = t & 0xFFFFFFFFL;
+    final long z0 = t >> 32;
+    z1 += x2 * y1;
+    return x1 * y1 + z0 + (z1 >> 32);
+  }
+
+
+
+
+  /** floor(log10(2^e)) */
+  private static int flog10pow2(final int e) {
+    return (int)(e * 661971961083L >> 41);
+  }
+
+
+
+
+  /** floor(log10(3/4 * 2^e)) */
+  private static int flog10threeQuartersPow2(final int e) {
+    return (int)(e * 661971961083L + -274743187321L >> 41);
+  }
+
+
+
+
+  /** floor(log2(10^e)) */
+  private static int flog2pow10(final int e) {
+    return (int)(e * 913124641741L >> 38);
+  }
+
+
+
+
+  /**
+   * Lay out the decimal f * 10^e in plain or exponential notation.
+   */
+  private static int digits(long f, int e, final char[] buffer, final int offset) {
+    // drop trailing zeros, the significand is never zero here
+    while (f % 10 == 0) {
+      f /= 10;
+      e++;
+    }
+
+    final int length = unsignedLength(f);
+    final int point = length + e; // position of the decimal point from the first digit
+    int pos = offset;
+
+    if (e >= 0 && point <= 21) {
+      // integral: digits followed by zeros
+      pos += formatUnsigned(f, buffer, pos);
+      for (int i = 0; i < e; i++) {
+        buffer[pos++] = '0';
+      }
+    } else if (point > 0 && point <= 21) {
+      // digits with the decimal point inside
+      formatUnsigned(f, buffer, pos + 1);
+      System.arraycopy(buffer, pos + 1, buffer, pos, point);
+      buffer[pos + point] = '.';
+      pos += length + 1;
+    } else if (point > -6 && point <= 0) {
+      // leading zeros after the decimal point
+      buffer[pos++] = '0';
+      buffer[pos++] = '.';
+      for (int i = point; i < 0; i++) {
+        buffer[pos++] = '0';
+      }
+      pos += formatUnsigned(f, buffer, pos);
+    } else {
+      // exponential notation
+      formatUnsigned(f, buffer, pos + 1);
+      buffer[pos] = buffer[pos + 1];
+      if (length > 1) {
+        buffer[pos + 1] = '.';
+        pos += length + 1;
+      } else {
+        pos++;
+      }
+      final int exp = point - 1;
+      buffer[pos++] = 'e';
+      buffer[pos++] = exp < 0 ? '-' : '+';
+      pos += formatUnsigned(Math.abs(exp), buffer, pos);
+    }
+    return pos - offset;
+  }
+
+
+
+
+  /**
+   * @return the number of decimal digits in the unsigned value
+   */
+  private static int unsignedLength(final long value) {
+    if (value < 0) {
+      // unsigned values from 2^63 up to 10^19 have one digit less
+      return (value ^ Long.MIN_VALUE) < (-8446744073709551616L ^ Long.MIN_VALUE) ? 19 : 20;
+    }
+    long limit = 10;
+    for (int i = 1; i < 19; i++) {
+      if (value < limit) {
+        return i;
+      }
+      limit *= 10;
+    }
+    return 19;
+  }
+
+}
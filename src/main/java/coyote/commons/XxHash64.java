@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2018 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.commons;
+
+import java.util.zip.Checksum;
+
+
+/**
+ * The 64-bit xxHash algorithm.
+ *
+ * <p>This is a fast, non-cryptographic hash with excellent distribution. It
+ * is well suited for de-duplication, hash tables and cache keys but must not
+ * be used where an adversary may choose the data; use a cryptographic digest
+ * for that.
+ *
+ * <p>Data may be supplied incrementally in any number of pieces; the result
+ * is the same as if all the data was hashed at once with
+ * {@link #hash(byte[], int, int, long)}. Instances are not thread-safe.
+ */
+public class XxHash64 implements Checksum {
+
+  private static final long PRIME1 = 0x9E3779B185EBCA87L;
+  private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+  private static final long PRIME3 = 0x165667B19E3779F9L;
+  private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+  private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+  private final long seed;
+  private final byte[] stripe = new byte[32];
+  private int stripeLength;
+  private long totalLength;
+  private long v1;
+  private long v2;
+  private long v3;
+  private long v4;
+
+
+
+
+  /**
+   * Create a hash with a seed of zero.
+   */
+  public XxHash64() {
+    this(0);
+  }
+
+
+
+
+  /**
+   * Create a hash with the given seed.
+   *
+   * @param seed the seed value which varies the results of the hash
+   */
+  public XxHash64(final long seed) {
+    this.seed = seed;
+    reset();
+  }
+
+
+
+
+  /**
+   * Hash the given data in one pass.
+   *
+   * @param data the array containing the data to hash
+   * @param offset the offset of the first byte to hash
+   * @param length the number of bytes to hash
+   * @param seed the seed value which varies the results of the hash
+   *
+   * @return the 64-bit hash of the data
+   */
+  public static long hash(final byte[] data, final int offset, final int length, final long seed) {
+    final int end = offset + length;
+    int pos = offset;
+    long h;
+
+    if (length >= 32) {
+      long a1 = seed + PRIME1 + PRIME2;
+      long a2 = seed + PRIME2;
+      long a3 = seed;
+      long a4 = seed - PRIME1;
+      final int limit = end - 32;
+      do {
+        a1 = round(a1, readLong(data, pos));
+        a2 = round(a2, readLong(data, pos + 8));
+        a3 = round(a3, readLong(data, pos + 16));
+        a4 = round(a4, readLong(data, pos + 24));
+        pos += 32;
+      }
+      while (pos <= limit);
+      h = converge(a1, a2, a3, a4);
+    } else {
+      h = seed + PRIME5;
+    }
+
+    return finish(h + length, data, pos, end);
+  }
+
+
+
+
+  /**
+   * @see java.util.zip.Checksum#update(int)
+   */
+  @Override
+  public void update(final int b) {
+    stripe[stripeLength++] = (byte)b;
+    totalLength++;
+    if (stripeLength == 32) {
+      consume(stripe, 0);
+      stripeLength = 0;
+    }
+  }
+
+
+
+
+  /**
+   * Update the hash with all the bytes in the given array.
+   *
+   * @param data the data to add to the hash
+   */
+  public void update(final byte[] data) {
+    update(data, 0, data.length);
+  }
+
+
+
+
+  /**
+   * @see java.util.zip.Checksum#update(byte[], int, int)
+   */
+  @Override
+  public void update(final byte[] data, int offset, int length) {
+    totalLength += length;
+
+    // complete any partial stripe first
+    if (stripeLength > 0) {
+      final int count = Math.min(32 - stripeLength, length);
+      System.arraycopy(data, offset, stripe, stripeLength, count);
+      stripeLength += count;
+      offset += count;
+      length -= count;
+      if (stripeLength < 32) {
+        return;
+      }
+      consume(stripe, 0);
+      stripeLength = 0;
+    }
+
+    // then whole stripes straight from the data
+    while (length >= 32) {
+      consume(data, offset);
+      offset += 32;
+      length -= 32;
+    }
+
+    if (length > 0) {
+      System.arraycopy(data, offset, stripe, 0, length);
+      stripeLength = length;
+    }
+  }
+
+
+
+
+  /**
+   * @return the hash of all the data supplied since creation or the last reset
+   *
+   * @see java.util.zip.Checksum#getValue()
+   */
+  @Override
+  public long getValue() {
+    long h;
+    if (totalLength >= 32) {
+      h = converge(v1, v2, v3, v4);
+    } else {
+      h = seed + PRIME5;
+    }
+    return finish(h + totalLength, stripe, 0, stripeLength);
+  }
+
+
+
+
+  /**
+   * @see java.util.zip.Checksum#reset()
+   */
+  @Override
+  public void reset() {
+    v1 = seed + PRIME1 + PRIME2;
+    v2 = seed + PRIME2;
+    v3 = seed;
+    v4 = seed - PRIME1;
+    stripeLength = 0;
+    totalLength = 0;
+  }
+
+
+
+
+  private void consume(final byte[] data, final int offset) {
+    v1 = round(v1, readLong(data, offset));
+    v2 = round(v2, readLong(data, offset + 8));
+    v3 = round(v3, readLong(data, offset + 16));
+    v4 = round(v4, readLong(data, offset + 24));
+  }
+
+
+
+
+  private static long round(long acc, final long input) {
+    acc += input * PRIME2;
+    acc = Long.rotateLeft(acc, 31);
+    return acc * PRIME1;
+  }
+
+
+
+
+  private static long merge(long acc, final long value) {
+    acc ^= round(0, value);
+    return acc * PRIME1 + PRIME4;
+  }
+
+
+
+
+  private static long converge(final long a1, final long a2, final long a3, final long a4) {
+    long h = Long.rotateLeft(a1, 1) + Long.rotateLeft(a2, 7) + Long.rotateLeft(a3, 12) + Long.rotateLeft(a4, 18);
+    h = merge(h, a1);
+    h = merge(h, a2);
+    h = merge(h, a3);
+    return merge(h, a4);
+  }
+
+
+
+
+  /**
+   * Mix in the trailing (less than 32) bytes and avalanche the result.
+   */
+  private static long finish(long h, final byte[] data, int pos, final int end) {
+    while (pos + 8 <= end) {
+      h ^= round(0, readLong(data, pos));
+      h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+      pos += 8;
+    }
+    if (pos + 4 <= end) {
+      h ^= (readInt(data, pos) & 0xFFFFFFFFL) * PRIME1;
+      h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+      pos += 4;
+    }
+    while (pos < end) {
+      h ^= (data[pos++] & 0xFF) * PRIME5;
+      h = Long.rotateLeft(h, 11) * PRIME1;
+    }
+
+    h ^= h >>> 33;
+    h *= PRIME2;
+    h ^= h >>> 29;
+    h *= PRIME3;
+    h ^= h >>> 32;
+    return h;
+  }
+
+
+
+
+  /** little-endian as the algorithm specifies */
+  private static long readLong(final byte[] data, final int pos) {
+    return (data[pos] & 0xFFL) | (data[pos + 1] & 0xFFL) << 8 | (data[pos + 2] & 0xFFL) << 16 | (data[pos + 3] & 0xFFL) << 24 | (data[pos + 4] & 0xFFL) << 32 | (data[pos + 5] & 0xFFL) << 40 | (data[pos + 6] & 0xFFL) << 48 | (data[pos + 7] & 0xFFL) << 56;
+  }
+
+
+
+
+  private static int readInt(final byte[] data, final int pos) {
+    return (data[pos] & 0xFF) | (data[pos + 1] & 0xFF) << 8 | (data[pos + 2] & 0xFF) << 16 | (data[pos + 3] & 0xFF) << 24;
+  }
+
+}
@@ -12,6 +12,9 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
 
 import coyote.commons.ByteUtil;
 
@@ -22,6 +25,22 @@ import coyote.commons.ByteUtil;
  * <p>The current design involves encoding a name, type (array), length (number 
  * of elements) and a set of Type, Length, Value (TLV) triplets for each array
  * element.
+ * 
+ * <p>The length of variable length elements is encoded in 2 octets. Elements 
+ * of more than 65535 octets have the high bit of their type set and their 
+ * length encoded in 4 octets instead. No type has that bit set, so arrays 
+ * encoded before are read as they always were.
+ * 
+ * <p>Arrays of {@code int}, {@code long}, {@code short}, {@code float}, 
+ * {@code double} and {@code boolean} values and arrays of Strings are packed 
+ * instead: a marker octet no element type can have, the type of all the 
+ * elements, the number of elements in 4 octets and the values one after 
+ * another. Numbers take the same octets as the fields of their type, booleans 
+ * take one bit each and Strings are preceded by their length plus one as a 
+ * varint, 0 for null. Packed arrays decode into arrays of the same primitive 
+ * type (or {@code String[]}) without creating an object per element, where 
+ * they used to decode into a frame of unnamed values as all other arrays 
+ * still do.
  */
 public class ArrayType implements FieldType {
 
@@ -29,22 +48,36 @@ public class ArrayType implements FieldType {
 
   private static final int _size = -1;
 
+  /** Flag set on the type of elements whose length is encoded in 4 octets. */
+  private static final byte LONG_LENGTH = (byte)0x80;
+
   private final static String _name = "ARY";
 
+  /** Marker opening the value of packed arrays. */
+  static final byte PACKED = (byte)0xFF;
+
+  /** Size of the header of packed arrays; the marker, the type and the count. */
+  static final int PACKED_HEADER = 6;
+
 
 
 
   public boolean checkType(Object obj) {
-    return obj instanceof Object[];
+    return obj instanceof Object[] || obj instanceof int[] || obj instanceof long[] || obj instanceof short[] || obj instanceof float[] || obj instanceof double[] || obj instanceof boolean[];
   }
 
 
 
 
   /**
-   * This will return a DataFrame with unnamed fields
+   * This will return a DataFrame with unnamed fields, or for packed arrays an 
+   * array of their primitive type or of Strings.
    */
   public Object decode(byte[] value) {
+    if (isPacked(value, 0, (value != null) ? value.length : 0)) {
+      return decodePacked(value, 0, value.length);
+    }
+
     DataFrame retval = new DataFrame();
 
     short type = 0;
@@ -61,6 +94,10 @@ public class ArrayType implements FieldType {
         while (dis.available() > 0) {
           // the next field we read is the data type
           type = dis.readByte();
+          final boolean longLength = (type & LONG_LENGTH) != 0;
+          if (longLength) {
+            type &= ~LONG_LENGTH;
+          }
 
           try {
             // get the proper field type
@@ -71,7 +108,7 @@ public class ArrayType implements FieldType {
 
           // if the file type is a variable length (i.e. size < 0), read in the length
           if (datatype.getSize() < 0) {
-            final int length = dis.readUnsignedShort();
+            final int length = longLength ? dis.readInt() : dis.readUnsignedShort();
 
             if (length < 0) {
               throw new IOException("read length bad value: length = " + length + " type = " + type);
@@ -85,12 +122,10 @@ public class ArrayType implements FieldType {
 
             data = new byte[length];
 
-            if (length > 0) {
-              dis.read(data, 0, length);
-            }
+            dis.readFully(data);
           } else {
             data = new byte[datatype.getSize()];
-            dis.read(data);
+            dis.readFully(data);
           }
 
           // now get the object value of the data
@@ -110,10 +145,245 @@ public class ArrayType implements FieldType {
 
 
 
+  /**
+   * Determine if the given value is a packed array.
+   * 
+   * @param value the array holding the value
+   * @param offset where the value starts
+   * @param length the length of the value
+   * 
+   * @return true if the value is a packed array, false if it is an array of 
+   *         typed elements.
+   */
+  static boolean isPacked(final byte[] value, final int offset, final int length) {
+    return length > 0 && value[offset] == PACKED;
+  }
+
+
+
+
+  /**
+   * Decode a packed array directly from the given range of octets.
+   * 
+   * @param value the array holding the value
+   * @param offset where the value starts
+   * @param length the length of the value
+   * 
+   * @return the primitive array or the array of Strings
+   * 
+   * @throws IllegalArgumentException if the value is not a valid packed array
+   */
+  static Object decodePacked(final byte[] value, final int offset, final int length) {
+    if (length < PACKED_HEADER) {
+      throw new IllegalArgumentException("Could not decode value: packed array header underflow");
+    }
+    final ByteBuffer data = ByteBuffer.wrap(value, offset + 2, length - 2);
+    final short type = value[offset + 1];
+    final int count = data.getInt();
+
+    switch (type) {
+      case DataField.S16:
+        final short[] shorts = new short[checkCount(count, 2, data)];
+        data.asShortBuffer().get(shorts);
+        return shorts;
+      case DataField.S32:
+        final int[] ints = new int[checkCount(count, 4, data)];
+        data.asIntBuffer().get(ints);
+        return ints;
+      case DataField.S64:
+        final long[] longs = new long[checkCount(count, 8, data)];
+        data.asLongBuffer().get(longs);
+        return longs;
+      case DataField.FLOAT:
+        final float[] floats = new float[checkCount(count, 4, data)];
+        data.asFloatBuffer().get(floats);
+        return floats;
+      case DataField.DOUBLE:
+        final double[] doubles = new double[checkCount(count, 8, data)];
+        data.asDoubleBuffer().get(doubles);
+        return doubles;
+      case DataField.BOOLEANTYPE:
+        if (count < 0 || (count + 7L) / 8 != data.remaining()) {
+          throw new IllegalArgumentException("Could not decode value: " + count + " packed booleans do not fit " + data.remaining() + " octets");
+        }
+        final boolean[] booleans = new boolean[count];
+        final int start = data.position() + data.arrayOffset();
+        for (int x = 0; x < count; x++) {
+          booleans[x] = (value[start + (x >> 3)] & (1 << (x & 7))) != 0;
+        }
+        return booleans;
+      case DataField.STRING:
+        return decodeStrings(value, data.arrayOffset() + data.position(), offset + length, count);
+      default:
+        throw new IllegalArgumentException("Could not decode value: unsupported packed array type '" + type + "'");
+    }
+  }
+
+
+
+
+  /**
+   * @return the count, after making sure the data holds exactly that many 
+   *         elements of the given size.
+   */
+  private static int checkCount(final int count, final int size, final ByteBuffer data) {
+    if (count < 0 || (long)count * size != data.remaining()) {
+      throw new IllegalArgumentException("Could not decode value: " + count + " packed elements do not fit " + data.remaining() + " octets");
+    }
+    return count;
+  }
+
+
+
+
+  private static String[] decodeStrings(final byte[] value, int position, final int end, final int count) {
+    // every string takes at least one octet
+    if (count < 0 || count > end - position) {
+      throw new IllegalArgumentException("Could not decode value: " + count + " packed strings do not fit " + (end - position) + " octets");
+    }
+    final String[] retval = new String[count];
+    for (int x = 0; x < count; x++) {
+      long length = 0;
+      int shift = 0;
+      byte octet;
+      do {
+        if (position >= end || shift > 28) {
+          throw new IllegalArgumentException("Could not decode value: malformed string length");
+        }
+        octet = value[position++];
+        length |= (long)(octet & 0x7F) << shift;
+        shift += 7;
+      }
+      while (octet < 0);
+
+      if (length > 0) {
+        final int size = (int)(length - 1);
+        if (length - 1 > end - position) {
+          throw new IllegalArgumentException("Could not decode value: string length " + size + " exceeds the " + (end - position) + " octets remaining");
+        }
+        try {
+          retval[x] = new String(value, position, size, StringType.strEnc);
+        } catch (final UnsupportedEncodingException e) {
+          retval[x] = new String(value, position, size);
+        }
+        position += size;
+      }
+    }
+    if (position != end) {
+      throw new IllegalArgumentException("Could not decode value: " + (end - position) + " octets follow the packed strings");
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * Allocate a packed array with its header in place and positioned for the 
+   * values.
+   */
+  private static ByteBuffer packed(final short type, final int count, final long size) {
+    if (PACKED_HEADER + size > DataField.MAX_VALUE_SIZE) {
+      throw new IllegalArgumentException("Array of " + count + " elements is too large to encode");
+    }
+    final ByteBuffer retval = ByteBuffer.allocate(PACKED_HEADER + (int)size);
+    retval.put(PACKED);
+    retval.put((byte)type);
+    retval.putInt(count);
+    return retval;
+  }
+
+
+
+
+  private static byte[] encodeStrings(final String[] ary) {
+    final byte[][] encoded = new byte[ary.length][];
+    long size = 0;
+    for (int x = 0; x < ary.length; x++) {
+      if (ary[x] != null) {
+        try {
+          encoded[x] = ary[x].getBytes(StringType.strEnc);
+        } catch (final UnsupportedEncodingException e) {
+          encoded[x] = ary[x].getBytes();
+        }
+        size += encoded[x].length;
+      }
+      size += varintSize((encoded[x] != null) ? encoded[x].length + 1L : 0);
+    }
+
+    final ByteBuffer retval = packed(DataField.STRING, ary.length, size);
+    for (int x = 0; x < ary.length; x++) {
+      long length = (encoded[x] != null) ? encoded[x].length + 1L : 0;
+      while ((length & ~0x7FL) != 0) {
+        retval.put((byte)((length & 0x7F) | 0x80));
+        length >>>= 7;
+      }
+      retval.put((byte)length);
+      if (encoded[x] != null) {
+        retval.put(encoded[x]);
+      }
+    }
+    return retval.array();
+  }
+
+
+
+
+  private static int varintSize(long value) {
+    int retval = 1;
+    while ((value & ~0x7FL) != 0) {
+      value >>>= 7;
+      retval++;
+    }
+    return retval;
+  }
+
+
+
+
   /**
    * Encode the payload portion of the array (i.e., no name or type)
    */
   public byte[] encode(Object obj) {
+    if (obj instanceof int[]) {
+      final int[] ints = (int[])obj;
+      final ByteBuffer retval = packed(DataField.S32, ints.length, 4L * ints.length);
+      retval.asIntBuffer().put(ints);
+      return retval.array();
+    } else if (obj instanceof long[]) {
+      final long[] longs = (long[])obj;
+      final ByteBuffer retval = packed(DataField.S64, longs.length, 8L * longs.length);
+      retval.asLongBuffer().put(longs);
+      return retval.array();
+    } else if (obj instanceof short[]) {
+      final short[] shorts = (short[])obj;
+      final ByteBuffer retval = packed(DataField.S16, shorts.length, 2L * shorts.length);
+      retval.asShortBuffer().put(shorts);
+      return retval.array();
+    } else if (obj instanceof float[]) {
+      final float[] floats = (float[])obj;
+      final ByteBuffer retval = packed(DataField.FLOAT, floats.length, 4L * floats.length);
+      retval.asFloatBuffer().put(floats);
+      return retval.array();
+    } else if (obj instanceof double[]) {
+      final double[] doubles = (double[])obj;
+      final ByteBuffer retval = packed(DataField.DOUBLE, doubles.length, 8L * doubles.length);
+      retval.asDoubleBuffer().put(doubles);
+      return retval.array();
+    } else if (obj instanceof boolean[]) {
+      final boolean[] booleans = (boolean[])obj;
+      final ByteBuffer retval = packed(DataField.BOOLEANTYPE, booleans.length, (booleans.length + 7L) / 8);
+      final byte[] data = retval.array();
+      for (int x = 0; x < booleans.length; x++) {
+        if (booleans[x]) {
+          data[PACKED_HEADER + (x >> 3)] |= 1 << (x & 7);
+        }
+      }
+      return data;
+    } else if (obj instanceof String[]) {
+      return encodeStrings((String[])obj);
+    }
+
     final Object[] ary = (Object[])obj;
 
     final ByteArrayOutputStream out = new ByteArrayOutputStream();
@@ -126,14 +396,18 @@ public class ArrayType implements FieldType {
         final byte[] data = DataField.encode(ary[x], tipe);
         final int size = DataField.getDataType(tipe).getSize();
 
-        // Write the type field
-        dos.write(ByteUtil.renderShortByte(tipe));
+        // Write the type field, flagged if the length does not fit in 2 octets
+        final boolean longLength = data != null && size < 0 && data.length > 0xFFFF;
+        dos.write(longLength ? (byte)(tipe | LONG_LENGTH) : ByteUtil.renderShortByte(tipe));
 
         if (data != null) {
           // If the value is variable in length
           if (size < 0) {
-            // write the length
-            dos.writeShort(data.length);
+            if (longLength) {
+              dos.writeInt(data.length);
+            } else {
+              dos.writeShort(data.length);
+            }
           }
 
           // write the value itself
@@ -181,6 +455,18 @@ public class ArrayType implements FieldType {
   public String stringValue(byte[] val) {
     StringBuffer b = new StringBuffer();
     Object obj = decode(val);
+    if (obj != null && obj.getClass().isArray()) {
+      // the text of packed arrays is that of an array of their values
+      final int length = Array.getLength(obj);
+      if (length == 0) {
+        return "[]";
+      }
+      final DataFrame frame = new DataFrame();
+      for (int x = 0; x < length; x++) {
+        frame.add(Array.get(obj, x));
+      }
+      obj = frame;
+    }
     if (obj != null) {
       if (obj instanceof Object[]) {
         Object[] orray = (Object[])obj;
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2018 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dataframe;
+
+/**
+ * A compression algorithm applied to the wire format of whole frames.
+ *
+ * <p>Codecs are identified on the wire by their identifier and must be
+ * registered with {@link FrameCompressor#register(BlockCodec)} on the
+ * receiving end for compressed frames to be decoded. Implementations must be
+ * safe for use by multiple threads, and must not compress data to less than
+ * the fraction {@link FrameCompressor#MAX_RATIO} of its size as larger
+ * original sizes are rejected when decoding.
+ *
+ * @see FrameCompressor
+ */
+public interface BlockCodec {
+
+  /**
+   * @return the identifier of this codec on the wire.
+   */
+  public byte getId();
+
+
+
+
+  /**
+   * Compress the given data into the given target.
+   *
+   * @param data the array holding the data to compress
+   * @param offset where the data starts
+   * @param length the number of octets to compress
+   * @param target the array to receive the compressed data
+   * @param position where in the target the compressed data is to be placed
+   *
+   * @return the number of octets placed in the target, or -1 if the
+   *         compressed data does not fit in the rest of the target.
+   */
+  public int compress(byte[] data, int offset, int length, byte[] target, int position);
+
+
+
+
+  /**
+   * Decompress the given data, filling the given target.
+   *
+   * @param data the array holding the compressed data
+   * @param offset where the compressed data starts
+   * @param length the number of octets of compressed data
+   * @param target the array to receive the original data, exactly its size
+   *
+   * @throws DecodeException if the data is corrupt or does not decompress to
+   *         exactly the size of the target
+   */
+  public void decompress(byte[] data, int offset, int length, byte[] target);
+
+}
@@ -0,0 +1,374 @@
+/*
+ * Copyright (c) 2018 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dataframe;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Version 2 of the wire format, which encodes lengths and integers in as few
+ * octets as their values need.
+ *
+ * <p>Fields are encoded as in the original format, a name, a type and a
+ * value, with these differences:<ul>
+ * <li>The lengths of names and of variable length values are unsigned
+ * varints: 7 bits per octet, least significant first, with the high bit set
+ * on all but the last octet. Values are therefore not limited to 4GB by the
+ * format itself.</li>
+ * <li>S16, S32 and S64 values are zig-zag encoded varints, so small negative
+ * numbers are as short as small positive ones. U16, U32 and U64 values are
+ * unsigned varints.</li>
+ * <li>Nested frames are encoded in this format as well.</li></ul>
+ *
+ * <p>Frames in this format start with an empty name, the extension marker and
+ * the format number, so the {@link DataFrame#DataFrame(byte[])} constructor
+ * reads both this and the original format. The original format remains the
+ * default; this one is used only where frames are explicitly encoded with
+ * {@link #encode(DataFrame)}.
+ */
+public final class CompactFormat {
+
+  /** Size of the header; an empty name, the extension marker and the format. */
+  static final int HEADER_SIZE = 3;
+
+
+
+
+  private CompactFormat() {}
+
+
+
+
+  /**
+   * Encode the given frame in the compact wire format.
+   *
+   * @param frame the frame to encode
+   *
+   * @return the frame in the compact wire format, header included.
+   */
+  public static byte[] encode(final DataFrame frame) {
+    final Output out = new Output(256);
+    out.write((byte)0);
+    out.write(DataFrame.EXTENSION);
+    out.write(DataFrame.COMPACT_FORMAT);
+    writeFields(out, frame);
+    return out.toByteArray();
+  }
+
+
+
+
+  private static void writeFields(final Output out, final DataFrame frame) {
+    final List<DataField> fields = frame.fields;
+    for (int i = 0; i < fields.size(); i++) {
+      writeField(out, fields.get(i));
+    }
+  }
+
+
+
+
+  private static void writeField(final Output out, final DataField field) {
+    final byte[] name = field.getNameBytes();
+    if (name != null) {
+      out.writeVarint(name.length);
+      out.write(name, 0, name.length);
+    } else {
+      out.writeVarint(0);
+    }
+
+    final short type = field.getType();
+    out.write((byte)type);
+
+    if (type == DataField.FRAMETYPE) {
+      final DataFrame frm = field.getFrame();
+      if (frm != null) {
+        // the length of the nested frame is only known once it is encoded
+        final Output nested = new Output(64);
+        writeFields(nested, frm);
+        out.writeVarint(nested.count);
+        out.write(nested.buffer, 0, nested.count);
+      } else {
+        out.writeVarint(0);
+      }
+      return;
+    }
+
+    final byte[] val = field.value;
+    final int off = field.valueOffset();
+    final int len = field.valueLength();
+    switch (type) {
+      case DataField.S16:
+      case DataField.S32:
+      case DataField.S64:
+        final long signed = getLong(val, off, len, true);
+        out.writeVarint((signed << 1) ^ (signed >> 63));
+        break;
+      case DataField.U16:
+      case DataField.U32:
+      case DataField.U64:
+        out.writeVarint(getLong(val, off, len, false));
+        break;
+      default:
+        if (DataField.getDataType(type).getSize() < 0) {
+          out.writeVarint(len);
+        }
+        if (len > 0) {
+          out.write(val, off, len);
+        }
+    }
+  }
+
+
+
+
+  /**
+   * Read the fields of a frame in the compact format into the given frame.
+   *
+   * @param data the array holding the frame
+   * @param position where the fields start, after the header
+   * @param end where the frame ends
+   * @param frame the frame to receive the fields
+   *
+   * @throws DecodeException if the data is not a valid frame in this format
+   */
+  static void read(final byte[] data, final int position, final int end, final DataFrame frame) {
+    final Input in = new Input(data, position);
+    readFields(in, end, frame);
+  }
+
+
+
+
+  private static void readFields(final Input in, final int end, final DataFrame frame) {
+    while (in.position < end) {
+      frame.fields.add(readField(in, end));
+    }
+  }
+
+
+
+
+  private static DataField readField(final Input in, final int end) {
+    final int nameLength = (int)in.readLength(end);
+    if (nameLength > 255) {
+      throw new DecodeException("Name length of " + nameLength + " exceeds the 255 octet limit");
+    }
+    String name = null;
+    if (nameLength > 0) {
+      try {
+        name = new String(in.data, in.position, nameLength, DataField.strEnc);
+      } catch (final UnsupportedEncodingException e) {
+        name = new String(in.data, in.position, nameLength);
+      }
+      in.position += nameLength;
+    }
+
+    if (in.position >= end) {
+      throw new DecodeException("Data underflow reading the type of field '" + name + "'");
+    }
+    final short type = in.data[in.position++];
+    final FieldType datatype;
+    try {
+      datatype = DataField.getDataType(type);
+    } catch (final Throwable ball) {
+      throw new DecodeException("non supported type: '" + type + "' for field: '" + name + "'");
+    }
+
+    switch (type) {
+      case DataField.FRAMETYPE:
+        final int length = (int)in.readLength(end);
+        final DataFrame nested = new DataFrame();
+        readFields(in, in.position + length, nested);
+        nested.modified = false;
+        return new DataField(name, nested);
+      case DataField.S16:
+      case DataField.S32:
+      case DataField.S64:
+        final long zigzag = in.readVarint(end);
+        return new DataField(name, type, render((zigzag >>> 1) ^ -(zigzag & 1), datatype.getSize(), true));
+      case DataField.U16:
+      case DataField.U32:
+      case DataField.U64:
+        return new DataField(name, type, render(in.readVarint(end), datatype.getSize(), false));
+      default:
+        final int size = (datatype.getSize() < 0) ? (int)in.readLength(end) : datatype.getSize();
+        if (end - in.position < size) {
+          throw new DecodeException("value underflow: length specified as " + size + " but only " + (end - in.position) + " octets are available");
+        }
+        final byte[] value = Arrays.copyOfRange(in.data, in.position, in.position + size);
+        in.position += size;
+        return new DataField(name, type, value);
+    }
+  }
+
+
+
+
+  /**
+   * Read a big-endian integer of any number of octets up to 8.
+   */
+  private static long getLong(final byte[] val, final int off, final int len, final boolean signed) {
+    long retval = 0;
+    for (int i = 0; i < len; i++) {
+      retval = (retval << 8) | (val[off + i] & 0xFF);
+    }
+    if (signed && len > 0 && len < 8) {
+      final int shift = 64 - len * 8;
+      retval = (retval << shift) >> shift;
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * Render an integer in the given number of octets, big-endian.
+   *
+   * @throws DecodeException if the value does not fit
+   */
+  private static byte[] render(final long value, final int size, final boolean signed) {
+    if (size < 8) {
+      final int shift = 64 - size * 8;
+      final long truncated = signed ? (value << shift) >> shift : (value << shift) >>> shift;
+      if (truncated != value) {
+        throw new DecodeException("Value " + value + " does not fit in " + size + " octets");
+      }
+    }
+    final byte[] retval = new byte[size];
+    for (int i = size - 1, shift = 0; i >= 0; i--, shift += 8) {
+      retval[i] = (byte)(value >>> shift);
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * A growing array of octets.
+   */
+  private static final class Output {
+    byte[] buffer;
+    int count = 0;
+
+
+
+
+    Output(final int capacity) {
+      buffer = new byte[capacity];
+    }
+
+
+
+
+    private void ensure(final int needed) {
+      if (buffer.length - count < needed) {
+        final long capacity = Math.max(buffer.length * 2L, (long)count + needed);
+        if (capacity > DataField.MAX_VALUE_SIZE) {
+          throw new IllegalArgumentException("Frame too large to encode: " + capacity + " octets");
+        }
+        buffer = Arrays.copyOf(buffer, (int)capacity);
+      }
+    }
+
+
+
+
+    void write(final byte octet) {
+      ensure(1);
+      buffer[count++] = octet;
+    }
+
+
+
+
+    void write(final byte[] data, final int offset, final int length) {
+      ensure(length);
+      System.arraycopy(data, offset, buffer, count, length);
+      count += length;
+    }
+
+
+
+
+    void writeVarint(long value) {
+      ensure(10);
+      while ((value & ~0x7FL) != 0) {
+        buffer[count++] = (byte)((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buffer[count++] = (byte)value;
+    }
+
+
+
+
+    byte[] toByteArray() {
+      return (count == buffer.length) ? buffer : Arrays.copyOf(buffer, count);
+    }
+  }
+
+
+
+
+  /**
+   * A position in an array of octets being decoded.
+   */
+  private static final class Input {
+    final byte[] data;
+    int position;
+
+
+
+
+    Input(final byte[] data, final int position) {
+      this.data = data;
+      this.position = position;
+    }
+
+
+
+
+    long readVarint(final int end) {
+      long retval = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        if (position >= end) {
+          throw new DecodeException("Data underflow reading a varint");
+        }
+        final byte octet = data[position++];
+        retval |= (long)(octet & 0x7F) << shift;
+        if (octet >= 0) {
+          return retval;
+        }
+      }
+      throw new DecodeException("Malformed varint of more than 10 octets");
+    }
+
+
+
+
+    /**
+     * Read a length which must fit in an array and within the data.
+     */
+    long readLength(final int end) {
+      final long retval = readVarint(end);
+      if (retval < 0 || retval > DataField.MAX_VALUE_SIZE) {
+        throw new DecodeException("value of " + Long.toUnsignedString(retval) + " octets exceeds the largest supported value of " + DataField.MAX_VALUE_SIZE + " octets");
+      }
+      if (retval > end - position) {
+        throw new DecodeException("value underflow: length specified as " + retval + " but only " + (end - position) + " octets are available");
+      }
+      return retval;
+    }
+  }
+
+}
@@ -7,14 +7,19 @@
  */
 package coyote.dataframe;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import coyote.commons.ByteUtil;
+import coyote.commons.NumberText;
 
 
 /**
@@ -74,6 +79,12 @@ public class DataField implements Cloneable {
   public static String DEFAULT_ENCODING = DataField.ENC_UTF8;
   protected static String strEnc = DataField.DEFAULT_ENCODING;
 
+  /** The most octets allocated for a value before they are known to exist. */
+  private static final int READ_CHUNK = 64 * 1024;
+
+  /** The largest value an array can hold on common virtual machines. */
+  static final int MAX_VALUE_SIZE = Integer.MAX_VALUE - 8;
+
   // setup the string encoding of field names
   static {
     try {
@@ -149,6 +160,41 @@ public class DataField implements Cloneable {
   /** The actual value being held. Empty arrays are equivalent to a null value. */
   protected byte[] value;
 
+  /** Where the value starts when it is held in the slab of a compacted frame. */
+  private int offset = 0;
+
+  /** The length of a value held in a slab, -1 if the value is the whole array. */
+  private int length = -1;
+
+  /** The name from which the cached name bytes were encoded. */
+  private String encodedName = null;
+
+  /** The cached wire format of the name. */
+  private byte[] nameBytes = null;
+
+  /** The live frame held by frame fields; the value is encoded from it on demand. */
+  private volatile DataFrame frame = null;
+
+  /** Change stamp of the frame when the value was encoded from or decoded into it. */
+  private volatile long encodedAt = 0;
+
+  /** Change stamp of the last update to this field or the frame it holds. */
+  private volatile long stamp = 0;
+
+  /** The frame holding this field, notified when the field changes. */
+  private volatile DataFrame owner = null;
+
+  /** Any other frames holding this field; a field is rarely in more than one. */
+  private volatile DataFrame[] otherOwners = null;
+
+  private static final DataFrame[] NO_FRAMES = new DataFrame[0];
+
+  /** Flag indicating this field is shared with a frozen frame. */
+  private volatile boolean frozen = false;
+
+  /** Flag indicating the value array is shared with a copy of this field. */
+  private boolean valueShared = false;
+
 
 
 
@@ -217,8 +263,7 @@ public class DataField implements Cloneable {
    * @param obj The object to use as the value of the field
    */
   public DataField( final Object obj ) {
-    type = DataField.getType( obj );
-    value = DataField.encode( obj, type );
+    setObjectValue( obj );
   }
 
 
@@ -234,20 +279,23 @@ public class DataField implements Cloneable {
    */
   public DataField( final String name, final Object obj ) throws IllegalArgumentException {
     this.name = DataField.nameCheck( name );
-    type = DataField.getType( obj );
-    value = DataField.encode( obj, type );
+    setObjectValue( obj );
   }
 
 
 
 
   /**
-   * Create a deep-copy of this DataField.
+   * Create a copy of this DataField.
    * 
-   * <p>The name and type references are shared and the value is copied to an 
-   * new byte array.
+   * <p>The name and type references are shared and so is the encoded value; 
+   * neither this field nor the copy will change the shared value in place 
+   * from then on. Nested frames are cloned, which is equally cheap as frame 
+   * clones share the values of their fields in the same way.
    *
    * @return A mutable copy of this DataField.
+   * 
+   * @see DataFrame#clone()
    */
   public Object clone() {
     final DataField retval = new DataField();
@@ -256,10 +304,20 @@ public class DataField implements Cloneable {
     retval.name = name;
     retval.type = type;
 
-    if ( value != null ) {
-      retval.value = new byte[value.length];
-
-      System.arraycopy( value, 0, retval.value, 0, value.length );
+    synchronized( this ) {
+      final DataFrame frm = frame;
+      if ( frm != null ) {
+        retval.setFrame( (DataFrame)frm.clone() );
+      } else if ( value != null ) {
+        retval.value = value;
+        retval.offset = offset;
+        retval.length = length;
+        retval.valueShared = true;
+        // frozen fields never change their value
+        if ( !frozen ) {
+          valueShared = true;
+        }
+      }
     }
 
     return retval;
@@ -293,9 +351,13 @@ public class DataField implements Cloneable {
 
   /**
    * Construct the data field from data read in from the given input stream.
+   * 
+   * <p>The stream is read until the entire field has been read; it does not 
+   * need to have all the data available at once.
    *
    * @param dis The input stream from which the data field will be read
    *
+   * @throws EOFException if the stream ended within the field
    * @throws IOException if there was a problem reading the stream.
    */
   public DataField( final DataInputStream dis ) throws IOException, DecodeException {
@@ -304,18 +366,48 @@ public class DataField implements Cloneable {
 
     // If there is a name of any length, read it in as a String
     if ( nameLength > 0 ) {
-      final int i = dis.available();
-
-      if ( i < nameLength ) {
-        throw new DecodeException( "value underflow: name length specified as " + nameLength + " but only " + i + " octets are available" );
-      }
-
       final byte[] nameData = new byte[nameLength];
       dis.readFully( nameData );
 
       name = new String( nameData, DataField.strEnc );
     }
 
+    readValue( dis );
+  }
+
+
+
+
+  /**
+   * Create a data field with the given name from the type and value read in 
+   * from the given input stream.
+   * 
+   * <p>This is used to decode the values of frames encoded with a schema 
+   * which supplies the names of the fields.
+   *
+   * @param name The name of the field
+   * @param dis The input stream from which the type and value will be read
+   * 
+   * @return the decoded field
+   *
+   * @throws IOException if there was a problem reading the stream.
+   * 
+   * @see FrameSchema
+   */
+  static DataField readValue( final String name, final DataInputStream dis ) throws IOException, DecodeException {
+    final DataField retval = new DataField();
+    retval.name = name;
+    retval.readValue( dis );
+    return retval;
+  }
+
+
+
+
+  /**
+   * Read the type and value of this field from the given input stream.
+   */
+  private void readValue( final DataInputStream dis ) throws IOException, DecodeException {
     // the next field we read is the data type
     type = dis.readByte();
     FieldType datatype = null;
@@ -323,7 +415,7 @@ public class DataField implements Cloneable {
       // get the proper field type
       datatype = getDataType( type );
     } catch ( Throwable ball ) {
-      if ( nameLength > 0 ) {
+      if ( name != null ) {
         throw new DecodeException( "non supported type: '" + type + "' for field: '" + name + "'" );
       } else {
         throw new DecodeException( "non supported type: '" + type + "'" );
@@ -332,28 +424,51 @@ public class DataField implements Cloneable {
 
     // if the file type is a variable length (i.e. size < 0), read in the length
     if ( datatype.getSize() < 0 ) {
-      // FIXME: This can only read in 2GB! not a real U32!!!
-      final int length = dis.readInt();
+      // the length is an unsigned 32-bit value, but arrays hold at most 2GB
+      final long length = dis.readInt() & 0xFFFFFFFFL;
 
-      if ( length < 0 ) {
-        throw new DecodeException( "read length bad value: length = " + length + " type = " + type );
+      if ( length > MAX_VALUE_SIZE ) {
+        throw new DecodeException( "value of " + length + " octets exceeds the largest supported value of " + MAX_VALUE_SIZE + " octets, type = " + type );
       }
 
-      final int i = dis.available();
+      value = readFully( dis, (int)length );
+    } else {
+      value = new byte[datatype.getSize()];
+      dis.readFully( value );
+    }
+  }
+
 
-      if ( i < length ) {
-        throw new DecodeException( "value underflow: length specified as " + length + " but only " + i + " octets are available" );
-      }
 
-      value = new byte[length];
 
-      if ( length > 0 ) {
-        dis.read( value, 0, length );
+  /**
+   * Read the given number of octets from the stream.
+   * 
+   * <p>Large values are read in pieces into a growing array, so a corrupt 
+   * length can not allocate more memory than the stream actually delivers.
+   *
+   * @throws EOFException if the stream ends first
+   */
+  private static byte[] readFully( final DataInputStream dis, final int length ) throws IOException {
+    if ( length <= READ_CHUNK || length <= dis.available() ) {
+      final byte[] retval = new byte[length];
+      dis.readFully( retval );
+      return retval;
+    }
+
+    byte[] retval = new byte[READ_CHUNK];
+    int count = 0;
+    while ( count < length ) {
+      if ( count == retval.length ) {
+        retval = Arrays.copyOf( retval, (int)Math.min( length, retval.length * 2L ) );
       }
-    } else {
-      value = new byte[datatype.getSize()];
-      dis.read( value );
+      final int n = dis.read( retval, count, retval.length - count );
+      if ( n < 0 ) {
+        throw new EOFException( "value underflow: length specified as " + length + " but only " + count + " octets were available" );
+      }
+      count += n;
     }
+    return retval;
   }
 
 
@@ -461,17 +576,182 @@ public class DataField implements Cloneable {
    * @return The number of octets this fields value uses.
    */
   public int getLength() {
-    return value.length;
+    final DataFrame frm = frame;
+    if ( frm != null ) {
+      return isEncoded( frm ) ? valueLength() : frm.getEncodedSize();
+    }
+    return valueLength();
   }
 
 
 
 
   /**
+   * Access the encoded value of this field.
+   * 
+   * <p>Fields holding a frame encode it here, the first time its wire format 
+   * is requested after it was changed. Values held in the slab of a 
+   * compacted frame, or in the retained wire format of the frame holding 
+   * this field, are copied out of it.
+   * 
    * @return The encoded value of this field.
    */
   public byte[] getValue() {
-    return value;
+    final DataFrame frm = frame;
+    if ( frm != null ) {
+      byte[] retval;
+      if ( isEncoded( frm ) ) {
+        retval = value;
+        if ( length >= 0 ) {
+          // the nested encodings move along with this one
+          final byte[] from = retval;
+          retval = Arrays.copyOfRange( from, offset, offset + length );
+          rebase( from, retval, -offset );
+          length = -1;
+        }
+      } else {
+        // anything changed after this will be newer than the encoding
+        final long now = DataFrame.now();
+        retval = frm.getBytes();
+        setValue( retval );
+        encodedAt = now;
+      }
+      return retval;
+    }
+    final byte[] val = value;
+    final int len = length;
+    if ( len >= 0 && val != null ) {
+      return Arrays.copyOfRange( val, offset, offset + len );
+    }
+    return val;
+  }
+
+
+
+
+  /**
+   * Replace the value of this field with the given standalone array.
+   */
+  private void setValue( final byte[] val ) {
+    value = val;
+    offset = 0;
+    length = -1;
+  }
+
+
+
+
+  /**
+   * @return where the value of this field starts in its value array.
+   */
+  int valueOffset() {
+    return offset;
+  }
+
+
+
+
+  /**
+   * @return the number of octets of the value array holding the value of this 
+   *         field, 0 for null values.
+   */
+  int valueLength() {
+    final byte[] val = value;
+    if ( val == null ) {
+      return 0;
+    }
+    final int len = length;
+    return ( len >= 0 ) ? len : val.length;
+  }
+
+
+
+
+  /**
+   * Move the value of this field into the given slab.
+   * 
+   * <p>Values which are held in a slab are never changed in place when they 
+   * are shared with a copy of this field and are otherwise only changed in 
+   * place for the same number of octets, so any number of fields can hold 
+   * their values in one array.
+   * 
+   * @param slab the array to receive the value
+   * @param position where in the slab the value is to be placed
+   * 
+   * @return the number of octets the value occupies in the slab.
+   * 
+   * @see DataFrame#compact()
+   */
+  synchronized int moveTo( final byte[] slab, final int position ) {
+    final DataFrame frm = frame;
+    if ( frm != null ) {
+      // live frames get slabs of their own, frozen ones are never changed
+      if ( !( frm instanceof ImmutableDataFrame ) ) {
+        frm.compact();
+      }
+      return 0;
+    }
+    final byte[] val = value;
+    if ( val == null || type == FRAMETYPE ) {
+      return 0;
+    }
+    final int len = valueLength();
+    System.arraycopy( val, offset, slab, position, len );
+    value = slab;
+    offset = position;
+    length = len;
+    // the value is no longer shared with any copy of this field
+    valueShared = false;
+    return len;
+  }
+
+
+
+
+  /**
+   * Determine if the value of this field is the current wire format of the 
+   * given frame.
+   * 
+   * @param frm the frame held by this field
+   * 
+   * @return true if the value holds the wire format of the frame, false if 
+   *         it has not been encoded since it was last changed.
+   */
+  private boolean isEncoded( final DataFrame frm ) {
+    return value != null && frm.lastModified() <= encodedAt;
+  }
+
+
+
+
+  /**
+   * Access the frame this field holds.
+   * 
+   * <p>If this field was decoded from its wire format, the frame is decoded 
+   * the first time it is accessed and the same instance is returned from then 
+   * on. Changes made to that instance are reflected in the value of this 
+   * field.
+   * 
+   * @return the frame held in this field or null if this field does not hold 
+   *         a frame.
+   */
+  DataFrame getFrame() {
+    DataFrame retval = frame;
+    if ( retval == null && type == FRAMETYPE && value != null && value.length > 0 ) {
+      synchronized( this ) {
+        retval = frame;
+        if ( retval == null && type == FRAMETYPE && value != null && value.length > 0 ) {
+          retval = (DataFrame)getDataType( FRAMETYPE ).decode( ( length >= 0 ) ? Arrays.copyOfRange( value, offset, offset + length ) : value );
+          if ( frozen ) {
+            retval = new ImmutableDataFrame( retval );
+          }
+          // the bytes represent the newly decoded frame
+          encodedAt = DataFrame.now();
+          setFrame( retval );
+        }
+      }
+    }
+    return retval;
   }
 
 
@@ -481,7 +761,265 @@ public class DataField implements Cloneable {
    * @return The value of this field as an object.
    */
   public Object getObjectValue() {
-    return getObjectValue( type, value );
+    if ( type == FRAMETYPE ) {
+      // empty frames have always been represented as null values
+      final DataFrame frm = getFrame();
+      return ( frm != null && frm.isEmpty() ) ? null : frm;
+    }
+    return getObjectValue( type, getValue() );
+  }
+
+
+
+
+  /**
+   * Place the given object in this field, replacing its type and value.
+   * 
+   * <p>Frames are held by reference and only encoded when the wire format of
+   * this field is requested.
+   * 
+   * @param obj the new value of this field
+   * 
+   * @throws IllegalArgumentException if the object is an unsupported type or 
+   *         a frame holding this field.
+   */
+  void assign( final Object obj ) throws IllegalArgumentException {
+    checkFrozen();
+    setObjectValue( obj );
+    valueShared = false;
+    touch( DataFrame.tick() );
+  }
+
+
+
+
+  /**
+   * Replace the type and encoded value of this field.
+   * 
+   * @param typ the type code of the data
+   * @param val the encoded value
+   */
+  void assign( final short typ, final byte[] val ) {
+    checkFrozen();
+    synchronized( this ) {
+      type = typ;
+      setValue( val );
+      valueShared = false;
+      setFrame( null );
+    }
+    touch( DataFrame.tick() );
+  }
+
+
+
+
+  /**
+   * Overwrite the value of this field in place with the given fixed-size 
+   * value, avoiding the allocation of a new value.
+   * 
+   * <p>This only succeeds if this field already holds a value of the same 
+   * type and size which is not shared with a copy of this field.
+   * 
+   * @param typ the type code of the new value
+   * @param size the number of octets the type occupies
+   * @param bits the new value, the low-order octets of which are written in 
+   *        network byte order
+   * 
+   * @return true if the value was overwritten, false if this field does not 
+   *         hold a value of the given type and size.
+   */
+  boolean overwrite( final short typ, final int size, final long bits ) {
+    checkFrozen();
+    final byte[] val = value;
+    if ( typ != type || frame != null || val == null || valueLength() != size || valueShared ) {
+      return false;
+    }
+    long data = bits;
+    for ( int i = offset + size - 1; i >= offset; i-- ) {
+      val[i] = (byte)data;
+      data >>>= 8;
+    }
+    touch( DataFrame.tick() );
+    return true;
+  }
+
+
+
+
+  /**
+   * Return a frozen version of this field for use in a frozen frame or to be 
+   * shared with a cloned frame.
+   * 
+   * <p>This field is left alone so it remains mutable. A new frozen field is 
+   * returned instead which holds a frozen version of the frame in this field 
+   * or shares the value array of this field, which neither field changes in 
+   * place from then on.
+   * 
+   * @return a frozen field with the same name and value as this field, or 
+   *         this field if it is already frozen.
+   */
+  DataField freeze() {
+    if ( frozen ) {
+      return this;
+    }
+
+    final DataField retval = new DataField();
+    retval.name = name;
+    retval.type = type;
+    synchronized( this ) {
+      final DataFrame frm = frame;
+      if ( frm != null ) {
+        retval.frame = frm.freeze();
+      } else {
+        retval.value = value;
+        retval.offset = offset;
+        retval.length = length;
+        valueShared = true;
+      }
+    }
+    // all lazily derived state is in place before the field is shared
+    retval.getNameBytes();
+    retval.frozen = true;
+    return retval;
+  }
+
+
+
+
+  /**
+   * @return true if this field is shared with a frozen frame and can not be 
+   *         changed.
+   */
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+
+
+
+  private void checkFrozen() {
+    if ( frozen ) {
+      throw new UnsupportedOperationException( "Field '" + name + "' is frozen" );
+    }
+  }
+
+
+
+
+  /**
+   * Render the low-order octets of the given value in network byte order.
+   * 
+   * <p>This is the encoding used by all the fixed-size numeric and boolean 
+   * types.
+   * 
+   * @param size the number of octets to render
+   * @param bits the value to render
+   * 
+   * @return the encoded value
+   */
+  static byte[] render( final int size, final long bits ) {
+    final byte[] retval = new byte[size];
+    long data = bits;
+    for ( int i = size - 1; i >= 0; i-- ) {
+      retval[i] = (byte)data;
+      data >>>= 8;
+    }
+    return retval;
+  }
+
+
+
+
+  private void setObjectValue( final Object obj ) {
+    if ( obj instanceof DataFrame ) {
+      checkNesting( (DataFrame)obj );
+    }
+    final short typ = DataField.getType( obj );
+    synchronized( this ) {
+      type = typ;
+      if ( obj instanceof DataFrame ) {
+        setValue( null );
+        setFrame( (DataFrame)obj );
+      } else {
+        setValue( DataField.encode( obj, typ ) );
+        setFrame( null );
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Hold the given frame in this field in place of the current one.
+   * 
+   * <p>The frame is told it is held by this field so changes to it reach 
+   * this field and the frames holding it.
+   */
+  private void setFrame( final DataFrame frm ) {
+    final DataFrame current = frame;
+    if ( current != frm ) {
+      if ( current != null ) {
+        current.release( this );
+      }
+      if ( frm != null ) {
+        frm.hold( this );
+      }
+      frame = frm;
+    }
+  }
+
+
+
+
+  /**
+   * Record a change to this field or the frame it holds and pass it on to 
+   * the frames holding this field.
+   * 
+   * <p>Stamps only ever increase, so a change reaching this field more than 
+   * once goes no further the second time.
+   * 
+   * @param now the change stamp of the change
+   */
+  void touch( final long now ) {
+    if ( now > stamp ) {
+      stamp = now;
+      final DataFrame frm = owner;
+      if ( frm != null ) {
+        frm.touch( now );
+      }
+      final DataFrame[] others = otherOwners;
+      if ( others != null ) {
+        for ( final DataFrame other : others ) {
+          other.touch( now );
+        }
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Determine when this field or the frame it holds was last changed.
+   * 
+   * <p>Changes to the frame are passed on to this field as they happen, so 
+   * this takes constant time regardless of the size of the frame.
+   * 
+   * @return the change stamp of the most recent modification
+   * 
+   * @see DataFrame#lastModified()
+   */
+  long lastModified() {
+    long retval = stamp;
+    final DataFrame frm = frame;
+    if ( frm != null ) {
+      final long frameStamp = frm.lastModified();
+      if ( frameStamp > retval ) {
+        retval = frameStamp;
+      }
+    }
+    return retval;
   }
 
 
@@ -512,36 +1050,293 @@ public class DataField implements Cloneable {
    * @throws IOException if there is a problem writing to the output stream.
    */
   public void write( final DataOutputStream dos ) throws IOException {
-    // If we have a name...
-    if ( name != null ) {
-      // write the length and name fields
-      final byte[] nameField = name.getBytes( DataField.strEnc );
-      final int nameLength = nameField.length;
-      dos.write( ByteUtil.renderShortByte( (short)nameLength ) );
-      dos.write( nameField );
+    writeTo( dos );
+  }
+
+
+
+
+  /**
+   * Write the wire format of the field to the given output stream.
+   * 
+   * <p>The field is written directly to the stream without first being 
+   * encoded into a separate array, except for a nested frame whose current 
+   * encoding is not available. Many small writes are performed so the stream 
+   * should be buffered.
+   *
+   * @param out The stream on which the field is to be written.
+   *
+   * @return the number of octets written.
+   *
+   * @throws IOException if there is a problem writing to the output stream.
+   */
+  public int writeTo( final OutputStream out ) throws IOException {
+    int retval = 2;
+    final byte[] nameField = getNameBytes();
+
+    // write the length and name fields or a name field length of 0
+    if ( nameField != null ) {
+      out.write( nameField.length );
+      out.write( nameField );
+      retval += nameField.length;
     } else {
-      // indicate a name field length of 0
-      dos.write( ByteUtil.renderShortByte( (short)0 ) );
+      out.write( 0 );
     }
 
     // Write the type field
-    dos.write( ByteUtil.renderShortByte( type ) );
+    out.write( type );
+
+    final DataFrame frm = frame;
+    if ( frm != null ) {
+      // encode the frame once unless its current encoding is available; 
+      // writing it to the stream would size every nested frame again
+      byte[] encoded = value;
+      int start = offset;
+      int length = valueLength();
+      if ( !isEncoded( frm ) ) {
+        encoded = new byte[frm.getEncodedSize()];
+        start = 0;
+        length = encoded.length;
+        frm.writeFields( ByteBuffer.wrap( encoded ), false );
+      }
+      out.write( length >>> 24 );
+      out.write( length >>> 16 );
+      out.write( length >>> 8 );
+      out.write( length );
+      out.write( encoded, start, length );
+      retval += 4 + length;
+    } else if ( value != null ) {
+      final int length = valueLength();
+      // If the value is variable in length write the length
+      if ( getDataType( type ).getSize() < 0 ) {
+        out.write( length >>> 24 );
+        out.write( length >>> 16 );
+        out.write( length >>> 8 );
+        out.write( length );
+        retval += 4;
+      }
+
+      // write the value itself
+      out.write( value, offset, length );
+      retval += length;
+    } else {
+      out.write( 0 );
+      out.write( 0 );
+      retval += 2;
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * Write the wire format of the field into the given buffer.
+   * 
+   * <p>The field is written at the current position of the buffer which is 
+   * then advanced by the number of octets written. Values are always written 
+   * in network byte order regardless of the order of the buffer.
+   *
+   * @param buffer The buffer into which the field is to be written.
+   *
+   * @return the number of octets written.
+   * 
+   * @throws java.nio.BufferOverflowException if there is insufficient space 
+   *         remaining in the buffer.
+   * 
+   * @see #getEncodedSize()
+   */
+  public int writeTo( final ByteBuffer buffer ) {
+    return writeTo( buffer, false );
+  }
+
+
+
+
+  /**
+   * Write the wire format of the field into the given buffer, optionally 
+   * retaining the wire format of the frame this field holds.
+   * 
+   * <p>Retaining the wire format of the frame allows it to be copied as it 
+   * is the next time the field is written unless the frame changes first. 
+   * The wire format is retained in place, as part of the array backing the 
+   * buffer, so the buffer must not be changed afterwards.
+   * 
+   * @param buffer The buffer into which the field is to be written.
+   * @param retain true to retain the wire format of the frame in this field
+   *
+   * @return the number of octets written.
+   */
+  int writeTo( final ByteBuffer buffer, final boolean retain ) {
+    int retval = 1;
+    final byte[] nameField = getNameBytes();
+
+    if ( nameField != null ) {
+      buffer.put( (byte)nameField.length );
+      buffer.put( nameField );
+      retval += nameField.length;
+    } else {
+      buffer.put( (byte)0 );
+    }
+
+    return retval + writeValue( buffer, retain );
+  }
+
 
-    if ( value != null ) {
 
-      FieldType datatype = getDataType( type );
 
-      // If the value is variable in length
-      if ( datatype.getSize() < 0 ) {
-        // write the length
-        dos.write( ByteUtil.renderUnsignedInt( (long)value.length ) );
+  /**
+   * Write the type and value of the field, without its name, into the given 
+   * buffer.
+   * 
+   * @param buffer The buffer into which the value is to be written.
+   * @param retain true to retain the wire format of the frame in this field
+   *
+   * @return the number of octets written.
+   * 
+   * @see #getValueSize()
+   */
+  int writeValue( final ByteBuffer buffer, final boolean retain ) {
+    int retval = 1;
+    buffer.put( (byte)type );
+
+    final DataFrame frm = frame;
+    if ( frm != null ) {
+      // retained encodings refer to the array backing the buffer
+      final boolean keep = retain && !frozen && buffer.hasArray();
+      final int start = buffer.position();
+      buffer.position( start + 4 );
+      final int length;
+      if ( isEncoded( frm ) ) {
+        final byte[] encoded = value;
+        final int from = offset;
+        length = valueLength();
+        buffer.put( encoded, from, length );
+        if ( keep ) {
+          // move this encoding, and those nested in it, to the new copy
+          rebase( encoded, buffer.array(), buffer.arrayOffset() + start + 4 - from );
+        }
+      } else {
+        final byte[] encoded = frm.getRetainedBytes();
+        if ( encoded != null ) {
+          length = encoded.length;
+          buffer.put( encoded );
+        } else {
+          // write the frame in place and fill in its length afterwards
+          final long now = DataFrame.now();
+          length = frm.writeFields( buffer, keep );
+          if ( keep ) {
+            value = buffer.array();
+            offset = buffer.arrayOffset() + start + 4;
+            this.length = length;
+            valueShared = true;
+            encodedAt = now;
+          }
+        }
+      }
+      putLength( buffer, start, length );
+      retval += 4 + length;
+    } else if ( value != null ) {
+      final int length = valueLength();
+      if ( getDataType( type ).getSize() < 0 ) {
+        buffer.put( (byte)( length >>> 24 ) );
+        buffer.put( (byte)( length >>> 16 ) );
+        buffer.put( (byte)( length >>> 8 ) );
+        buffer.put( (byte)length );
+        retval += 4;
       }
+      buffer.put( value, offset, length );
+      retval += length;
+    } else {
+      buffer.put( (byte)0 );
+      buffer.put( (byte)0 );
+      retval += 2;
+    }
+    return retval;
+  }
 
-      // write the value itself
-      dos.write( value );
+
+
+
+  /**
+   * Move the retained wire format of the frame in this field, and those of 
+   * the frames nested within it, from one array to a copy of it.
+   * 
+   * <p>Encodings retained in other arrays are left where they are.
+   * 
+   * @param from the array the encodings were retained in
+   * @param to the array holding a copy of them
+   * @param shift how far the encodings were moved in the copy
+   */
+  private void rebase( final byte[] from, final byte[] to, final int shift ) {
+    if ( value != from || frozen ) {
+      return;
+    }
+    if ( length < 0 ) {
+      length = from.length;
+    }
+    value = to;
+    offset += shift;
+    valueShared = true;
+    final DataFrame frm = frame;
+    if ( frm != null ) {
+      for ( int i = 0; i < frm.fields.size(); i++ ) {
+        frm.fields.get( i ).rebase( from, to, shift );
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Write a length in network byte order at the given position in the buffer.
+   */
+  private static void putLength( final ByteBuffer buffer, final int position, final int length ) {
+    buffer.put( position, (byte)( length >>> 24 ) );
+    buffer.put( position + 1, (byte)( length >>> 16 ) );
+    buffer.put( position + 2, (byte)( length >>> 8 ) );
+    buffer.put( position + 3, (byte)length );
+  }
+
+
+
+
+  /**
+   * Calculate the number of octets this field occupies in its wire format 
+   * without actually encoding it.
+   * 
+   * @return the exact size of the field in its wire format.
+   */
+  public int getEncodedSize() {
+    final byte[] nameField = getNameBytes();
+    return ( ( nameField != null ) ? nameField.length + 1 : 1 ) + getValueSize();
+  }
+
+
+
+
+  /**
+   * Calculate the number of octets the type and value of this field occupy 
+   * in its wire format.
+   * 
+   * @return the size of the field in its wire format less its name.
+   */
+  int getValueSize() {
+    int retval = 1;
+
+    final DataFrame frm = frame;
+    if ( frm != null ) {
+      retval += 4 + ( isEncoded( frm ) ? valueLength() : frm.getEncodedSize() );
+    } else if ( value != null ) {
+      if ( getDataType( type ).getSize() < 0 ) {
+        retval += 4;
+      }
+      retval += valueLength();
     } else {
-      dos.writeShort( 0 );
+      retval += 2;
     }
+    return retval;
   }
 
 
@@ -553,14 +1348,40 @@ public class DataField implements Cloneable {
    * @return binary representation of the field.
    */
   public byte[] getBytes() {
-    final ByteArrayOutputStream out = new ByteArrayOutputStream();
-    final DataOutputStream dos = new DataOutputStream( out );
+    final byte[] retval = new byte[getEncodedSize()];
+    writeTo( ByteBuffer.wrap( retval ) );
+    return retval;
+  }
+
 
-    try {
-      write( dos );
-    } catch ( final IOException ioe ) {}
 
-    return out.toByteArray();
+
+  /**
+   * Access the encoded name of this field.
+   * 
+   * <p>The encoding is cached and reused for as long as the name remains 
+   * the same.
+   * 
+   * @return the name of this field in its wire format or null if the field 
+   *         has no name.
+   */
+  byte[] getNameBytes() {
+    final String nam = name;
+    if ( nam == null ) {
+      return null;
+    }
+
+    byte[] retval = nameBytes;
+    if ( nam != encodedName || retval == null ) {
+      try {
+        retval = nam.getBytes( DataField.strEnc );
+      } catch ( final UnsupportedEncodingException e ) {
+        retval = nam.getBytes();
+      }
+      nameBytes = retval;
+      encodedName = nam;
+    }
+    return retval;
   }
 
 
@@ -582,9 +1403,172 @@ public class DataField implements Cloneable {
    * Set the name of this field.
    * 
    * @param string Then name of this field.
+   * 
+   * @throws UnsupportedOperationException if this field is frozen
    */
   public void setName( final String string ) {
+    checkFrozen();
     name = string;
+    final long now = DataFrame.tick();
+    touch( now );
+
+    // only the frames holding this field need to update their name indexes
+    final DataFrame frm = owner;
+    if ( frm != null ) {
+      frm.fieldRenamed( now );
+    }
+    final DataFrame[] others = otherOwners;
+    if ( others != null ) {
+      for ( final DataFrame other : others ) {
+        other.fieldRenamed( now );
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Record that this field has been placed in the given frame.
+   * 
+   * <p>A field placed in a frame more than once is attached once for each 
+   * placement.
+   * 
+   * @param frm the frame now holding this field
+   */
+  synchronized void attach( final DataFrame frm ) {
+    checkOwner( frm );
+    if ( owner == null ) {
+      owner = frm;
+    } else {
+      otherOwners = with( otherOwners, frm, NO_FRAMES );
+    }
+  }
+
+
+
+
+  /**
+   * Make sure this field can be placed in the given frame.
+   * 
+   * @param frm the frame to hold this field
+   * 
+   * @throws IllegalArgumentException if the frame held by this field is the 
+   *         given frame or one it is nested within
+   */
+  void checkOwner( final DataFrame frm ) {
+    final DataFrame held = frame;
+    if ( held != null && frm.isWithin( held ) ) {
+      throw new IllegalArgumentException( "Field '" + name + "' can not hold a frame which contains it" );
+    }
+  }
+
+
+
+
+  /**
+   * Make sure this field can hold the given frame.
+   * 
+   * @param frm the frame to be held by this field
+   * 
+   * @throws IllegalArgumentException if the given frame is one of the frames 
+   *         holding this field or one they are nested within
+   */
+  private void checkNesting( final DataFrame frm ) {
+    if ( isWithin( frm ) ) {
+      throw new IllegalArgumentException( "Field '" + name + "' can not hold a frame which contains it" );
+    }
+  }
+
+
+
+
+  /**
+   * Determine if this field is held by the given frame, directly or through 
+   * the frames nested within it.
+   * 
+   * @param frm the frame to look for
+   * 
+   * @return true if the given frame is one of the frames holding this field 
+   *         or one they are nested within.
+   */
+  boolean isWithin( final DataFrame frm ) {
+    final DataFrame first = owner;
+    if ( first != null && first.isWithin( frm ) ) {
+      return true;
+    }
+    final DataFrame[] others = otherOwners;
+    if ( others != null ) {
+      for ( final DataFrame other : others ) {
+        if ( other.isWithin( frm ) ) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+
+
+
+  /**
+   * Record that this field has been removed from the given frame.
+   * 
+   * @param frm the frame which no longer holds this field
+   */
+  synchronized void detach( final DataFrame frm ) {
+    if ( owner == frm ) {
+      owner = null;
+      return;
+    }
+    otherOwners = without( otherOwners, frm );
+  }
+
+
+
+
+  /**
+   * Append an element to an array of links between fields and frames.
+   * 
+   * @param array the array, may be null
+   * @param element the element to append
+   * @param empty an empty array of the element type
+   * 
+   * @return a new array holding the elements of the array and the element
+   */
+  static <T> T[] with( final T[] array, final T element, final T[] empty ) {
+    final T[] retval = Arrays.copyOf( ( array != null ) ? array : empty, ( array != null ) ? array.length + 1 : 1 );
+    retval[retval.length - 1] = element;
+    return retval;
+  }
+
+
+
+
+  /**
+   * Remove one occurrence of an element from an array of links between 
+   * fields and frames.
+   * 
+   * @param array the array, may be null
+   * @param element the element to remove
+   * 
+   * @return a new array without the element, the same array if it does not 
+   *         hold the element or null if the array is left empty
+   */
+  static <T> T[] without( final T[] array, final T element ) {
+    if ( array != null ) {
+      for ( int i = 0; i < array.length; i++ ) {
+        if ( array[i] == element ) {
+          if ( array.length == 1 ) {
+            return null;
+          }
+          final T[] retval = Arrays.copyOf( array, array.length - 1 );
+          System.arraycopy( array, i + 1, retval, i, array.length - i - 1 );
+          return retval;
+        }
+      }
+    }
+    return array;
   }
 
 
@@ -707,6 +1691,74 @@ public class DataField implements Cloneable {
 
 
 
+  /**
+   * Determine if the given object is a field with the same name, type and 
+   * value as this field.
+   * 
+   * <p>Values are compared by their encoded bytes, so two fields are equal 
+   * exactly when their wire formats are the same. Nested frames held as 
+   * objects by both fields are compared field by field without encoding them.
+   * 
+   * @see java.lang.Object#equals(java.lang.Object)
+   */
+  @Override
+  public boolean equals( final Object obj ) {
+    if ( obj == this ) {
+      return true;
+    }
+    if ( !( obj instanceof DataField ) ) {
+      return false;
+    }
+
+    final DataField other = (DataField)obj;
+    if ( type != other.type || ( name == null ? other.name != null : !name.equals( other.name ) ) ) {
+      return false;
+    }
+
+    final DataFrame frm = frame;
+    final DataFrame otherFrame = other.frame;
+    if ( frm != null && otherFrame != null ) {
+      return frm.equals( otherFrame );
+    }
+    return Arrays.equals( getValue(), other.getValue() );
+  }
+
+
+
+
+  /**
+   * Generate a hash code from the name, type and encoded value of this field.
+   * 
+   * <p>Nested frames contribute their own (memoized) hash code, which is the 
+   * same whether the frame is held as an object or in its wire format.
+   * 
+   * @see java.lang.Object#hashCode()
+   */
+  @Override
+  public int hashCode() {
+    final int retval = 31 * ( name == null ? 0 : name.hashCode() ) + type;
+    final DataFrame frm = frame;
+    if ( frm != null ) {
+      return 31 * retval + frm.hashCode();
+    }
+    final byte[] val = value;
+    if ( type == FRAMETYPE && val != null ) {
+      return 31 * retval + DataFrame.hash( val );
+    }
+    if ( length >= 0 && val != null ) {
+      // the same as the hash of the value on its own
+      int hash = 1;
+      for ( int i = offset, end = offset + length; i < end; i++ ) {
+        hash = 31 * hash + val[i];
+      }
+      return 31 * retval + hash;
+    }
+    return 31 * retval + Arrays.hashCode( val );
+  }
+
+
+
+
   /**
    * Human readable format of the data field.
    *
@@ -718,6 +1770,7 @@ public class DataField implements Cloneable {
     buf.append( " name='" + name + "'" );
     buf.append( " type=" + this.getTypeName() );
     buf.append( "(" + type + ")" );
+    final byte[] value = getValue();
     if ( value.length > 32 ) {
       byte[] sample = new byte[32];
       System.arraycopy( value, 0, sample, 0, sample.length );
@@ -745,7 +1798,60 @@ public class DataField implements Cloneable {
    * @return The value of this field as a String.
    */
   public String getStringValue() {
-    return getStringValue( type, value );
+    final DataFrame frm = frame;
+    if ( frm != null ) {
+      return frm.toString();
+    }
+    return getStringValue( type, getValue() );
+  }
+
+
+
+
+  /**
+   * Place the text of a numeric value into the given buffer.
+   * 
+   * <p>This produces the same text as {@link #getStringValue()} but decodes 
+   * the value directly into the buffer without creating any objects, which 
+   * makes it the preferred way for writers to output numbers.
+   * 
+   * @param buffer the buffer to receive the characters, must have room for at 
+   *        least {@link NumberText#MAX_LENGTH} characters after the offset
+   * @param offset where in the buffer to place the first character
+   * 
+   * @return the number of characters placed in the buffer or -1 if this field 
+   *         does not contain a numeric value.
+   */
+  public int formatNumber( final char[] buffer, final int offset ) {
+    final byte[] val = value;
+    if ( val == null || frame != null ) {
+      return -1;
+    }
+    final int pos = this.offset;
+    switch ( type ) {
+      case S8:
+        return NumberText.format( val[pos], buffer, offset );
+      case U8:
+        return NumberText.format( val[pos] & 0xFF, buffer, offset );
+      case S16:
+        return NumberText.format( ByteUtil.retrieveShort( val, pos ), buffer, offset );
+      case U16:
+        return NumberText.format( ByteUtil.retrieveUnsignedShort( val, pos ), buffer, offset );
+      case S32:
+        return NumberText.format( ByteUtil.retrieveInt( val, pos ), buffer, offset );
+      case U32:
+        return NumberText.format( ByteUtil.retrieveUnsignedInt( val, pos ), buffer, offset );
+      case S64:
+        return NumberText.format( ByteUtil.retrieveLong( val, pos ), buffer, offset );
+      case U64:
+        return NumberText.formatUnsigned( ByteUtil.retrieveLong( val, pos ), buffer, offset );
+      case FLOAT:
+        return NumberText.format( ByteUtil.retrieveFloat( val, pos ), buffer, offset );
+      case DOUBLE:
+        return NumberText.format( ByteUtil.retrieveDouble( val, pos ), buffer, offset );
+      default:
+        return -1;
+    }
   }
 
 
@@ -776,7 +1882,11 @@ public class DataField implements Cloneable {
    * @return true if there is no value, false if there is data in this field
    */
   public boolean isNull() {
-    return ( value == null || value.length == 0 );
+    final DataFrame frm = frame;
+    if ( frm != null ) {
+      return frm.isEmpty();
+    }
+    return valueLength() == 0;
   }
 
 
@@ -14,16 +14,24 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Checksum;
 
 import coyote.commons.ByteUtil;
+import coyote.commons.XxHash64;
 
 
 /**
@@ -33,8 +41,10 @@ import coyote.commons.ByteUtil;
  * transports for a variety communications needs.
  * 
  * <p>This is a surprisingly efficient transmission scheme as all field values 
- * and child frames are stored in their wire format as byte arrays. They are 
- * then marshaled only when accessed and are ready for transmission.
+ * are stored in their wire format as byte arrays. They are then marshaled 
+ * only when accessed and are ready for transmission. Child frames are held as
+ * live objects which are decoded at most once and encoded only when the wire 
+ * format of their parent is requested.
  * 
  * <p>This class was conceived to implement the Data Transfer Object (DTO) 
  * design pattern in distributed applications. Passing a DataFrame as both 
@@ -53,12 +63,72 @@ import coyote.commons.ByteUtil;
  */
 public class DataFrame implements Cloneable {
 
+  /** Source of the change stamps shared by all frames and fields. */
+  private static final AtomicLong CLOCK = new AtomicLong();
+
   /** The array of fields this frame holds */
-  protected ArrayList<DataField> fields = new ArrayList<DataField>();
+  protected final ArrayList<DataField> fields;
 
   /** Flag indicating the top-level elements of this frame has been changed. */
   protected volatile boolean modified = false;
 
+  /** Change stamp of the last modification to this frame or anything within it. */
+  private volatile long stamp = 0;
+
+  /** The field holding this frame, notified when anything within it changes. */
+  private volatile DataField holder = null;
+
+  /** Any other fields holding this frame; a frame is rarely in more than one. */
+  private volatile DataField[] otherHolders = null;
+
+  private static final DataField[] NO_FIELDS = new DataField[0];
+
+  /** The modification count of the field list when last observed. */
+  private int listModCount = 0;
+
+  /** Number of fields at which name lookups start using an index. */
+  private static final int INDEX_THRESHOLD = 16;
+
+  /** Position of the first field with each name, built on demand. */
+  private volatile HashMap<String, Integer> nameIndex = null;
+
+  /** Position of the first field with each case-folded name, built on demand. */
+  private volatile HashMap<String, Integer> foldedIndex = null;
+
+  /** The modification count of the field list the indexes represent. */
+  private int indexModCount = -1;
+
+  /** Change stamp of the most recent rename of a field of this frame. */
+  private volatile long renamed = 0;
+
+  /** The stamp of the last field rename the indexes represent. */
+  private long indexRenamed = -1;
+
+  /** The last SHA-1 digest of the wire format of this frame. */
+  private volatile CachedHash digest = null;
+
+  /** The last 64-bit fingerprint of the wire format of this frame. */
+  private volatile CachedHash fingerprint = null;
+
+  /** The last wire format of this frame, retained once it is encoded again. */
+  private volatile CachedImage image = null;
+
+  /** 
+   * Type code no field can have, which follows an empty name at the start of 
+   * frames encoded in an extended wire format. The next octet identifies the
+   * format.
+   */
+  static final byte EXTENSION = (byte)0xFF;
+
+  /** Extended wire format with the values of a registered schema. */
+  static final byte SCHEMA_FORMAT = 1;
+
+  /** Extended wire format with varint lengths and integers. */
+  static final byte COMPACT_FORMAT = 2;
+
+  /** Extended wire format holding another wire format compressed. */
+  static final byte COMPRESSED_FORMAT = 3;
+
   /** Static flag indicating encoded fields should be checked. */
   private static boolean CHECK = false;
 
@@ -72,7 +142,19 @@ public class DataFrame implements Cloneable {
    * Construct an empty frame.
    */
   public DataFrame() {
-    // empty frame
+    fields = new FieldList(this);
+  }
+
+
+
+
+  /**
+   * Construct a frame backed by the given list of fields.
+   * 
+   * @param list the list which is to hold the fields of this frame
+   */
+  DataFrame(final FieldList list) {
+    fields = list;
   }
 
 
@@ -84,6 +166,7 @@ public class DataFrame implements Cloneable {
    * @param field the field to place in this frame 
    */
   public DataFrame(DataField field) {
+    this();
     fields.add(field);
     modified = false;
   }
@@ -97,16 +180,51 @@ public class DataFrame implements Cloneable {
    * @param data The byte array from which to construct the frame.
    */
   public DataFrame(final byte[] data) {
+    this(data, 0, (data != null) ? data.length : 0);
+  }
+
+
+
+
+  /**
+   * Construct the frame from the given range of bytes.
+   *
+   * <p>The values of the fields are copied out of the data, so the array may 
+   * be reused once the frame is constructed.
+   *
+   * @param data The byte array holding the wire format of the frame.
+   * @param offset where the wire format of the frame starts in the array
+   * @param length the number of octets the frame occupies
+   */
+  DataFrame(final byte[] data, final int offset, final int length) {
+    this();
     if (data != null) {
       int loc = 0;
       int ploc = 0;
       try {
-        final ByteArrayInputStream bais = new ByteArrayInputStream(data);
+        final ByteArrayInputStream bais = new ByteArrayInputStream(data, offset, length);
         final DataInputStream in = new DataInputStream(bais);
 
+        if (length > 2 && data[offset] == 0 && data[offset + 1] == EXTENSION) {
+          in.skipBytes(2);
+          final byte format = in.readByte();
+          if (format == SCHEMA_FORMAT) {
+            FrameSchema.read(in, this);
+          } else if (format == COMPACT_FORMAT) {
+            // the compact format occupies the rest of the data
+            CompactFormat.read(data, offset + CompactFormat.HEADER_SIZE, offset + length, this);
+            in.skipBytes(length - CompactFormat.HEADER_SIZE);
+          } else if (format == COMPRESSED_FORMAT) {
+            FrameCompressor.read(data, offset + 3, offset + length, this);
+            in.skipBytes(length - 3);
+          } else {
+            throw new DecodeException("Unsupported wire format: " + format);
+          }
+        }
+
         while (in.available() > 0) {
           ploc = loc;
-          loc = data.length - in.available();
+          loc = length - in.available();
           add(new DataField(in));
         }
       } catch (final EOFException eof) {
@@ -134,15 +252,203 @@ public class DataFrame implements Cloneable {
    * @see #getFieldIgnoreCase(String)
    */
   public DataField getField(final String name) {
-    for (int i = 0; i < fields.size(); i++) {
-      final DataField field = fields.get(i);
+    final int indx = indexOf(name);
+    return (indx > -1) ? fields.get(indx) : null;
+  }
+
+
 
-      if ((field.getName() != null) && field.getName().equals(name)) {
-        return field;
+
+  /**
+   * Return the position of the first field with the given name.
+   * 
+   * <p>Frames with many fields maintain an index of names to positions so 
+   * lookups do not have to scan all the fields.
+   *
+   * @param name The name of the field for which to search.
+   *
+   * @return the zero-based index of the first field with the given name or -1 
+   *         if no field with that name exists.
+   *
+   * @see #indexOfIgnoreCase(String)
+   */
+  public int indexOf(final String name) {
+    if (name != null) {
+      final ArrayList<DataField> list = fields;
+      if (list.size() >= INDEX_THRESHOLD && list instanceof FieldList) {
+        validateIndex((FieldList)list);
+        HashMap<String, Integer> index = nameIndex;
+        if (index == null) {
+          index = buildIndex(list, false);
+          nameIndex = index;
+        }
+        final Integer retval = index.get(name);
+        return (retval != null) ? retval : -1;
+      }
+
+      for (int i = 0; i < list.size(); i++) {
+        if (name.equals(list.get(i).name)) {
+          return i;
+        }
       }
     }
+    return -1;
+  }
 
-    return null;
+
+
+
+  /**
+   * Return the position of the first field with the given name ignoring 
+   * differences in case.
+   *
+   * @param name The name of the field for which to search.
+   *
+   * @return the zero-based index of the first field with the given name 
+   *         (ignoring differences in case) or -1 if no field with that name 
+   *         exists.
+   *
+   * @see #indexOf(String)
+   */
+  public int indexOfIgnoreCase(final String name) {
+    if (name != null) {
+      final ArrayList<DataField> list = fields;
+      if (list.size() >= INDEX_THRESHOLD && list instanceof FieldList) {
+        validateIndex((FieldList)list);
+        HashMap<String, Integer> index = foldedIndex;
+        if (index == null) {
+          index = buildIndex(list, true);
+          foldedIndex = index;
+        }
+        final Integer retval = index.get(fold(name));
+        return (retval != null) ? retval : -1;
+      }
+
+      for (int i = 0; i < list.size(); i++) {
+        if (name.equalsIgnoreCase(list.get(i).name)) {
+          return i;
+        }
+      }
+    }
+    return -1;
+  }
+
+
+
+
+  /**
+   * Discard the name indexes if fields have been added, removed, replaced or 
+   * renamed since they were built.
+   * 
+   * @param list the list of fields the indexes represent
+   */
+  private void validateIndex(final FieldList list) {
+    final int count = list.getModCount();
+    final long stamp = renamed;
+    if (count != indexModCount || stamp != indexRenamed) {
+      nameIndex = null;
+      foldedIndex = null;
+      indexModCount = count;
+      indexRenamed = stamp;
+    }
+  }
+
+
+
+
+  /**
+   * Called by a field of this frame when it is renamed, so the name indexes 
+   * are rebuilt before they are used again.
+   * 
+   * @param stamp the change stamp of the rename
+   */
+  void fieldRenamed(final long stamp) {
+    renamed = stamp;
+  }
+
+
+
+
+  /**
+   * Map the name of each field to the position of its first occurrence.
+   * 
+   * @param list the fields to index
+   * @param folded true to index the case-folded names
+   * 
+   * @return the new index
+   */
+  private static HashMap<String, Integer> buildIndex(final ArrayList<DataField> list, final boolean folded) {
+    final HashMap<String, Integer> retval = new HashMap<String, Integer>(list.size() * 2);
+    for (int i = 0; i < list.size(); i++) {
+      final String name = list.get(i).name;
+      if (name != null) {
+        retval.putIfAbsent(folded ? fold(name) : name, i);
+      }
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * Fold the case of the given name so names which are equal ignoring case 
+   * are also equal.
+   * 
+   * <p>Each character is folded the same way 
+   * {@link String#equalsIgnoreCase(String)} compares them.
+   * 
+   * @param name the name to fold
+   * 
+   * @return the case-folded name
+   */
+  private static String fold(final String name) {
+    for (int i = 0; i < name.length(); i++) {
+      final char c = name.charAt(i);
+      if (Character.toLowerCase(Character.toUpperCase(c)) != c) {
+        final char[] chars = name.toCharArray();
+        for (int j = i; j < chars.length; j++) {
+          chars[j] = Character.toLowerCase(Character.toUpperCase(chars[j]));
+        }
+        return new String(chars);
+      }
+    }
+    return name;
+  }
+
+
+
+
+  /**
+   * Append the given field to the list of fields, keeping any name indexes
+   * current.
+   * 
+   * @param field the field to append
+   * 
+   * @return the index of the appended field.
+   */
+  private int append(final DataField field) {
+    final ArrayList<DataField> list = fields;
+    final boolean indexed = (nameIndex != null || foldedIndex != null) && list instanceof FieldList && indexModCount == ((FieldList)list).getModCount() && indexRenamed == renamed;
+    list.add(field);
+    final int retval = list.size() - 1;
+
+    if (indexed) {
+      indexModCount = ((FieldList)list).getModCount();
+      final String name = field.name;
+      if (name != null) {
+        final HashMap<String, Integer> index = nameIndex;
+        if (index != null) {
+          index.putIfAbsent(name, retval);
+        }
+        final HashMap<String, Integer> folded = foldedIndex;
+        if (folded != null) {
+          folded.putIfAbsent(fold(name), retval);
+        }
+      }
+    }
+    changed();
+    return retval;
   }
 
 
@@ -160,13 +466,8 @@ public class DataFrame implements Cloneable {
    * @see #getField(String)
    */
   public DataField getFieldIgnoreCase(final String name) {
-    for (int i = 0; i < fields.size(); i++) {
-      final DataField field = fields.get(i);
-      if ((field.getName() != null) && field.getName().equalsIgnoreCase(name)) {
-        return field;
-      }
-    }
-    return null;
+    final int indx = indexOfIgnoreCase(name);
+    return (indx > -1) ? fields.get(indx) : null;
   }
 
 
@@ -188,13 +489,7 @@ public class DataFrame implements Cloneable {
    * @see #containsIgnoreCase(String)
    */
   public boolean contains(final String name) {
-    for (int i = 0; i < fields.size(); i++) {
-      final DataField field = fields.get(i);
-      if ((field.getName() != null) && field.getName().equals(name)) {
-        return true;
-      }
-    }
-    return false;
+    return indexOf(name) > -1;
   }
 
 
@@ -212,13 +507,7 @@ public class DataFrame implements Cloneable {
    * @see #contains(String)
    */
   public boolean containsIgnoreCase(final String name) {
-    for (int i = 0; i < fields.size(); i++) {
-      final DataField field = fields.get(i);
-      if ((field.getName() != null) && field.getName().equalsIgnoreCase(name)) {
-        return true;
-      }
-    }
-    return false;
+    return indexOfIgnoreCase(name) > -1;
   }
 
 
@@ -292,6 +581,211 @@ public class DataFrame implements Cloneable {
 
 
 
+  /**
+   * Determine if the given type code represents one of the signed or unsigned
+   * integral types which fit in a long: S8, U8, S16, U16, S32, U32 and S64.
+   */
+  private static boolean isIntegral(final short type) {
+    return type >= DataField.S8 && type <= DataField.S64;
+  }
+
+
+
+
+  /**
+   * Decode the value of an integral field directly from its encoded bytes.
+   * 
+   * @param type the integral type code of the value
+   * @param val the array holding the encoded value
+   * @param off where the value starts in the array
+   * 
+   * @return the value as a long
+   * 
+   * @see #isIntegral(short)
+   */
+  private static long integralValue(final short type, final byte[] val, final int off) {
+    switch (type) {
+      case DataField.S8:
+        return val[off];
+      case DataField.U8:
+        return val[off] & 0xFF;
+      case DataField.S16:
+        return ByteUtil.retrieveShort(val, off);
+      case DataField.U16:
+        return ByteUtil.retrieveUnsignedShort(val, off);
+      case DataField.S32:
+        return ByteUtil.retrieveInt(val, off);
+      case DataField.U32:
+        return ByteUtil.retrieveUnsignedInt(val, off);
+      default:
+        return ByteUtil.retrieveLong(val, off);
+    }
+  }
+
+
+
+
+  /**
+   * Convert the value of the given field into a boolean.
+   * 
+   * <p>Boolean and numeric values are decoded directly from the value of the 
+   * field without creating any objects; all other types are decoded and 
+   * converted as objects.
+   * 
+   * @param field the field holding the value to convert
+   * 
+   * @return the boolean value of the field
+   * 
+   * @throws DataFrameException if the field was null or its value could not be 
+   *         converted into a boolean
+   */
+  private boolean asBoolean(final DataField field) throws DataFrameException {
+    if (field != null) {
+      final short type = field.type;
+      final byte[] val = field.value;
+      final int off = field.valueOffset();
+      if (val != null && field.valueLength() > 0) {
+        if (type == DataField.BOOLEANTYPE) {
+          return ByteUtil.retrieveBoolean(val, off);
+        } else if (isIntegral(type)) {
+          return integralValue(type, val, off) > 0;
+        } else if (type == DataField.DOUBLE) {
+          return ByteUtil.retrieveDouble(val, off) > 0;
+        } else if (type == DataField.FLOAT) {
+          return ByteUtil.retrieveFloat(val, off) > 0;
+        }
+      }
+      return asBoolean(field.getObjectValue());
+    }
+    throw new DataFrameException("Null Value could not be converted");
+  }
+
+
+
+
+  /**
+   * Convert the value of the given field into an integer.
+   * 
+   * <p>Integral values are decoded directly from the value of the field 
+   * without creating any objects; all other types are decoded and converted 
+   * as objects.
+   * 
+   * @param field the field holding the value to convert
+   * 
+   * @return the integer value of the field
+   * 
+   * @throws DataFrameException if the field was null or its value could not be 
+   *         converted into an integer
+   */
+  private int asInt(final DataField field) throws DataFrameException {
+    if (field != null) {
+      final short type = field.type;
+      final byte[] val = field.value;
+      final int off = field.valueOffset();
+      if (val != null && field.valueLength() > 0) {
+        if (isIntegral(type) || type == DataField.U64) {
+          final long retval = integralValue(type, val, off);
+          // U64 values beyond the range of a long are negative here
+          if (retval < Integer.MIN_VALUE || retval > Integer.MAX_VALUE || (type == DataField.U64 && retval < 0)) {
+            throw new DataFrameException("Value could not be converted into an integer");
+          }
+          return (int)retval;
+        } else if (type == DataField.DOUBLE || type == DataField.FLOAT || type == DataField.BOOLEANTYPE) {
+          throw new DataFrameException("Value could not be converted into an integer");
+        }
+      }
+      return asInt(field.getObjectValue());
+    }
+    throw new DataFrameException("Value could not be found");
+  }
+
+
+
+
+  /**
+   * Convert the value of the given field into a long.
+   * 
+   * <p>Integral values are decoded directly from the value of the field 
+   * without creating any objects; all other types are decoded and converted 
+   * as objects.
+   * 
+   * @param field the field holding the value to convert
+   * 
+   * @return the long value of the field
+   * 
+   * @throws DataFrameException if the field was null or its value could not be 
+   *         converted into a long
+   */
+  private long asLong(final DataField field) throws DataFrameException {
+    if (field != null) {
+      final short type = field.type;
+      final byte[] val = field.value;
+      final int off = field.valueOffset();
+      if (val != null && field.valueLength() > 0) {
+        if (isIntegral(type)) {
+          return integralValue(type, val, off);
+        } else if (type == DataField.U64) {
+          final long retval = ByteUtil.retrieveLong(val, off);
+          if (retval < 0) {
+            throw new DataFrameException("Value could not be converted into a long");
+          }
+          return retval;
+        } else if (type == DataField.DOUBLE || type == DataField.FLOAT || type == DataField.BOOLEANTYPE) {
+          throw new DataFrameException("Value could not be converted into a long");
+        }
+      }
+      return asLong(field.getObjectValue());
+    }
+    throw new DataFrameException("Value could not be found");
+  }
+
+
+
+
+  /**
+   * Convert the value of the given field into a double.
+   * 
+   * <p>Double and integral values are decoded directly from the value of the 
+   * field without creating any objects; all other types (including floats, 
+   * which are converted through their shortest decimal representation) are 
+   * decoded and converted as objects.
+   * 
+   * @param field the field holding the value to convert
+   * 
+   * @return the double value of the field
+   * 
+   * @throws DataFrameException if the field was null or its value could not be 
+   *         converted into a double
+   */
+  private double asDouble(final DataField field) throws DataFrameException {
+    if (field != null) {
+      final short type = field.type;
+      final byte[] val = field.value;
+      final int off = field.valueOffset();
+      if (val != null && field.valueLength() > 0) {
+        if (type == DataField.DOUBLE) {
+          return ByteUtil.retrieveDouble(val, off);
+        } else if (isIntegral(type)) {
+          return integralValue(type, val, off);
+        } else if (type == DataField.U64) {
+          final long retval = ByteUtil.retrieveLong(val, off);
+          if (retval >= 0) {
+            return retval;
+          }
+          // halve the unsigned value keeping the low bit so it rounds correctly
+          return (double)((retval >>> 1) | (retval & 1)) * 2.0D;
+        } else if (type == DataField.BOOLEANTYPE) {
+          throw new DataFrameException("Value could not be converted into a double");
+        }
+      }
+      return asDouble(field.getObjectValue());
+    }
+    throw new DataFrameException("Value could not be found");
+  }
+
+
+
+
   /**
    * Convert the given object into a boolean
    *  
@@ -356,7 +850,7 @@ public class DataFrame implements Cloneable {
    *         value.
    */
   public boolean getAsBoolean(String name) throws DataFrameException {
-    return asBoolean(getObject(name));
+    return asBoolean(getField(name));
   }
 
 
@@ -375,7 +869,7 @@ public class DataFrame implements Cloneable {
    *         value.
    */
   public boolean getAsBoolean(final int indx) throws DataFrameException {
-    return asBoolean(getObject(indx));
+    return asBoolean(getField(indx));
   }
 
 
@@ -456,7 +950,7 @@ public class DataFrame implements Cloneable {
    *         found field could not be parsed or converted to an integer value.
    */
   public int getAsInt(String name) throws DataFrameException {
-    return asInt(getObject(name));
+    return asInt(getField(name));
   }
 
 
@@ -474,7 +968,7 @@ public class DataFrame implements Cloneable {
    *         found field could not be parsed or converted to an integer value.
    */
   public int getAsInt(final int indx) throws DataFrameException {
-    return asInt(getObject(indx));
+    return asInt(getField(indx));
   }
 
 
@@ -520,7 +1014,7 @@ public class DataFrame implements Cloneable {
    *         found field could not be parsed or converted to a long value.
    */
   public long getAsLong(String name) throws DataFrameException {
-    return asLong(getObject(name));
+    return asLong(getField(name));
   }
 
 
@@ -538,7 +1032,7 @@ public class DataFrame implements Cloneable {
    *         found field could not be parsed or converted to a long value.
    */
   public long getAsLong(final int indx) throws DataFrameException {
-    return asLong(getObject(indx));
+    return asLong(getField(indx));
   }
 
 
@@ -584,7 +1078,7 @@ public class DataFrame implements Cloneable {
    *         found field could not be parsed or converted to a double value.
    */
   public double getAsDouble(String name) throws DataFrameException {
-    return asDouble(getObject(name));
+    return asDouble(getField(name));
   }
 
 
@@ -602,7 +1096,7 @@ public class DataFrame implements Cloneable {
    *         found field could not be parsed or converted to a double value.
    */
   public double getAsDouble(final int indx) throws DataFrameException {
-    return asDouble(getObject(indx));
+    return asDouble(getField(indx));
   }
 
 
@@ -621,7 +1115,7 @@ public class DataFrame implements Cloneable {
   private float asFloat(Object val) throws DataFrameException {
     if (val != null) {
       if (val instanceof Float) {
-        return ((Float)val).longValue();
+        return ((Float)val).floatValue();
       } else {
         try {
           return Float.parseFloat(val.toString());
@@ -748,23 +1242,498 @@ public class DataFrame implements Cloneable {
 
 
   /**
-   * Return the object value of the named field.
-   *
-   * @param name The name of the field containing the object to retrieve.
-   *
-   * @return The object value of the first occurrence of the named field or null 
-   *         if the field with the given name was not found.
+   * Access the value of the given field as an array, decoding packed arrays 
+   * directly from the value of the field.
+   * 
+   * @return a primitive array or array of Strings for packed arrays, a frame 
+   *         of unnamed values for other arrays
+   * 
+   * @throws DataFrameException if the field was null or does not hold an array
    */
-  public Object getObject(final String name) {
-    for (int i = 0; i < fields.size(); i++) {
-      final DataField field = fields.get(i);
-
-      if ((field.getName() != null) && field.getName().equals(name)) {
-        return field.getObjectValue();
+  private static Object arrayValue(final DataField field) throws DataFrameException {
+    if (field == null) {
+      throw new DataFrameException("Value could not be found");
+    }
+    if (field.type != DataField.ARRAY) {
+      throw new DataFrameException("Value is not an array");
+    }
+    final byte[] val = field.value;
+    final int off = field.valueOffset();
+    final int len = field.valueLength();
+    if (val != null && ArrayType.isPacked(val, off, len)) {
+      try {
+        return ArrayType.decodePacked(val, off, len);
+      } catch (final IllegalArgumentException e) {
+        throw new DataFrameException(e.getMessage());
       }
     }
+    return field.getObjectValue();
+  }
 
-    return null;
+
+
+
+  /**
+   * Convert the value of the given field into an array of integers.
+   * 
+   * <p>Packed arrays of ints are decoded directly without boxing; packed 
+   * arrays of shorts are widened and the elements of other arrays are 
+   * converted one at a time.
+   * 
+   * @param field the field holding the array to convert
+   * 
+   * @return the array of integers
+   * 
+   * @throws DataFrameException if the field was null or its value could not be 
+   *         converted into an array of integers
+   */
+  private int[] asIntArray(final DataField field) throws DataFrameException {
+    final Object val = arrayValue(field);
+    if (val instanceof int[]) {
+      return (int[])val;
+    } else if (val instanceof short[]) {
+      final short[] shorts = (short[])val;
+      final int[] retval = new int[shorts.length];
+      for (int x = 0; x < shorts.length; x++) {
+        retval[x] = shorts[x];
+      }
+      return retval;
+    } else if (val instanceof DataFrame) {
+      final DataFrame array = (DataFrame)val;
+      final int[] retval = new int[array.fields.size()];
+      for (int x = 0; x < retval.length; x++) {
+        retval[x] = asInt(array.fields.get(x));
+      }
+      return retval;
+    }
+    throw new DataFrameException("Value could not be converted into an array of integers");
+  }
+
+
+
+
+  /**
+   * Convenience method to return the value of the named field as an array of 
+   * integers.
+   * 
+   * @param name name of the field value to return.
+   * 
+   * @return the value of the field
+   * 
+   * @throws DataFrameException if the field does not exist or if its value 
+   *         could not be converted to an array of integers.
+   */
+  public int[] getAsIntArray(final String name) throws DataFrameException {
+    return asIntArray(getField(name));
+  }
+
+
+
+
+  /**
+   * Convenience method to return the value of the indexed field as an array 
+   * of integers.
+   * 
+   * @param indx Index of the field value to return.
+   * 
+   * @return the value of the field
+   * 
+   * @throws DataFrameException if the field does not exist or if its value 
+   *         could not be converted to an array of integers.
+   */
+  public int[] getAsIntArray(final int indx) throws DataFrameException {
+    return asIntArray(getField(indx));
+  }
+
+
+
+
+  /**
+   * Convert the value of the given field into an array of longs.
+   * 
+   * <p>Packed arrays of longs are decoded directly without boxing; packed 
+   * arrays of ints and shorts are widened and the elements of other arrays 
+   * are converted one at a time.
+   * 
+   * @param field the field holding the array to convert
+   * 
+   * @return the array of longs
+   * 
+   * @throws DataFrameException if the field was null or its value could not be 
+   *         converted into an array of longs
+   */
+  private long[] asLongArray(final DataField field) throws DataFrameException {
+    final Object val = arrayValue(field);
+    if (val instanceof long[]) {
+      return (long[])val;
+    } else if (val instanceof int[]) {
+      final int[] ints = (int[])val;
+      final long[] retval = new long[ints.length];
+      for (int x = 0; x < ints.length; x++) {
+        retval[x] = ints[x];
+      }
+      return retval;
+    } else if (val instanceof short[]) {
+      final short[] shorts = (short[])val;
+      final long[] retval = new long[shorts.length];
+      for (int x = 0; x < shorts.length; x++) {
+        retval[x] = shorts[x];
+      }
+      return retval;
+    } else if (val instanceof DataFrame) {
+      final DataFrame array = (DataFrame)val;
+      final long[] retval = new long[array.fields.size()];
+      for (int x = 0; x < retval.length; x++) {
+        retval[x] = asLong(array.fields.get(x));
+      }
+      return retval;
+    }
+    throw new DataFrameException("Value could not be converted into an array of longs");
+  }
+
+
+
+
+  /**
+   * Convenience method to return the value of the named field as an array of 
+   * longs.
+   * 
+   * @param name name of the field value to return.
+   * 
+   * @return the value of the field
+   * 
+   * @throws DataFrameException if the field does not exist or if its value 
+   *         could not be converted to an array of longs.
+   */
+  public long[] getAsLongArray(final String name) throws DataFrameException {
+    return asLongArray(getField(name));
+  }
+
+
+
+
+  /**
+   * Convenience method to return the value of the indexed field as an array 
+   * of longs.
+   * 
+   * @param indx Index of the field value to return.
+   * 
+   * @return the value of the field
+   * 
+   * @throws DataFrameException if the field does not exist or if its value 
+   *         could not be converted to an array of longs.
+   */
+  public long[] getAsLongArray(final int indx) throws DataFrameException {
+    return asLongArray(getField(indx));
+  }
+
+
+
+
+  /**
+   * Convert the value of the given field into an array of floats.
+   * 
+   * <p>Packed arrays of floats are decoded directly without boxing; the 
+   * elements of other arrays are converted one at a time.
+   * 
+   * @param field the field holding the array to convert
+   * 
+   * @return the array of floats
+   * 
+   * @throws DataFrameException if the field was null or its value could not be 
+   *         converted into an array of floats
+   */
+  private float[] asFloatArray(final DataField field) throws DataFrameException {
+    final Object val = arrayValue(field);
+    if (val instanceof float[]) {
+      return (float[])val;
+    } else if (val instanceof DataFrame) {
+      final DataFrame array = (DataFrame)val;
+      final float[] retval = new float[array.fields.size()];
+      for (int x = 0; x < retval.length; x++) {
+        retval[x] = asFloat(array.fields.get(x).getObjectValue());
+      }
+      return retval;
+    }
+    throw new DataFrameException("Value could not be converted into an array of floats");
+  }
+
+
+
+
+  /**
+   * Convenience method to return the value of the named field as an array of 
+   * floats.
+   * 
+   * @param name name of the field value to return.
+   * 
+   * @return the value of the field
+   * 
+   * @throws DataFrameException if the field does not exist or if its value 
+   *         could not be converted to an array of floats.
+   */
+  public float[] getAsFloatArray(final String name) throws DataFrameException {
+    return asFloatArray(getField(name));
+  }
+
+
+
+
+  /**
+   * Convenience method to return the value of the indexed field as an array 
+   * of floats.
+   * 
+   * @param indx Index of the field value to return.
+   * 
+   * @return the value of the field
+   * 
+   * @throws DataFrameException if the field does not exist or if its value 
+   *         could not be converted to an array of floats.
+   */
+  public float[] getAsFloatArray(final int indx) throws DataFrameException {
+    return asFloatArray(getField(indx));
+  }
+
+
+
+
+  /**
+   * Convert the value of the given field into an array of doubles.
+   * 
+   * <p>Packed arrays of doubles are decoded directly without boxing; packed 
+   * arrays of integral values are widened and the elements of other arrays 
+   * are converted one at a time.
+   * 
+   * @param field the field holding the array to convert
+   * 
+   * @return the array of doubles
+   * 
+   * @throws DataFrameException if the field was null or its value could not be 
+   *         converted into an array of doubles
+   */
+  private double[] asDoubleArray(final DataField field) throws DataFrameException {
+    final Object val = arrayValue(field);
+    if (val instanceof double[]) {
+      return (double[])val;
+    } else if (val instanceof long[]) {
+      final long[] longs = (long[])val;
+      final double[] retval = new double[longs.length];
+      for (int x = 0; x < longs.length; x++) {
+        retval[x] = longs[x];
+      }
+      return retval;
+    } else if (val instanceof int[]) {
+      final int[] ints = (int[])val;
+      final double[] retval = new double[ints.length];
+      for (int x = 0; x < ints.length; x++) {
+        retval[x] = ints[x];
+      }
+      return retval;
+    } else if (val instanceof short[]) {
+      final short[] shorts = (short[])val;
+      final double[] retval = new double[shorts.length];
+      for (int x = 0; x < shorts.length; x++) {
+        retval[x] = shorts[x];
+      }
+      return retval;
+    } else if (val instanceof DataFrame) {
+      final DataFrame array = (DataFrame)val;
+      final double[] retval = new double[array.fields.size()];
+      for (int x = 0; x < retval.length; x++) {
+        retval[x] = asDouble(array.fields.get(x));
+      }
+      return retval;
+    }
+    throw new DataFrameException("Value could not be converted into an array of doubles");
+  }
+
+
+
+
+  /**
+   * Convenience method to return the value of the named field as an array of 
+   * doubles.
+   * 
+   * @param name name of the field value to return.
+   * 
+   * @return the value of the field
+   * 
+   * @throws DataFrameException if the field does not exist or if its value 
+   *         could not be converted to an array of doubles.
+   */
+  public double[] getAsDoubleArray(final String name) throws DataFrameException {
+    return asDoubleArray(getField(name));
+  }
+
+
+
+
+  /**
+   * Convenience method to return the value of the indexed field as an array 
+   * of doubles.
+   * 
+   * @param indx Index of the field value to return.
+   * 
+   * @return the value of the field
+   * 
+   * @throws DataFrameException if the field does not exist or if its value 
+   *         could not be converted to an array of doubles.
+   */
+  public double[] getAsDoubleArray(final int indx) throws DataFrameException {
+    return asDoubleArray(getField(indx));
+  }
+
+
+
+
+  /**
+   * Convert the value of the given field into an array of booleans.
+   * 
+   * <p>Packed arrays of booleans are decoded directly without boxing; the 
+   * elements of other arrays are converted one at a time.
+   * 
+   * @param field the field holding the array to convert
+   * 
+   * @return the array of booleans
+   * 
+   * @throws DataFrameException if the field was null or its value could not be 
+   *         converted into an array of booleans
+   */
+  private boolean[] asBooleanArray(final DataField field) throws DataFrameException {
+    final Object val = arrayValue(field);
+    if (val instanceof boolean[]) {
+      return (boolean[])val;
+    } else if (val instanceof DataFrame) {
+      final DataFrame array = (DataFrame)val;
+      final boolean[] retval = new boolean[array.fields.size()];
+      for (int x = 0; x < retval.length; x++) {
+        retval[x] = asBoolean(array.fields.get(x));
+      }
+      return retval;
+    }
+    throw new DataFrameException("Value could not be converted into an array of booleans");
+  }
+
+
+
+
+  /**
+   * Convenience method to return the value of the named field as an array of 
+   * booleans.
+   * 
+   * @param name name of the field value to return.
+   * 
+   * @return the value of the field
+   * 
+   * @throws DataFrameException if the field does not exist or if its value 
+   *         could not be converted to an array of booleans.
+   */
+  public boolean[] getAsBooleanArray(final String name) throws DataFrameException {
+    return asBooleanArray(getField(name));
+  }
+
+
+
+
+  /**
+   * Convenience method to return the value of the indexed field as an array 
+   * of booleans.
+   * 
+   * @param indx Index of the field value to return.
+   * 
+   * @return the value of the field
+   * 
+   * @throws DataFrameException if the field does not exist or if its value 
+   *         could not be converted to an array of booleans.
+   */
+  public boolean[] getAsBooleanArray(final int indx) throws DataFrameException {
+    return asBooleanArray(getField(indx));
+  }
+
+
+
+
+  /**
+   * Convert the value of the given field into an array of Strings.
+   * 
+   * <p>Null elements remain null; all others are converted to their text.
+   * 
+   * @param field the field holding the array to convert
+   * 
+   * @return the array of Strings
+   * 
+   * @throws DataFrameException if the field was null or does not hold an array
+   */
+  private String[] asStringArray(final DataField field) throws DataFrameException {
+    final Object val = arrayValue(field);
+    if (val instanceof String[]) {
+      return (String[])val;
+    } else if (val instanceof DataFrame) {
+      final DataFrame array = (DataFrame)val;
+      final String[] retval = new String[array.fields.size()];
+      for (int x = 0; x < retval.length; x++) {
+        final Object element = array.fields.get(x).getObjectValue();
+        retval[x] = (element != null) ? element.toString() : null;
+      }
+      return retval;
+    }
+    final String[] retval = new String[Array.getLength(val)];
+    for (int x = 0; x < retval.length; x++) {
+      retval[x] = String.valueOf(Array.get(val, x));
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * Convenience method to return the value of the named field as an array of 
+   * Strings.
+   * 
+   * @param name name of the field value to return.
+   * 
+   * @return the value of the field
+   * 
+   * @throws DataFrameException if the field does not exist or does not hold 
+   *         an array.
+   */
+  public String[] getAsStringArray(final String name) throws DataFrameException {
+    return asStringArray(getField(name));
+  }
+
+
+
+
+  /**
+   * Convenience method to return the value of the indexed field as an array 
+   * of Strings.
+   * 
+   * @param indx Index of the field value to return.
+   * 
+   * @return the value of the field
+   * 
+   * @throws DataFrameException if the field does not exist or does not hold 
+   *         an array.
+   */
+  public String[] getAsStringArray(final int indx) throws DataFrameException {
+    return asStringArray(getField(indx));
+  }
+
+
+
+
+  /**
+   * Return the object value of the named field.
+   *
+   * @param name The name of the field containing the object to retrieve.
+   *
+   * @return The object value of the first occurrence of the named field or null 
+   *         if the field with the given name was not found.
+   */
+  public Object getObject(final String name) {
+    final int indx = indexOf(name);
+    return (indx > -1) ? getObject(indx) : null;
   }
 
 
@@ -791,16 +1760,27 @@ public class DataFrame implements Cloneable {
 
 
   /**
-   * Create a deep-copy of this frame.
+   * Create a copy-on-write clone of this frame.
+   * 
+   * <p>No values are copied. The clone holds copies of the fields of this 
+   * frame which share their encoded values, and neither field changes a 
+   * shared value in place; the first change to a shared value gives that 
+   * field a value of its own. The cost of a clone is therefore proportional 
+   * to the number of fields rather than the size of their values. Nested 
+   * frames are cloned the same way.
+   * 
+   * <p>Changes to either frame, or to the fields of either frame, are never 
+   * seen in the other. The fields of this frame remain as they were.
    * 
    * @return a clone of this DataFrame
    */
   public Object clone() {
     final DataFrame retval = new DataFrame();
+    retval.fields.ensureCapacity(fields.size());
 
-    // Clone all the fields
+    // Copy all the fields, sharing their values
     for (int i = 0; i < fields.size(); i++) {
-      retval.fields.add(i, (DataField)fields.get(i).clone());
+      retval.fields.add((DataField)fields.get(i).clone());
     }
     retval.modified = false;
 
@@ -817,6 +1797,7 @@ public class DataFrame implements Cloneable {
    * @param value The value to place in the named field
    */
   public DataFrame(final String name, final Object value) {
+    this();
     add(name, value);
     modified = false;
   }
@@ -827,119 +1808,313 @@ public class DataFrame implements Cloneable {
   /**
    * Add a new field with the given value without a name.
    * 
-   * <p><strong>NOTICE:</strong> Because values are added as byte arrays and
-   * not references, only complete frames can be added. This is because child 
-   * frames are stored as their wire format at the time of their being added. 
-   * Any fields added to the child after being added to the parent <strong>will 
-   * not have their values represented in the child frame</strong>. This is 
-   * partially by design as it is then possible to use one frame in the 
-   * creation of all children. Also, storing the values in wire format reduces 
-   * the number of times field values are marshaled, thereby improving overall
-   * performance.  
+   * <p><strong>NOTICE:</strong> Child frames are held by reference and are 
+   * only encoded into their wire format when the wire format of this frame is
+   * requested. Any fields added to the child after being added to the parent 
+   * <strong>will be represented in the child frame</strong>. To add a 
+   * snapshot of a frame which will continue to be changed, add a clone of it.
    *
    * @param value The value to place in the un-named field
    *
    * @return the index of the field just added.
+   * 
+   * @throws IllegalArgumentException If the value is this frame or a frame it 
+   *         is nested within.
    */
   public int add(final Object value) {
-    modified = true;
     if (value instanceof DataField) {
-      fields.add((DataField)value);
+      return append((DataField)value);
+    } else {
+      return append(new DataField(value));
+    }
+  }
+
+
+
+
+  /**
+   * Add a frame field with the given name and value.
+   * 
+   * <p>The resulting frame field will be added to the frame with its type 
+   * being determined by the DataField class.
+   *
+   * @param name The name of the field to populate.
+   * @param value The value to place in the named field
+   *
+   * @return the index of the placed value.
+   * 
+   * @throws IllegalArgumentException If the name is longer than 255 characters, 
+   *         the value is an unsupported type or the value is this frame or a 
+   *         frame it is nested within.
+   */
+  public int add(final String name, final Object value) {
+    return append(new DataField(name, value));
+  }
+
+
+
+
+  /**
+   * Add a frame field to the existing array of fields.
+   * 
+   * <p>Null fields will not be added to the list and will retun a negative 
+   * index.
+   * 
+   * @param field The field to place in the frames array of fields
+   * 
+   * @return the index of the placed value or -1 if the given frame is null.
+   */
+  public int add(final DataField field) {
+    if (field != null) {
+      return append(field);
+    } else {
+      return -1;
+    }
+  }
+
+
+
+
+  /**
+   * Place the object in the frame under the given name, overwriting any
+   * existing object with the same name.
+   * 
+   * <p>Note: this is different from <tt>add(String,Object)</tt> in that 
+   * this method will not duplicate names.
+   *
+   * @param name The name of the field in which the value is to be placed. 
+   * @param obj The value to place.
+   * 
+   * @return The index of the field the value was placed.
+   */
+  public int put(final String name, final Object obj) {
+    if ((obj != null) || (name != null)) {
+      if (name != null) {
+        final int i = indexOf(name);
+        if (i > -1) {
+          if (obj != null) {
+            modifiable(i).assign(obj);
+          } else {
+            // Null object implies remove the named field
+            fields.remove(i);
+          }
+
+          changed();
+
+          return i;
+        }
+
+        return add(name, obj);
+      } else {
+        return add(obj);
+      }
+    }
+
+    return -1;
+  }
+
+
+
+
+  /**
+   * Place the integer in the frame under the given name, overwriting any 
+   * existing value with the same name.
+   * 
+   * <p>The value is typed exactly as {@link #put(String, Object)} would type 
+   * an {@code Integer}, but without boxing. If the existing field already 
+   * holds a value of that type, its value is overwritten in place.
+   *
+   * @param name The name of the field in which the value is to be placed. 
+   * @param value The value to place.
+   * 
+   * @return The index of the field the value was placed.
+   */
+  public int put(final String name, final int value) {
+    if (value >= 0 && value <= 0xFFFF) {
+      return put(name, DataField.U16, 2, value);
+    } else {
+      return put(name, DataField.S32, 4, value);
+    }
+  }
+
+
+
+
+  /**
+   * Place the long in the frame under the given name, overwriting any 
+   * existing value with the same name.
+   * 
+   * <p>The value is typed exactly as {@link #put(String, Object)} would type 
+   * a {@code Long}, but without boxing. If the existing field already holds a
+   * value of that type, its value is overwritten in place.
+   *
+   * @param name The name of the field in which the value is to be placed. 
+   * @param value The value to place.
+   * 
+   * @return The index of the field the value was placed.
+   */
+  public int put(final String name, final long value) {
+    if (value >= 0 && value <= 0xFFFFFFFFL) {
+      return put(name, DataField.U32, 4, value);
     } else {
-      fields.add(new DataField(value));
+      return put(name, DataField.S64, 8, value);
     }
-    return fields.size() - 1;
   }
 
 
 
 
   /**
-   * Add a frame field with the given name and value.
+   * Place the short in the frame under the given name, overwriting any 
+   * existing value with the same name.
+   * 
+   * <p>The value is typed exactly as {@link #put(String, Object)} would type 
+   * a {@code Short}, but without boxing. If the existing field already holds 
+   * a value of that type, its value is overwritten in place.
+   *
+   * @param name The name of the field in which the value is to be placed. 
+   * @param value The value to place.
+   * 
+   * @return The index of the field the value was placed.
+   */
+  public int put(final String name, final short value) {
+    if (value >= -128 && value <= 127) {
+      return put(name, DataField.S8, 1, value);
+    } else if (value >= 0 && value <= 255) {
+      return put(name, DataField.U8, 1, value);
+    } else {
+      return put(name, DataField.S16, 2, value);
+    }
+  }
+
+
+
+
+  /**
+   * Place the double in the frame under the given name, overwriting any 
+   * existing value with the same name.
+   * 
+   * <p>If the existing field already holds a double, its value is 
+   * overwritten in place.
+   *
+   * @param name The name of the field in which the value is to be placed. 
+   * @param value The value to place.
+   * 
+   * @return The index of the field the value was placed.
+   */
+  public int put(final String name, final double value) {
+    return put(name, DataField.DOUBLE, 8, Double.doubleToLongBits(value));
+  }
+
+
+
+
+  /**
+   * Place the float in the frame under the given name, overwriting any 
+   * existing value with the same name.
+   * 
+   * <p>If the existing field already holds a float, its value is overwritten
+   * in place.
+   *
+   * @param name The name of the field in which the value is to be placed. 
+   * @param value The value to place.
+   * 
+   * @return The index of the field the value was placed.
+   */
+  public int put(final String name, final float value) {
+    return put(name, DataField.FLOAT, 4, Float.floatToIntBits(value));
+  }
+
+
+
+
+  /**
+   * Place the boolean in the frame under the given name, overwriting any 
+   * existing value with the same name.
+   * 
+   * <p>If the existing field already holds a boolean, its value is 
+   * overwritten in place.
+   *
+   * @param name The name of the field in which the value is to be placed. 
+   * @param value The value to place.
+   * 
+   * @return The index of the field the value was placed.
+   */
+  public int put(final String name, final boolean value) {
+    return put(name, DataField.BOOLEANTYPE, 1, value ? 1 : 0);
+  }
+
+
+
+
+  /**
+   * Return the field at the given position so its value can be changed.
    * 
-   * <p>The resulting frame field will be added to the frame with its type 
-   * being determined by the DataField class.
-   *
-   * @param name The name of the field to populate.
-   * @param value The value to place in the named field
-   *
-   * @return the index of the placed value.
+   * <p>Fields shared with a frozen frame are replaced with a private copy 
+   * first so the frozen frame is not affected.
    * 
-   * @throws IllegalArgumentException If the name is longer than 255 characters 
-   *         or the value is an unsupported type.
+   * @param index the position of the field
+   * 
+   * @return the field at that position which may be modified.
    */
-  public int add(final String name, final Object value) {
-    modified = true;
-    fields.add(new DataField(name, value));
-    return fields.size() - 1;
+  private DataField modifiable(final int index) {
+    final DataField field = fields.get(index);
+    if (field.isFrozen()) {
+      final DataField retval = (DataField)field.clone();
+      // the name does not change so the name indexes remain valid
+      ((FieldList)fields).replace(index, retval);
+      return retval;
+    }
+    return field;
   }
 
 
 
 
   /**
-   * Add a frame field to the existing array of fields.
+   * Place the given field in this frame in place of the first field with the
+   * same name, or append it if there is no such field.
    * 
-   * <p>Null fields will not be added to the list and will retun a negative 
-   * index.
-   * 
-   * @param field The field to place in the frames array of fields
+   * @param field the field to place
    * 
-   * @return the index of the placed value or -1 if the given frame is null.
+   * @return The index of the field the value was placed.
    */
-  public int add(final DataField field) {
-    if (field != null) {
-      modified = true;
-      fields.add(field);
-      return fields.size() - 1;
-    } else {
-      return -1;
+  int place(final DataField field) {
+    final int i = indexOf(field.name);
+    if (i > -1) {
+      // the name does not change so the name indexes remain valid
+      ((FieldList)fields).replace(i, field);
+      changed();
+      return i;
     }
+    return append(field);
   }
 
 
 
 
   /**
-   * Place the object in the frame under the given name, overwriting any
-   * existing object with the same name.
+   * Place a fixed-size value in the frame under the given name, overwriting 
+   * the value of any existing field with the same name in place if possible.
    * 
-   * <p>Note: this is different from <tt>add(String,Object)</tt> in that 
-   * this method will not duplicate names.
-   *
    * @param name The name of the field in which the value is to be placed. 
-   * @param obj The value to place.
+   * @param type the type code of the value
+   * @param size the number of octets the type occupies
+   * @param bits the value, the low-order octets of which are its encoding
    * 
    * @return The index of the field the value was placed.
    */
-  public int put(final String name, final Object obj) {
-    if ((obj != null) || (name != null)) {
-      if (name != null) {
-        for (int i = 0; i < fields.size(); i++) {
-          final DataField field = fields.get(i);
-
-          if ((field.name != null) && field.name.equals(name)) {
-            if (obj != null) {
-              field.type = DataField.getType(obj);
-              field.value = DataField.encode(obj);
-            } else {
-              // Null object implies remove the named field
-              fields.remove(i);
-            }
-
-            modified = true;
-
-            return i;
-          }
-        }
-
-        return add(name, obj);
-      } else {
-        return add(obj);
+  private int put(final String name, final short type, final int size, final long bits) {
+    final int i = indexOf(name);
+    if (i > -1) {
+      final DataField field = modifiable(i);
+      if (!field.overwrite(type, size, bits)) {
+        field.assign(type, DataField.render(size, bits));
       }
+      changed();
+      return i;
     }
-
-    return -1;
+    return append(new DataField(name, type, DataField.render(size, bits)));
   }
 
 
@@ -954,16 +2129,10 @@ public class DataFrame implements Cloneable {
    */
   public DataField remove(final String name) {
     DataField retval = null;
-    if (name != null) {
-      for (int i = 0; i < fields.size(); i++) {
-        final DataField field = fields.get(i);
-
-        if ((field.name != null) && field.name.equals(name)) {
-          retval = fields.remove(i);
-
-          modified = true;
-        }
-      }
+    final int i = indexOf(name);
+    if (i > -1) {
+      retval = fields.remove(i);
+      changed();
     }
     return retval;
   }
@@ -1035,7 +2204,7 @@ public class DataFrame implements Cloneable {
    * @param name name of the DataField to remove.
    */
   public void removeAll(final String name) {
-    modified = true;
+    changed();
 
     if (name != null) {
       for (int i = 0; i < fields.size(); i++) {
@@ -1059,22 +2228,84 @@ public class DataFrame implements Cloneable {
    * identifier for the frame. Note: the digest can be used to help determine
    * equivalence between frames.
    * 
-   * <p><strong>NOTE:</strong> This is a very expensive function and should not 
-   * be used without due consideration.
+   * <p>The wire format is streamed into the digest without being collected 
+   * into an array and the result is cached until this frame or any of the 
+   * frames nested within it are modified. The first call after a modification
+   * is still relatively expensive; consider {@link #getFingerprint()} if a 
+   * cryptographic digest is not required.
    *
    * @return the SHA-1 digest for this frame.
    */
   public byte[] getDigest() {
-    MessageDigest digest = null;
+    final CachedHash cached = digest;
+    final long changed = lastModified();
+    if (cached != null && changed <= cached.stamp) {
+      return cached.digest.clone();
+    }
+
+    MessageDigest md = null;
     try {
-      digest = MessageDigest.getInstance("SHA-1");
+      md = MessageDigest.getInstance("SHA-1");
     } catch (final NoSuchAlgorithmException e) {
       e.printStackTrace();
       return null;
     }
-    digest.reset();
-    digest.update(getBytes());
-    return digest.digest();
+    final long mark = now();
+    hash(new HashSink(md, null));
+    final byte[] retval = md.digest();
+    digest = new CachedHash(mark, retval, 0);
+    return retval.clone();
+  }
+
+
+
+
+  /**
+   * Generate a fast, 64-bit fingerprint for this frame based solely on the 
+   * wire format of this and all frames contained therein.
+   * 
+   * <p>This is the xxHash64 (seed 0) of the same bytes returned by 
+   * {@link #getBytes()}, calculated without creating that array. It is many 
+   * times faster than {@link #getDigest()} and suitable for de-duplication and
+   * cache keys, but it is not a cryptographic hash and should not be relied 
+   * upon when frames may be crafted to collide.
+   * 
+   * <p>The result is cached until this frame or any of the frames nested 
+   * within it are modified.
+   *
+   * @return the 64-bit fingerprint of this frame.
+   */
+  public long getFingerprint() {
+    final CachedHash cached = fingerprint;
+    final long changed = lastModified();
+    if (cached != null && changed <= cached.stamp) {
+      return cached.value;
+    }
+
+    final XxHash64 checksum = new XxHash64();
+    final long mark = now();
+    hash(new HashSink(null, checksum));
+    final long retval = checksum.getValue();
+    fingerprint = new CachedHash(mark, null, retval);
+    return retval;
+  }
+
+
+
+
+  /**
+   * Stream the wire format of this frame into the given sink.
+   * 
+   * @param sink the sink to receive the wire format
+   */
+  private void hash(final HashSink sink) {
+    try {
+      writeTo(sink);
+      sink.flush();
+    } catch (final IOException e) {
+      // the sink does not perform any I/O
+      throw new IllegalStateException(e);
+    }
   }
 
 
@@ -1131,30 +2362,174 @@ public class DataFrame implements Cloneable {
    * <p>This is a way to serialize the frame for any medium that supports binary
    * data. The resultant byte array may then be used to the 
    * <code>DataFrame(byte[])</code> constructor to reconstitute the frame.
+   * 
+   * <p>Frames which are encoded more than once keep their wire format from 
+   * then on. The fields holding nested frames refer to their part of it, so 
+   * only one copy is retained however deep the frames are nested. As long as 
+   * this frame is not changed, this only copies the retained wire format. 
+   * Changing a field only causes that field (and the frames containing it) 
+   * to be encoded again; the retained encodings of the nested frames which 
+   * did not change are copied as they are.
    *
    * @return this frame represented in its wire format.
    */
   public byte[] getBytes() {
-    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-    final DataOutputStream dos = new DataOutputStream(baos);
-    byte[] bytes = null;
-
-    try {
+    if (CHECK) {
       for (int i = 0; i < fields.size(); i++) {
-        bytes = fields.get(i).getBytes();
-        if (CHECK) {
-          String error = check(bytes);
-          if (error != null)
-            throw new DecodeException(error, bytes);
-        }
-
-        dos.write(bytes);
+        final byte[] bytes = fields.get(i).getBytes();
+        final String error = check(bytes);
+        if (error != null)
+          throw new DecodeException(error, bytes);
       }
-    } catch (final IOException e) {
-      throw new DecodeException("IO Error", e);
     }
 
-    return baos.toByteArray();
+    final long changed = lastModified();
+    final CachedImage cached = image;
+    if (cached != null && cached.bytes != null && changed <= cached.stamp) {
+      return cached.bytes.clone();
+    }
+
+    // frames encoded for the first time may never be encoded again
+    final boolean retain = cached != null;
+    final long mark = now();
+    final byte[] retval = new byte[getEncodedSize()];
+    writeFields(ByteBuffer.wrap(retval), retain);
+    image = new CachedImage(mark, retain ? retval : null);
+    return retain ? retval.clone() : retval;
+  }
+
+
+
+
+  /**
+   * Access the retained wire format of this frame if it is still current.
+   * 
+   * <p>The returned array must not be modified.
+   * 
+   * @return the current wire format of this frame or null if it was not 
+   *         retained or this frame changed since.
+   */
+  byte[] getRetainedBytes() {
+    final CachedImage cached = image;
+    if (cached != null && cached.bytes != null && lastModified() <= cached.stamp) {
+      return cached.bytes;
+    }
+    return null;
+  }
+
+
+
+
+  /**
+   * Calculate the number of octets this frame occupies in its wire format 
+   * without actually encoding it.
+   * 
+   * <p>This is useful in sizing buffers before calling 
+   * {@link #writeTo(ByteBuffer)}.
+   *
+   * @return the exact size of this frame in its wire format.
+   */
+  public int getEncodedSize() {
+    final byte[] retained = getRetainedBytes();
+    if (retained != null) {
+      return retained.length;
+    }
+
+    int retval = 0;
+    for (int i = 0; i < fields.size(); i++) {
+      retval += fields.get(i).getEncodedSize();
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * Write this frame in its wire format into the given buffer.
+   * 
+   * <p>Each field is written directly into the buffer starting at its current
+   * position; no intermediate arrays are created. The position of the buffer
+   * is advanced by the number of octets written. If there is not enough room 
+   * in the buffer for the entire frame, nothing is written.
+   *
+   * @param buffer the buffer into which the frame is to be written
+   * 
+   * @return the number of octets written.
+   * 
+   * @throws BufferOverflowException if the remaining space in the buffer is 
+   *         less than the encoded size of this frame.
+   *
+   * @see #getEncodedSize()
+   */
+  public int writeTo(final ByteBuffer buffer) {
+    final int size = getEncodedSize();
+    if (buffer.remaining() < size) {
+      throw new BufferOverflowException();
+    }
+    writeFields(buffer, false);
+    return size;
+  }
+
+
+
+
+  /**
+   * Write each of the fields in this frame into the given buffer without 
+   * first checking for sufficient space.
+   * 
+   * <p>The retained wire format of this frame is copied into the buffer if 
+   * it is current.
+   * 
+   * @param buffer the buffer into which the fields are to be written
+   * @param retain true to have the fields holding frames retain the wire 
+   *        format of those frames
+   * 
+   * @return the number of octets written.
+   */
+  int writeFields(final ByteBuffer buffer, final boolean retain) {
+    final byte[] retained = getRetainedBytes();
+    if (retained != null) {
+      buffer.put(retained);
+      return retained.length;
+    }
+
+    int retval = 0;
+    for (int i = 0; i < fields.size(); i++) {
+      retval += fields.get(i).writeTo(buffer, retain);
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * Write this frame in its wire format to the given stream.
+   * 
+   * <p>Each field is written directly to the stream; only frames nested 
+   * directly in this frame are encoded into an intermediate array, when 
+   * their current wire format is not available. Many small writes are performed so the stream 
+   * should be buffered.
+   *
+   * @param out the stream to which the frame is to be written
+   * 
+   * @return the number of octets written.
+   * 
+   * @throws IOException if there were problems writing to the stream.
+   */
+  public int writeTo(final OutputStream out) throws IOException {
+    final byte[] retained = getRetainedBytes();
+    if (retained != null) {
+      out.write(retained);
+      return retained.length;
+    }
+
+    int retval = 0;
+    for (int i = 0; i < fields.size(); i++) {
+      retval += fields.get(i).writeTo(out);
+    }
+    return retval;
   }
 
 
@@ -1239,28 +2614,201 @@ public class DataFrame implements Cloneable {
 
 
   /**
-   * Set the ArrayList as the backing collection for this frame.
+   * Replace the fields of this frame with the fields in the given list.
+   * 
+   * <p>The fields are copied into the backing collection of this frame; 
+   * changes made to the given list afterwards are not reflected in this frame.
+   * 
+   * <p><strong>WARNING!</strong> all the elements MUST be DataFields or this 
+   * frame will throw class cast exceptions whenever it tries to access the 
+   * fields as no casting checks are performed on the backing list. Your code
+   * probably should not use this method.
+   * 
+   * @param list An ordered list of DataFields.
+   */
+  public void setFields(final ArrayList<DataField> list) {
+    fields.clear();
+    fields.addAll(list);
+    changed();
+  }
+
+
+
+
+  /**
+   * @return Returns true if this frame has been modified, false otherwise.
+   */
+  public boolean isModified() {
+    return modified;
+  }
+
+
+
+
+  /**
+   * Mark the top-level of this frame as changed.
+   */
+  protected void changed() {
+    modified = true;
+    touch(tick());
+  }
+
+
+
+
+  /**
+   * Record a change to this frame or anything within it and pass it on to 
+   * the fields holding this frame.
+   * 
+   * <p>Stamps only ever increase, so a change reaching this frame more than 
+   * once goes no further the second time.
+   * 
+   * @param now the change stamp of the change
+   */
+  void touch(final long now) {
+    if (now > stamp) {
+      stamp = now;
+      final DataField field = holder;
+      if (field != null) {
+        field.touch(now);
+      }
+      final DataField[] others = otherHolders;
+      if (others != null) {
+        for (final DataField other : others) {
+          other.touch(now);
+        }
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Called by the list of fields when it has been changed, so changes made 
+   * directly to the list reach the fields holding this frame.
+   */
+  void fieldsChanged() {
+    if (holder != null || otherHolders != null) {
+      lastModified();
+    }
+  }
+
+
+
+
+  /**
+   * Record that this frame is held by the given field.
+   * 
+   * <p>A frame held by a field more than once is held once for each time.
+   * 
+   * @param field the field now holding this frame
+   */
+  synchronized void hold(final DataField field) {
+    // changes made before are visible to the new holder from now on
+    lastModified();
+    if (holder == null) {
+      holder = field;
+    } else {
+      otherHolders = DataField.with(otherHolders, field, NO_FIELDS);
+    }
+  }
+
+
+
+
+  /**
+   * Determine if this frame is the given frame or is nested within it.
+   * 
+   * <p>This follows the fields holding this frame up to the frames holding 
+   * them, and so on.
+   * 
+   * @param frame the frame to look for
+   * 
+   * @return true if this frame is the given frame or nested within it.
+   */
+  boolean isWithin(final DataFrame frame) {
+    if (this == frame) {
+      return true;
+    }
+    final DataField field = holder;
+    if (field != null && field.isWithin(frame)) {
+      return true;
+    }
+    final DataField[] others = otherHolders;
+    if (others != null) {
+      for (final DataField other : others) {
+        if (other.isWithin(frame)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+
+
+
+  /**
+   * Record that this frame is no longer held by the given field.
+   * 
+   * @param field the field which no longer holds this frame
+   */
+  synchronized void release(final DataField field) {
+    if (holder == field) {
+      holder = null;
+    } else {
+      otherHolders = DataField.without(otherHolders, field);
+    }
+  }
+
+
+
+
+  /**
+   * Determine when this frame, any of its fields or any of the frames nested
+   * within it was last changed.
    * 
-   * <p><strong>WARNING!</strong> all the elements MUST be DataFields or this 
-   * frame will throw class cast exceptions whenever it tries to access the 
-   * fields as no casting checks are performed on the backing list. Your code
-   * probably should not use this method.
+   * <p>The returned value is a stamp from a clock shared by all frames and 
+   * fields. Anything derived from this frame (e.g. its wire format) and 
+   * recorded with the value of {@link #now()} before it was derived is still 
+   * current as long as this method returns a value which is not greater than 
+   * the recorded value.
    * 
-   * @param list An ordered list of DataFields.
+   * <p>Changes to fields and nested frames are passed up to the frames 
+   * holding them as they happen, so this takes constant time regardless of 
+   * the size of this frame. Changes made directly to the list returned by 
+   * {@link #getFields()} are detected here as well.
+   * 
+   * @return the change stamp of the most recent modification to this frame.
    */
-  public void setFields(final ArrayList<DataField> list) {
-    fields = list;
-    modified = true;
+  long lastModified() {
+    final int count = ((FieldList)fields).getModCount();
+    if (count != listModCount) {
+      listModCount = count;
+      touch(tick());
+    }
+    return stamp;
   }
 
 
 
 
   /**
-   * @return Returns true if this frame has been modified, false otherwise.
+   * @return a new change stamp, greater than all previously issued stamps.
    */
-  public boolean isModified() {
-    return modified;
+  static long tick() {
+    return CLOCK.incrementAndGet();
+  }
+
+
+
+
+  /**
+   * @return the most recently issued change stamp.
+   */
+  static long now() {
+    return CLOCK.get();
   }
 
 
@@ -1278,6 +2826,45 @@ public class DataFrame implements Cloneable {
 
 
 
+  /**
+   * Move the values of all the fields of this frame into one contiguous 
+   * array.
+   * 
+   * <p>Each field normally holds its value in an array of its own, which for 
+   * wide frames of small values means a great number of small objects. A 
+   * compacted frame holds the values of its fields in a single slab which is 
+   * released along with the frame when it is discarded or cleared, and 
+   * encoding it is little more than copying its values out of the slab. 
+   * Nested frames are compacted into slabs of their own.
+   * 
+   * <p>Fixed-size values changed after the frame was compacted are changed 
+   * in place while all other changes give the field an array of its own 
+   * again, so frames which keep changing can be compacted again from time to 
+   * time to reclaim the space in the slab. Fields shared with clones of this 
+   * frame are copied first and the clones are not affected.
+   * 
+   * @return this frame
+   */
+  public DataFrame compact() {
+    int size = 0;
+    for (int i = 0; i < fields.size(); i++) {
+      final DataField field = fields.get(i);
+      if (field.type != DataField.FRAMETYPE) {
+        size += field.valueLength();
+      }
+    }
+
+    final byte[] slab = new byte[size];
+    int position = 0;
+    for (int i = 0; i < fields.size(); i++) {
+      position += modifiable(i).moveTo(slab, position);
+    }
+    return this;
+  }
+
+
+
+
   /**
    * @return The number of types supported/
    */
@@ -1313,6 +2900,127 @@ public class DataFrame implements Cloneable {
 
 
 
+  /**
+   * Change this frame as described by the given delta.
+   * 
+   * <p>Applying a delta computed from a frame equal to this one results in 
+   * this frame being equal to the frame the delta was computed against.
+   * 
+   * @param delta the changes to make
+   * 
+   * @throws DataFrameException if the delta changes a nested frame which this
+   *         frame does not hold.
+   * 
+   * @see FrameDelta#diff(DataFrame, DataFrame)
+   */
+  public void apply(final FrameDelta delta) throws DataFrameException {
+    delta.applyTo(this);
+  }
+
+
+
+
+  /**
+   * Create an immutable snapshot of this frame.
+   * 
+   * <p>No values are copied; the snapshot holds frozen copies of the fields 
+   * of this frame which share their values. This frame and its fields remain 
+   * mutable, and a shared value is never changed in place, so changes to this 
+   * frame are never seen in the snapshot.
+   * 
+   * <p>Nested frames are frozen as well. The snapshot may be shared freely 
+   * between threads without any synchronization.
+   * 
+   * @return an immutable frame with the same fields as this frame.
+   * 
+   * @see ImmutableDataFrame
+   */
+  public ImmutableDataFrame freeze() {
+    return new ImmutableDataFrame(this);
+  }
+
+
+
+
+  /**
+   * Determine if the given object is a frame containing equal fields in the 
+   * same order as this frame.
+   * 
+   * <p>Fields are compared by name, type and encoded value so two frames are 
+   * equal exactly when their wire formats are the same. Frames with a 
+   * different number of fields or different (current) fingerprints are told 
+   * apart without comparing their fields.
+   * 
+   * @see DataField#equals(Object)
+   * @see java.lang.Object#equals(java.lang.Object)
+   */
+  @Override
+  public boolean equals(final Object obj) {
+    if (obj == this) {
+      return true;
+    }
+    if (!(obj instanceof DataFrame)) {
+      return false;
+    }
+
+    final DataFrame other = (DataFrame)obj;
+    final ArrayList<DataField> list = fields;
+    final ArrayList<DataField> otherList = other.fields;
+    if (list.size() != otherList.size()) {
+      return false;
+    }
+
+    final CachedHash hash = fingerprint;
+    final CachedHash otherHash = other.fingerprint;
+    if (hash != null && otherHash != null && hash.value != otherHash.value && lastModified() <= hash.stamp && other.lastModified() <= otherHash.stamp) {
+      return false;
+    }
+
+    for (int i = 0; i < list.size(); i++) {
+      if (!list.get(i).equals(otherList.get(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+
+
+  /**
+   * Generate a hash code from the wire format of this frame.
+   * 
+   * <p>This is derived from {@link #getFingerprint()} and is therefore only 
+   * calculated again after this frame (or a frame nested within it) has been 
+   * modified. Note that modifying a frame changes its hash code; frames used 
+   * as keys in hashed collections should not be modified.
+   * 
+   * @see java.lang.Object#hashCode()
+   */
+  @Override
+  public int hashCode() {
+    final long retval = getFingerprint();
+    return (int)(retval ^ (retval >>> 32));
+  }
+
+
+
+
+  /**
+   * Generate the hash code of a frame from its wire format.
+   * 
+   * @param data the wire format of a frame
+   * 
+   * @return the same value as the {@link #hashCode()} of the frame.
+   */
+  static int hash(final byte[] data) {
+    final long retval = XxHash64.hash(data, 0, data.length, 0);
+    return (int)(retval ^ (retval >>> 32));
+  }
+
+
+
+
   /**
    * This is a very simple string representation of this data frame.
    * 
@@ -1574,24 +3282,20 @@ public class DataFrame implements Cloneable {
       if (key instanceof String) {
         String name = (String)key;
 
-        for (int i = 0; i < fields.size(); i++) {
-          final DataField field = fields.get(i);
-
-          if ((field.name != null) && field.name.equals(name)) {
-
-            if (value != null) {
-              retval = field.getObjectValue();
-              field.type = DataField.getType(value);
-              field.value = DataField.encode(value);
-            } else {
-              // Null object implies remove the named field
-              retval = fields.remove(i);
-            }
-            modified = true;
+        final int i = indexOf(name);
+        if (i > -1) {
+          if (value != null) {
+            final DataField field = modifiable(i);
+            retval = field.getObjectValue();
+            field.assign(value);
+          } else {
+            // Null object implies remove the named field
+            retval = fields.remove(i);
+          }
+          changed();
 
-            return retval;
-          } // found
-        } // for
+          return retval;
+        }
 
         // not found, add the value 
         return add(name, value);
@@ -1650,7 +3354,7 @@ public class DataFrame implements Cloneable {
    */
   public Collection values() {
     List<Object> retval = new ArrayList<Object>();
-    for (int i = 0; i < fields.size(); retval.add(fields.get(i++).getObjectValue()));
+    for (int i = 0; i < fields.size(); retval.add(getObject(i++)));
     return retval;
   }
 
@@ -1697,15 +3401,11 @@ public class DataFrame implements Cloneable {
    * reference to the frame to which it was added (this) allowing the chaining 
    * of set methods for more readable code and simpler coding.
    * 
-   * <p><strong>NOTICE:</strong> Because values are added as byte arrays and
-   * not references, only complete frames can be added. This is because child 
-   * frames are stored as their wire format at the time of their being added. 
-   * Any fields added to the child after being added to the parent <strong>will 
-   * not have their values represented in the child frame</strong>. This is 
-   * partially by design as it is then possible to use one frame in the 
-   * creation of all children. Also, storing the values in wire format reduces 
-   * the number of times field values are marshaled, thereby improving overall
-   * performance.  
+   * <p><strong>NOTICE:</strong> Child frames are held by reference and are 
+   * only encoded into their wire format when the wire format of this frame is
+   * requested. Any fields added to the child after being added to the parent 
+   * <strong>will be represented in the child frame</strong>. To add a 
+   * snapshot of a frame which will continue to be changed, add a clone of it.
    *
    * @param value The value to place in the un-named field
    *
@@ -1717,4 +3417,239 @@ public class DataFrame implements Cloneable {
     return this;
   }
 
+
+
+
+  /**
+   * Set (add) a field with the given name and integer value and return a 
+   * reference to this frame, without boxing the value.
+   *
+   * @param name The name of the field to populate.
+   * @param value The value to place in the named field
+   *
+   * @return the the data frame (this) to which the data was added.
+   * 
+   * @see #put(String, int)
+   */
+  public DataFrame set(final String name, final int value) {
+    if (value >= 0 && value <= 0xFFFF) {
+      append(new DataField(name, DataField.U16, DataField.render(2, value)));
+    } else {
+      append(new DataField(name, DataField.S32, DataField.render(4, value)));
+    }
+    return this;
+  }
+
+
+
+
+  /**
+   * Set (add) a field with the given name and long value and return a 
+   * reference to this frame, without boxing the value.
+   *
+   * @param name The name of the field to populate.
+   * @param value The value to place in the named field
+   *
+   * @return the the data frame (this) to which the data was added.
+   * 
+   * @see #put(String, long)
+   */
+  public DataFrame set(final String name, final long value) {
+    if (value >= 0 && value <= 0xFFFFFFFFL) {
+      append(new DataField(name, DataField.U32, DataField.render(4, value)));
+    } else {
+      append(new DataField(name, DataField.S64, DataField.render(8, value)));
+    }
+    return this;
+  }
+
+
+
+
+  /**
+   * Set (add) a field with the given name and short value and return a 
+   * reference to this frame, without boxing the value.
+   *
+   * @param name The name of the field to populate.
+   * @param value The value to place in the named field
+   *
+   * @return the the data frame (this) to which the data was added.
+   * 
+   * @see #put(String, short)
+   */
+  public DataFrame set(final String name, final short value) {
+    if (value >= -128 && value <= 127) {
+      append(new DataField(name, DataField.S8, DataField.render(1, value)));
+    } else if (value >= 0 && value <= 255) {
+      append(new DataField(name, DataField.U8, DataField.render(1, value)));
+    } else {
+      append(new DataField(name, DataField.S16, DataField.render(2, value)));
+    }
+    return this;
+  }
+
+
+
+
+  /**
+   * Set (add) a field with the given name and double value and return a 
+   * reference to this frame, without boxing the value.
+   *
+   * @param name The name of the field to populate.
+   * @param value The value to place in the named field
+   *
+   * @return the the data frame (this) to which the data was added.
+   */
+  public DataFrame set(final String name, final double value) {
+    append(new DataField(name, DataField.DOUBLE, DataField.render(8, Double.doubleToLongBits(value))));
+    return this;
+  }
+
+
+
+
+  /**
+   * Set (add) a field with the given name and float value and return a 
+   * reference to this frame, without boxing the value.
+   *
+   * @param name The name of the field to populate.
+   * @param value The value to place in the named field
+   *
+   * @return the the data frame (this) to which the data was added.
+   */
+  public DataFrame set(final String name, final float value) {
+    append(new DataField(name, DataField.FLOAT, DataField.render(4, Float.floatToIntBits(value))));
+    return this;
+  }
+
+
+
+
+  /**
+   * Set (add) a field with the given name and boolean value and return a 
+   * reference to this frame, without boxing the value.
+   *
+   * @param name The name of the field to populate.
+   * @param value The value to place in the named field
+   *
+   * @return the the data frame (this) to which the data was added.
+   */
+  public DataFrame set(final String name, final boolean value) {
+    append(new DataField(name, DataField.BOOLEANTYPE, DataField.render(1, value ? 1 : 0)));
+    return this;
+  }
+
+
+
+
+
+  /**
+   * A hash of the wire format of a frame and the change stamp at which it was 
+   * calculated.
+   */
+  private static final class CachedHash {
+    final long stamp;
+    final byte[] digest;
+    final long value;
+
+
+
+
+    CachedHash(final long stamp, final byte[] digest, final long value) {
+      this.stamp = stamp;
+      this.digest = digest;
+      this.value = value;
+    }
+  }
+
+
+
+
+  /**
+   * The wire format of a frame and the change stamp at which it was encoded.
+   */
+  private static final class CachedImage {
+    final long stamp;
+    final byte[] bytes;
+
+
+
+
+    CachedImage(final long stamp, final byte[] bytes) {
+      this.stamp = stamp;
+      this.bytes = bytes;
+    }
+  }
+
+
+
+
+  /**
+   * Collects the many small writes of the wire format into blocks before 
+   * passing them to a digest or checksum.
+   */
+  private static final class HashSink extends OutputStream {
+    private final MessageDigest digest;
+    private final Checksum checksum;
+    private final byte[] buffer = new byte[4096];
+    private int count = 0;
+
+
+
+
+    HashSink(final MessageDigest digest, final Checksum checksum) {
+      this.digest = digest;
+      this.checksum = checksum;
+    }
+
+
+
+
+    @Override
+    public void write(final int b) {
+      if (count == buffer.length) {
+        flush();
+      }
+      buffer[count++] = (byte)b;
+    }
+
+
+
+
+    @Override
+    public void write(final byte[] data, final int offset, final int length) {
+      if (length > buffer.length - count) {
+        flush();
+        if (length >= buffer.length) {
+          update(data, offset, length);
+          return;
+        }
+      }
+      System.arraycopy(data, offset, buffer, count, length);
+      count += length;
+    }
+
+
+
+
+    @Override
+    public void flush() {
+      if (count > 0) {
+        update(buffer, 0, count);
+        count = 0;
+      }
+    }
+
+
+
+
+    private void update(final byte[] data, final int offset, final int length) {
+      if (digest != null) {
+        digest.update(data, offset, length);
+      } else {
+        checksum.update(data, offset, length);
+      }
+    }
+  }
+
 }
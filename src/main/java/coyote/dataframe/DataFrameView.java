@@ -0,0 +1,726 @@
+/*
+ * Copyright (c) 2018 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dataframe;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+
+/**
+ * A read-only view of a frame in its wire format.
+ *
+ * <p>Constructing a {@link DataFrame} from bytes decodes every field and
+ * copies every value into its own array. This class does not; it indexes the
+ * backing buffer (heap or direct) the first time a field is accessed,
+ * recording where each field's name and value reside, and then decodes only
+ * the values which are actually requested, directly from the buffer.
+ *
+ * <p>This makes it well suited for inspecting a few fields of a frame (e.g.
+ * routing keys) before forwarding the bytes untouched. The view never
+ * modifies the buffer nor its position or limit, but it does expect the
+ * region it covers to remain unchanged for as long as the view is used.
+ *
+ * <p>Use {@link #toFrame()} to obtain a complete, mutable frame.
+ */
+public class DataFrameView {
+
+  /** Initial capacity of the field table. */
+  private static final int INITIAL_CAPACITY = 16;
+
+  /** The buffer holding the encoded frame. */
+  private final ByteBuffer buffer;
+
+  /** Position in the buffer where the frame starts. */
+  private final int offset;
+
+  /** Number of octets which make up the frame. */
+  private final int length;
+
+  /** Number of fields found; negative until the field table is built. */
+  private int count = -1;
+
+  /** Buffer positions of each field's name. */
+  private int[] nameOffsets;
+
+  /** Length of each field's name in octets. */
+  private int[] nameLengths;
+
+  /** The type code of each field. */
+  private short[] types;
+
+  /** Buffer positions of each field's value. */
+  private int[] valueOffsets;
+
+  /** Length of each field's value in octets. */
+  private int[] valueLengths;
+
+  /** Field names decoded so far. */
+  private String[] names;
+
+
+
+
+  /**
+   * Create a view of the frame encoded in the remaining bytes of the given
+   * buffer (i.e. from its position to its limit).
+   *
+   * @param buffer the buffer containing the encoded frame
+   */
+  public DataFrameView(final ByteBuffer buffer) {
+    this(buffer, buffer.position(), buffer.remaining());
+  }
+
+
+
+
+  /**
+   * Create a view of the frame encoded in the given region of a buffer.
+   *
+   * @param buffer the buffer containing the encoded frame
+   * @param offset position in the buffer where the frame begins
+   * @param length the number of octets in the encoded frame
+   *
+   * @throws IndexOutOfBoundsException if the region lies outside of the
+   *         buffer's limit
+   */
+  public DataFrameView(final ByteBuffer buffer, final int offset, final int length) {
+    if (offset < 0 || length < 0 || offset + length > buffer.limit()) {
+      throw new IndexOutOfBoundsException("Region [" + offset + "," + (offset + length) + ") is outside of buffer limit " + buffer.limit());
+    }
+    // a duplicate shares the content but not the byte order, position or limit
+    this.buffer = buffer.duplicate();
+    this.offset = offset;
+    this.length = length;
+  }
+
+
+
+
+  /**
+   * Create a view of the frame encoded in the given byte array.
+   *
+   * @param data the encoded frame
+   */
+  public DataFrameView(final byte[] data) {
+    this(ByteBuffer.wrap(data), 0, data.length);
+  }
+
+
+
+
+  /**
+   * Create a view of the frame encoded in a portion of the given byte array.
+   *
+   * @param data the array containing the encoded frame
+   * @param offset index of the first octet of the frame
+   * @param length the number of octets in the encoded frame
+   */
+  public DataFrameView(final byte[] data, final int offset, final int length) {
+    this(ByteBuffer.wrap(data), offset, length);
+  }
+
+
+
+
+  /**
+   * Walk the encoded fields recording where each one resides.
+   *
+   * <p>This is only performed once, the first time the fields are accessed.
+   *
+   * @throws DecodeException if the data does not represent a valid frame
+   */
+  private void index() {
+    if (count >= 0) {
+      return;
+    }
+
+    int capacity = INITIAL_CAPACITY;
+    nameOffsets = new int[capacity];
+    nameLengths = new int[capacity];
+    types = new short[capacity];
+    valueOffsets = new int[capacity];
+    valueLengths = new int[capacity];
+
+    final int end = offset + length;
+    int pos = offset;
+    int indx = 0;
+    while (pos < end) {
+      final int start = pos;
+      if (indx == capacity) {
+        capacity = capacity << 1;
+        nameOffsets = grow(nameOffsets, capacity);
+        nameLengths = grow(nameLengths, capacity);
+        valueOffsets = grow(valueOffsets, capacity);
+        valueLengths = grow(valueLengths, capacity);
+        final short[] newTypes = new short[capacity];
+        System.arraycopy(types, 0, newTypes, 0, indx);
+        types = newTypes;
+      }
+
+      // The first octet is the length of the name
+      final int nameLength = buffer.get(pos++) & 0xFF;
+      if (pos + nameLength >= end) {
+        throw new DecodeException("value underflow: name length specified as " + nameLength + " but only " + (end - pos) + " octets are available", null, start - offset, -1, indx, null);
+      }
+      nameOffsets[indx] = pos;
+      nameLengths[indx] = nameLength;
+      pos += nameLength;
+
+      // the next octet is the data type
+      final short type = buffer.get(pos++);
+      final FieldType datatype;
+      try {
+        datatype = DataField.getDataType(type);
+      } catch (final IllegalArgumentException e) {
+        throw new DecodeException("non supported type: '" + type + "'", null, start - offset, -1, indx, null);
+      }
+      types[indx] = type;
+
+      // variable length types are preceded by the length of the value
+      int size = datatype.getSize();
+      if (size < 0) {
+        if (pos + 4 > end) {
+          throw new DecodeException("value underflow: length of value truncated", null, start - offset, -1, indx, null);
+        }
+        size = buffer.getInt(pos);
+        if (size < 0) {
+          throw new DecodeException("read length bad value: length = " + size + " type = " + type, null, start - offset, -1, indx, null);
+        }
+        pos += 4;
+      }
+      if (pos + size > end) {
+        throw new DecodeException("value underflow: length specified as " + size + " but only " + (end - pos) + " octets are available", null, start - offset, -1, indx, null);
+      }
+      valueOffsets[indx] = pos;
+      valueLengths[indx] = size;
+      pos += size;
+      indx++;
+    }
+
+    names = new String[indx];
+    count = indx;
+  }
+
+
+
+
+  private static int[] grow(final int[] array, final int capacity) {
+    final int[] retval = new int[capacity];
+    System.arraycopy(array, 0, retval, 0, array.length);
+    return retval;
+  }
+
+
+
+
+  /**
+   * @return The number of fields in the frame.
+   */
+  public int getFieldCount() {
+    index();
+    return count;
+  }
+
+
+
+
+  /**
+   * @return the number of fields in this frame
+   */
+  public int size() {
+    return getFieldCount();
+  }
+
+
+
+
+  /**
+   * @return true if there are no fields in this frame, false if this frame
+   *         contains data
+   */
+  public boolean isEmpty() {
+    return length == 0;
+  }
+
+
+
+
+  /**
+   * @return the number of octets in the encoded frame
+   */
+  public int getLength() {
+    return length;
+  }
+
+
+
+
+  /**
+   * Return the name of the indexed field.
+   *
+   * @param indx The zero-based index of the field.
+   *
+   * @return the name of the field, or null if the field has no name or the
+   *         index is out of range.
+   */
+  public String getName(final int indx) {
+    index();
+    if (indx < 0 || indx >= count || nameLengths[indx] == 0) {
+      return null;
+    }
+
+    String retval = names[indx];
+    if (retval == null) {
+      final byte[] data = copy(nameOffsets[indx], nameLengths[indx]);
+      try {
+        retval = new String(data, DataField.strEnc);
+      } catch (final UnsupportedEncodingException e) {
+        retval = new String(data);
+      }
+      names[indx] = retval;
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * Return the type code of the indexed field.
+   *
+   * @param indx The zero-based index of the field.
+   *
+   * @return the type code of the field, or -1 if the index is out of range.
+   */
+  public short getType(final int indx) {
+    index();
+    if (indx < 0 || indx >= count) {
+      return -1;
+    }
+    return types[indx];
+  }
+
+
+
+
+  /**
+   * Return the index of the first field with the given name.
+   *
+   * <p>Names are compared directly against the encoded octets so no strings
+   * are created for the fields being searched. A null name matches the first
+   * field without a name.
+   *
+   * @param name The name of the field for which to search, may be null.
+   *
+   * @return the index of the first field with the given name or -1 if no
+   *         field with that name exists.
+   */
+  public int indexOf(final String name) {
+    index();
+    for (int i = 0; i < count; i++) {
+      if ((name == null) ? nameLengths[i] == 0 : matches(i, name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+
+
+
+  /**
+   * Compare the name of the indexed field with the given name.
+   *
+   * <p>Names are encoded in UTF-8 which means the encoded name can never be
+   * shorter than the number of characters in the name and can only be the
+   * same length if all the characters are ASCII. ASCII names are compared
+   * octet-by-character, anything else is decoded and compared as a string.
+   */
+  private boolean matches(final int indx, final String name) {
+    final int len = nameLengths[indx];
+    final int chars = name.length();
+    if (len == 0 || len < chars) {
+      return false;
+    } else if (len == chars) {
+      final int pos = nameOffsets[indx];
+      for (int i = 0; i < len; i++) {
+        if (buffer.get(pos + i) != name.charAt(i)) {
+          return false;
+        }
+      }
+      return true;
+    } else {
+      return name.equals(getName(indx));
+    }
+  }
+
+
+
+
+  /**
+   * Convenience method that allows for the checking of the existence of a
+   * named field.
+   *
+   * @param name The name of the field for which to search.
+   *
+   * @return True if the field with the exact given name exists, false
+   *         otherwise.
+   */
+  public boolean contains(final String name) {
+    return indexOf(name) > -1;
+  }
+
+
+
+
+  /**
+   * Return a copy of the indexed field.
+   *
+   * @param indx The zero-based index of the field to return.
+   *
+   * @return a new field containing a copy of the indexed field, or null if
+   *         the index is out of range.
+   */
+  public DataField getField(final int indx) {
+    index();
+    if (indx < 0 || indx >= count) {
+      return null;
+    }
+    final DataField retval = new DataField(types[indx], copy(valueOffsets[indx], valueLengths[indx]));
+    retval.name = getName(indx);
+    return retval;
+  }
+
+
+
+
+  /**
+   * Return a copy of the first occurrence of a named field.
+   *
+   * @param name The name of the field to return.
+   *
+   * @return a copy of the named field or null if a field with the given name
+   *         was not found.
+   */
+  public DataField getField(final String name) {
+    return getField(indexOf(name));
+  }
+
+
+
+
+  /**
+   * Return the object value of the indexed field.
+   *
+   * <p>Only the value of the requested field is decoded.
+   *
+   * @param indx The zero-based index of the field.
+   *
+   * @return The object value of the field at the given index, or null if
+   *         there was no value at that index
+   */
+  public Object getObject(final int indx) {
+    index();
+    if (indx < 0 || indx >= count || valueLengths[indx] == 0) {
+      return null;
+    }
+    return DataField.getDataType(types[indx]).decode(copy(valueOffsets[indx], valueLengths[indx]));
+  }
+
+
+
+
+  /**
+   * Return the object value of the named field.
+   *
+   * @param name The name of the field containing the object to retrieve.
+   *
+   * @return The object value of the first occurrence of the named field or
+   *         null if the field with the given name was not found.
+   */
+  public Object getObject(final String name) {
+    return getObject(indexOf(name));
+  }
+
+
+
+
+  /**
+   * Return the value of the named field as a string.
+   *
+   * @param name The name of the field to retrieve.
+   *
+   * @return The string value of the first field with the given name or null
+   *         if the field could not be found.
+   */
+  public String getAsString(final String name) {
+    final Object val = getObject(name);
+    if (val != null) {
+      return val.toString();
+    }
+    return null;
+  }
+
+
+
+
+  /**
+   * Return a view of the nested frame held in the named field.
+   *
+   * <p>The returned view shares the buffer of this view; nothing is copied.
+   *
+   * @param name The name of the field containing the nested frame.
+   *
+   * @return a view of the nested frame or null if the named field was not
+   *         found.
+   *
+   * @throws DataFrameException if the named field is not a frame.
+   */
+  public DataFrameView getAsView(final String name) throws DataFrameException {
+    return getAsView(indexOf(name));
+  }
+
+
+
+
+  /**
+   * Return a view of the nested frame held in the indexed field.
+   *
+   * <p>The returned view shares the buffer of this view; nothing is copied.
+   *
+   * @param indx The zero-based index of the field containing the nested frame.
+   *
+   * @return a view of the nested frame or null if the index is out of range.
+   *
+   * @throws DataFrameException if the indexed field is not a frame.
+   */
+  public DataFrameView getAsView(final int indx) throws DataFrameException {
+    index();
+    if (indx < 0 || indx >= count) {
+      return null;
+    }
+    if (types[indx] != DataField.FRAMETYPE) {
+      throw new DataFrameException("Field is not a frame");
+    }
+    return new DataFrameView(buffer, valueOffsets[indx], valueLengths[indx]);
+  }
+
+
+
+
+  /**
+   * Convenience method to return the value of the named field as an integer
+   * value, decoded directly from the buffer.
+   *
+   * @param name name of the field value to return.
+   *
+   * @return the value of the field
+   *
+   * @throws DataFrameException if the field does not exist or if the value of
+   *         the found field could not be converted to an integer value.
+   */
+  public int getAsInt(final String name) throws DataFrameException {
+    final long retval = getAsLong(name);
+    if (retval < Integer.MIN_VALUE || retval > Integer.MAX_VALUE) {
+      throw new DataFrameException("Value could not be converted into an integer");
+    }
+    return (int)retval;
+  }
+
+
+
+
+  /**
+   * Convenience method to return the value of the named field as a long
+   * value, decoded directly from the buffer.
+   *
+   * @param name name of the field value to return.
+   *
+   * @return the value of the field
+   *
+   * @throws DataFrameException if the field does not exist or if the value of
+   *         the found field could not be converted to a long value.
+   */
+  public long getAsLong(final String name) throws DataFrameException {
+    final int indx = required(name);
+    final int pos = valueOffsets[indx];
+    switch (types[indx]) {
+      case DataField.S8:
+        return buffer.get(pos);
+      case DataField.U8:
+        return buffer.get(pos) & 0xFFL;
+      case DataField.S16:
+        return buffer.getShort(pos);
+      case DataField.U16:
+        return buffer.getShort(pos) & 0xFFFFL;
+      case DataField.S32:
+        return buffer.getInt(pos);
+      case DataField.U32:
+        return buffer.getInt(pos) & 0xFFFFFFFFL;
+      case DataField.S64:
+        return buffer.getLong(pos);
+      case DataField.U64:
+        final long value = buffer.getLong(pos);
+        if (value >= 0) {
+          return value;
+        }
+        break;
+      case DataField.STRING:
+        try {
+          return Long.parseLong(getAsString(name));
+        } catch (final NumberFormatException e) {
+          break;
+        }
+      default:
+        break;
+    }
+    throw new DataFrameException("Value could not be converted into a long");
+  }
+
+
+
+
+  /**
+   * Convenience method to return the value of the named field as a double
+   * value, decoded directly from the buffer.
+   *
+   * @param name name of the field value to return.
+   *
+   * @return the value of the field
+   *
+   * @throws DataFrameException if the field does not exist or if the value of
+   *         the found field could not be converted to a double value.
+   */
+  public double getAsDouble(final String name) throws DataFrameException {
+    final int indx = required(name);
+    final int pos = valueOffsets[indx];
+    switch (types[indx]) {
+      case DataField.FLOAT:
+        return buffer.getFloat(pos);
+      case DataField.DOUBLE:
+        return buffer.getDouble(pos);
+      case DataField.U64:
+        final long value = buffer.getLong(pos);
+        return (value >= 0) ? value : (value >>> 1) * 2.0D + (value & 1);
+      case DataField.STRING:
+        try {
+          return Double.parseDouble(getAsString(name));
+        } catch (final NumberFormatException e) {
+          throw new DataFrameException("Value could not be converted into a double");
+        }
+      default:
+        return getAsLong(name);
+    }
+  }
+
+
+
+
+  /**
+   * Convenience method to return the value of the named field as a boolean
+   * value, decoded directly from the buffer.
+   *
+   * <p>Numeric values greater than zero are considered true.
+   *
+   * @param name name of the field value to return.
+   *
+   * @return the value of the field
+   *
+   * @throws DataFrameException if the field does not exist or if the value of
+   *         the found field could not be converted to a boolean value.
+   */
+  public boolean getAsBoolean(final String name) throws DataFrameException {
+    final int indx = required(name);
+    switch (types[indx]) {
+      case DataField.BOOLEANTYPE:
+        return buffer.get(valueOffsets[indx]) > 0;
+      case DataField.STRING:
+        final String str = getAsString(name).toLowerCase();
+        if ("true".equals(str) || "1".equals(str) || "yes".equals(str)) {
+          return true;
+        } else if ("false".equals(str) || "0".equals(str) || "no".equals(str)) {
+          return false;
+        }
+        throw new DataFrameException("Value could not be converted into a boolean");
+      default:
+        return getAsDouble(name) > 0;
+    }
+  }
+
+
+
+
+  /**
+   * Locate the named field with a value or throw an exception.
+   */
+  private int required(final String name) throws DataFrameException {
+    final int retval = indexOf(name);
+    if (retval < 0 || valueLengths[retval] == 0) {
+      throw new DataFrameException("Value could not be found");
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * Decode the entire view into a new, mutable frame.
+   *
+   * @return a frame containing copies of all the fields in this view.
+   */
+  public DataFrame toFrame() {
+    if (buffer.hasArray()) {
+      // the values are copied out of the array as the frame is decoded
+      return new DataFrame(buffer.array(), buffer.arrayOffset() + offset, length);
+    }
+    return new DataFrame(getBytes());
+  }
+
+
+
+
+  /**
+   * Get a copy of the frame in its wire format.
+   *
+   * @return the octets this view covers
+   */
+  public byte[] getBytes() {
+    return copy(offset, length);
+  }
+
+
+
+
+  /**
+   * Copy a region of the backing buffer into a new array.
+   */
+  private byte[] copy(final int position, final int size) {
+    final byte[] retval = new byte[size];
+    final ByteBuffer source = buffer.duplicate();
+    source.position(position);
+    source.get(retval, 0, size);
+    return retval;
+  }
+
+
+
+
+  /**
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    try {
+      return toFrame().toString();
+    } catch (final DecodeException e) {
+      return "DataFrameView: " + e.getMessage();
+    }
+  }
+
+}
@@ -7,11 +7,13 @@
  */
 package coyote.dataframe;
 
-import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.Arrays;
+import java.time.Year;
+import java.time.ZoneOffset;
+import java.util.Calendar;
 import java.util.Date;
-import java.util.List;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
 
 import coyote.commons.ByteUtil;
 
@@ -22,21 +24,22 @@ public class DateType implements FieldType {
 
   private final static String _name = "DAT";
 
-  private static final SimpleDateFormat FORMATTER = new SimpleDateFormat( "yyyy-MM-dd'T'HH:mm:ss.SSSX" );
-  List<String> formatStrings = Arrays.asList(
-      "yyyy-MM-dd'T'HH:mm:ss.SSSX",
-      "yyyy-MM-dd'T'HH:mm:ss.SSS",
-      "yyyy-MM-dd'T'HH:mm:ss",
-      "yyyy-MM-dd' 'HH:mm:ss.SSSX",
-      "yyyy-MM-dd' 'HH:mm:ss.SSS",
-      "yyyy-MM-dd' 'HH:mm:ss",
-      "yyyy-MM-dd HH:mm:ss.SSSX",
-      "yyyy-MM-dd HH:mm:ss.SSS",
-      "yyyy-MM-dd HH:mm:ss",
-      "yyyy-MM-dd",
-      "M/y", 
-      "M/d/y", 
-      "M-d-y");
+  /** 
+   * Formatter for the string value of dates, one per thread as formatters 
+   * are not thread-safe. Unlike java.time, it formats dates before the 
+   * Gregorian cutover in the Julian calendar with the zone offsets of 
+   * {@link TimeZone}, as dates have always been formatted.
+   */
+  private static final ThreadLocal<SimpleDateFormat> FORMATTER = ThreadLocal.withInitial( () -> new SimpleDateFormat( "yyyy-MM-dd'T'HH:mm:ss.SSSX" ) );
+
+  private static final TimeZone UTC = TimeZone.getTimeZone( "UTC" );
+
+  /** The year in which the Gregorian calendar replaced the Julian calendar. */
+  private static final int GREGORIAN_CUTOVER_YEAR = 1582;
+
+  /** The largest zone offset supported by {@link ZoneOffset}, in seconds. */
+  private static final int MAX_OFFSET = 18 * 60 * 60;
+
 
 
 
@@ -92,7 +95,7 @@ public class DateType implements FieldType {
     } else {
       Object obj = decode( val );
       if ( obj != null )
-        return FORMATTER.format( (Date)obj );
+        return FORMATTER.get().format( (Date)obj );
       else
         return "";
     }
@@ -101,14 +104,290 @@ public class DateType implements FieldType {
 
 
 
+  /**
+   * Parse the given text into a date.
+   * 
+   * <p>The following formats are recognized, where time values are in the 
+   * local time zone unless an ISO 8601 offset ({@code Z}, {@code +HH}, 
+   * {@code +HHmm} or {@code +HH:mm}) follows them:<ul>
+   * <li>{@code yyyy-M-d'T'H:m:s[.SSS][X]}</li>
+   * <li>{@code yyyy-M-d H:m:s[.SSS][X]}</li>
+   * <li>{@code yyyy-M-d}</li>
+   * <li>{@code M/y}, {@code M/d/y} and {@code M-d-y} where two digit years 
+   * are placed within 80 years before and 20 years after the current year</li>
+   * </ul>
+   * 
+   * <p>Months, days and times may have one or two digits. Rather than trying 
+   * each format in turn, the format is chosen by the position of the first 
+   * separator in the text and the digits are read directly. Anything 
+   * following a recognized date is ignored. Dates before 1582-10-15 are in 
+   * the Julian calendar, as they are formatted.
+   * 
+   * @see coyote.dataframe.FieldType#parse(java.lang.String)
+   */
   @Override
   public Object parse( String text ) {
-    for ( String formatString : formatStrings ) {
-      try {
-        return new SimpleDateFormat( formatString ).parse( text );
-      } catch ( ParseException e ) {}
+    if ( text == null ) {
+      return null;
+    }
+    final String str = text.trim();
+    if ( str.length() > 5 && str.charAt( 4 ) == '-' && digits( str, 0, 4 ) >= 0 ) {
+      return parseIso( str );
+    }
+    return parseNumeric( str );
+  }
+
+
+
+
+  /**
+   * Parse text starting with a date in the form of {@code yyyy-M-d}, 
+   * optionally followed by a time.
+   */
+  private static Date parseIso( final String text ) {
+    final int[] cursor = { 5 };
+    final int year = digits( text, 0, 4 );
+    final int month = number( text, cursor );
+    final int day = separator( text, cursor, '-' ) ? number( text, cursor ) : -1;
+    if ( !isValidDate( year, month, day ) ) {
+      return null;
+    }
+
+    final int length = text.length();
+    final int time = cursor[0];
+    if ( time + 1 >= length || ( text.charAt( time ) != 'T' && text.charAt( time ) != ' ' ) ) {
+      // just the date
+      return toDate( year, month, day, 0, 0, 0, 0, null );
+    }
+    cursor[0]++;
+    final int hour = number( text, cursor );
+    final int minute = separator( text, cursor, ':' ) ? number( text, cursor ) : -1;
+    final int second = separator( text, cursor, ':' ) ? number( text, cursor ) : -1;
+    if ( hour < 0 || minute < 0 || second < 0 ) {
+      // just the date
+      return toDate( year, month, day, 0, 0, 0, 0, null );
+    }
+    if ( hour > 23 || minute > 59 || second > 59 ) {
+      return null;
+    }
+
+    int pos = cursor[0];
+    int nanos = 0;
+    if ( pos < length && text.charAt( pos ) == '.' ) {
+      pos++;
+      int scale = 100000000;
+      final int start = pos;
+      while ( pos < length && isDigit( text.charAt( pos ) ) ) {
+        nanos += ( text.charAt( pos++ ) - '0' ) * scale;
+        scale /= 10;
+      }
+      if ( pos == start || pos - start > 9 ) {
+        return null;
+      }
+    }
+
+    ZoneOffset offset = null;
+    if ( pos < length ) {
+      final char sign = text.charAt( pos );
+      if ( sign == 'Z' ) {
+        offset = ZoneOffset.UTC;
+      } else if ( sign == '+' || sign == '-' ) {
+        final int hours = digits( text, pos + 1, 2 );
+        int minutes = 0;
+        if ( hours < 0 || hours > 18 ) {
+          return null;
+        }
+        int next = pos + 3;
+        if ( next < length && text.charAt( next ) == ':' ) {
+          next++;
+        }
+        if ( next + 1 < length && isDigit( text.charAt( next ) ) ) {
+          minutes = digits( text, next, 2 );
+          if ( minutes < 0 || minutes > 59 ) {
+            return null;
+          }
+        }
+        final int seconds = ( hours * 60 + minutes ) * 60;
+        if ( seconds > MAX_OFFSET ) {
+          return null;
+        }
+        offset = ZoneOffset.ofTotalSeconds( sign == '-' ? -seconds : seconds );
+      }
+    }
+    return toDate( year, month, day, hour, minute, second, nanos, offset );
+  }
+
+
+
+
+  /**
+   * Parse text in the form of {@code M/y}, {@code M/d/y} or {@code M-d-y}.
+   */
+  private static Date parseNumeric( final String text ) {
+    final int[] values = new int[3];
+    final int[] widths = new int[3];
+    int count = 0;
+    int pos = 0;
+    char separator = 0;
+    final int length = text.length();
+
+    while ( count < 3 ) {
+      final int start = pos;
+      int value = 0;
+      while ( pos < length && isDigit( text.charAt( pos ) ) && pos - start < 9 ) {
+        value = value * 10 + ( text.charAt( pos++ ) - '0' );
+      }
+      if ( pos == start ) {
+        return null;
+      }
+      values[count] = value;
+      widths[count++] = pos - start;
+
+      if ( pos < length && count < 3 && ( text.charAt( pos ) == '/' || text.charAt( pos ) == '-' ) && ( separator == 0 || separator == text.charAt( pos ) ) && pos + 1 < length && isDigit( text.charAt( pos + 1 ) ) ) {
+        separator = text.charAt( pos++ );
+      } else {
+        break;
+      }
+    }
+
+    final int month = values[0];
+    final int day;
+    final int year;
+    if ( count == 2 && separator == '/' ) {
+      day = 1;
+      year = adjustYear( values[1], widths[1] );
+    } else if ( count == 3 ) {
+      day = values[1];
+      year = adjustYear( values[2], widths[2] );
+    } else {
+      return null;
+    }
+
+    if ( !isValidDate( year, month, day ) ) {
+      return null;
+    }
+    return toDate( year, month, day, 0, 0, 0, 0, null );
+  }
+
+
+
+
+  /**
+   * Place two digit years within 80 years before and 20 years after the 
+   * current year as {@code SimpleDateFormat} does.
+   */
+  private static int adjustYear( final int year, final int width ) {
+    if ( width != 2 ) {
+      return year;
+    }
+    final int start = Year.now().getValue() - 80;
+    int retval = ( start / 100 ) * 100 + year;
+    if ( retval < start ) {
+      retval += 100;
+    }
+    return retval;
+  }
+
+
+
+
+  private static boolean isValidDate( final int year, final int month, final int day ) {
+    if ( year < 0 || month < 1 || month > 12 || day < 1 ) {
+      return false;
+    }
+    final int days;
+    if ( month == 2 ) {
+      final boolean leap = ( year <= GREGORIAN_CUTOVER_YEAR ) ? year % 4 == 0 : Year.isLeap( year );
+      days = leap ? 29 : 28;
+    } else if ( month == 4 || month == 6 || month == 9 || month == 11 ) {
+      days = 30;
+    } else {
+      days = 31;
+    }
+    return day <= days;
+  }
+
+
+
+
+  private static Date toDate( final int year, final int month, final int day, final int hour, final int minute, final int second, final int nanos, final ZoneOffset offset ) {
+    // the same calendar as the formatter, Julian before the Gregorian cutover
+    final GregorianCalendar calendar = new GregorianCalendar( ( offset != null ) ? UTC : TimeZone.getDefault() );
+    calendar.clear();
+    calendar.set( year, month - 1, day, hour, minute, second );
+    calendar.set( Calendar.MILLISECOND, nanos / 1000000 );
+    long millis = calendar.getTimeInMillis();
+    if ( offset != null ) {
+      millis -= offset.getTotalSeconds() * 1000L;
+    }
+    return new Date( millis );
+  }
+
+
+
+
+  private static boolean isDigit( final char c ) {
+    return c >= '0' && c <= '9';
+  }
+
+
+
+
+  /**
+   * Read a number of one or two decimal digits from the text at the cursor 
+   * and advance the cursor past it.
+   * 
+   * @return the value of the digits or -1 if there is no digit at the cursor.
+   */
+  private static int number( final String text, final int[] cursor ) {
+    int pos = cursor[0];
+    final int end = Math.min( pos + 2, text.length() );
+    int retval = -1;
+    while ( pos < end && isDigit( text.charAt( pos ) ) ) {
+      retval = ( ( retval < 0 ) ? 0 : retval * 10 ) + ( text.charAt( pos++ ) - '0' );
+    }
+    cursor[0] = pos;
+    return retval;
+  }
+
+
+
+
+  /**
+   * Advance the cursor past the given separator if it is at the cursor.
+   * 
+   * @return true if the separator was at the cursor.
+   */
+  private static boolean separator( final String text, final int[] cursor, final char separator ) {
+    if ( cursor[0] < text.length() && text.charAt( cursor[0] ) == separator ) {
+      cursor[0]++;
+      return true;
+    }
+    return false;
+  }
+
+
+
+
+  /**
+   * Read a fixed number of decimal digits from the text.
+   * 
+   * @return the value of the digits or -1 if there are not enough digits at 
+   *         the given position.
+   */
+  private static int digits( final String text, final int offset, final int count ) {
+    if ( offset + count > text.length() ) {
+      return -1;
+    }
+    int retval = 0;
+    for ( int i = offset; i < offset + count; i++ ) {
+      final char c = text.charAt( i );
+      if ( !isDigit( c ) ) {
+        return -1;
+      }
+      retval = retval * 10 + ( c - '0' );
     }
-    return null;
+    return retval;
   }
 
 }
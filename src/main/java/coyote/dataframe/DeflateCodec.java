@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2018 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dataframe;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+
+/**
+ * Compresses frames with the zlib format of {@link Deflater}.
+ *
+ * <p>The compression level only affects compression; data compressed at any
+ * level is decompressed by any instance.
+ */
+public class DeflateCodec implements BlockCodec {
+
+  /** The identifier of this codec on the wire. */
+  public static final byte ID = 1;
+
+  /** The compression level, as defined by {@link Deflater}. */
+  private final int level;
+
+
+
+
+  /**
+   * Create a codec using the default compression level.
+   */
+  public DeflateCodec() {
+    this(Deflater.DEFAULT_COMPRESSION);
+  }
+
+
+
+
+  /**
+   * Create a codec using the given compression level.
+   *
+   * @param level the compression level, 0-9 or
+   *        {@link Deflater#DEFAULT_COMPRESSION}
+   *
+   * @throws IllegalArgumentException if the level is not valid
+   */
+  public DeflateCodec(final int level) {
+    if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+      throw new IllegalArgumentException("Invalid compression level: " + level);
+    }
+    this.level = level;
+  }
+
+
+
+
+  /**
+   * @see coyote.dataframe.BlockCodec#getId()
+   */
+  @Override
+  public byte getId() {
+    return ID;
+  }
+
+
+
+
+  /**
+   * @see coyote.dataframe.BlockCodec#compress(byte[], int, int, byte[], int)
+   */
+  @Override
+  public int compress(final byte[] data, final int offset, final int length, final byte[] target, final int position) {
+    final Deflater deflater = new Deflater(level);
+    try {
+      deflater.setInput(data, offset, length);
+      deflater.finish();
+      int count = 0;
+      while (!deflater.finished()) {
+        if (position + count == target.length) {
+          return -1;
+        }
+        count += deflater.deflate(target, position + count, target.length - position - count);
+      }
+      return count;
+    } finally {
+      deflater.end();
+    }
+  }
+
+
+
+
+  /**
+   * @see coyote.dataframe.BlockCodec#decompress(byte[], int, int, byte[])
+   */
+  @Override
+  public void decompress(final byte[] data, final int offset, final int length, final byte[] target) {
+    final Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(data, offset, length);
+      int count = 0;
+      while (count < target.length) {
+        final int n = inflater.inflate(target, count, target.length - count);
+        if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+          throw new DecodeException("Compressed data ended after " + count + " of " + target.length + " octets");
+        }
+        count += n;
+      }
+      if (!inflater.finished() && inflater.inflate(new byte[1]) > 0) {
+        throw new DecodeException("Compressed data exceeds " + target.length + " octets");
+      }
+    } catch (final DataFormatException e) {
+      throw new DecodeException("Corrupt compressed data", e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+}
@@ -7,9 +7,8 @@
  */
 package coyote.dataframe;
 
-import java.text.NumberFormat;
-
 import coyote.commons.ByteUtil;
+import coyote.commons.NumberText;
 
 
 /** Type code representing a 64-bit floating point value in the range of +/-4.9406e-324 to +/-1.7977e+308. */
@@ -70,16 +69,8 @@ public class DoubleType implements FieldType {
   public String stringValue(byte[] val) {
     if (val == null) {
       return "";
-    } else {
-      Object obj = decode(val);
-      if (obj != null) {
-        NumberFormat nf = NumberFormat.getInstance();
-        nf.setMaximumFractionDigits(16);
-        nf.setGroupingUsed(false);
-        return nf.format((Double)obj);
-      } else
-        return "";
     }
+    return NumberText.toString(ByteUtil.retrieveDouble(val, 0));
   }
 
 
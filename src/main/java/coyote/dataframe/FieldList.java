@@ -0,0 +1,480 @@
+/*
+ * Copyright (c) 2018 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dataframe;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+
+/**
+ * The list backing the fields of a frame.
+ *
+ * <p>The list returned by {@link DataFrame#getFields()} may be changed
+ * directly by callers. This list exposes its modification count (which also
+ * counts element replacement) so the frame can detect such changes without
+ * wrapping every list operation. Replacements are counted separately so they
+ * do not disturb iterators, as with any other list, and changes made through
+ * a sub-list go through this list.
+ *
+ * <p>Fields placed in the list are attached to the frame and detached again
+ * when they are removed, so a field can notify the frames holding it when it
+ * changes. The frame is told of changes made to the list itself. Fields 
+ * holding the frame, or a frame it is nested within, are rejected before the 
+ * list is changed.
+ */
+class FieldList extends ArrayList<DataField> {
+
+  private static final long serialVersionUID = -6107440317466420376L;
+
+  /** The frame holding the fields of this list, null if they never change. */
+  private final transient DataFrame frame;
+
+  /** The number of times an element has been replaced. */
+  private transient int replaced = 0;
+
+
+
+
+  FieldList(final DataFrame frame) {
+    super();
+    this.frame = frame;
+  }
+
+
+
+
+  FieldList(final DataFrame frame, final int capacity) {
+    super(capacity);
+    this.frame = frame;
+  }
+
+
+
+
+  private void attach(final DataField field) {
+    if (frame != null && field != null) {
+      field.attach(frame);
+    }
+  }
+
+
+
+
+  private void detach(final DataField field) {
+    if (frame != null && field != null) {
+      field.detach(frame);
+    }
+  }
+
+
+
+
+  private void changed() {
+    if (frame != null) {
+      frame.fieldsChanged();
+    }
+  }
+
+
+
+
+  private void checkAll(final Collection<? extends DataField> c) {
+    if (frame != null) {
+      for (final DataField field : c) {
+        if (field != null) {
+          field.checkOwner(frame);
+        }
+      }
+    }
+  }
+
+
+
+
+  private void attachAll(final int fromIndex, final int toIndex) {
+    for (int i = fromIndex; i < toIndex; i++) {
+      attach(get(i));
+    }
+  }
+
+
+
+
+  private void detachAll(final int fromIndex, final int toIndex) {
+    for (int i = fromIndex; i < toIndex; i++) {
+      detach(get(i));
+    }
+  }
+
+
+
+
+  /**
+   * @see java.util.ArrayList#add(java.lang.Object)
+   */
+  @Override
+  public boolean add(final DataField element) {
+    attach(element);
+    super.add(element);
+    changed();
+    return true;
+  }
+
+
+
+
+  /**
+   * @see java.util.ArrayList#add(int, java.lang.Object)
+   */
+  @Override
+  public void add(final int index, final DataField element) {
+    attach(element);
+    super.add(index, element);
+    changed();
+  }
+
+
+
+
+  /**
+   * @see java.util.ArrayList#addAll(java.util.Collection)
+   */
+  @Override
+  public boolean addAll(final Collection<? extends DataField> c) {
+    checkAll(c);
+    final int start = size();
+    final boolean retval = super.addAll(c);
+    attachAll(start, size());
+    changed();
+    return retval;
+  }
+
+
+
+
+  /**
+   * @see java.util.ArrayList#addAll(int, java.util.Collection)
+   */
+  @Override
+  public boolean addAll(final int index, final Collection<? extends DataField> c) {
+    checkAll(c);
+    final int count = size();
+    final boolean retval = super.addAll(index, c);
+    attachAll(index, index + size() - count);
+    changed();
+    return retval;
+  }
+
+
+
+
+  /**
+   * @see java.util.ArrayList#set(int, java.lang.Object)
+   */
+  @Override
+  public DataField set(final int index, final DataField element) {
+    attach(element);
+    final DataField retval = super.set(index, element);
+    replaced++;
+    detach(retval);
+    changed();
+    return retval;
+  }
+
+
+
+
+  /**
+   * Replace the field at the given position with a copy of it without
+   * counting it as a modification.
+   *
+   * @param index the position of the field to replace
+   * @param element the field with the same name to take its place
+   */
+  void replace(final int index, final DataField element) {
+    detach(super.set(index, element));
+    attach(element);
+  }
+
+
+
+
+  /**
+   * @see java.util.ArrayList#remove(int)
+   */
+  @Override
+  public DataField remove(final int index) {
+    final DataField retval = super.remove(index);
+    detach(retval);
+    changed();
+    return retval;
+  }
+
+
+
+
+  /**
+   * @see java.util.ArrayList#remove(java.lang.Object)
+   */
+  @Override
+  public boolean remove(final Object o) {
+    final int index = indexOf(o);
+    if (index < 0) {
+      return false;
+    }
+    remove(index);
+    return true;
+  }
+
+
+
+
+  /**
+   * @see java.util.ArrayList#removeAll(java.util.Collection)
+   */
+  @Override
+  public boolean removeAll(final Collection<?> c) {
+    detachAll(0, size());
+    final boolean retval = super.removeAll(c);
+    attachAll(0, size());
+    changed();
+    return retval;
+  }
+
+
+
+
+  /**
+   * @see java.util.ArrayList#retainAll(java.util.Collection)
+   */
+  @Override
+  public boolean retainAll(final Collection<?> c) {
+    detachAll(0, size());
+    final boolean retval = super.retainAll(c);
+    attachAll(0, size());
+    changed();
+    return retval;
+  }
+
+
+
+
+  /**
+   * @see java.util.ArrayList#removeIf(java.util.function.Predicate)
+   */
+  @Override
+  public boolean removeIf(final Predicate<? super DataField> filter) {
+    detachAll(0, size());
+    final boolean retval = super.removeIf(filter);
+    attachAll(0, size());
+    changed();
+    return retval;
+  }
+
+
+
+
+  /**
+   * @see java.util.ArrayList#replaceAll(java.util.function.UnaryOperator)
+   */
+  @Override
+  public void replaceAll(final UnaryOperator<DataField> operator) {
+    detachAll(0, size());
+    super.replaceAll(operator);
+    attachAll(0, size());
+    changed();
+  }
+
+
+
+
+  /**
+   * @see java.util.ArrayList#sort(java.util.Comparator)
+   */
+  @Override
+  public void sort(final Comparator<? super DataField> c) {
+    super.sort(c);
+    changed();
+  }
+
+
+
+
+  /**
+   * The returned view changes this list through its own methods, so the 
+   * fields are attached and detached and the frame is told of the changes.
+   * 
+   * @see java.util.ArrayList#subList(int, int)
+   */
+  @Override
+  public List<DataField> subList(final int fromIndex, final int toIndex) {
+    if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex) {
+      throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + ", toIndex: " + toIndex + ", size: " + size());
+    }
+    return new Range(this, fromIndex, toIndex);
+  }
+
+
+
+
+  /**
+   * @see java.util.ArrayList#clear()
+   */
+  @Override
+  public void clear() {
+    detachAll(0, size());
+    super.clear();
+    changed();
+  }
+
+
+
+
+  /**
+   * @see java.util.ArrayList#removeRange(int, int)
+   */
+  @Override
+  protected void removeRange(final int fromIndex, final int toIndex) {
+    detachAll(fromIndex, toIndex);
+    super.removeRange(fromIndex, toIndex);
+    changed();
+  }
+
+
+
+
+  /**
+   * @return the number of times this list has been structurally modified or
+   *         had an element replaced.
+   */
+  int getModCount() {
+    return modCount + replaced;
+  }
+
+
+
+
+  /**
+   * A range of a field list, changed through the methods of the list.
+   */
+  private static final class Range extends AbstractList<DataField> implements RandomAccess {
+    private final FieldList list;
+    private final int offset;
+    private int size;
+    private int expectedModCount;
+
+
+
+
+    Range(final FieldList list, final int fromIndex, final int toIndex) {
+      this.list = list;
+      offset = fromIndex;
+      size = toIndex - fromIndex;
+      expectedModCount = list.modCount;
+    }
+
+
+
+
+    private void checkIndex(final int index, final int limit) {
+      if (index < 0 || index > limit) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+      }
+      if (list.modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+    }
+
+
+
+
+    private void resized(final int count) {
+      size += count;
+      expectedModCount = list.modCount;
+      modCount++;
+    }
+
+
+
+
+    @Override
+    public DataField get(final int index) {
+      checkIndex(index, size - 1);
+      return list.get(offset + index);
+    }
+
+
+
+
+    @Override
+    public DataField set(final int index, final DataField element) {
+      checkIndex(index, size - 1);
+      return list.set(offset + index, element);
+    }
+
+
+
+
+    @Override
+    public void add(final int index, final DataField element) {
+      checkIndex(index, size);
+      list.add(offset + index, element);
+      resized(1);
+    }
+
+
+
+
+    @Override
+    public boolean addAll(final int index, final Collection<? extends DataField> c) {
+      checkIndex(index, size);
+      final int count = list.size();
+      list.addAll(offset + index, c);
+      resized(list.size() - count);
+      return list.size() > count;
+    }
+
+
+
+
+    @Override
+    public DataField remove(final int index) {
+      checkIndex(index, size - 1);
+      final DataField retval = list.remove(offset + index);
+      resized(-1);
+      return retval;
+    }
+
+
+
+
+    @Override
+    protected void removeRange(final int fromIndex, final int toIndex) {
+      checkIndex(0, 0);
+      list.removeRange(offset + fromIndex, offset + toIndex);
+      resized(fromIndex - toIndex);
+    }
+
+
+
+
+    @Override
+    public int size() {
+      checkIndex(0, 0);
+      return size;
+    }
+  }
+
+}
@@ -8,6 +8,7 @@
 package coyote.dataframe;
 
 import coyote.commons.ByteUtil;
+import coyote.commons.NumberText;
 
 
 /** Type representing a 32-bit floating point value in the range of +/-1.4013e-45 to +/-3.4028e+38. */
@@ -68,13 +69,8 @@ public class FloatType implements FieldType {
   public String stringValue( byte[] val ) {
     if ( val == null ) {
       return "";
-    } else {
-      Object obj = decode( val );
-      if ( obj != null )
-        return obj.toString();
-      else
-        return "";
     }
+    return NumberText.toString( ByteUtil.retrieveFloat( val, 0 ) );
   }
 
 
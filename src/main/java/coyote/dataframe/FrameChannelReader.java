@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2018 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dataframe;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+
+/**
+ * Reads frames from a channel, each preceded by its length.
+ *
+ * <p>This is the channel equivalent of {@link FrameInputStream} and reads
+ * the same format. Data is read from the channel in as large pieces as are
+ * available into a buffer which is reused, and frames are decoded directly
+ * from that buffer as soon as they are complete. A single read may deliver
+ * several frames, which are then returned without reading the channel again.
+ *
+ * <p>With a non-blocking channel, {@link #readFrame()} returns null when no
+ * complete frame is available yet and may simply be called again when the
+ * channel has more data; partially received frames are kept until the rest
+ * arrives.
+ */
+public class FrameChannelReader {
+
+  /** The channel from which frames are read. */
+  private final ReadableByteChannel channel;
+
+  /** The largest frame this reader will accept. */
+  private final int maxFrameSize;
+
+  /** Data read from the channel and not yet decoded, ready to be read. */
+  private ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+  /** Flag indicating the channel reached its end. */
+  private boolean ended = false;
+
+
+
+
+  /**
+   * Create a reader of frames from the given channel.
+   *
+   * @param channel the channel from which frames are to be read
+   */
+  public FrameChannelReader(final ReadableByteChannel channel) {
+    this(channel, FrameInputStream.DEFAULT_MAX_FRAME_SIZE);
+  }
+
+
+
+
+  /**
+   * Create a reader of frames from the given channel.
+   *
+   * @param channel the channel from which frames are to be read
+   * @param maxFrameSize the largest frame to accept, in octets
+   */
+  public FrameChannelReader(final ReadableByteChannel channel, final int maxFrameSize) {
+    this.channel = channel;
+    this.maxFrameSize = maxFrameSize;
+    buffer.flip();
+  }
+
+
+
+
+  /**
+   * Read the next frame from the channel.
+   *
+   * <p>Blocking channels are read until a frame is complete. Non-blocking
+   * channels are read only until they have no more data available.
+   *
+   * @return the next frame, or null if the channel ended or (for
+   *         non-blocking channels) a complete frame is not available yet.
+   *
+   * @throws EOFException if the channel ended within a frame
+   * @throws DecodeException if the length or the wire format of the frame is
+   *         not valid
+   * @throws IOException if the channel could not be read
+   */
+  public DataFrame readFrame() throws IOException {
+    while (true) {
+      final DataFrame retval = nextFrame();
+      if (retval != null || ended) {
+        return retval;
+      }
+
+      // make room for the rest of the frame after what is already here
+      buffer.compact();
+      final int needed = required();
+      if (needed > buffer.capacity()) {
+        final ByteBuffer larger = ByteBuffer.allocate(Math.max(needed, (int)Math.min(Integer.MAX_VALUE, buffer.capacity() * 2L)));
+        buffer.flip();
+        larger.put(buffer);
+        buffer = larger;
+      }
+      final int n = channel.read(buffer);
+      buffer.flip();
+      if (n < 0) {
+        ended = true;
+        if (buffer.hasRemaining()) {
+          throw new EOFException("Channel ended within a frame");
+        }
+        return null;
+      } else if (n == 0) {
+        return null;
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Decode the next frame if it is completely in the buffer.
+   */
+  private DataFrame nextFrame() {
+    if (buffer.remaining() < FrameInputStream.HEADER_SIZE) {
+      return null;
+    }
+    final int start = buffer.position();
+    final int size = FrameInputStream.checkSize(buffer.getInt(start), maxFrameSize);
+    if (buffer.remaining() - FrameInputStream.HEADER_SIZE < size) {
+      return null;
+    }
+    buffer.position(start + FrameInputStream.HEADER_SIZE + size);
+    return new DataFrame(buffer.array(), buffer.arrayOffset() + start + FrameInputStream.HEADER_SIZE, size);
+  }
+
+
+
+
+  /**
+   * @return the number of octets the buffer must hold to complete the frame
+   *         currently being received.
+   */
+  private int required() {
+    // the buffer is being filled, the data starts at the beginning
+    if (buffer.position() < FrameInputStream.HEADER_SIZE) {
+      return FrameInputStream.HEADER_SIZE;
+    }
+    return FrameInputStream.HEADER_SIZE + FrameInputStream.checkSize(buffer.getInt(0), maxFrameSize);
+  }
+
+
+
+
+  /**
+   * @return true if the channel reached its end.
+   */
+  public boolean isEnded() {
+    return ended;
+  }
+
+
+
+
+  /**
+   * @return the channel from which frames are read.
+   */
+  public ReadableByteChannel getChannel() {
+    return channel;
+  }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2018 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dataframe;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+
+/**
+ * Writes frames to a channel, each preceded by its length.
+ *
+ * <p>This is the channel equivalent of {@link FrameOutputStream} and writes
+ * the same format. Frames are encoded into a direct buffer which is reused
+ * for the frames that follow, so the channel does not have to copy them
+ * into a direct buffer of its own.
+ *
+ * <p>Each frame is written completely before this returns, which makes this
+ * writer suitable for blocking channels.
+ */
+public class FrameChannelWriter {
+
+  /** The channel to which the frames are written. */
+  private final WritableByteChannel channel;
+
+  /** The buffer into which frames are encoded. */
+  private ByteBuffer buffer = ByteBuffer.allocateDirect(4096);
+
+
+
+
+  /**
+   * Create a writer of frames to the given channel.
+   *
+   * @param channel the channel to which the frames are to be written
+   */
+  public FrameChannelWriter(final WritableByteChannel channel) {
+    this.channel = channel;
+  }
+
+
+
+
+  /**
+   * Write the given frame preceded by its length.
+   *
+   * @param frame the frame to write
+   *
+   * @return the number of octets written, including the length.
+   *
+   * @throws IOException if the channel could not be written
+   */
+  public int writeFrame(final DataFrame frame) throws IOException {
+    final int size = frame.getEncodedSize();
+    if (size > Integer.MAX_VALUE - FrameInputStream.HEADER_SIZE) {
+      throw new IOException("Frame too large: " + size + " octets");
+    }
+    final int total = FrameInputStream.HEADER_SIZE + size;
+    if (buffer.capacity() < total) {
+      buffer = ByteBuffer.allocateDirect(Math.max(total, (int)Math.min(Integer.MAX_VALUE, buffer.capacity() * 2L)));
+    }
+    buffer.clear();
+    buffer.putInt(size);
+    frame.writeFields(buffer, false);
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    return total;
+  }
+
+
+
+
+  /**
+   * @return the channel to which the frames are written.
+   */
+  public WritableByteChannel getChannel() {
+    return channel;
+  }
+
+}
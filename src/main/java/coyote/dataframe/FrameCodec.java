@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2018 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dataframe;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * An encoder and decoder specialized for frames with a fixed layout.
+ *
+ * <p>A codec is created for a specific sequence of field names and types,
+ * usually taken from a prototype frame with {@link #of(DataFrame)}. The wire
+ * format of the names, types and the sizes of the fixed-size values are
+ * worked out once, when the codec is created, so encoding and decoding a
+ * frame with that layout involves no name encoding or decoding and no type
+ * lookups; each field is little more than a copy of its value.
+ *
+ * <p>The wire format is exactly that of {@link DataFrame#getBytes()}, so
+ * frames encoded with a codec can be decoded by any receiver and vice versa.
+ * Frames or data which do not have the layout of the codec are handled by
+ * the usual, generic encoding and decoding.
+ *
+ * <p>Codecs are immutable and may be shared between threads.
+ */
+public final class FrameCodec {
+
+  /** The names of the fields in order. */
+  private final String[] names;
+
+  /** The types of the fields in order. */
+  private final short[] types;
+
+  /** The size of the values of fixed-size fields, -1 for variable sizes. */
+  private final int[] sizes;
+
+  /** The wire format of each field up to its value or its variable type. */
+  private final byte[][] headers;
+
+  /** The number of octets all the fields occupy, less variable values. */
+  private final int fixedSize;
+
+
+
+
+  /**
+   * Create a codec for frames with the given layout.
+   *
+   * @param names the names of the fields in order
+   * @param types the type codes of the fields in order
+   *
+   * @throws IllegalArgumentException if the number of names and types differ,
+   *         a name is too long or a type is not supported.
+   */
+  public FrameCodec(final String[] names, final short[] types) {
+    if (names.length != types.length) {
+      throw new IllegalArgumentException("Each field requires a name and a type");
+    }
+    this.names = names.clone();
+    this.types = types.clone();
+    sizes = new int[names.length];
+    headers = new byte[names.length][];
+
+    int size = 0;
+    for (int i = 0; i < names.length; i++) {
+      final byte[] name = encode(names[i]);
+      if (name.length > 255) {
+        throw new IllegalArgumentException("Name too long - 255 char limit");
+      }
+      sizes[i] = DataField.getDataType(types[i]).getSize();
+
+      // fixed-size fields always have the same type and value size
+      final boolean fixed = sizes[i] >= 0;
+      final byte[] header = new byte[1 + name.length + (fixed ? 1 : 0)];
+      header[0] = (byte)name.length;
+      System.arraycopy(name, 0, header, 1, name.length);
+      if (fixed) {
+        header[header.length - 1] = (byte)types[i];
+        size += sizes[i];
+      }
+      headers[i] = header;
+      size += header.length;
+    }
+    fixedSize = size;
+  }
+
+
+
+
+  private static byte[] encode(final String name) {
+    if (name == null) {
+      return new byte[0];
+    }
+    try {
+      return name.getBytes(DataField.strEnc);
+    } catch (final UnsupportedEncodingException e) {
+      return name.getBytes();
+    }
+  }
+
+
+
+
+  /**
+   * Create a codec for frames with the same layout as the given frame.
+   *
+   * @param prototype the frame whose field names and types are to be used
+   *
+   * @return a codec for frames shaped like the prototype
+   */
+  public static FrameCodec of(final DataFrame prototype) {
+    final List<DataField> fields = prototype.fields;
+    final String[] names = new String[fields.size()];
+    final short[] types = new short[fields.size()];
+    for (int i = 0; i < names.length; i++) {
+      names[i] = fields.get(i).getName();
+      types[i] = fields.get(i).getType();
+    }
+    return new FrameCodec(names, types);
+  }
+
+
+
+
+  /**
+   * Determine if the given frame has the layout of this codec.
+   *
+   * @param frame the frame to check
+   *
+   * @return true if the frame has fields with the same names, types and value
+   *         sizes, in the same order, as this codec.
+   */
+  public boolean matches(final DataFrame frame) {
+    final List<DataField> fields = frame.fields;
+    if (fields.size() != names.length) {
+      return false;
+    }
+    for (int i = 0; i < names.length; i++) {
+      final DataField field = fields.get(i);
+      final String name = field.getName();
+      if (field.type != types[i] || (name != names[i] && (name == null || !name.equals(names[i])))) {
+        return false;
+      }
+      if (sizes[i] >= 0 && field.valueLength() != sizes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+
+
+  /**
+   * Encode the given frame in its wire format.
+   *
+   * @param frame the frame to encode
+   *
+   * @return the same bytes as {@link DataFrame#getBytes()}
+   */
+  public byte[] encode(final DataFrame frame) {
+    if (!matches(frame)) {
+      return frame.getBytes();
+    }
+
+    final List<DataField> fields = frame.fields;
+    int size = fixedSize;
+    for (int i = 0; i < sizes.length; i++) {
+      if (sizes[i] < 0) {
+        size += fields.get(i).getValueSize();
+      }
+    }
+
+    final byte[] retval = new byte[size];
+    final ByteBuffer buffer = ByteBuffer.wrap(retval);
+    for (int i = 0; i < sizes.length; i++) {
+      buffer.put(headers[i]);
+      if (sizes[i] > 0) {
+        final DataField field = fields.get(i);
+        buffer.put(field.value, field.valueOffset(), sizes[i]);
+      } else if (sizes[i] < 0) {
+        fields.get(i).writeValue(buffer, false);
+      }
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * Decode a frame from its wire format.
+   *
+   * @param data the wire format of a frame
+   *
+   * @return the decoded frame
+   *
+   * @throws DecodeException if the data is not a valid frame
+   */
+  public DataFrame decode(final byte[] data) {
+    final DataFrame retval = new DataFrame();
+    retval.fields.ensureCapacity(names.length);
+
+    int pos = 0;
+    for (int i = 0; i < names.length; i++) {
+      final byte[] header = headers[i];
+      if (!startsWith(data, pos, header)) {
+        return new DataFrame(data);
+      }
+      pos += header.length;
+
+      int length = sizes[i];
+      if (length < 0) {
+        // variable-size values are preceded by their type and length
+        if (data.length - pos < 5 || data[pos] != (byte)types[i]) {
+          return new DataFrame(data);
+        }
+        length = (data[pos + 1] & 0xFF) << 24 | (data[pos + 2] & 0xFF) << 16 | (data[pos + 3] & 0xFF) << 8 | (data[pos + 4] & 0xFF);
+        pos += 5;
+      }
+      if (length < 0 || data.length - pos < length) {
+        return new DataFrame(data);
+      }
+
+      retval.fields.add(new DataField(names[i], types[i], Arrays.copyOfRange(data, pos, pos + length)));
+      pos += length;
+    }
+
+    // anything else is not the layout of this codec
+    return (pos == data.length) ? retval : new DataFrame(data);
+  }
+
+
+
+
+  private static boolean startsWith(final byte[] data, final int offset, final byte[] prefix) {
+    if (data.length - offset < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (data[offset + i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+
+
+  /**
+   * @return the names of the fields in order.
+   */
+  public String[] getNames() {
+    return names.clone();
+  }
+
+
+
+
+  /**
+   * @return the type codes of the fields in order.
+   */
+  public short[] getTypes() {
+    return types.clone();
+  }
+
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2018 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dataframe;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Encodes frames above a size threshold with their wire format compressed.
+ *
+ * <p>Compressed frames start with an empty name, the extension marker, the
+ * compressed format number, the identifier of the {@link BlockCodec} and the
+ * original length in 4 octets, followed by the compressed wire format. The
+ * {@link DataFrame#DataFrame(byte[])} constructor recognizes this header and
+ * decompresses the frame before decoding it, as long as the codec is
+ * registered, so readers need not know whether a frame was compressed.
+ *
+ * <p>Frames smaller than the threshold, and those which do not get smaller
+ * when compressed, are encoded as usual. The wire format is compressed
+ * directly into the array which is returned, so only the encoded frame itself
+ * is copied. The {@link DeflateCodec} is always registered.
+ */
+public final class FrameCompressor {
+
+  /** All the registered codecs by their identifier. */
+  private static final ConcurrentHashMap<Byte, BlockCodec> CODECS = new ConcurrentHashMap<Byte, BlockCodec>();
+
+  /** Size of the header; an empty name, the extension marker, the format, the codec and the original length. */
+  static final int HEADER_SIZE = 8;
+
+  /** The default size below which frames are not compressed. */
+  public static final int DEFAULT_THRESHOLD = 1024;
+
+  /** The largest ratio of original to compressed size any codec may produce. */
+  public static final int MAX_RATIO = 1032;
+
+  /** The largest decompressed frame to accept, in octets. */
+  private static volatile int maxFrameSize = FrameInputStream.DEFAULT_MAX_FRAME_SIZE;
+
+  /** The codec compressing the frames. */
+  private final BlockCodec codec;
+
+  /** The size below which frames are not compressed. */
+  private final int threshold;
+
+  static {
+    register(new DeflateCodec());
+  }
+
+
+
+
+  /**
+   * Create a compressor using the {@link DeflateCodec} for frames of the
+   * default threshold size or larger.
+   */
+  public FrameCompressor() {
+    this(new DeflateCodec(), DEFAULT_THRESHOLD);
+  }
+
+
+
+
+  /**
+   * Create a compressor.
+   *
+   * @param codec the codec with which to compress frames; it is registered
+   *        if it is not already
+   * @param threshold the size of the wire format, in octets, below which
+   *        frames are not compressed
+   */
+  public FrameCompressor(final BlockCodec codec, final int threshold) {
+    if (codec == null) {
+      throw new IllegalArgumentException("Codec cannot be null");
+    }
+    register(codec);
+    this.codec = codec;
+    this.threshold = threshold;
+  }
+
+
+
+
+  /**
+   * Register a codec so frames compressed with it can be decoded.
+   *
+   * <p>Registering another codec of the same class and identifier has no
+   * effect.
+   *
+   * @param codec the codec to register
+   *
+   * @return the registered codec
+   *
+   * @throws IllegalArgumentException if a codec of another class is already
+   *         registered with the same identifier
+   */
+  public static BlockCodec register(final BlockCodec codec) {
+    final BlockCodec retval = CODECS.putIfAbsent(codec.getId(), codec);
+    if (retval != null && retval.getClass() != codec.getClass()) {
+      throw new IllegalArgumentException("A different codec is already registered with the id " + codec.getId());
+    }
+    return (retval != null) ? retval : codec;
+  }
+
+
+
+
+  /**
+   * Retrieve a registered codec.
+   *
+   * @param id the identifier of the codec
+   *
+   * @return the codec registered with the identifier or null if there is none.
+   */
+  public static BlockCodec getCodec(final byte id) {
+    return CODECS.get(id);
+  }
+
+
+
+
+  /**
+   * Encode the given frame, compressed if it is large enough and compresses.
+   *
+   * @param frame the frame to encode
+   *
+   * @return the wire format of the frame, compressed or as usual.
+   */
+  public byte[] encode(final DataFrame frame) {
+    final byte[] data = frame.getBytes();
+    if (data.length < threshold || data.length <= HEADER_SIZE) {
+      return data;
+    }
+
+    // only worth it if the compressed frame is smaller than the original
+    final byte[] retval = new byte[data.length];
+    final int count = codec.compress(data, 0, data.length, retval, HEADER_SIZE);
+    if (count < 0 || HEADER_SIZE + count >= data.length) {
+      return data;
+    }
+    retval[0] = 0;
+    retval[1] = DataFrame.EXTENSION;
+    retval[2] = DataFrame.COMPRESSED_FORMAT;
+    retval[3] = codec.getId();
+    retval[4] = (byte)(data.length >>> 24);
+    retval[5] = (byte)(data.length >>> 16);
+    retval[6] = (byte)(data.length >>> 8);
+    retval[7] = (byte)data.length;
+    return Arrays.copyOf(retval, HEADER_SIZE + count);
+  }
+
+
+
+
+  /**
+   * Set the largest size of a decompressed frame.
+   *
+   * <p>The original length in the header of a compressed frame is checked
+   * against this limit before any memory is allocated for it, and so is its
+   * ratio to the compressed length, which can not exceed {@link #MAX_RATIO}.
+   *
+   * @param size the largest frame to accept, in octets
+   *
+   * @throws IllegalArgumentException if the size is negative
+   */
+  public static void setMaxFrameSize(final int size) {
+    if (size < 0) {
+      throw new IllegalArgumentException("Invalid frame size: " + size);
+    }
+    maxFrameSize = size;
+  }
+
+
+
+
+  /**
+   * @return the largest decompressed frame accepted, in octets.
+   */
+  public static int getMaxFrameSize() {
+    return maxFrameSize;
+  }
+
+
+
+
+  /**
+   * @return the codec compressing the frames.
+   */
+  public BlockCodec getCodec() {
+    return codec;
+  }
+
+
+
+
+  /**
+   * @return the size below which frames are not compressed.
+   */
+  public int getThreshold() {
+    return threshold;
+  }
+
+
+
+
+  /**
+   * Decompress a frame and read its fields into the given frame.
+   *
+   * @param data the array holding the compressed frame
+   * @param position where the codec identifier follows the format
+   * @param end where the compressed frame ends
+   * @param frame the frame to receive the fields
+   *
+   * @throws DecodeException if the codec is not registered, the frame is
+   *         larger than the limit or the data is not valid
+   */
+  static void read(final byte[] data, final int position, final int end, final DataFrame frame) {
+    if (end - position < HEADER_SIZE - 3) {
+      throw new DecodeException("Data underflow reading the compression header");
+    }
+    final BlockCodec decoder = CODECS.get(data[position]);
+    if (decoder == null) {
+      throw new DecodeException("Block codec " + data[position] + " is not registered");
+    }
+    final int length = FrameInputStream.checkSize((data[position + 1] & 0xFF) << 24 | (data[position + 2] & 0xFF) << 16 | (data[position + 3] & 0xFF) << 8 | (data[position + 4] & 0xFF), maxFrameSize);
+    if (length > (long)(end - position - 5) * MAX_RATIO) {
+      throw new DecodeException("Frame of " + length + " octets exceeds what " + (end - position - 5) + " compressed octets can hold");
+    }
+
+    final byte[] original = new byte[length];
+    decoder.decompress(data, position + 5, end - position - 5, original);
+    // the fields are moved, not shared with the discarded frame
+    final DataFrame decoded = new DataFrame(original);
+    final ArrayList<DataField> fields = new ArrayList<DataField>(decoded.fields);
+    decoded.fields.clear();
+    frame.fields.addAll(fields);
+  }
+
+}
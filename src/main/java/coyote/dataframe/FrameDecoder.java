@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2018 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dataframe;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+
+/**
+ * Decodes length-prefixed frames from arbitrary chunks of data as they are
+ * received, for use with non-blocking channels.
+ *
+ * <p>Chunks are passed in as they are read from a channel, with no regard
+ * for frame boundaries. Each frame which is complete within a chunk is
+ * decoded directly from that chunk. Only frames which span chunks are
+ * reassembled, in a buffer of exactly their size, so every octet is copied
+ * at most once before it is decoded. The decoder never blocks and never
+ * relies on more data being available than has been passed to it.
+ *
+ * <p>Frames can be decoded into {@link DataFrame}s or, to avoid decoding
+ * fields which are never used, into {@link DataFrameView}s. Views may refer
+ * to the chunk they were decoded from and are only valid until the chunk is
+ * reused, i.e. for the duration of the call to the consumer.
+ *
+ * <p>The format is that of {@link FrameOutputStream} and
+ * {@link FrameEncoder}: each frame is preceded by its length in 4 octets, in
+ * network byte order. A decoder holds the state of one connection and is not
+ * safe for use by multiple threads.
+ */
+public class FrameDecoder {
+
+  /** The largest frame this decoder will accept. */
+  private final int maxFrameSize;
+
+  /** The length header of a frame split across chunks. */
+  private final byte[] header = new byte[FrameInputStream.HEADER_SIZE];
+
+  /** The number of octets of the header received so far. */
+  private int headerCount = 0;
+
+  /** The frame being reassembled, once its length is known. */
+  private ByteBuffer partial = null;
+
+
+
+
+  /**
+   * Create a decoder accepting frames of the default maximum size.
+   */
+  public FrameDecoder() {
+    this(FrameInputStream.DEFAULT_MAX_FRAME_SIZE);
+  }
+
+
+
+
+  /**
+   * Create a decoder accepting frames of the given maximum size.
+   *
+   * @param maxFrameSize the largest frame to accept, in octets
+   */
+  public FrameDecoder(final int maxFrameSize) {
+    this.maxFrameSize = maxFrameSize;
+  }
+
+
+
+
+  /**
+   * Decode all the frames completed by the given chunk.
+   *
+   * <p>All remaining octets of the chunk are consumed. Those belonging to a
+   * frame which is not yet complete are retained until the following chunks
+   * complete it.
+   *
+   * @param chunk the data received, from its position to its limit
+   * @param consumer receives each decoded frame in order
+   *
+   * @return the number of frames decoded.
+   *
+   * @throws DecodeException if a length or the wire format of a frame is
+   *         not valid
+   */
+  public int decode(final ByteBuffer chunk, final Consumer<? super DataFrame> consumer) {
+    return process(chunk, false, consumer);
+  }
+
+
+
+
+  /**
+   * Decode all the frames completed by the given chunk into views.
+   *
+   * <p>The views are only valid until the chunk is changed.
+   *
+   * @param chunk the data received, from its position to its limit
+   * @param consumer receives a view of each decoded frame in order
+   *
+   * @return the number of frames decoded.
+   *
+   * @throws DecodeException if a length of a frame is not valid
+   *
+   * @see #decode(ByteBuffer, Consumer)
+   */
+  public int decodeViews(final ByteBuffer chunk, final Consumer<? super DataFrameView> consumer) {
+    return process(chunk, true, consumer);
+  }
+
+
+
+
+  /**
+   * @return true if part of a frame has been received and is waiting for the
+   *         rest of it.
+   */
+  public boolean hasPartial() {
+    return headerCount > 0;
+  }
+
+
+
+
+  /**
+   * Discard any partially received frame.
+   */
+  public void reset() {
+    headerCount = 0;
+    partial = null;
+  }
+
+
+
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private int process(final ByteBuffer chunk, final boolean views, final Consumer consumer) {
+    int retval = 0;
+
+    // complete the frame started in an earlier chunk
+    if (headerCount > 0) {
+      if (!fill(chunk)) {
+        return 0;
+      }
+      final ByteBuffer frame = partial;
+      reset();
+      deliver(frame, 0, frame.capacity(), views, consumer);
+      retval++;
+    }
+
+    // frames entirely within this chunk are decoded in place
+    while (chunk.remaining() >= FrameInputStream.HEADER_SIZE) {
+      final int start = chunk.position();
+      final int size = FrameInputStream.checkSize(getLength(chunk, start), maxFrameSize);
+      if (chunk.remaining() - FrameInputStream.HEADER_SIZE < size) {
+        break;
+      }
+      chunk.position(start + FrameInputStream.HEADER_SIZE + size);
+      deliver(chunk, start + FrameInputStream.HEADER_SIZE, size, views, consumer);
+      retval++;
+    }
+
+    // keep the start of the next frame
+    if (chunk.hasRemaining()) {
+      fill(chunk);
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * Move as much of the chunk as belongs to the current partial frame into
+   * the reassembly buffer.
+   *
+   * @return true if the partial frame is complete
+   */
+  private boolean fill(final ByteBuffer chunk) {
+    while (headerCount < header.length && chunk.hasRemaining()) {
+      header[headerCount++] = chunk.get();
+    }
+    if (headerCount < header.length) {
+      return false;
+    }
+    if (partial == null) {
+      partial = ByteBuffer.allocate(FrameInputStream.checkSize(getLength(ByteBuffer.wrap(header), 0), maxFrameSize));
+    }
+
+    final int count = Math.min(partial.remaining(), chunk.remaining());
+    final ByteBuffer source = chunk.duplicate();
+    source.limit(source.position() + count);
+    partial.put(source);
+    chunk.position(chunk.position() + count);
+    return !partial.hasRemaining();
+  }
+
+
+
+
+  private static void deliver(final ByteBuffer buffer, final int offset, final int length, final boolean views, final Consumer<Object> consumer) {
+    if (views) {
+      consumer.accept(new DataFrameView(buffer, offset, length));
+    } else if (buffer.hasArray()) {
+      consumer.accept(new DataFrame(buffer.array(), buffer.arrayOffset() + offset, length));
+    } else {
+      consumer.accept(new DataFrameView(buffer, offset, length).toFrame());
+    }
+  }
+
+
+
+
+  /**
+   * Read a length in network byte order regardless of the buffer's order.
+   */
+  private static int getLength(final ByteBuffer buffer, final int position) {
+    return (buffer.get(position) & 0xFF) << 24 | (buffer.get(position + 1) & 0xFF) << 16 | (buffer.get(position + 2) & 0xFF) << 8 | (buffer.get(position + 3) & 0xFF);
+  }
+
+}
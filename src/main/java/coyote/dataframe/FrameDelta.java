@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2018 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dataframe;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+
+/**
+ * The difference between two frames, which turns the first into the second
+ * when applied to it.
+ *
+ * <p>Deltas are computed with {@link #diff(DataFrame, DataFrame)}, sent in
+ * place of the complete frame with {@link #getBytes()} and applied by the
+ * receiver with {@link DataFrame#apply(FrameDelta)}. A delta between equal
+ * frames is empty and encodes to no bytes at all.
+ *
+ * <p>A delta is itself encoded as a frame in the usual wire format, with up
+ * to three sections: the names of the removed fields in an array named
+ * {@code del}, the deltas of changed nested frames in a frame named
+ * {@code sub} and the added and changed fields in a frame named {@code set}.
+ * Changed nested frames are sent in full when that is no larger than their
+ * delta.
+ *
+ * <p>Fields are matched by name. Frames with unnamed fields or more than one
+ * field with the same name (e.g. arrays), and frames whose fields were
+ * reordered, can not be matched that way and are sent in full in a section
+ * named {@code all} instead. This way applying a delta to the frame from
+ * which it was computed always results in a frame equal to the other one,
+ * including the order of the fields.
+ */
+public final class FrameDelta {
+
+  /** Name of the section holding a replacement of the entire frame. */
+  private static final String ALL = "all";
+
+  /** Name of the section holding the names of the removed fields. */
+  private static final String DEL = "del";
+
+  /** Name of the section holding the deltas of nested frames. */
+  private static final String SUB = "sub";
+
+  /** Name of the section holding added and changed fields. */
+  private static final String SET = "set";
+
+  /** The encoded form of this delta. */
+  private final DataFrame delta;
+
+
+
+
+  /**
+   * Decode a delta from its wire format.
+   *
+   * @param data the bytes returned from {@link #getBytes()}
+   *
+   * @throws DecodeException if the data is not a valid frame
+   */
+  public FrameDelta(final byte[] data) {
+    this(new DataFrame(data));
+  }
+
+
+
+
+  private FrameDelta(final DataFrame delta) {
+    this.delta = delta;
+  }
+
+
+
+
+  /**
+   * Compute the changes which turn one frame into another.
+   *
+   * @param from the frame the receiver already has
+   * @param to the frame the receiver should end up with
+   *
+   * @return the delta between the frames, which is empty if they are equal.
+   */
+  public static FrameDelta diff(final DataFrame from, final DataFrame to) {
+    final DataFrame retval = compare(from, to);
+    return new FrameDelta((retval != null) ? retval : new DataFrame());
+  }
+
+
+
+
+  /**
+   * @return the wire format of this delta.
+   */
+  public byte[] getBytes() {
+    return delta.getBytes();
+  }
+
+
+
+
+  /**
+   * @return true if this delta contains no changes.
+   */
+  public boolean isEmpty() {
+    return delta.isEmpty();
+  }
+
+
+
+
+  /**
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    return delta.toString();
+  }
+
+
+
+
+  /**
+   * Change the given frame as described by this delta.
+   *
+   * @param frame the frame to change
+   *
+   * @throws DataFrameException if this delta changes a nested frame which
+   *         the given frame does not hold.
+   */
+  void applyTo(final DataFrame frame) throws DataFrameException {
+    apply(frame, delta);
+  }
+
+
+
+
+  private static void apply(final DataFrame frame, final DataFrame delta) throws DataFrameException {
+    final DataFrame all = (DataFrame)delta.getObject(ALL);
+    if (all != null) {
+      frame.clear();
+      for (int i = 0; i < all.fields.size(); i++) {
+        frame.add((DataField)all.fields.get(i).clone());
+      }
+      return;
+    }
+    if (delta.contains(ALL)) {
+      // empty frames are encoded as null values
+      frame.clear();
+      return;
+    }
+
+    // arrays are decoded as frames of unnamed values
+    final DataFrame removed = (DataFrame)delta.getObject(DEL);
+    if (removed != null) {
+      for (int i = 0; i < removed.fields.size(); i++) {
+        frame.remove((String)removed.fields.get(i).getObjectValue());
+      }
+    }
+
+    final DataFrame nested = (DataFrame)delta.getObject(SUB);
+    if (nested != null) {
+      for (int i = 0; i < nested.fields.size(); i++) {
+        final DataField field = nested.fields.get(i);
+        final DataFrame child = frame.getAsFrame(field.getName());
+        if (child == null) {
+          throw new DataFrameException("Delta changes frame field '" + field.getName() + "' which does not exist");
+        }
+        apply(child, field.getFrame());
+      }
+    }
+
+    final DataFrame changes = (DataFrame)delta.getObject(SET);
+    if (changes != null) {
+      for (int i = 0; i < changes.fields.size(); i++) {
+        frame.place((DataField)changes.fields.get(i).clone());
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Compute the delta between two frames.
+   *
+   * @return the delta frame or null if the frames are equal.
+   */
+  private static DataFrame compare(final DataFrame from, final DataFrame to) {
+    final HashMap<String, DataField> previous = index(from);
+    final HashMap<String, DataField> current = index(to);
+    if (previous == null || current == null || !retainsOrder(from, to, previous, current)) {
+      return from.equals(to) ? null : replacement(to);
+    }
+
+    final List<String> removed = new ArrayList<String>();
+    for (int i = 0; i < from.fields.size(); i++) {
+      final String name = from.fields.get(i).getName();
+      if (!current.containsKey(name)) {
+        removed.add(name);
+      }
+    }
+
+    final DataFrame nested = new DataFrame();
+    final DataFrame changes = new DataFrame();
+    for (int i = 0; i < to.fields.size(); i++) {
+      final DataField field = to.fields.get(i);
+      final DataField old = previous.get(field.getName());
+      if (old == null) {
+        changes.add((DataField)field.clone());
+      } else if (field.type == DataField.FRAMETYPE && old.type == DataField.FRAMETYPE && field.getFrame() != null && old.getFrame() != null) {
+        final DataFrame change = compare(old.getFrame(), field.getFrame());
+        if (change != null) {
+          final DataField sub = new DataField(field.getName(), change);
+          if (sub.getEncodedSize() < field.getEncodedSize()) {
+            nested.add(sub);
+          } else {
+            changes.add((DataField)field.clone());
+          }
+        }
+      } else if (!field.equals(old)) {
+        changes.add((DataField)field.clone());
+      }
+    }
+
+    if (removed.isEmpty() && nested.isEmpty() && changes.isEmpty()) {
+      return null;
+    }
+
+    final DataFrame retval = new DataFrame();
+    if (!removed.isEmpty()) {
+      retval.add(DEL, removed.toArray());
+    }
+    if (!nested.isEmpty()) {
+      retval.add(SUB, nested);
+    }
+    if (!changes.isEmpty()) {
+      retval.add(SET, changes);
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * @return a delta which replaces all the fields of a frame with those of
+   *         the given frame.
+   */
+  private static DataFrame replacement(final DataFrame frame) {
+    final DataFrame retval = new DataFrame();
+    retval.add(ALL, frame.clone());
+    return retval;
+  }
+
+
+
+
+  /**
+   * Index the fields of a frame by their name.
+   *
+   * @return the fields of the frame by name or null if the frame contains
+   *         unnamed fields or more than one field with the same name.
+   */
+  private static HashMap<String, DataField> index(final DataFrame frame) {
+    final HashMap<String, DataField> retval = new HashMap<String, DataField>();
+    for (int i = 0; i < frame.fields.size(); i++) {
+      final DataField field = frame.fields.get(i);
+      if (field.getName() == null || retval.put(field.getName(), field) != null) {
+        return null;
+      }
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * Determine if removing the fields missing from the second frame and then
+   * appending the fields missing from the first frame results in the same
+   * order of fields as the second frame.
+   */
+  private static boolean retainsOrder(final DataFrame from, final DataFrame to, final HashMap<String, DataField> previous, final HashMap<String, DataField> current) {
+    int position = 0;
+    for (int i = 0; i < from.fields.size(); i++) {
+      final String name = from.fields.get(i).getName();
+      if (current.containsKey(name)) {
+        if (!name.equals(to.fields.get(position++).getName())) {
+          return false;
+        }
+      }
+    }
+    // everything after the retained fields must be new
+    for (; position < to.fields.size(); position++) {
+      if (previous.containsKey(to.fields.get(position).getName())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2018 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dataframe;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.Arrays;
+
+
+/**
+ * Queues length-prefixed frames and writes them to non-blocking channels
+ * with gathering writes.
+ *
+ * <p>Frames are encoded when they are added and written, as many at a time
+ * as the channel accepts, with a single {@code write(ByteBuffer[])} call.
+ * Frames whose wire format is retained (see {@link DataFrame#getBytes()})
+ * are written from that wire format directly without copying it. Frames the
+ * channel does not accept remain queued until the next write, which is
+ * usually attempted when the channel becomes writable again.
+ *
+ * <p>The format is that of {@link FrameOutputStream} and is read by
+ * {@link FrameDecoder}. An encoder holds the state of one connection and is
+ * not safe for use by multiple threads.
+ */
+public class FrameEncoder {
+
+  /** The queue of buffers waiting to be written. */
+  private ByteBuffer[] queue = new ByteBuffer[32];
+
+  /** The index of the first buffer waiting to be written. */
+  private int head = 0;
+
+  /** The index after the last buffer waiting to be written. */
+  private int tail = 0;
+
+  /** The number of octets waiting to be written. */
+  private long pending = 0;
+
+
+
+
+  /**
+   * Encode the given frame and queue it to be written.
+   *
+   * <p>Changes made to the frame after it was added are not written.
+   *
+   * @param frame the frame to queue
+   *
+   * @return the number of octets queued, including the length.
+   */
+  public int add(final DataFrame frame) {
+    final byte[] retained = frame.getRetainedBytes();
+    final int retval;
+    if (retained != null) {
+      // the retained wire format is never changed and can be written as is
+      final ByteBuffer header = ByteBuffer.allocate(FrameInputStream.HEADER_SIZE);
+      header.putInt(0, retained.length);
+      enqueue(header);
+      enqueue(ByteBuffer.wrap(retained));
+      retval = FrameInputStream.HEADER_SIZE + retained.length;
+    } else {
+      final int size = frame.getEncodedSize();
+      if (size > Integer.MAX_VALUE - FrameInputStream.HEADER_SIZE) {
+        throw new IllegalArgumentException("Frame too large: " + size + " octets");
+      }
+      final ByteBuffer buffer = ByteBuffer.allocate(FrameInputStream.HEADER_SIZE + size);
+      buffer.putInt(size);
+      frame.writeFields(buffer, false);
+      buffer.flip();
+      enqueue(buffer);
+      retval = buffer.limit();
+    }
+    pending += retval;
+    return retval;
+  }
+
+
+
+
+  private void enqueue(final ByteBuffer buffer) {
+    if (tail == queue.length) {
+      if (head > 0) {
+        // move the remaining buffers to the front
+        System.arraycopy(queue, head, queue, 0, tail - head);
+        Arrays.fill(queue, tail - head, tail, null);
+        tail -= head;
+        head = 0;
+      }
+      if (tail == queue.length) {
+        queue = Arrays.copyOf(queue, queue.length * 2);
+      }
+    }
+    queue[tail++] = buffer;
+  }
+
+
+
+
+  /**
+   * Write as many of the queued frames as the channel accepts.
+   *
+   * <p>This never blocks on a non-blocking channel; it writes until the
+   * queue is empty or the channel accepts no more.
+   *
+   * @param channel the channel to which the frames are written
+   *
+   * @return true if all the queued frames were written, false if some remain
+   *         queued.
+   *
+   * @throws IOException if the channel could not be written
+   */
+  public boolean write(final GatheringByteChannel channel) throws IOException {
+    while (head < tail) {
+      final long written = channel.write(queue, head, tail - head);
+      pending -= written;
+      while (head < tail && !queue[head].hasRemaining()) {
+        queue[head++] = null;
+      }
+      if (written == 0) {
+        break;
+      }
+    }
+    if (head == tail) {
+      head = 0;
+      tail = 0;
+    }
+    return head == tail;
+  }
+
+
+
+
+  /**
+   * @return true if there are frames waiting to be written.
+   */
+  public boolean hasPending() {
+    return head < tail;
+  }
+
+
+
+
+  /**
+   * @return the number of octets waiting to be written.
+   */
+  public long getPending() {
+    return pending;
+  }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2018 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dataframe;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * An input stream which reads frames, each preceded by its length.
+ *
+ * <p>This reads the frames written by {@link FrameOutputStream} or
+ * {@link FrameChannelWriter}: a 4-octet length in network byte order
+ * followed by the wire format of the frame. The wire format is read into a
+ * buffer which is reused for the frames that follow.
+ *
+ * <p>The length of a frame is checked against a limit before anything is
+ * allocated for it, so corrupt or hostile data can not exhaust the memory of
+ * the reader.
+ */
+public class FrameInputStream extends FilterInputStream {
+
+  /** The number of octets preceding each frame, holding its length. */
+  public static final int HEADER_SIZE = 4;
+
+  /** The largest frame read unless another limit is given. */
+  public static final int DEFAULT_MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+  /** The largest frame this stream will read. */
+  private final int maxFrameSize;
+
+  /** The buffer into which frames are read. */
+  private byte[] buffer = new byte[512];
+
+
+
+
+  /**
+   * Create a frame input stream reading from the given stream.
+   *
+   * @param in the underlying input stream
+   */
+  public FrameInputStream(final InputStream in) {
+    this(in, DEFAULT_MAX_FRAME_SIZE);
+  }
+
+
+
+
+  /**
+   * Create a frame input stream reading from the given stream.
+   *
+   * @param in the underlying input stream
+   * @param maxFrameSize the largest frame to accept, in octets
+   */
+  public FrameInputStream(final InputStream in, final int maxFrameSize) {
+    super(in);
+    this.maxFrameSize = maxFrameSize;
+  }
+
+
+
+
+  /**
+   * Read the next frame from the stream.
+   *
+   * <p>This blocks until the entire frame has been read.
+   *
+   * @return the next frame or null if the end of the stream was reached
+   *         before another frame.
+   *
+   * @throws EOFException if the stream ended within a frame
+   * @throws DecodeException if the length or the wire format of the frame is
+   *         not valid
+   * @throws IOException if the underlying stream could not be read
+   */
+  public DataFrame readFrame() throws IOException {
+    if (read(buffer, 0, HEADER_SIZE, true) < HEADER_SIZE) {
+      return null;
+    }
+    final int size = checkSize((buffer[0] & 0xFF) << 24 | (buffer[1] & 0xFF) << 16 | (buffer[2] & 0xFF) << 8 | (buffer[3] & 0xFF), maxFrameSize);
+    if (buffer.length < size) {
+      buffer = new byte[Math.max(size, (int)Math.min(maxFrameSize, buffer.length * 2L))];
+    }
+    read(buffer, 0, size, false);
+    return new DataFrame(buffer, 0, size);
+  }
+
+
+
+
+  /**
+   * Fill the given range of the buffer from the underlying stream.
+   *
+   * @return the number of octets read, which is only less than the length if
+   *         the stream ended before the first octet and that is allowed.
+   */
+  private int read(final byte[] buf, final int off, final int len, final boolean endAllowed) throws IOException {
+    int count = 0;
+    while (count < len) {
+      final int n = in.read(buf, off + count, len - count);
+      if (n < 0) {
+        if (count == 0 && endAllowed) {
+          return 0;
+        }
+        throw new EOFException("Stream ended within a frame");
+      }
+      count += n;
+    }
+    return count;
+  }
+
+
+
+
+  /**
+   * Check the length read from the header of a frame.
+   *
+   * @param size the length of the frame
+   * @param max the largest length allowed
+   *
+   * @return the length
+   *
+   * @throws DecodeException if the length is negative or exceeds the limit
+   */
+  static int checkSize(final int size, final int max) {
+    if (size < 0 || size > max) {
+      throw new DecodeException("Frame length of " + (size & 0xFFFFFFFFL) + " octets exceeds the limit of " + max);
+    }
+    return size;
+  }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2018 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dataframe;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+
+/**
+ * An output stream which writes frames, each preceded by its length.
+ *
+ * <p>The wire format of a frame has no boundary of its own, so each frame is
+ * written as a 4-octet length in network byte order followed by the wire
+ * format of the frame. {@link FrameInputStream} and
+ * {@link FrameChannelReader} read frames written this way.
+ *
+ * <p>Each frame is encoded into a buffer which is reused for the frames that
+ * follow and written to the underlying stream with a single call.
+ */
+public class FrameOutputStream extends FilterOutputStream {
+
+  /** The buffer into which frames are encoded. */
+  private byte[] buffer = new byte[512];
+
+
+
+
+  /**
+   * Create a frame output stream writing to the given stream.
+   *
+   * @param out the underlying output stream
+   */
+  public FrameOutputStream(final OutputStream out) {
+    super(out);
+  }
+
+
+
+
+  /**
+   * Write the given frame preceded by its length.
+   *
+   * @param frame the frame to write
+   *
+   * @return the number of octets written, including the length.
+   *
+   * @throws IOException if the underlying stream could not be written
+   */
+  public int writeFrame(final DataFrame frame) throws IOException {
+    final int size = frame.getEncodedSize();
+    if (size > Integer.MAX_VALUE - FrameInputStream.HEADER_SIZE) {
+      throw new IOException("Frame too large: " + size + " octets");
+    }
+    final int total = FrameInputStream.HEADER_SIZE + size;
+    if (buffer.length < total) {
+      buffer = new byte[Math.max(total, (int)Math.min(Integer.MAX_VALUE, buffer.length * 2L))];
+    }
+    final ByteBuffer encoded = ByteBuffer.wrap(buffer);
+    encoded.putInt(size);
+    frame.writeFields(encoded, false);
+    out.write(buffer, 0, total);
+    return total;
+  }
+
+
+
+
+  /**
+   * Write the given range of bytes to the underlying stream as they are.
+   *
+   * @see java.io.FilterOutputStream#write(byte[], int, int)
+   */
+  @Override
+  public void write(final byte[] b, final int off, final int len) throws IOException {
+    out.write(b, off, len);
+  }
+
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2018 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dataframe;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * The names of the leading fields of frames with a fixed layout, which allows
+ * them to be encoded without their names.
+ *
+ * <p>A schema is identified by a number and must be registered with the same
+ * identifier and names on both the sending and receiving end. Frames encoded
+ * with {@link #encode(DataFrame)} start with the identifier of the schema
+ * followed by the type and value of the fields named in the schema, in order.
+ * Any fields after those are encoded as usual, names included. The
+ * {@link DataFrame#DataFrame(byte[])} constructor recognizes this format and
+ * decodes it into a normal frame with named fields, as long as the schema is
+ * registered.
+ *
+ * <p>Frames which do not start with the fields of the schema in the same
+ * order are encoded as usual, so ad-hoc frames can be sent through the same
+ * channel as those with a fixed layout.
+ */
+public final class FrameSchema {
+
+  /** All the registered schemas by their identifier. */
+  private static final ConcurrentHashMap<Integer, FrameSchema> REGISTRY = new ConcurrentHashMap<Integer, FrameSchema>();
+
+  /** Size of the header; an empty name, the extension marker, the format and the schema id. */
+  private static final int HEADER_SIZE = 7;
+
+  /** The identifier of this schema on the wire. */
+  private final int id;
+
+  /** The names of the fields, in order. */
+  private final String[] names;
+
+
+
+
+  /**
+   * Create a schema.
+   *
+   * @param id the identifier of the schema
+   * @param names the names of the leading fields of the frames this schema
+   *        describes, in order
+   *
+   * @throws IllegalArgumentException if any of the names are null or too long
+   */
+  public FrameSchema(final int id, final String... names) {
+    this.id = id;
+    this.names = names.clone();
+    for (final String name : this.names) {
+      if (name == null || name.length() > 255) {
+        throw new IllegalArgumentException("Schema field names must be present and 255 characters or less");
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Create a schema describing all the fields of the given frame.
+   *
+   * @param id the identifier of the schema
+   * @param frame the frame whose field names are to be used
+   *
+   * @throws IllegalArgumentException if the frame contains unnamed fields
+   */
+  public FrameSchema(final int id, final DataFrame frame) {
+    this(id, namesOf(frame));
+  }
+
+
+
+
+  private static String[] namesOf(final DataFrame frame) {
+    final String[] retval = new String[frame.fields.size()];
+    for (int i = 0; i < retval.length; i++) {
+      retval[i] = frame.fields.get(i).getName();
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * Register a schema so frames encoded with it can be decoded.
+   *
+   * <p>Registering a schema equal to one already registered has no effect.
+   *
+   * @param schema the schema to register
+   *
+   * @return the registered schema
+   *
+   * @throws IllegalArgumentException if a different schema is already
+   *         registered with the same identifier
+   */
+  public static FrameSchema register(final FrameSchema schema) {
+    final FrameSchema retval = REGISTRY.putIfAbsent(schema.id, schema);
+    if (retval != null && !retval.equals(schema)) {
+      throw new IllegalArgumentException("A different schema is already registered with the id " + schema.id);
+    }
+    return (retval != null) ? retval : schema;
+  }
+
+
+
+
+  /**
+   * Remove the registration of the schema with the given identifier.
+   *
+   * @param id the identifier of the schema
+   *
+   * @return the schema which was registered or null if there was none.
+   */
+  public static FrameSchema unregister(final int id) {
+    return REGISTRY.remove(id);
+  }
+
+
+
+
+  /**
+   * Retrieve a registered schema.
+   *
+   * @param id the identifier of the schema
+   *
+   * @return the schema registered with that identifier or null if there is
+   *         none.
+   */
+  public static FrameSchema get(final int id) {
+    return REGISTRY.get(id);
+  }
+
+
+
+
+  /**
+   * @return the identifier of this schema.
+   */
+  public int getId() {
+    return id;
+  }
+
+
+
+
+  /**
+   * @return the names of the fields described by this schema, in order.
+   */
+  public List<String> getNames() {
+    return Collections.unmodifiableList(Arrays.asList(names));
+  }
+
+
+
+
+  /**
+   * Determine if the given frame starts with the fields of this schema.
+   *
+   * @param frame the frame to check
+   *
+   * @return true if the frame can be encoded with this schema, false if not.
+   */
+  public boolean matches(final DataFrame frame) {
+    final List<DataField> fields = frame.fields;
+    if (fields.size() < names.length) {
+      return false;
+    }
+    for (int i = 0; i < names.length; i++) {
+      if (!names[i].equals(fields.get(i).getName())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+
+
+  /**
+   * Encode the given frame without the names of the fields in this schema.
+   *
+   * @param frame the frame to encode
+   *
+   * @return the frame in its wire format, which only omits the names of the
+   *         fields if the frame matches this schema.
+   *
+   * @see #matches(DataFrame)
+   */
+  public byte[] encode(final DataFrame frame) {
+    if (!matches(frame)) {
+      return frame.getBytes();
+    }
+
+    final List<DataField> fields = frame.fields;
+    int size = HEADER_SIZE;
+    for (int i = 0; i < fields.size(); i++) {
+      size += (i < names.length) ? fields.get(i).getValueSize() : fields.get(i).getEncodedSize();
+    }
+
+    final byte[] retval = new byte[size];
+    final ByteBuffer buffer = ByteBuffer.wrap(retval);
+    buffer.put((byte)0);
+    buffer.put(DataFrame.EXTENSION);
+    buffer.put(DataFrame.SCHEMA_FORMAT);
+    buffer.putInt(id);
+    for (int i = 0; i < fields.size(); i++) {
+      if (i < names.length) {
+        fields.get(i).writeValue(buffer, false);
+      } else {
+        fields.get(i).writeTo(buffer);
+      }
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * Read the fields of a frame encoded with a schema into the given frame.
+   *
+   * <p>The stream is positioned after the format octet; any fields following
+   * those of the schema are left in the stream.
+   *
+   * @param in the stream to read
+   * @param frame the frame to receive the fields
+   *
+   * @throws IOException if the stream could not be read
+   * @throws DecodeException if the schema is not registered or the data is
+   *         invalid
+   */
+  static void read(final DataInputStream in, final DataFrame frame) throws IOException {
+    final int id = in.readInt();
+    final FrameSchema schema = REGISTRY.get(id);
+    if (schema == null) {
+      throw new DecodeException("Frame schema " + id + " is not registered");
+    }
+    for (final String name : schema.names) {
+      frame.add(DataField.readValue(name, in));
+    }
+  }
+
+
+
+
+  /**
+   * @return true if the given object is a schema with the same identifier and
+   *         field names as this one.
+   *
+   * @see java.lang.Object#equals(java.lang.Object)
+   */
+  @Override
+  public boolean equals(final Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof FrameSchema)) {
+      return false;
+    }
+    final FrameSchema other = (FrameSchema)obj;
+    return id == other.id && Arrays.equals(names, other.names);
+  }
+
+
+
+
+  /**
+   * @see java.lang.Object#hashCode()
+   */
+  @Override
+  public int hashCode() {
+    return 31 * id + Arrays.hashCode(names);
+  }
+
+
+
+
+  /**
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    return "FrameSchema " + id + Arrays.toString(names);
+  }
+
+}
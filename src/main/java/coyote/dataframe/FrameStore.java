@@ -0,0 +1,554 @@
+/*
+ * Copyright (c) 2018 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dataframe;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+
+/**
+ * A keyed store of frames held in their wire format outside of the heap.
+ *
+ * <p>Holding a great number of frames on the heap costs several objects per
+ * field and makes garbage collection expensive. This store keeps the wire
+ * format of each frame (and its key) in large chunks of direct memory and
+ * only a pair of primitive arrays, the index of the keys, on the heap. The
+ * garbage collector has nothing to trace, regardless of the number of frames
+ * stored.
+ *
+ * <p>Frames are only materialized when they are retrieved with
+ * {@link #get(String)}. {@link #getView(String)} provides a view which
+ * decodes only the fields which are accessed and {@link #getBuffer(String)}
+ * the wire format of a frame, neither of which copies the frame.
+ *
+ * <p>Storing a frame under a key already in use replaces the frame and
+ * removing a frame only removes its key; the space either frame occupied is
+ * not reused until the store is cleared. This suits reference data, which is
+ * loaded in bulk and seldom changed.
+ *
+ * <p>Stores are safe for use by multiple threads. Any number of threads may
+ * retrieve frames at the same time.
+ */
+public final class FrameStore {
+
+  /** The default size of the chunks of memory holding the frames. */
+  public static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
+  /** Marks an empty slot in the index. */
+  private static final long EMPTY = -1;
+
+  /** The initial number of slots in the index. */
+  private static final int INITIAL_CAPACITY = 1024;
+
+  /** The size of newly allocated chunks. */
+  private final int chunkSize;
+
+  /** The chunks of direct memory holding the keys and frames. */
+  private final ArrayList<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+
+  /** The index of the chunk currently being filled, -1 before the first. */
+  private int current = -1;
+
+  /** The locations of the records, the chunk in the high and offset in the low 32 bits. */
+  private long[] locations;
+
+  /** The hash of the key of each record, to avoid comparing keys in memory. */
+  private int[] hashes;
+
+  /** The number of frames in the store. */
+  private int count = 0;
+
+  /** The number of octets occupied by records in the chunks. */
+  private long used = 0;
+
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+
+
+
+  /**
+   * Create a store which allocates memory in chunks of the default size.
+   */
+  public FrameStore() {
+    this(DEFAULT_CHUNK_SIZE);
+  }
+
+
+
+
+  /**
+   * Create a store which allocates memory in chunks of the given size.
+   *
+   * <p>Frames larger than a chunk get a chunk of their own.
+   *
+   * @param chunkSize the number of octets to allocate at a time
+   *
+   * @throws IllegalArgumentException if the chunk size is not positive
+   */
+  public FrameStore(final int chunkSize) {
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("Chunk size must be positive");
+    }
+    this.chunkSize = chunkSize;
+    locations = new long[INITIAL_CAPACITY];
+    hashes = new int[INITIAL_CAPACITY];
+    Arrays.fill(locations, EMPTY);
+  }
+
+
+
+
+  /**
+   * Store the given frame under the given key, replacing any frame already
+   * stored under that key.
+   *
+   * <p>The frame is encoded directly into the memory of the store; later
+   * changes to the frame are not reflected in the store.
+   *
+   * @param key the key under which the frame is stored
+   * @param frame the frame to store
+   *
+   * @throws IllegalArgumentException if the key or frame is null
+   */
+  public void put(final String key, final DataFrame frame) {
+    if (key == null || frame == null) {
+      throw new IllegalArgumentException("Key and frame must not be null");
+    }
+    final byte[] keyBytes = encode(key);
+    final int hash = hash(key);
+    final int size = frame.getEncodedSize();
+    final int recordSize = 8 + keyBytes.length + size;
+
+    lock.writeLock().lock();
+    try {
+      final long location = allocate(recordSize);
+      final ByteBuffer buffer = chunks.get(chunk(location)).duplicate();
+      buffer.position(offset(location));
+      buffer.putInt(keyBytes.length);
+      buffer.put(keyBytes);
+      buffer.putInt(size);
+      frame.writeFields(buffer, false);
+      used += recordSize;
+
+      final int slot = find(hash, keyBytes);
+      if (locations[slot] == EMPTY) {
+        if ((count + 1) * 4L > locations.length * 3L) {
+          grow();
+          insert(hash, location);
+        } else {
+          hashes[slot] = hash;
+          locations[slot] = location;
+        }
+        count++;
+      } else {
+        used -= recordSize(locations[slot]);
+        locations[slot] = location;
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+
+
+
+  /**
+   * Retrieve a copy of the frame stored under the given key.
+   *
+   * @param key the key of the frame
+   *
+   * @return a new frame decoded from the store or null if there is no frame
+   *         stored under that key.
+   */
+  public DataFrame get(final String key) {
+    final byte[] data = getBytes(key);
+    return (data != null) ? new DataFrame(data) : null;
+  }
+
+
+
+
+  /**
+   * Retrieve the wire format of the frame stored under the given key.
+   *
+   * @param key the key of the frame
+   *
+   * @return a copy of the wire format of the frame or null if there is no
+   *         frame stored under that key.
+   */
+  public byte[] getBytes(final String key) {
+    final ByteBuffer buffer = getBuffer(key);
+    if (buffer == null) {
+      return null;
+    }
+    final byte[] retval = new byte[buffer.remaining()];
+    buffer.get(retval);
+    return retval;
+  }
+
+
+
+
+  /**
+   * Access the wire format of the frame stored under the given key without
+   * copying it.
+   *
+   * <p>The returned buffer is a read-only view of the memory of this store
+   * positioned at the start of the frame and limited to its end. It remains
+   * valid after the frame is replaced or removed and keeps the chunk of
+   * memory it refers to from being released until it is discarded.
+   *
+   * @param key the key of the frame
+   *
+   * @return a view of the wire format of the frame or null if there is no
+   *         frame stored under that key.
+   */
+  public ByteBuffer getBuffer(final String key) {
+    final byte[] keyBytes = encode(key);
+    final int hash = hash(key);
+    lock.readLock().lock();
+    try {
+      final long location = locations[find(hash, keyBytes)];
+      if (location == EMPTY) {
+        return null;
+      }
+      final ByteBuffer retval = chunks.get(chunk(location)).asReadOnlyBuffer();
+      final int start = offset(location) + 8 + keyBytes.length;
+      final int size = retval.getInt(start - 4);
+      retval.limit(start + size);
+      retval.position(start);
+      return retval.slice();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+
+
+
+  /**
+   * Access the frame stored under the given key through a view of its wire
+   * format, which decodes only the fields which are accessed.
+   *
+   * @param key the key of the frame
+   *
+   * @return a view of the frame or null if there is no frame stored under
+   *         that key.
+   *
+   * @see #getBuffer(String)
+   */
+  public DataFrameView getView(final String key) {
+    final ByteBuffer buffer = getBuffer(key);
+    return (buffer != null) ? new DataFrameView(buffer) : null;
+  }
+
+
+
+
+  /**
+   * Retrieve the first field with the given name from the frame stored under
+   * the given key, without decoding the rest of the frame.
+   *
+   * @param key the key of the frame
+   * @param name the name of the field
+   *
+   * @return a copy of the field or null if there is no frame stored under
+   *         that key or it does not contain a field with that name.
+   */
+  public DataField getField(final String key, final String name) {
+    final DataFrameView view = getView(key);
+    return (view != null) ? view.getField(name) : null;
+  }
+
+
+
+
+  /**
+   * @param key the key to check
+   *
+   * @return true if a frame is stored under the given key.
+   */
+  public boolean contains(final String key) {
+    final byte[] keyBytes = encode(key);
+    final int hash = hash(key);
+    lock.readLock().lock();
+    try {
+      return locations[find(hash, keyBytes)] != EMPTY;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+
+
+
+  /**
+   * Remove the frame stored under the given key.
+   *
+   * @param key the key of the frame
+   *
+   * @return true if there was a frame stored under the key, false otherwise.
+   */
+  public boolean remove(final String key) {
+    final byte[] keyBytes = encode(key);
+    final int hash = hash(key);
+    lock.writeLock().lock();
+    try {
+      int slot = find(hash, keyBytes);
+      if (locations[slot] == EMPTY) {
+        return false;
+      }
+      used -= recordSize(locations[slot]);
+      count--;
+
+      // shift the following entries back so no probe sequence is broken
+      final int mask = locations.length - 1;
+      int next = slot;
+      while (true) {
+        next = (next + 1) & mask;
+        if (locations[next] == EMPTY) {
+          break;
+        }
+        final int home = hashes[next] & mask;
+        if (((next - home) & mask) >= ((next - slot) & mask)) {
+          locations[slot] = locations[next];
+          hashes[slot] = hashes[next];
+          slot = next;
+        }
+      }
+      locations[slot] = EMPTY;
+      return true;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+
+
+
+  /**
+   * Remove all the frames from this store and release its memory.
+   */
+  public void clear() {
+    lock.writeLock().lock();
+    try {
+      chunks.clear();
+      current = -1;
+      locations = new long[INITIAL_CAPACITY];
+      hashes = new int[INITIAL_CAPACITY];
+      Arrays.fill(locations, EMPTY);
+      count = 0;
+      used = 0;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+
+
+
+  /**
+   * @return the number of frames in this store.
+   */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return count;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+
+
+
+  /**
+   * @return the number of octets of memory occupied by the keys and frames
+   *         currently in this store.
+   */
+  public long getUsedMemory() {
+    lock.readLock().lock();
+    try {
+      return used;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+
+
+
+  /**
+   * @return the number of octets of memory allocated by this store, which
+   *         includes the space of replaced and removed frames.
+   */
+  public long getAllocatedMemory() {
+    lock.readLock().lock();
+    try {
+      long retval = 0;
+      for (final ByteBuffer chunk : chunks) {
+        retval += chunk.capacity();
+      }
+      return retval;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+
+
+
+  /**
+   * Reserve space for a record of the given size.
+   *
+   * @return the location of the reserved space
+   */
+  private long allocate(final int size) {
+    if (size > chunkSize) {
+      // oversized records get a chunk of their own
+      chunks.add(ByteBuffer.allocateDirect(size));
+      return location(chunks.size() - 1, 0);
+    }
+
+    ByteBuffer chunk = (current >= 0) ? chunks.get(current) : null;
+    if (chunk == null || chunk.remaining() < size) {
+      chunk = ByteBuffer.allocateDirect(chunkSize);
+      chunks.add(chunk);
+      current = chunks.size() - 1;
+    }
+    final long retval = location(current, chunk.position());
+    chunk.position(chunk.position() + size);
+    return retval;
+  }
+
+
+
+
+  /**
+   * Find the slot of the given key or the empty slot where it belongs.
+   */
+  private int find(final int hash, final byte[] keyBytes) {
+    final long[] locs = locations;
+    final int mask = locs.length - 1;
+    int slot = hash & mask;
+    while (locs[slot] != EMPTY) {
+      if (hashes[slot] == hash && keyEquals(locs[slot], keyBytes)) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+
+
+
+  private boolean keyEquals(final long location, final byte[] keyBytes) {
+    final ByteBuffer chunk = chunks.get(chunk(location));
+    final int offset = offset(location);
+    if (chunk.getInt(offset) != keyBytes.length) {
+      return false;
+    }
+    for (int i = 0; i < keyBytes.length; i++) {
+      if (chunk.get(offset + 4 + i) != keyBytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+
+
+  private int recordSize(final long location) {
+    final ByteBuffer chunk = chunks.get(chunk(location));
+    final int offset = offset(location);
+    final int keyLength = chunk.getInt(offset);
+    return 8 + keyLength + chunk.getInt(offset + 4 + keyLength);
+  }
+
+
+
+
+  /**
+   * Double the size of the index.
+   */
+  private void grow() {
+    final long[] oldLocations = locations;
+    final int[] oldHashes = hashes;
+    locations = new long[oldLocations.length * 2];
+    hashes = new int[oldLocations.length * 2];
+    Arrays.fill(locations, EMPTY);
+    for (int i = 0; i < oldLocations.length; i++) {
+      if (oldLocations[i] != EMPTY) {
+        insert(oldHashes[i], oldLocations[i]);
+      }
+    }
+  }
+
+
+
+
+  private void insert(final int hash, final long location) {
+    final int mask = locations.length - 1;
+    int slot = hash & mask;
+    while (locations[slot] != EMPTY) {
+      slot = (slot + 1) & mask;
+    }
+    hashes[slot] = hash;
+    locations[slot] = location;
+  }
+
+
+
+
+  private static long location(final int chunk, final int offset) {
+    return ((long)chunk << 32) | (offset & 0xFFFFFFFFL);
+  }
+
+
+
+
+  private static int chunk(final long location) {
+    return (int)(location >>> 32);
+  }
+
+
+
+
+  private static int offset(final long location) {
+    return (int)location;
+  }
+
+
+
+
+  private static int hash(final String key) {
+    // spread the bits of the string hash over the low-order bits
+    final int h = key.hashCode() * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+
+
+
+  private static byte[] encode(final String key) {
+    if (key == null) {
+      throw new IllegalArgumentException("Key must not be null");
+    }
+    try {
+      return key.getBytes(DataField.strEnc);
+    } catch (final UnsupportedEncodingException e) {
+      return key.getBytes();
+    }
+  }
+
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2018 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dataframe;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+
+/**
+ * A frame which can not be changed.
+ *
+ * <p>Instances are created with {@link DataFrame#freeze()} and share the
+ * values of the fields of the frame from which they were created rather than
+ * copying them.
+ * Any attempt to add, remove, rename or change a field, either through the
+ * methods of this frame, the list returned by {@link #getFields()} or the
+ * fields themselves, results in an {@code UnsupportedOperationException}.
+ * Frames nested within an immutable frame are immutable as well.
+ *
+ * <p>All the state of an immutable frame is established before its
+ * constructor completes and its fields are held in a final field, so
+ * instances may be published to and read by any number of threads without
+ * synchronization. Values derived on demand (e.g. digests and wire formats)
+ * are published safely when they are cached.
+ *
+ * <p>{@link #clone()} returns a mutable copy of the frame.
+ */
+public final class ImmutableDataFrame extends DataFrame {
+
+
+
+
+  /**
+   * Create an immutable frame sharing the fields of the given frame.
+   *
+   * @param frame the frame whose fields are to be frozen
+   */
+  ImmutableDataFrame(final DataFrame frame) {
+    super(new FrozenFieldList(frame.fields));
+    arrayBiased = frame.arrayBiased;
+    modified = false;
+
+    // establish the change stamp before this frame is shared
+    lastModified();
+  }
+
+
+
+
+  /**
+   * @return this frame as it is already immutable.
+   *
+   * @see coyote.dataframe.DataFrame#freeze()
+   */
+  @Override
+  public ImmutableDataFrame freeze() {
+    return this;
+  }
+
+
+
+
+  /**
+   * @throws UnsupportedOperationException always
+   *
+   * @see coyote.dataframe.DataFrame#setFields(java.util.ArrayList)
+   */
+  @Override
+  public void setFields(final ArrayList<DataField> list) {
+    throw new UnsupportedOperationException("Frame is immutable");
+  }
+
+
+
+
+  /**
+   * @throws UnsupportedOperationException always
+   *
+   * @see coyote.dataframe.DataFrame#setArrayBias(boolean)
+   */
+  @Override
+  public void setArrayBias(final boolean flag) {
+    throw new UnsupportedOperationException("Frame is immutable");
+  }
+
+
+
+
+  /**
+   * @throws UnsupportedOperationException always
+   *
+   * @see coyote.dataframe.DataFrame#compact()
+   */
+  @Override
+  public DataFrame compact() {
+    throw new UnsupportedOperationException("Frame is immutable");
+  }
+
+
+
+
+  /**
+   * Immutable frames never change, so they need not know what holds them.
+   *
+   * @see coyote.dataframe.DataFrame#hold(coyote.dataframe.DataField)
+   */
+  @Override
+  void hold(final DataField field) {}
+
+
+
+
+  /**
+   * @see coyote.dataframe.DataFrame#release(coyote.dataframe.DataField)
+   */
+  @Override
+  void release(final DataField field) {}
+
+
+
+
+  /**
+   * @throws UnsupportedOperationException always
+   *
+   * @see coyote.dataframe.DataFrame#changed()
+   */
+  @Override
+  protected void changed() {
+    throw new UnsupportedOperationException("Frame is immutable");
+  }
+
+
+
+
+  /**
+   * A field list which rejects all changes once constructed.
+   */
+  private static final class FrozenFieldList extends FieldList {
+    private static final long serialVersionUID = 3017734466935620497L;
+
+
+
+
+    FrozenFieldList(final List<DataField> source) {
+      super(null, source.size());
+      for (int i = 0; i < source.size(); i++) {
+        super.add(source.get(i).freeze());
+      }
+    }
+
+
+
+
+    @Override
+    public boolean add(final DataField element) {
+      throw new UnsupportedOperationException("Frame is immutable");
+    }
+
+
+
+
+    @Override
+    public void add(final int index, final DataField element) {
+      throw new UnsupportedOperationException("Frame is immutable");
+    }
+
+
+
+
+    @Override
+    public boolean addAll(final Collection<? extends DataField> c) {
+      throw new UnsupportedOperationException("Frame is immutable");
+    }
+
+
+
+
+    @Override
+    public boolean addAll(final int index, final Collection<? extends DataField> c) {
+      throw new UnsupportedOperationException("Frame is immutable");
+    }
+
+
+
+
+    @Override
+    public DataField set(final int index, final DataField element) {
+      throw new UnsupportedOperationException("Frame is immutable");
+    }
+
+
+
+
+    @Override
+    void replace(final int index, final DataField element) {
+      throw new UnsupportedOperationException("Frame is immutable");
+    }
+
+
+
+
+    @Override
+    public DataField remove(final int index) {
+      throw new UnsupportedOperationException("Frame is immutable");
+    }
+
+
+
+
+    @Override
+    public boolean remove(final Object o) {
+      throw new UnsupportedOperationException("Frame is immutable");
+    }
+
+
+
+
+    @Override
+    public boolean removeAll(final Collection<?> c) {
+      throw new UnsupportedOperationException("Frame is immutable");
+    }
+
+
+
+
+    @Override
+    public boolean retainAll(final Collection<?> c) {
+      throw new UnsupportedOperationException("Frame is immutable");
+    }
+
+
+
+
+    @Override
+    public boolean removeIf(final Predicate<? super DataField> filter) {
+      throw new UnsupportedOperationException("Frame is immutable");
+    }
+
+
+
+
+    @Override
+    public void replaceAll(final UnaryOperator<DataField> operator) {
+      throw new UnsupportedOperationException("Frame is immutable");
+    }
+
+
+
+
+    @Override
+    public void sort(final Comparator<? super DataField> c) {
+      throw new UnsupportedOperationException("Frame is immutable");
+    }
+
+
+
+
+    @Override
+    public void clear() {
+      throw new UnsupportedOperationException("Frame is immutable");
+    }
+
+
+
+
+    @Override
+    protected void removeRange(final int fromIndex, final int toIndex) {
+      throw new UnsupportedOperationException("Frame is immutable");
+    }
+
+
+
+
+    @Override
+    public List<DataField> subList(final int fromIndex, final int toIndex) {
+      return Collections.unmodifiableList(super.subList(fromIndex, toIndex));
+    }
+
+  }
+
+}
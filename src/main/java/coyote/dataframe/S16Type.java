@@ -8,6 +8,7 @@
 package coyote.dataframe;
 
 import coyote.commons.ByteUtil;
+import coyote.commons.NumberText;
 
 
 /** signed, 16-bit value in the range of -32,768 to 32,767 */
@@ -68,13 +69,8 @@ public class S16Type implements FieldType {
   public String stringValue( byte[] val ) {
     if ( val == null ) {
       return "";
-    } else {
-      Object obj = decode( val );
-      if ( obj != null )
-        return obj.toString();
-      else
-        return "";
     }
+    return NumberText.toString( ByteUtil.retrieveShort( val, 0 ) );
   }
 
 
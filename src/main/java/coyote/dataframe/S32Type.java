@@ -8,6 +8,7 @@
 package coyote.dataframe;
 
 import coyote.commons.ByteUtil;
+import coyote.commons.NumberText;
 
 
 /** Type representing a signed, 32-bit value in the range of -2,147,483,648 to 2,147,483,647 */
@@ -68,13 +69,8 @@ public class S32Type implements FieldType {
   public String stringValue( byte[] val ) {
     if ( val == null ) {
       return "";
-    } else {
-      Object obj = decode( val );
-      if ( obj != null )
-        return obj.toString();
-      else
-        return "";
     }
+    return NumberText.toString( ByteUtil.retrieveInt( val, 0 ) );
   }
 
 
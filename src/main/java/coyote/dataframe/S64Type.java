@@ -8,6 +8,7 @@
 package coyote.dataframe;
 
 import coyote.commons.ByteUtil;
+import coyote.commons.NumberText;
 
 
 /** Type representing an signed, 64-bit value in the range of -9,223,372,036,854,775,808 to 9,223,372,036,854,775,807 */
@@ -68,13 +69,8 @@ public class S64Type implements FieldType {
   public String stringValue( byte[] val ) {
     if ( val == null ) {
       return "";
-    } else {
-      Object obj = decode( val );
-      if ( obj != null )
-        return obj.toString();
-      else
-        return "";
     }
+    return NumberText.toString( ByteUtil.retrieveLong( val, 0 ) );
   }
 
 
@@ -8,6 +8,7 @@
 package coyote.dataframe;
 
 import coyote.commons.ByteUtil;
+import coyote.commons.NumberText;
 
 
 /** Type representing an signed, 8-bit value in the range of -128 to 127 */
@@ -70,13 +71,8 @@ public class S8Type implements FieldType {
   public String stringValue( byte[] val ) {
     if ( val == null ) {
       return "";
-    } else {
-      Object obj = decode( val );
-      if ( obj != null )
-        return obj.toString();
-      else
-        return "";
     }
+    return NumberText.toString( val[0] );
   }
 
 
@@ -8,6 +8,7 @@
 package coyote.dataframe;
 
 import coyote.commons.ByteUtil;
+import coyote.commons.NumberText;
 
 
 /** Type representing an unsigned, 16-bit value in the range of 0 to 65,535 */
@@ -72,13 +73,8 @@ public class U16Type implements FieldType {
   public String stringValue( byte[] val ) {
     if ( val == null ) {
       return "";
-    } else {
-      Object obj = decode( val );
-      if ( obj != null )
-        return obj.toString();
-      else
-        return "";
     }
+    return NumberText.toString( ByteUtil.retrieveUnsignedShort( val, 0 ) );
   }
 
 
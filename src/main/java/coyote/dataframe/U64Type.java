@@ -10,6 +10,7 @@ package coyote.dataframe;
 import java.math.BigInteger;
 
 import coyote.commons.ByteUtil;
+import coyote.commons.NumberText;
 
 
 /** Type representing an unsigned, 64-bit value in the range of 0 to 18,446,744,073,709,551,615 */
@@ -78,13 +79,8 @@ public class U64Type implements FieldType {
   public String stringValue(byte[] val) {
     if (val == null) {
       return "";
-    } else {
-      Object obj = decode(val);
-      if (obj != null)
-        return obj.toString();
-      else
-        return "";
     }
+    return NumberText.toUnsignedString(ByteUtil.retrieveLong(val, 0));
   }
 
 
@@ -143,7 +143,7 @@ public class JSONMarshaler {
               writer.writeLiteral(FALSE);
             }
           } else if (field.isNumeric()) {
-            writer.writeNumber(field.getStringValue());
+            writer.writeNumber(field);
           } else if (field.isArray()) {
             Object obj = field.getObjectValue();
             if (obj instanceof DataFrame) {
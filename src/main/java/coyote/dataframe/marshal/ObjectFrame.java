@@ -0,0 +1,696 @@
+/*
+ * Copyright (c) 2018 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dataframe.marshal;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import coyote.dataframe.DataFrame;
+import coyote.dataframe.DataFrameException;
+
+
+/**
+ * Binds objects to and from DataFrames.
+ *
+ * <p>The fields of a class annotated with {@link FrameField} are bound to
+ * frame fields of the same name (or the name given in the annotation).
+ * Fields holding other bindable objects are bound to nested frames, lists
+ * are bound to nested frames of unnamed fields and enumerations are bound to
+ * their names. Null values are not placed in the frame and fields missing
+ * from a frame are left alone. Bound classes require a no-arg constructor.
+ * Objects may be referenced more than once, but objects which refer back to
+ * themselves result in a {@link MarshalException}.
+ *
+ * <p>The fields of a class are discovered once and accessed through
+ * generated accessors from then on; there is no reflection after the first
+ * use of a class. Fields with public getters and setters (following the
+ * JavaBean naming conventions) in public classes are accessed through those
+ * methods with lambdas generated by the {@code LambdaMetafactory}, the rest
+ * through method handles. Primitive fields are transferred without boxing.
+ */
+public class ObjectFrame {
+
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+  /** The binding of each class, discovered the first time it is used. */
+  private static final ClassValue<Binding> BINDINGS = new ClassValue<Binding>() {
+    @Override
+    protected Binding computeValue(final Class<?> type) {
+      return bind(type);
+    }
+  };
+
+
+
+
+  /**
+   * Create a DataFrame from the bound fields of the given object.
+   *
+   * @param obj the object to marshal
+   *
+   * @return a frame containing the values of the bound fields of the object
+   *         or null if the object is null.
+   *
+   * @throws MarshalException if the object could not be marshaled
+   */
+  public DataFrame marshal(final Object obj) {
+    if (obj == null) {
+      return null;
+    }
+    return toFrame(obj, BINDINGS.get(obj.getClass()), newPath());
+  }
+
+
+
+
+  /**
+   * Create an object of the given class from the fields of the given frame.
+   *
+   * @param frame the frame from which the values are read
+   * @param type the class of the object to create
+   *
+   * @return the new object with the values of the frame or null if the frame
+   *         is null.
+   *
+   * @throws MarshalException if the frame could not be bound to the class
+   */
+  public <T> T marshal(final DataFrame frame, final Class<T> type) {
+    if (frame == null) {
+      return null;
+    }
+    return type.cast(fromFrame(frame, BINDINGS.get(type), newPath()));
+  }
+
+
+
+
+  /**
+   * @return an empty set of the objects being marshaled, by identity.
+   */
+  private static Set<Object> newPath() {
+    return Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+  }
+
+
+
+
+  /**
+   * Add an object to those being marshaled, rejecting it if it refers back to 
+   * itself through the objects it holds.
+   */
+  private static void enter(final Object obj, final Set<Object> path) {
+    if (!path.add(obj)) {
+      throw new MarshalException("Can not marshal the cycle through " + obj.getClass().getName());
+    }
+  }
+
+
+
+
+  private static DataFrame toFrame(final Object obj, final Binding binding, final Set<Object> path) {
+    enter(obj, path);
+    final DataFrame retval = new DataFrame();
+    try {
+      for (final Property property : binding.properties) {
+        property.write(obj, retval, path);
+      }
+    } catch (final MarshalException e) {
+      throw e;
+    } catch (final ReflectiveOperationException | RuntimeException e) {
+      throw new MarshalException("Could not marshal " + binding.type.getName(), e);
+    } finally {
+      path.remove(obj);
+    }
+    return retval;
+  }
+
+
+
+
+  private static Object fromFrame(final DataFrame frame, final Binding binding, final Set<Object> path) {
+    if (binding.factory == null) {
+      throw new MarshalException(binding.type.getName() + " has no bound fields or no no-arg constructor");
+    }
+    enter(frame, path);
+    try {
+      final Object retval = binding.factory.create();
+      for (final Property property : binding.properties) {
+        final int index = frame.indexOf(property.name);
+        if (index > -1) {
+          property.read(frame, index, retval, path);
+        }
+      }
+      return retval;
+    } catch (final MarshalException e) {
+      throw e;
+    } catch (final ReflectiveOperationException | DataFrameException | RuntimeException e) {
+      throw new MarshalException("Could not marshal " + binding.type.getName(), e);
+    } finally {
+      path.remove(frame);
+    }
+  }
+
+
+
+
+  /**
+   * Convert an object value into one which can be placed in a frame.
+   */
+  private static Object toFrameValue(final Object value, final Set<Object> path) {
+    if (value instanceof List) {
+      enter(value, path);
+      final DataFrame retval = new DataFrame();
+      for (final Object element : (List<?>)value) {
+        retval.add(toFrameValue(element, path));
+      }
+      path.remove(value);
+      return retval;
+    } else if (value instanceof Enum) {
+      return ((Enum<?>)value).name();
+    } else if (value != null) {
+      final Binding binding = BINDINGS.get(value.getClass());
+      if (binding.properties.length > 0) {
+        return toFrame(value, binding, path);
+      }
+    }
+    return value;
+  }
+
+
+
+
+  /**
+   * Convert a frame value into one which can be assigned to a field of the
+   * given type.
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static Object fromFrameValue(final Object value, final Class<?> type, final Type generic, final Set<Object> path) {
+    if (List.class.isAssignableFrom(type)) {
+      // empty frames are held as null values
+      final List<Object> retval = new ArrayList<Object>();
+      if (value instanceof DataFrame) {
+        final Type element = (generic instanceof ParameterizedType) ? ((ParameterizedType)generic).getActualTypeArguments()[0] : Object.class;
+        final Class<?> elementType = (element instanceof Class) ? (Class<?>)element : (element instanceof ParameterizedType) ? (Class<?>)((ParameterizedType)element).getRawType() : Object.class;
+        final DataFrame frame = (DataFrame)value;
+        enter(frame, path);
+        for (int x = 0; x < frame.getFieldCount(); x++) {
+          retval.add(fromFrameValue(frame.getObject(x), elementType, element, path));
+        }
+        path.remove(frame);
+      } else if (value != null) {
+        throw new MarshalException("Can not assign " + value.getClass().getName() + " to a list");
+      }
+      return retval;
+    }
+
+    if (value == null || type.isInstance(value)) {
+      return value;
+    } else if (type.isEnum()) {
+      return Enum.valueOf((Class<? extends Enum>)type, value.toString());
+    } else if (value instanceof DataFrame) {
+      final Binding binding = BINDINGS.get(type);
+      if (binding.properties.length > 0) {
+        return fromFrame((DataFrame)value, binding, path);
+      }
+    } else if (value instanceof Number) {
+      final Number number = (Number)value;
+      if (type == Integer.class) {
+        return number.intValue();
+      } else if (type == Long.class) {
+        return number.longValue();
+      } else if (type == Double.class) {
+        return number.doubleValue();
+      } else if (type == Float.class) {
+        return number.floatValue();
+      } else if (type == Short.class) {
+        return number.shortValue();
+      } else if (type == Byte.class) {
+        return number.byteValue();
+      }
+    }
+    if (type == String.class) {
+      return value.toString();
+    }
+    throw new MarshalException("Can not assign " + value.getClass().getName() + " to " + type.getName());
+  }
+
+
+
+
+  /**
+   * Discover the bound fields of the given class and generate accessors.
+   */
+  private static Binding bind(final Class<?> type) {
+    final List<Property> properties = new ArrayList<Property>();
+    for (Class<?> cls = type; cls != null && cls != Object.class; cls = cls.getSuperclass()) {
+      for (final Field field : cls.getDeclaredFields()) {
+        final FrameField annotation = field.getAnnotation(FrameField.class);
+        if (annotation != null && !Modifier.isStatic(field.getModifiers())) {
+          final String name = annotation.value().isEmpty() ? field.getName() : annotation.value();
+          properties.add(property(name, type, field));
+        }
+      }
+    }
+
+    Factory factory = null;
+    if (!properties.isEmpty()) {
+      try {
+        final Constructor<?> constructor = type.getDeclaredConstructor();
+        final MethodType samType = MethodType.methodType(Object.class);
+        factory = accessor(Factory.class, "create", samType, type, constructor, LOOKUP.unreflectConstructor(accessible(constructor)), h -> () -> {
+          try {
+            return h.invokeExact();
+          } catch (final Throwable t) {
+            throw failure(t);
+          }
+        });
+      } catch (final ReflectiveOperationException e) {
+        // can only be marshaled into frames
+      }
+    }
+    return new Binding(type, factory, properties.toArray(new Property[properties.size()]));
+  }
+
+
+
+
+  /**
+   * Generate the accessors for a field and wrap them in a property.
+   */
+  private static Property property(final String name, final Class<?> bean, final Field field) {
+    final Class<?> type = field.getType();
+    final Method getter = method(field, (type == boolean.class ? "is" : "get"), type);
+    final Method setter = method(field, "set", void.class, type);
+    final MethodHandle get;
+    final MethodHandle set;
+    try {
+      get = LOOKUP.unreflectGetter(accessible(field));
+      set = LOOKUP.unreflectSetter(field);
+    } catch (final IllegalAccessException e) {
+      throw new MarshalException("Can not access " + field, e);
+    }
+
+    if (type == int.class || type == short.class || type == byte.class) {
+      final IntGetter ig = accessor(IntGetter.class, "get", MethodType.methodType(int.class, Object.class), bean, getter, get, h -> b -> {
+        try {
+          return (int)h.invokeExact(b);
+        } catch (final Throwable t) {
+          throw failure(t);
+        }
+      });
+      if (type == int.class) {
+        final IntSetter is = accessor(IntSetter.class, "set", MethodType.methodType(void.class, Object.class, int.class), bean, setter, set, h -> (b, v) -> {
+          try {
+            h.invokeExact(b, v);
+          } catch (final Throwable t) {
+            throw failure(t);
+          }
+        });
+        return new Property(name) {
+          @Override
+          void write(final Object obj, final DataFrame frame, final Set<Object> path) throws ReflectiveOperationException {
+            frame.put(name, ig.get(obj));
+          }
+
+          @Override
+          void read(final DataFrame frame, final int index, final Object obj, final Set<Object> path) throws ReflectiveOperationException, DataFrameException {
+            is.set(obj, frame.getAsInt(index));
+          }
+        };
+      } else if (type == short.class) {
+        final ShortSetter ss = accessor(ShortSetter.class, "set", MethodType.methodType(void.class, Object.class, short.class), bean, setter, set, h -> (b, v) -> {
+          try {
+            h.invokeExact(b, v);
+          } catch (final Throwable t) {
+            throw failure(t);
+          }
+        });
+        return new Property(name) {
+          @Override
+          void write(final Object obj, final DataFrame frame, final Set<Object> path) throws ReflectiveOperationException {
+            frame.put(name, (short)ig.get(obj));
+          }
+
+          @Override
+          void read(final DataFrame frame, final int index, final Object obj, final Set<Object> path) throws ReflectiveOperationException, DataFrameException {
+            ss.set(obj, (short)frame.getAsInt(index));
+          }
+        };
+      } else {
+        final ByteSetter bs = accessor(ByteSetter.class, "set", MethodType.methodType(void.class, Object.class, byte.class), bean, setter, set, h -> (b, v) -> {
+          try {
+            h.invokeExact(b, v);
+          } catch (final Throwable t) {
+            throw failure(t);
+          }
+        });
+        return new Property(name) {
+          @Override
+          void write(final Object obj, final DataFrame frame, final Set<Object> path) throws ReflectiveOperationException {
+            frame.put(name, (short)ig.get(obj));
+          }
+
+          @Override
+          void read(final DataFrame frame, final int index, final Object obj, final Set<Object> path) throws ReflectiveOperationException, DataFrameException {
+            bs.set(obj, (byte)frame.getAsInt(index));
+          }
+        };
+      }
+    } else if (type == long.class) {
+      final LongGetter lg = accessor(LongGetter.class, "get", MethodType.methodType(long.class, Object.class), bean, getter, get, h -> b -> {
+        try {
+          return (long)h.invokeExact(b);
+        } catch (final Throwable t) {
+          throw failure(t);
+        }
+      });
+      final LongSetter ls = accessor(LongSetter.class, "set", MethodType.methodType(void.class, Object.class, long.class), bean, setter, set, h -> (b, v) -> {
+        try {
+          h.invokeExact(b, v);
+        } catch (final Throwable t) {
+          throw failure(t);
+        }
+      });
+      return new Property(name) {
+        @Override
+        void write(final Object obj, final DataFrame frame, final Set<Object> path) throws ReflectiveOperationException {
+          frame.put(name, lg.get(obj));
+        }
+
+        @Override
+        void read(final DataFrame frame, final int index, final Object obj, final Set<Object> path) throws ReflectiveOperationException, DataFrameException {
+          ls.set(obj, frame.getAsLong(index));
+        }
+      };
+    } else if (type == double.class || type == float.class) {
+      final DoubleGetter dg = accessor(DoubleGetter.class, "get", MethodType.methodType(double.class, Object.class), bean, getter, get, h -> b -> {
+        try {
+          return (double)h.invokeExact(b);
+        } catch (final Throwable t) {
+          throw failure(t);
+        }
+      });
+      if (type == double.class) {
+        final DoubleSetter ds = accessor(DoubleSetter.class, "set", MethodType.methodType(void.class, Object.class, double.class), bean, setter, set, h -> (b, v) -> {
+          try {
+            h.invokeExact(b, v);
+          } catch (final Throwable t) {
+            throw failure(t);
+          }
+        });
+        return new Property(name) {
+          @Override
+          void write(final Object obj, final DataFrame frame, final Set<Object> path) throws ReflectiveOperationException {
+            frame.put(name, dg.get(obj));
+          }
+
+          @Override
+          void read(final DataFrame frame, final int index, final Object obj, final Set<Object> path) throws ReflectiveOperationException, DataFrameException {
+            ds.set(obj, frame.getAsDouble(index));
+          }
+        };
+      } else {
+        final FloatSetter fs = accessor(FloatSetter.class, "set", MethodType.methodType(void.class, Object.class, float.class), bean, setter, set, h -> (b, v) -> {
+          try {
+            h.invokeExact(b, v);
+          } catch (final Throwable t) {
+            throw failure(t);
+          }
+        });
+        return new Property(name) {
+          @Override
+          void write(final Object obj, final DataFrame frame, final Set<Object> path) throws ReflectiveOperationException {
+            frame.put(name, (float)dg.get(obj));
+          }
+
+          @Override
+          void read(final DataFrame frame, final int index, final Object obj, final Set<Object> path) throws ReflectiveOperationException, DataFrameException {
+            fs.set(obj, frame.getAsFloat(index));
+          }
+        };
+      }
+    } else if (type == boolean.class) {
+      final BooleanGetter bg = accessor(BooleanGetter.class, "get", MethodType.methodType(boolean.class, Object.class), bean, getter, get, h -> b -> {
+        try {
+          return (boolean)h.invokeExact(b);
+        } catch (final Throwable t) {
+          throw failure(t);
+        }
+      });
+      final BooleanSetter bs = accessor(BooleanSetter.class, "set", MethodType.methodType(void.class, Object.class, boolean.class), bean, setter, set, h -> (b, v) -> {
+        try {
+          h.invokeExact(b, v);
+        } catch (final Throwable t) {
+          throw failure(t);
+        }
+      });
+      return new Property(name) {
+        @Override
+        void write(final Object obj, final DataFrame frame, final Set<Object> path) throws ReflectiveOperationException {
+          frame.put(name, bg.get(obj));
+        }
+
+        @Override
+        void read(final DataFrame frame, final int index, final Object obj, final Set<Object> path) throws ReflectiveOperationException, DataFrameException {
+          bs.set(obj, frame.getAsBoolean(index));
+        }
+      };
+    } else {
+      final Type generic = field.getGenericType();
+      final ObjectGetter og = accessor(ObjectGetter.class, "get", MethodType.methodType(Object.class, Object.class), bean, getter, get, h -> b -> {
+        try {
+          return (Object)h.invokeExact(b);
+        } catch (final Throwable t) {
+          throw failure(t);
+        }
+      });
+      final ObjectSetter os = accessor(ObjectSetter.class, "set", MethodType.methodType(void.class, Object.class, Object.class), bean, setter, set, h -> (b, v) -> {
+        try {
+          h.invokeExact(b, v);
+        } catch (final Throwable t) {
+          throw failure(t);
+        }
+      });
+      return new Property(name) {
+        @Override
+        void write(final Object obj, final DataFrame frame, final Set<Object> path) throws ReflectiveOperationException {
+          final Object value = og.get(obj);
+          if (value != null) {
+            frame.put(name, toFrameValue(value, path));
+          }
+        }
+
+        @Override
+        void read(final DataFrame frame, final int index, final Object obj, final Set<Object> path) throws ReflectiveOperationException, DataFrameException {
+          os.set(obj, fromFrameValue(frame.getObject(index), type, generic, path));
+        }
+      };
+    }
+  }
+
+
+
+
+  /**
+   * Generate an accessor implementing the given interface.
+   *
+   * <p>Public methods of public classes are bound directly with the
+   * {@code LambdaMetafactory}. Anything else is called through the given
+   * method handle, adapted to the type of the interface method.
+   */
+  private static <T> T accessor(final Class<T> iface, final String sam, final MethodType samType, final Class<?> bean, final Member member, final MethodHandle handle, final Adapter<T> adapter) {
+    if (member != null && Modifier.isPublic(member.getModifiers()) && Modifier.isPublic(member.getDeclaringClass().getModifiers())) {
+      try {
+        final MethodHandle impl;
+        final MethodType instantiated;
+        if (member instanceof Method) {
+          impl = LOOKUP.unreflect((Method)member);
+          instantiated = MethodType.methodType(samType.returnType(), bean, ((Method)member).getParameterTypes());
+        } else {
+          impl = LOOKUP.unreflectConstructor((Constructor<?>)member);
+          instantiated = samType.changeReturnType(bean);
+        }
+        return iface.cast(LambdaMetafactory.metafactory(LOOKUP, sam, MethodType.methodType(iface), samType, impl, instantiated).getTarget().invoke());
+      } catch (final Throwable t) {
+        // not accessible from here, fall back to the method handle
+      }
+    }
+    return adapter.adapt(handle.asType(samType));
+  }
+
+
+
+
+  /**
+   * Translate the failure of an accessor called through a method handle into 
+   * the exceptions accessors may throw; unchecked exceptions and errors are 
+   * rethrown as they are.
+   */
+  private static ReflectiveOperationException failure(final Throwable t) {
+    if (t instanceof RuntimeException) {
+      throw (RuntimeException)t;
+    } else if (t instanceof Error) {
+      throw (Error)t;
+    } else if (t instanceof ReflectiveOperationException) {
+      return (ReflectiveOperationException)t;
+    }
+    return new InvocationTargetException(t);
+  }
+
+
+
+
+  /**
+   * Find a public accessor method of the given field.
+   */
+  private static Method method(final Field field, final String prefix, final Class<?> returnType, final Class<?>... parameters) {
+    final String name = prefix + Character.toUpperCase(field.getName().charAt(0)) + field.getName().substring(1);
+    try {
+      final Method retval = field.getDeclaringClass().getMethod(name, parameters);
+      return (retval.getReturnType() == returnType) ? retval : null;
+    } catch (final NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+
+
+
+  private static <T extends java.lang.reflect.AccessibleObject> T accessible(final T member) {
+    member.setAccessible(true);
+    return member;
+  }
+
+
+
+
+  /**
+   * The bound fields of a class and the means to create instances of it.
+   */
+  private static final class Binding {
+    final Class<?> type;
+    final Factory factory;
+    final Property[] properties;
+
+
+
+
+    Binding(final Class<?> type, final Factory factory, final Property[] properties) {
+      this.type = type;
+      this.factory = factory;
+      this.properties = properties;
+    }
+  }
+
+
+
+
+  /**
+   * Transfers the value of one field between objects and frames.
+   */
+  private static abstract class Property {
+    final String name;
+
+
+
+
+    Property(final String name) {
+      this.name = name;
+    }
+
+
+
+
+    abstract void write(Object obj, DataFrame frame, Set<Object> path) throws ReflectiveOperationException;
+
+
+
+
+    abstract void read(DataFrame frame, int index, Object obj, Set<Object> path) throws ReflectiveOperationException, DataFrameException;
+  }
+
+
+
+
+  /** Turns a method handle into an accessor. */
+  private interface Adapter<T> {
+    T adapt(MethodHandle handle);
+  }
+
+  interface Factory {
+    Object create() throws ReflectiveOperationException;
+  }
+
+  interface IntGetter {
+    int get(Object bean) throws ReflectiveOperationException;
+  }
+
+  interface LongGetter {
+    long get(Object bean) throws ReflectiveOperationException;
+  }
+
+  interface DoubleGetter {
+    double get(Object bean) throws ReflectiveOperationException;
+  }
+
+  interface BooleanGetter {
+    boolean get(Object bean) throws ReflectiveOperationException;
+  }
+
+  interface ObjectGetter {
+    Object get(Object bean) throws ReflectiveOperationException;
+  }
+
+  interface IntSetter {
+    void set(Object bean, int value) throws ReflectiveOperationException;
+  }
+
+  interface ShortSetter {
+    void set(Object bean, short value) throws ReflectiveOperationException;
+  }
+
+  interface ByteSetter {
+    void set(Object bean, byte value) throws ReflectiveOperationException;
+  }
+
+  interface LongSetter {
+    void set(Object bean, long value) throws ReflectiveOperationException;
+  }
+
+  interface FloatSetter {
+    void set(Object bean, float value) throws ReflectiveOperationException;
+  }
+
+  interface DoubleSetter {
+    void set(Object bean, double value) throws ReflectiveOperationException;
+  }
+
+  interface BooleanSetter {
+    void set(Object bean, boolean value) throws ReflectiveOperationException;
+  }
+
+  interface ObjectSetter {
+    void set(Object bean, Object value) throws ReflectiveOperationException;
+  }
+
+}
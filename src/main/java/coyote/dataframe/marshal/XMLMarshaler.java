@@ -160,13 +160,15 @@ public class XMLMarshaler {
           writer.writeFieldType(field);
 
           // if there is a value
-          if (field.getValue().length > 0) {
+          if (field.isNotNull()) {
             writer.writeTagClose();
 
             if (field.getType() == DataField.FRAMETYPE) {
               writer.writeFrameOpen();
               writeFrame((DataFrame)field.getObjectValue(), writer);
               writer.writeFrameClose();
+            } else if (field.isNumeric()) {
+              writer.writeNumber(field);
             } else {
               writer.writeLiteral(field.getStringValue());
             }
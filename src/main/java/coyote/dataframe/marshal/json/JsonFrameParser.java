@@ -14,6 +14,10 @@ import coyote.dataframe.marshal.ParseException;
 /**
  * Parse JSON text into DataFrames.
  * 
+ * <p>Nested objects and arrays are placed in their parent as live frames; 
+ * nothing is encoded while parsing. The wire format of the resulting tree is 
+ * produced in a single pass only if and when it is requested.
+ * 
  * http://www.ietf.org/rfc/rfc4627.txt
  */
 public class JsonFrameParser {
@@ -2,6 +2,12 @@ package coyote.dataframe.marshal.json;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import coyote.commons.NumberText;
+import coyote.dataframe.DataField;
 
 
 public class JsonWriter {
@@ -16,6 +22,7 @@ public class JsonWriter {
   private static final char[] UNICODE_2028_CHARS = {'\\', 'u', '2', '0', '2', '8'};
   private static final char[] UNICODE_2029_CHARS = {'\\', 'u', '2', '0', '2', '9'};
   private static final char[] HEX_DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+  private final char[] numberBuffer = new char[NumberText.MAX_LENGTH];
 
 
 
@@ -156,6 +163,50 @@ public class JsonWriter {
 
 
 
+  /**
+   * Writes the numeric value of the field to the underlying writer.
+   * 
+   * <p>The digits are generated directly into a reusable buffer so no 
+   * strings are created for the value.
+   * 
+   * @param field the field containing the value to write
+   * 
+   * @throws IOException if writing encountered an error
+   */
+  public void writeNumber(final DataField field) throws IOException {
+    final int length = field.formatNumber(numberBuffer, 0);
+    if (length < 0) {
+      writer.write(field.getStringValue());
+    } else {
+      writer.write(numberBuffer, 0, length);
+    }
+  }
+
+
+
+
+  /**
+   * Writes the number to the underlying writer.
+   * 
+   * @param value the value to write
+   * 
+   * @throws IOException if writing encountered an error
+   */
+  public void writeNumber(final Number value) throws IOException {
+    if (value instanceof Double) {
+      writer.write(numberBuffer, 0, NumberText.format(value.doubleValue(), numberBuffer, 0));
+    } else if (value instanceof Float) {
+      writer.write(numberBuffer, 0, NumberText.format(value.floatValue(), numberBuffer, 0));
+    } else if (value instanceof BigInteger || value instanceof BigDecimal) {
+      writer.write(value.toString());
+    } else {
+      writer.write(numberBuffer, 0, NumberText.format(value.longValue(), numberBuffer, 0));
+    }
+  }
+
+
+
+
   public void writeObjectClose() throws IOException {
     writer.write('}');
   }
@@ -192,19 +243,33 @@ public class JsonWriter {
       if (value instanceof Object[]) {
         Object[] array = (Object[])value;
         for (int x = 0; x < array.length; x++) {
-          if (array[x] != null) {
-            if (array[x] instanceof Number) {
-              writeNumber(array[x].toString());
-            } else if (array[x] instanceof Boolean) {
-              writeLiteral(array[x].toString());
-            } else {
-              writeString(array[x].toString());
-            }
+          if (array[x] == null) {
+            writeLiteral("null");
+          } else if (array[x] instanceof Number) {
+            writeNumber((Number)array[x]);
+          } else if (array[x] instanceof Boolean) {
+            writeLiteral(array[x].toString());
+          } else {
+            writeString(array[x].toString());
           }
           if (x + 1 < array.length) {
             writeObjectSeparator();
           }
         }
+      } else if (value.getClass().isArray()) {
+        // arrays of primitives hold only numbers or booleans
+        final int length = Array.getLength(value);
+        for (int x = 0; x < length; x++) {
+          final Object element = Array.get(value, x);
+          if (element instanceof Number) {
+            writeNumber((Number)element);
+          } else {
+            writeLiteral(element.toString());
+          }
+          if (x + 1 < length) {
+            writeObjectSeparator();
+          }
+        }
       } else {
         System.err.println("JsonWriter.writeArray cannot handle " + value.getClass().getSimpleName());
       }
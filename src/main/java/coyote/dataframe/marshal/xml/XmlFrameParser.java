@@ -25,6 +25,10 @@ import coyote.dataframe.marshal.ParseException;
  * <p>Attributes are largely ignored as they do not map to the fields concept. 
  * The notable exception is the use of the {@code type} attribute to indicate 
  * the type the field value contains.
+ * 
+ * <p>Nested fields are placed in their parent as live frames; nothing is 
+ * encoded while parsing. The wire format of the resulting tree is produced in
+ * a single pass only if and when it is requested.
  */
 public class XmlFrameParser extends StringParser {
   private static final String XML_DELIMS = " \t\n><";
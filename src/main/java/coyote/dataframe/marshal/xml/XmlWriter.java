@@ -3,6 +3,7 @@ package coyote.dataframe.marshal.xml;
 import java.io.IOException;
 import java.io.Writer;
 
+import coyote.commons.NumberText;
 import coyote.dataframe.DataField;
 
 
@@ -18,6 +19,7 @@ public class XmlWriter {
   private static final char[] UNICODE_2029_CHARS = {'\\', 'u', '2', '0', '2', '9'};
   private static final char[] HEX_DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
   public final Writer writer;
+  private final char[] numberBuffer = new char[NumberText.MAX_LENGTH];
 
 
 
@@ -140,6 +142,28 @@ public class XmlWriter {
 
 
 
+  /**
+   * Writes the numeric value of the field to the underlying writer.
+   * 
+   * <p>The digits are generated directly into a reusable buffer so no 
+   * strings are created for the value.
+   * 
+   * @param field the field containing the value to write
+   * 
+   * @throws IOException if writing encountered an error
+   */
+  public void writeNumber(final DataField field) throws IOException {
+    final int length = field.formatNumber(numberBuffer, 0);
+    if (length < 0) {
+      writer.write(field.getStringValue());
+    } else {
+      writer.write(numberBuffer, 0, length);
+    }
+  }
+
+
+
+
   public void writeSpace() throws IOException {
     writer.write(' ');
   }
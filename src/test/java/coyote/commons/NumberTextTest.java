@@ -0,0 +1,156 @@
+/*
+ *
+ */
+package coyote.commons;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+/**
+ *
+ */
+public class NumberTextTest {
+
+  /**
+   * @return the significant digits of the shortest decimal which rounds to
+   *         the value, found the slow way
+   */
+  private static String shortest(double value) {
+    for (int precision = 1; precision <= 17; precision++) {
+      BigDecimal decimal = new BigDecimal(value).round(new MathContext(precision, RoundingMode.HALF_EVEN));
+      if (decimal.doubleValue() == value) {
+        return decimal.stripTrailingZeros().unscaledValue().abs().toString();
+      }
+    }
+    return null;
+  }
+
+
+
+
+  /**
+   * @return the significant digits of the text
+   */
+  private static String significand(String text) {
+    String retval = text.replace("-", "").split("e")[0].replace(".", "");
+    return retval.replaceFirst("^0+", "").replaceFirst("0+$", "");
+  }
+
+
+
+
+  @Test
+  public void testLong() {
+    assertEquals("0", NumberText.toString(0L));
+    assertEquals("7", NumberText.toString(7L));
+    assertEquals("-42", NumberText.toString(-42L));
+    assertEquals("100", NumberText.toString(100L));
+    assertEquals("1234567890123", NumberText.toString(1234567890123L));
+    assertEquals(Long.toString(Long.MAX_VALUE), NumberText.toString(Long.MAX_VALUE));
+    assertEquals(Long.toString(Long.MIN_VALUE), NumberText.toString(Long.MIN_VALUE));
+    assertEquals("18446744073709551615", NumberText.toUnsignedString(-1L));
+    assertEquals("9223372036854775808", NumberText.toUnsignedString(Long.MIN_VALUE));
+    assertEquals("9999999999999999999", NumberText.toUnsignedString(-8446744073709551617L));
+    assertEquals("10000000000000000000", NumberText.toUnsignedString(-8446744073709551616L));
+
+    Random random = new Random(7);
+    for (int x = 0; x < 10000; x++) {
+      long value = random.nextLong() >> random.nextInt(64);
+      assertEquals(Long.toString(value), NumberText.toString(value));
+    }
+  }
+
+
+
+
+  @Test
+  public void testDouble() {
+    assertEquals("0", NumberText.toString(0D));
+    assertEquals("-0", NumberText.toString(-0D));
+    assertEquals("1", NumberText.toString(1D));
+    assertEquals("-100", NumberText.toString(-100D));
+    assertEquals("0.5", NumberText.toString(0.5D));
+    assertEquals("0.1", NumberText.toString(0.1D));
+    assertEquals("0.30000000000000004", NumberText.toString(0.1D + 0.2D));
+    assertEquals("2226.06269592", NumberText.toString(2226.06269592D));
+    assertEquals("0.00005479", NumberText.toString(0.00005479D));
+    assertEquals("0.000001", NumberText.toString(1e-6D));
+    assertEquals("1e-7", NumberText.toString(1e-7D));
+    assertEquals("1.5e-8", NumberText.toString(1.5e-8D));
+    assertEquals("100000000000000000000", NumberText.toString(1e20D));
+    assertEquals("1e+21", NumberText.toString(1e21D));
+    assertEquals("1e+23", NumberText.toString(1e23D));
+    assertEquals("4.9e-324", NumberText.toString(Double.MIN_VALUE));
+    assertEquals("1.7976931348623157e+308", NumberText.toString(Double.MAX_VALUE));
+    assertEquals("NaN", NumberText.toString(Double.NaN));
+    assertEquals("Infinity", NumberText.toString(Double.POSITIVE_INFINITY));
+    assertEquals("-Infinity", NumberText.toString(Double.NEGATIVE_INFINITY));
+  }
+
+
+
+
+  @Test
+  public void testShortestRoundTrip() {
+    Random random = new Random(42);
+    for (int x = 0; x < 20000; x++) {
+      double value = Double.longBitsToDouble(random.nextLong());
+      if (Double.isNaN(value) || Double.isInfinite(value)) {
+        continue;
+      }
+      String text = NumberText.toString(value);
+      assertEquals(text, value, Double.parseDouble(text), 0D);
+      assertEquals(text, shortest(value), significand(text));
+    }
+  }
+
+
+
+
+  @Test
+  public void testFloat() {
+    assertEquals("1", NumberText.toString(1F));
+    assertEquals("0.1", NumberText.toString(0.1F));
+    assertEquals("2226.0627", NumberText.toString(2226.06269592F));
+    assertEquals("16777216", NumberText.toString(16777216F));
+    assertEquals("1.4e-45", NumberText.toString(Float.MIN_VALUE));
+    assertEquals("1.1754944e-38", NumberText.toString(Float.MIN_NORMAL));
+    assertEquals("3.4028235e+38", NumberText.toString(Float.MAX_VALUE));
+
+    Random random = new Random(42);
+    for (int x = 0; x < 20000; x++) {
+      float value = Float.intBitsToFloat(random.nextInt());
+      if (Float.isNaN(value) || Float.isInfinite(value)) {
+        continue;
+      }
+      String text = NumberText.toString(value);
+      assertEquals(text, value, Float.parseFloat(text), 0F);
+    }
+  }
+
+
+
+
+  @Test
+  public void testBuffer() throws Exception {
+    char[] buffer = new char[NumberText.MAX_LENGTH + 2];
+    buffer[0] = '[';
+    int length = NumberText.format(-1.25e-300, buffer, 1);
+    assertEquals("[-1.25e-300", new String(buffer, 0, length + 1));
+
+    StringWriter writer = new StringWriter();
+    NumberText.write(12L, buffer, writer);
+    writer.write(',');
+    NumberText.write(0.25D, buffer, writer);
+    assertEquals("12,0.25", writer.toString());
+  }
+
+}
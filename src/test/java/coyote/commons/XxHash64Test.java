@@ -0,0 +1,65 @@
+/*
+ *
+ */
+package coyote.commons;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+/**
+ *
+ */
+public class XxHash64Test {
+
+  private static long hash(String text, long seed) {
+    byte[] data = text.getBytes(StandardCharsets.UTF_8);
+    return XxHash64.hash(data, 0, data.length, seed);
+  }
+
+
+
+
+  @Test
+  public void testKnownValues() {
+    assertEquals(0xEF46DB3751D8E999L, hash("", 0));
+    assertEquals(0xD24EC4F1A98C6E5BL, hash("a", 0));
+    assertEquals(0x44BC2CF5AD770999L, hash("abc", 0));
+    assertEquals(0xFBCEA83C8A378BF1L, hash("Nobody inspects the spammish repetition", 0));
+    assertEquals(0xB559B98D844E0635L, hash("xxhash", 20141025));
+  }
+
+
+
+
+  @Test
+  public void testIncremental() {
+    Random random = new Random(1);
+    for (int length = 0; length < 200; length++) {
+      byte[] data = new byte[length];
+      random.nextBytes(data);
+      XxHash64 checksum = new XxHash64(99);
+      int pos = 0;
+      while (pos < length) {
+        int count = Math.min(length - pos, random.nextInt(40));
+        if (count == 1) {
+          checksum.update(data[pos]);
+        } else {
+          checksum.update(data, pos, count);
+        }
+        pos += count;
+      }
+      assertEquals(XxHash64.hash(data, 0, length, 99), checksum.getValue());
+    }
+
+    XxHash64 checksum = new XxHash64();
+    checksum.update("abc".getBytes(StandardCharsets.UTF_8));
+    checksum.reset();
+    assertEquals(0xEF46DB3751D8E999L, checksum.getValue());
+  }
+
+}
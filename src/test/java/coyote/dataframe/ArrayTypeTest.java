@@ -7,8 +7,12 @@
  */
 package coyote.dataframe;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
 
 import org.junit.Test;
 
@@ -188,6 +192,107 @@ public class ArrayTypeTest {
 
 
 
+  @Test
+  public void largeElements() {
+    char[] text = new char[70000];
+    Arrays.fill( text, 'x' );
+    Object[] values = new Object[] { "A", new String( text ), new String( text, 0, 65535 ), "B" };
+
+    ArrayType subject = new ArrayType();
+    byte[] payload = subject.encode( values );
+    // elements of up to 65535 octets keep their 2 octet length, larger ones take 4
+    assertEquals( 4 * 3 + 2 + 1 + 70000 + 65535 + 1, payload.length );
+    assertEquals( (byte)( DataField.STRING | 0x80 ), payload[4] );
+
+    DataFrame array = (DataFrame)subject.decode( payload );
+    assertEquals( 4, array.size() );
+    assertEquals( "A", array.getField( 0 ).getStringValue() );
+    assertEquals( values[1], array.getField( 1 ).getStringValue() );
+    assertEquals( values[2], array.getField( 2 ).getStringValue() );
+    assertEquals( "B", array.getField( 3 ).getStringValue() );
+  }
+
+
+
+
+  @Test
+  public void originalLongestElement() {
+    // an element of 65535 octets as encoded before longer elements were supported
+    byte[] payload = new byte[3 + 65535 + 4];
+    payload[0] = (byte)DataField.STRING;
+    payload[1] = (byte)0xFF;
+    payload[2] = (byte)0xFF;
+    Arrays.fill( payload, 3, 3 + 65535, (byte)'x' );
+    payload[3 + 65535] = (byte)DataField.STRING;
+    payload[3 + 65535 + 2] = 1;
+    payload[3 + 65535 + 3] = 'B';
+
+    DataFrame array = (DataFrame)new ArrayType().decode( payload );
+    assertEquals( 2, array.size() );
+    assertEquals( 65535, array.getField( 0 ).getStringValue().length() );
+    assertEquals( "B", array.getField( 1 ).getStringValue() );
+    assertArrayEquals( payload, new ArrayType().encode( new Object[] { array.getField( 0 ).getStringValue(), "B" } ) );
+  }
+
+
+
+
+  @Test
+  public void packedArrays() {
+    ArrayType subject = new ArrayType();
+    assertTrue( subject.checkType( new double[0] ) );
+    assertTrue( subject.checkType( new int[0] ) );
+
+    int[] ints = { 0, -1, Integer.MAX_VALUE, Integer.MIN_VALUE };
+    byte[] payload = subject.encode( ints );
+    assertEquals( ArrayType.PACKED_HEADER + 4 * ints.length, payload.length );
+    assertArrayEquals( ints, (int[])subject.decode( payload ) );
+
+    long[] longs = { 0, Long.MIN_VALUE, Long.MAX_VALUE };
+    assertArrayEquals( longs, (long[])subject.decode( subject.encode( longs ) ) );
+    short[] shorts = { 0, Short.MIN_VALUE, Short.MAX_VALUE };
+    assertArrayEquals( shorts, (short[])subject.decode( subject.encode( shorts ) ) );
+    float[] floats = { 0F, -1.5F, Float.MAX_VALUE };
+    assertArrayEquals( floats, (float[])subject.decode( subject.encode( floats ) ), 0 );
+    double[] doubles = { 0D, -1.5D, Double.MIN_VALUE, Double.NaN };
+    assertArrayEquals( doubles, (double[])subject.decode( subject.encode( doubles ) ), 0 );
+
+    // booleans take one bit each
+    boolean[] booleans = new boolean[11];
+    booleans[0] = booleans[7] = booleans[10] = true;
+    payload = subject.encode( booleans );
+    assertEquals( ArrayType.PACKED_HEADER + 2, payload.length );
+    assertTrue( Arrays.equals( booleans, (boolean[])subject.decode( payload ) ) );
+
+    String[] strings = { "", null, "summer", new String( new char[200] ).replace( '\0', 's' ) };
+    assertArrayEquals( strings, (String[])subject.decode( subject.encode( strings ) ) );
+
+    // empty arrays keep their type
+    assertEquals( 0, ( (double[])subject.decode( subject.encode( new double[0] ) ) ).length );
+    assertEquals( "[]", subject.stringValue( subject.encode( new int[0] ) ) );
+    assertEquals( "[1,2]", subject.stringValue( subject.encode( new long[] { 1, 2 } ) ) );
+
+    // counts must match the values
+    payload = subject.encode( ints );
+    payload[5]++;
+    try {
+      subject.decode( payload );
+      fail( "mismatched count decoded" );
+    } catch ( IllegalArgumentException e ) {
+      // expected
+    }
+    payload = subject.encode( strings );
+    try {
+      subject.decode( Arrays.copyOf( payload, payload.length - 1 ) );
+      fail( "truncated strings decoded" );
+    } catch ( IllegalArgumentException e ) {
+      // expected
+    }
+  }
+
+
+
+
   @Test
   public void testToString() {
     ArrayType subject = new ArrayType();
@@ -0,0 +1,151 @@
+/*
+ *
+ */
+package coyote.dataframe;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.Test;
+
+
+/**
+ *
+ */
+public class CompactFormatTest {
+
+  private static DataFrame sample() throws Exception {
+    DataFrame frame = new DataFrame();
+    frame.add("text", "compact");
+    frame.add("small", 7);
+    frame.add("negative", -3);
+    frame.add("short", (short)-200);
+    frame.add("min", Integer.MIN_VALUE);
+    frame.add("max", Long.MAX_VALUE);
+    frame.add("low", Long.MIN_VALUE);
+    frame.add(new DataField("unsigned", DataField.U64, new byte[] { -1, -1, -1, -1, -1, -1, -1, -1 }));
+    frame.add("float", 1.5F);
+    frame.add("double", -2.25D);
+    frame.add("flag", true);
+    frame.add("when", new Date(1500000000000L));
+    frame.add("where", new URI("http://coyote.systems/"));
+    frame.add("bytes", new byte[300]);
+    frame.add("nothing", null);
+    frame.add("array", new Object[] { "a", 1, -1L });
+    frame.add("unnamed");
+    frame.add("empty", new DataFrame());
+    frame.add("nested", new DataFrame().set("id", -5).set("inner", new DataFrame().set("deep", "value")));
+    return frame;
+  }
+
+
+
+
+  @Test
+  public void roundTrip() throws Exception {
+    DataFrame frame = sample();
+    byte[] compact = CompactFormat.encode(frame);
+    byte[] original = frame.getBytes();
+    assertTrue(compact.length < original.length);
+
+    // both formats are read by the same constructor
+    assertEquals(frame, new DataFrame(compact));
+    assertEquals(frame, new DataFrame(original));
+
+    DataFrame decoded = new DataFrame(compact);
+    assertEquals(-3, decoded.getAsInt("negative"));
+    assertEquals(Long.MIN_VALUE, decoded.getAsLong("low"));
+    assertEquals(-5, decoded.getAsFrame("nested").getAsInt("id"));
+    assertEquals("value", decoded.getAsFrame("nested").getAsFrame("inner").getAsString("deep"));
+    assertArrayEquals(frame.getField("unsigned").getValue(), decoded.getField("unsigned").getValue());
+    assertArrayEquals(original, decoded.getBytes());
+
+    // empty frames are just the header
+    assertEquals(CompactFormat.HEADER_SIZE, CompactFormat.encode(new DataFrame()).length);
+    assertTrue(new DataFrame(CompactFormat.encode(new DataFrame())).isEmpty());
+  }
+
+
+
+
+  @Test
+  public void varints() {
+    DataFrame frame = new DataFrame();
+    frame.add("n", -1);
+    byte type = (byte)frame.getField("n").getType();
+    // zig-zag encoding makes -1 a single octet
+    assertArrayEquals(new byte[] { 0, DataFrame.EXTENSION, DataFrame.COMPACT_FORMAT, 1, 'n', type, 1 }, CompactFormat.encode(frame));
+
+    frame = new DataFrame();
+    frame.add("s", new String(new char[200]).replace('\0', 'x'));
+    byte[] data = CompactFormat.encode(frame);
+    // a length of 200 takes two octets
+    assertEquals(CompactFormat.HEADER_SIZE + 2 + 1 + 2 + 200, data.length);
+    assertEquals((byte)0xC8, data[6]);
+    assertEquals(1, data[7]);
+  }
+
+
+
+
+  @Test
+  public void invalidData() {
+    // a length beyond what an array can hold
+    byte[] data = { 0, DataFrame.EXTENSION, DataFrame.COMPACT_FORMAT, 1, 's', DataField.STRING, (byte)0x80, (byte)0x80, (byte)0x80, (byte)0x80, 0x10 };
+    try {
+      new DataFrame(data);
+      fail("oversized value decoded");
+    } catch (DecodeException e) {
+      assertTrue(e.getMessage().contains("exceeds"));
+    }
+
+    // the same in the original format, whose lengths are unsigned
+    data = new byte[] { 1, 's', DataField.STRING, (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xF0 };
+    try {
+      new DataFrame(data);
+      fail("oversized value decoded");
+    } catch (DecodeException e) {
+      assertTrue(e.getMessage().contains("exceeds"));
+    }
+
+    // truncated values and varints
+    byte[] compact = CompactFormat.encode(new DataFrame().set("text", "truncated").set("n", 300));
+    for (int length : new int[] { compact.length - 1, compact.length - 6, 11 }) {
+      try {
+        new DataFrame(Arrays.copyOf(compact, length));
+        fail("truncated frame decoded");
+      } catch (DecodeException e) {
+        // expected
+      }
+    }
+
+    // integers which do not fit their type
+    data = new byte[] { 0, DataFrame.EXTENSION, DataFrame.COMPACT_FORMAT, 1, 'n', DataField.U16, (byte)0x80, (byte)0x80, 0x04 };
+    try {
+      new DataFrame(data);
+      fail("oversized integer decoded");
+    } catch (DecodeException e) {
+      // expected
+    }
+  }
+
+
+
+
+  @Test
+  public void nullValues() {
+    DataFrame frame = new DataFrame();
+    frame.add("nothing", null);
+    DataFrame decoded = new DataFrame(CompactFormat.encode(frame));
+    assertEquals(1, decoded.size());
+    assertNull(decoded.getObject("nothing"));
+  }
+
+}
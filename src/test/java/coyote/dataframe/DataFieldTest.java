@@ -3,8 +3,10 @@
  */
 package coyote.dataframe;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -173,6 +175,25 @@ public class DataFieldTest {
 
 
 
+  /**
+   * Clones share their value until one of them changes it.
+   */
+  @Test
+  public void testCloneSharesValue() {
+    DataField original = new DataField( "Test", 17345 );
+    DataField copy = (DataField)original.clone();
+    assertSame( original.getValue(), copy.getValue() );
+
+    assertFalse( copy.overwrite( original.type, 2, 1 ) );
+    copy.assign( 42 );
+    assertTrue( copy.overwrite( copy.type, copy.getLength(), 43 ) );
+    assertEquals( 17345, original.getObjectValue() );
+    assertEquals( 43, copy.getObjectValue() );
+  }
+
+
+
+
   /**
    * Test method for {@link coyote.dataframe.DataField#isNumeric()}.
    */
@@ -204,4 +225,45 @@ public class DataFieldTest {
     assertTrue( text.length() < 170 );
   }
 
+
+
+
+  /**
+   * Test method for {@link coyote.dataframe.DataField#getEncodedSize()}.
+   */
+  @Test
+  public void testEncodedSize() {
+    DataField subject = new DataField( "Test", 32767 );
+    assertTrue( subject.getEncodedSize() == subject.getBytes().length );
+    assertTrue( subject.getEncodedSize() == 8 );
+
+    subject.setName( "Résumé" );
+    assertTrue( subject.getEncodedSize() == subject.getBytes().length );
+    assertTrue( subject.getEncodedSize() == 12 );
+
+    subject = new DataField( null, "text" );
+    assertTrue( subject.getEncodedSize() == subject.getBytes().length );
+    assertTrue( subject.getEncodedSize() == 10 );
+  }
+
+
+
+
+
+  /**
+   * Test method for {@link coyote.dataframe.DataField#formatNumber(char[], int)}.
+   */
+  @Test
+  public void testFormatNumber() {
+    char[] buffer = new char[40];
+    Object[] values = { (short)-5, (short)200, (short)-300, 65535, -70000, 4294967295L, -5000000000L, new java.math.BigInteger( "18446744073709551615" ), 2226.06269592F, 0.1D + 0.2D };
+    for ( Object value : values ) {
+      DataField subject = new DataField( value );
+      int length = subject.formatNumber( buffer, 3 );
+      assertTrue( subject.getStringValue().equals( new String( buffer, 3, length ) ) );
+    }
+    assertTrue( new DataField( "text" ).formatNumber( buffer, 0 ) == -1 );
+    assertTrue( new DataField( "nothing", null ).formatNumber( buffer, 0 ) == -1 );
+  }
+
 }
@@ -4,22 +4,34 @@
 package coyote.dataframe;
 
 //import static org.junit.Assert.*;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.ListIterator;
 
 import org.junit.Test;
 
 import coyote.commons.ByteUtil;
+import coyote.commons.XxHash64;
 
 
 /**
@@ -766,6 +778,109 @@ public class DataFrameTest {
 
 
 
+  @Test
+  public void cachedDigest() throws Exception {
+    DataFrame child = new DataFrame();
+    child.add("id", 7);
+    DataFrame frame = new DataFrame();
+    frame.add("name", "value");
+    frame.add("child", child);
+
+    MessageDigest sha = MessageDigest.getInstance("SHA-1");
+    assertTrue(Arrays.equals(sha.digest(frame.getBytes()), frame.getDigest()));
+    byte[] digest = frame.getDigest();
+    digest[0]++;
+    assertFalse(Arrays.equals(digest, frame.getDigest()));
+
+    // changes to nested frames and directly to the field list are seen
+    digest = frame.getDigest();
+    child.put("id", 8);
+    assertFalse(Arrays.equals(digest, frame.getDigest()));
+    assertTrue(Arrays.equals(sha.digest(frame.getBytes()), frame.getDigest()));
+    digest = frame.getDigest();
+    frame.getFields().remove(0);
+    assertFalse(Arrays.equals(digest, frame.getDigest()));
+    assertTrue(Arrays.equals(sha.digest(frame.getBytes()), frame.getDigest()));
+  }
+
+
+
+
+  @Test
+  public void fingerprint() throws DataFrameException {
+    DataFrame frame = new DataFrame();
+    for (int x = 0; x < 50; x++) {
+      frame.add("field" + x, x * 1000L);
+    }
+    frame.add("child", new DataFrame().set("text", "some text"));
+
+    byte[] data = frame.getBytes();
+    long fingerprint = frame.getFingerprint();
+    assertEquals(XxHash64.hash(data, 0, data.length, 0), fingerprint);
+    assertEquals(fingerprint, frame.getFingerprint());
+    assertEquals(fingerprint, new DataFrame(data).getFingerprint());
+
+    frame.getAsFrame("child").put("text", "other text");
+    assertNotEquals(fingerprint, frame.getFingerprint());
+    data = frame.getBytes();
+    assertEquals(XxHash64.hash(data, 0, data.length, 0), frame.getFingerprint());
+  }
+
+
+
+
+  @Test
+  public void structuralEquality() throws DataFrameException {
+    DataFrame frame = new DataFrame();
+    frame.add("name", "value");
+    frame.add("count", 42);
+    frame.add("child", new DataFrame().set("id", 7));
+
+    DataFrame copy = (DataFrame)frame.clone();
+    assertEquals(frame, copy);
+    assertEquals(frame.hashCode(), copy.hashCode());
+
+    // nested frames held as objects or still encoded compare the same
+    DataFrame decoded = new DataFrame(frame.getBytes());
+    assertEquals(frame, decoded);
+    assertEquals(decoded, frame);
+    assertEquals(frame.hashCode(), decoded.hashCode());
+    assertEquals(frame.getField("child"), decoded.getField("child"));
+    assertEquals(frame.getField("child").hashCode(), decoded.getField("child").hashCode());
+
+    HashSet<DataFrame> set = new HashSet<DataFrame>();
+    set.add(frame);
+    assertTrue(set.contains(decoded));
+    assertFalse(set.add(copy));
+
+    // any difference in name, type, value or order breaks equality
+    copy.put("count", 43);
+    assertNotEquals(frame, copy);
+    copy.put("count", 42);
+    assertEquals(frame, copy);
+    copy.getAsFrame("child").put("id", 8);
+    assertNotEquals(frame, copy);
+    assertNotEquals(frame, new DataFrame().set("name", "value").set("count", 42L).set("child", new DataFrame().set("id", 7)));
+    assertNotEquals(frame, new DataFrame().set("count", 42).set("name", "value").set("child", new DataFrame().set("id", 7)));
+    assertNotEquals(frame, new DataFrame().set("name", "value").set("count", 42));
+    assertNotEquals(new DataField("a", "x"), new DataField("b", "x"));
+    assertNotEquals(new DataField("a", "x"), new DataField("a", "y"));
+    assertNotEquals(new DataField("a", "x"), new DataField(null, "x"));
+    assertEquals(new DataField(null, "x"), new DataField(null, "x"));
+    assertNotEquals(frame, null);
+    assertNotEquals(frame, "value");
+
+    // hash codes follow modification
+    int hash = frame.hashCode();
+    frame.getAsFrame("child").put("id", 8);
+    assertNotEquals(hash, frame.hashCode());
+    assertEquals(frame, copy);
+    assertEquals(frame.hashCode(), copy.hashCode());
+  }
+
+
+
+
   @Test
   public void getBytes() {
     DataField field = new DataField("Test", 123L);
@@ -788,6 +903,407 @@ public class DataFrameTest {
 
 
 
+  @Test
+  public void writeTo() throws Exception {
+    DataFrame child = new DataFrame();
+    child.add("id", 42);
+    DataFrame frame = new DataFrame();
+    frame.add("name", "Bob");
+    frame.add(3.14D);
+    frame.add("nothing", null);
+    frame.add("child", child);
+    frame.add("array", new Object[]{1, "two"});
+
+    byte[] bytes = frame.getBytesOrig();
+    assertEquals(bytes.length, frame.getEncodedSize());
+    assertTrue(Arrays.equals(bytes, frame.getBytes()));
+
+    ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length + 4);
+    buffer.putInt(0xCAFEBABE);
+    assertEquals(bytes.length, frame.writeTo(buffer));
+    assertFalse(buffer.hasRemaining());
+    buffer.flip();
+    assertEquals(0xCAFEBABE, buffer.getInt());
+    byte[] written = new byte[bytes.length];
+    buffer.get(written);
+    assertTrue(Arrays.equals(bytes, written));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    assertEquals(bytes.length, frame.writeTo(out));
+    assertTrue(Arrays.equals(bytes, out.toByteArray()));
+
+    DataFrame copy = new DataFrame(bytes);
+    assertEquals(frame.getFieldCount(), copy.getFieldCount());
+    assertEquals(42, copy.getAsFrame("child").getAsInt("id"));
+
+    buffer = ByteBuffer.allocate(bytes.length - 1);
+    try {
+      frame.writeTo(buffer);
+      fail("Should not write into a buffer which is too small");
+    } catch (BufferOverflowException e) {
+      assertEquals(0, buffer.position());
+    }
+  }
+
+
+
+
+  @Test
+  public void liveNestedFrames() throws Exception {
+    DataFrame child = new DataFrame();
+    child.add("id", 1);
+    DataFrame frame = new DataFrame();
+    frame.add("child", child);
+
+    // the child is held by reference, not as a snapshot
+    assertTrue(frame.getAsFrame("child") == child);
+    child.add("tag", "later");
+    DataFrame copy = new DataFrame(frame.getBytes());
+    assertEquals("later", copy.getAsFrame("child").getAsString("tag"));
+
+    // decoded children are decoded once and stay live
+    DataFrame nested = copy.getAsFrame("child");
+    assertTrue(nested == copy.getAsFrame("child"));
+    DataField field = copy.getField("child");
+    byte[] encoded = field.getValue();
+    assertTrue(encoded == field.getValue());
+
+    // changes through the decoded child are reflected in the wire format
+    nested.put("id", 2);
+    assertTrue(encoded != field.getValue());
+    DataFrame copy2 = new DataFrame(copy.getBytes());
+    assertEquals(2, copy2.getAsFrame("child").getAsInt("id"));
+
+    // even when made directly to the field list
+    nested.getFields().remove(1);
+    assertEquals(nested.getEncodedSize(), field.getLength());
+    copy2 = new DataFrame(copy.getBytes());
+    assertEquals(1, copy2.getAsFrame("child").getFieldCount());
+
+    // grandchildren are tracked as well
+    DataFrame grandchild = new DataFrame().set("deep", true);
+    nested.add("grandchild", grandchild);
+    assertEquals(copy.getEncodedSize(), copy.getBytes().length);
+    grandchild.put("deep", false);
+    copy2 = new DataFrame(copy.getBytes());
+    assertFalse(copy2.getAsFrame("child").getAsFrame("grandchild").getAsBoolean("deep"));
+
+    // changes deep down reach every frame holding them at once
+    DataFrame other = new DataFrame().set("shared", nested);
+    long stamp = Math.max(copy.lastModified(), other.lastModified());
+    grandchild.getFields().get(0).setName("deeper");
+    assertTrue(copy.lastModified() > stamp);
+    assertTrue(other.lastModified() > stamp);
+    assertEquals(copy.getEncodedSize(), copy.getBytes().length);
+    assertTrue(new DataFrame(other.getBytes()).getAsFrame("shared").getAsFrame("grandchild").contains("deeper"));
+
+    // but no longer once they are removed
+    nested.remove("grandchild");
+    stamp = copy.lastModified();
+    grandchild.put("deeper", true);
+    assertEquals(stamp, copy.lastModified());
+
+    // replacing a frame with another value drops the live reference
+    copy.put("child", "text");
+    assertEquals("text", new DataFrame(copy.getBytes()).getAsString("child"));
+  }
+
+
+
+
+  @Test
+  public void cycles() throws Exception {
+    DataFrame frame = new DataFrame().set("id", 1);
+    try {
+      frame.add("self", frame);
+      fail("frame nested within itself");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    assertEquals(1, frame.getFieldCount());
+
+    DataFrame child = new DataFrame();
+    DataFrame grandchild = new DataFrame();
+    frame.add("child", child);
+    child.add("grandchild", grandchild);
+    try {
+      grandchild.add("ancestor", frame);
+      fail("frame nested within its descendant");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    assertEquals(0, grandchild.getFieldCount());
+
+    // nor through existing fields or the field list
+    grandchild.put("id", 2);
+    try {
+      grandchild.put("id", child);
+      fail("frame nested within its descendant");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    assertEquals(2, grandchild.getAsInt("id"));
+    List<DataField> list = Arrays.asList(new DataField("a", 1), new DataField("b", frame));
+    try {
+      grandchild.getFields().addAll(list);
+      fail("frame nested within its descendant");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    assertEquals(1, grandchild.getFieldCount());
+    try {
+      grandchild.getFields().set(0, frame.getField("child"));
+      fail("frame nested within itself");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    assertEquals(2, grandchild.getAsInt("id"));
+
+    // frames may be nested more than once, just not within themselves
+    frame.add("again", grandchild);
+    new DataFrame().set("first", child).set("second", child);
+
+    // and once removed the old ancestors are free to be nested
+    child.remove("grandchild");
+    frame.remove("again");
+    grandchild.add("former", frame);
+    assertEquals(frame, new DataFrame(grandchild.getBytes()).getAsFrame("former"));
+  }
+
+
+
+
+  @Test
+  public void fieldListViews() throws Exception {
+    DataFrame child = new DataFrame().set("g", 1).set("h", 2);
+    DataFrame frame = new DataFrame().set("child", child);
+    frame.getBytes();
+    byte[] digest = frame.getDigest();
+    long fingerprint = frame.getFingerprint();
+
+    // changes through a sub-list reach the frames holding the list
+    child.getFields().subList(0, 1).set(0, new DataField("g", 5));
+    assertEquals(5, new DataFrame(frame.getBytes()).getAsFrame("child").getAsInt("g"));
+    assertFalse(Arrays.equals(digest, frame.getDigest()));
+    assertNotEquals(fingerprint, frame.getFingerprint());
+    child.getFields().subList(1, 2).clear();
+    assertEquals(1, new DataFrame(frame.getBytes()).getAsFrame("child").getFieldCount());
+    child.getFields().subList(1, 1).add(new DataField("i", 3));
+    assertEquals(3, new DataFrame(frame.getBytes()).getAsFrame("child").getAsInt("i"));
+
+    // and the name index
+    DataFrame wide = new DataFrame();
+    for (int i = 0; i < 20; i++) {
+      wide.add("n" + i, i);
+    }
+    assertEquals(0, wide.indexOf("n0"));
+    wide.getFields().subList(0, 10).set(0, new DataField("zz", 0));
+    assertEquals(0, wide.indexOf("zz"));
+    assertEquals(-1, wide.indexOf("n0"));
+    wide.getFields().subList(0, 10).clear();
+    assertEquals(-1, wide.indexOf("zz"));
+    assertEquals(0, wide.indexOf("n10"));
+    assertEquals(10, wide.getFieldCount());
+
+    // replacing fields while iterating is no concurrent modification
+    ListIterator<DataField> it = wide.getFields().listIterator();
+    while (it.hasNext()) {
+      DataField field = it.next();
+      it.set(new DataField(field.getName().toUpperCase(), field.getObjectValue()));
+    }
+    assertEquals(0, wide.indexOf("N10"));
+    assertEquals(-1, wide.indexOf("n10"));
+  }
+
+
+
+
+  @Test
+  public void indexedNames() throws Exception {
+    DataFrame frame = new DataFrame();
+    for (int x = 0; x < 100; x++) {
+      frame.add("Field" + x, x);
+    }
+    frame.add("Field5", "duplicate");
+
+    assertEquals(5, frame.indexOf("Field5"));
+    assertEquals(5, frame.getAsInt("Field5"));
+    assertEquals(99, frame.indexOfIgnoreCase("FIELD99"));
+    assertNotNull(frame.getFieldIgnoreCase("field42"));
+    assertEquals(-1, frame.indexOf("field42"));
+    assertEquals(-1, frame.indexOf(null));
+
+    // index follows appends
+    frame.add("Extra", 1);
+    assertEquals(101, frame.indexOf("Extra"));
+    assertTrue(frame.containsIgnoreCase("EXTRA"));
+
+    // put updates in place, removal shifts positions
+    assertEquals(10, frame.put("Field10", "ten"));
+    assertEquals("ten", frame.getAsString("Field10"));
+    assertNotNull(frame.remove("Field0"));
+    assertEquals(4, frame.indexOf("Field5"));
+    assertEquals(5, frame.getAsInt("Field5"));
+
+    // removing the first occurrence exposes the duplicate
+    frame.remove("Field5");
+    assertEquals(98, frame.indexOf("Field5"));
+    assertEquals("duplicate", frame.getAsString("Field5"));
+
+    // changes made directly to the list and renames are noticed
+    frame.getFields().add(0, new DataField("Field5", "first"));
+    assertEquals("first", frame.getAsString("Field5"));
+    frame.getFields().set(0, new DataField("Other", 0));
+    assertEquals(99, frame.indexOf("Field5"));
+    frame.getField("Other").setName("Renamed");
+    assertFalse(frame.contains("Other"));
+    assertEquals(0, frame.indexOf("Renamed"));
+    frame.put("Field7", null);
+    assertFalse(frame.contains("Field7"));
+    assertEquals(7, frame.indexOf("Field9"));
+
+    // renames elsewhere leave the index alone, removed fields are forgotten
+    DataFrame other = new DataFrame();
+    for (int x = 0; x < 20; x++) {
+      other.add("Field" + x, x);
+    }
+    assertEquals(3, other.indexOf("Field3"));
+    DataField removed = other.remove("Field3");
+    assertEquals(3, other.indexOf("Field4"));
+    other.getField("Field5").setName("Moved");
+    removed.setName("Field9");
+    assertEquals(7, frame.indexOf("Field9"));
+    assertEquals(-1, other.indexOf("Field5"));
+    assertEquals(4, other.indexOf("Moved"));
+
+    // fields held by more than one frame rename in all of them
+    DataField shared = new DataField("Shared", 1);
+    frame.add(shared);
+    other.add(shared);
+    assertEquals(100, frame.indexOf("Shared"));
+    assertEquals(19, other.indexOf("Shared"));
+    shared.setName("Common");
+    assertEquals(100, frame.indexOf("Common"));
+    assertEquals(19, other.indexOf("Common"));
+  }
+
+
+
+
+  @Test
+  public void primitiveGetters() throws Exception {
+    DataFrame frame = new DataFrame();
+    frame.add("s8", (short)-100);
+    frame.add("u8", (short)200);
+    frame.add("s16", (short)-30000);
+    frame.add("u16", 60000);
+    frame.add("s32", -70000);
+    frame.add("u32", 4000000000L);
+    frame.add("s64", -5000000000L);
+    frame.add("u64", new BigInteger("18446744073709551615"));
+    frame.add("small64", new BigInteger("12"));
+    frame.add("dbl", 2.5D);
+    frame.add("flt", 0.1F);
+    frame.add("bool", true);
+    frame.add("text", "42");
+    assertEquals(DataField.U64, frame.getField("u64").getType());
+
+    assertEquals(-100, frame.getAsInt("s8"));
+    assertEquals(200, frame.getAsInt("u8"));
+    assertEquals(-30000, frame.getAsInt("s16"));
+    assertEquals(60000, frame.getAsInt("u16"));
+    assertEquals(-70000, frame.getAsInt("s32"));
+    assertEquals(12, frame.getAsInt("small64"));
+    assertEquals(42, frame.getAsInt("text"));
+    assertEquals(4000000000L, frame.getAsLong("u32"));
+    assertEquals(-5000000000L, frame.getAsLong("s64"));
+    assertEquals(12L, frame.getAsLong(8));
+    assertEquals(-5000000000D, frame.getAsDouble("s64"), 0D);
+    assertEquals(18446744073709551615D, frame.getAsDouble("u64"), 0D);
+    assertEquals(2.5D, frame.getAsDouble("dbl"), 0D);
+    assertEquals(0.1D, frame.getAsDouble("flt"), 0D);
+    assertTrue(frame.getAsBoolean("bool"));
+    assertTrue(frame.getAsBoolean("u16"));
+    assertFalse(frame.getAsBoolean("s32"));
+    assertTrue(frame.getAsBoolean("dbl"));
+
+    String[][] failures = {{"int", "u32"}, {"int", "s64"}, {"int", "u64"}, {"int", "dbl"}, {"int", "bool"}, {"long", "u64"}, {"long", "flt"}, {"double", "bool"}, {"boolean", "u64"}, {"int", "missing"}};
+    for (String[] failure : failures) {
+      try {
+        if ("int".equals(failure[0])) {
+          frame.getAsInt(failure[1]);
+        } else if ("long".equals(failure[0])) {
+          frame.getAsLong(failure[1]);
+        } else if ("double".equals(failure[0])) {
+          frame.getAsDouble(failure[1]);
+        } else {
+          frame.getAsBoolean(failure[1]);
+        }
+        fail("Should not convert " + failure[1] + " to " + failure[0]);
+      } catch (DataFrameException e) {
+        // expected
+      }
+    }
+    try {
+      frame.getAsInt(-1);
+      fail("Should not find a negative index");
+    } catch (DataFrameException e) {
+      // expected
+    }
+  }
+
+
+
+
+  @Test
+  public void primitivePut() throws Exception {
+    DataFrame frame = new DataFrame();
+    DataFrame boxed = new DataFrame();
+    frame.set("i", 70000).set("u", 7).set("l", -1L).set("s", (short)200).set("d", 1.5D).set("f", 2.5F).set("b", true);
+    boxed.set("i", (Object)70000).set("u", (Object)7).set("l", (Object)(-1L)).set("s", (Object)(short)200).set("d", (Object)1.5D).set("f", (Object)2.5F).set("b", (Object)true);
+    assertTrue(Arrays.equals(boxed.getBytes(), frame.getBytes()));
+
+    // same type is overwritten in place
+    byte[] value = frame.getField("i").getValue();
+    assertEquals(0, frame.put("i", -12345678));
+    assertTrue(value == frame.getField("i").getValue());
+    assertEquals(-12345678, frame.getAsInt("i"));
+    frame.put("d", -0.25D);
+    frame.put("f", 1.25F);
+    frame.put("b", false);
+    frame.put("l", Long.MIN_VALUE);
+    frame.put("s", (short)255);
+    assertEquals(-0.25D, frame.getAsDouble("d"), 0D);
+    assertEquals(1.25D, frame.getAsDouble("f"), 0D);
+    assertFalse(frame.getAsBoolean("b"));
+    assertEquals(Long.MIN_VALUE, frame.getAsLong("l"));
+    assertEquals(255, frame.getAsInt("s"));
+
+    // a different type replaces the value
+    frame.put("u", 100000);
+    assertEquals(DataField.S32, frame.getField("u").getType());
+    assertEquals(100000, frame.getAsInt("u"));
+    frame.put("i", 2.0D);
+    assertEquals(DataField.DOUBLE, frame.getField("i").getType());
+
+    // new names are added
+    assertEquals(7, frame.put("new", 5L));
+    boxed = new DataFrame(frame.getBytes());
+    assertEquals(5L, boxed.getAsLong("new"));
+    assertEquals(-0.25D, boxed.getAsDouble("d"), 0D);
+
+    // parents see values changed in place
+    DataFrame parent = new DataFrame().set("child", frame);
+    byte[] before = parent.getBytes();
+    frame.put("d", 0.5D);
+    boxed = new DataFrame(parent.getBytes());
+    assertFalse(Arrays.equals(before, parent.getBytes()));
+    assertEquals(0.5D, boxed.getAsFrame("child").getAsDouble("d"), 0D);
+  }
+
+
+
+
   @Test
   public void getBytesForField() {
     byte[] raw = {'1', '2', '3'};
@@ -911,6 +1427,212 @@ public class DataFrameTest {
 
 
 
+  @Test
+  public void copyOnWriteClone() throws DataFrameException {
+    DataFrame frame = new DataFrame();
+    frame.add("name", "Bob");
+    frame.add("age", 35);
+    frame.add("data", new byte[] { 1, 2, 3 });
+    frame.add("child", new DataFrame().set("id", 7));
+    frame.add("encoded", new DataFrame(new DataFrame().set("id", 1).getBytes()));
+
+    DataField held = frame.getField("name");
+    DataFrame copy = (DataFrame)frame.clone();
+    assertEquals(frame, copy);
+    for (int x = 0; x < frame.getFieldCount(); x++) {
+      assertFalse(frame.fields.get(x).isFrozen());
+      assertFalse(copy.fields.get(x).isFrozen());
+      assertNotSame(frame.fields.get(x), copy.fields.get(x));
+    }
+    assertSame(frame.fields.get(2).getValue(), copy.getField("data").getValue());
+
+    // reading a clone does not change it
+    int modCount = ((FieldList)copy.fields).getModCount();
+    assertSame(copy.getField("name"), copy.getField("name"));
+    assertSame(copy.getFields().get(3), copy.fields.get(3));
+    copy.getObject(3);
+    assertEquals(modCount, ((FieldList)copy.fields).getModCount());
+
+    // fields held before the clone remain mutable
+    held.setName("label");
+    assertEquals("Bob", frame.getAsString("label"));
+    assertEquals("Bob", copy.getAsString("name"));
+    held.setName("name");
+
+    copy.put("age", 36);
+    frame.put("name", "Alice");
+    copy.getAsFrame("child").put("id", 8);
+    frame.getAsFrame("child").put("id", 9);
+    copy.getAsFrame("encoded").put("id", 2);
+    copy.getField("data").setName("bytes");
+
+    assertEquals(35, frame.getAsInt("age"));
+    assertEquals(36, copy.getAsInt("age"));
+    assertEquals("Alice", frame.getAsString("name"));
+    assertEquals("Bob", copy.getAsString("name"));
+    assertEquals(9, frame.getAsFrame("child").getAsInt("id"));
+    assertEquals(8, copy.getAsFrame("child").getAsInt("id"));
+    assertEquals(1, frame.getAsFrame("encoded").getAsInt("id"));
+    assertEquals(2, copy.getAsFrame("encoded").getAsInt("id"));
+    assertTrue(frame.contains("data"));
+    assertTrue(copy.contains("bytes"));
+    assertFalse(copy.contains("data"));
+
+    // the encoded forms reflect the changes
+    DataFrame decoded = new DataFrame(copy.getBytes());
+    assertEquals(copy, decoded);
+    assertEquals(36, decoded.getAsInt("age"));
+    assertEquals(8, decoded.getAsFrame("child").getAsInt("id"));
+    assertEquals(9, new DataFrame(frame.getBytes()).getAsFrame("child").getAsInt("id"));
+
+    // clones of clones and of changed frames stay independent
+    DataFrame third = (DataFrame)copy.clone();
+    third.put("age", 37);
+    copy.put("age", 38);
+    assertEquals(37, third.getAsInt("age"));
+    assertEquals(38, copy.getAsInt("age"));
+    assertEquals(35, frame.getAsInt("age"));
+  }
+
+
+
+
+  @Test
+  public void retainedWireFormat() throws DataFrameException, IOException {
+    DataFrame frame = new DataFrame();
+    frame.add("name", "status");
+    frame.add("count", 1);
+    frame.add("child", new DataFrame().set("id", 7).set("grandchild", new DataFrame().set("level", 2)));
+    DataField child = frame.fields.get(2);
+
+    // encoded once, nothing is retained
+    byte[] first = frame.getBytes();
+    assertNull(frame.getRetainedBytes());
+
+    // encoded again, the wire format is retained and copied from then on
+    byte[] second = frame.getBytes();
+    assertArrayEquals(first, second);
+    assertNotNull(frame.getRetainedBytes());
+
+    // nested frames refer to their part of it rather than keeping copies
+    DataField grandchild = frame.getAsFrame("child").fields.get(1);
+    assertSame(frame.getRetainedBytes(), child.value);
+    assertSame(frame.getRetainedBytes(), grandchild.value);
+    byte[] childBytes = child.getValue();
+    assertArrayEquals(frame.getAsFrame("child").getBytes(), childBytes);
+    assertSame(childBytes, child.getValue());
+    frame.getBytes();
+    second[0] = 0;
+    assertArrayEquals(first, frame.getBytes());
+    assertNotSame(frame.getBytes(), frame.getBytes());
+    assertEquals(first.length, frame.getEncodedSize());
+
+    // changing a field only encodes that field again
+    frame.put("count", 2);
+    assertNull(frame.getRetainedBytes());
+    assertEquals(2, new DataFrame(frame.getBytes()).getAsInt("count"));
+    assertNotNull(frame.getRetainedBytes());
+    assertSame(frame.getRetainedBytes(), child.value);
+    assertSame(frame.getRetainedBytes(), grandchild.value);
+    assertArrayEquals(childBytes, child.getValue());
+
+    // however deep the nesting, only the outermost wire format is retained
+    DataFrame deep = new DataFrame().set("leaf", 0);
+    for (int i = 0; i < 20; i++) {
+      deep = new DataFrame().set("level", i).set("child", deep);
+    }
+    deep.getBytes();
+    byte[] image = deep.getBytes();
+    for (DataFrame level = deep; level.contains("child"); level = level.getAsFrame("child")) {
+      assertSame(deep.getRetainedBytes(), level.getField("child").value);
+    }
+    deep.put("level", 99);
+    image[image.length - 1] = 1;
+    DataFrame deepCopy = new DataFrame(deep.getBytes());
+    assertEquals(99, deepCopy.getAsInt("level"));
+    for (DataFrame level = deep; level.contains("child"); level = level.getAsFrame("child")) {
+      assertSame(deep.getRetainedBytes(), level.getField("child").value);
+      deepCopy = deepCopy.getAsFrame("child");
+    }
+    assertEquals(0, deepCopy.getAsInt("leaf"));
+
+    // all kinds of changes are detected
+    frame.getAsFrame("child").getAsFrame("grandchild").put("level", 3);
+    assertEquals(3, new DataFrame(frame.getBytes()).getAsFrame("child").getAsFrame("grandchild").getAsInt("level"));
+    frame.getField("name").setName("label");
+    assertEquals("status", new DataFrame(frame.getBytes()).getAsString("label"));
+    frame.getFields().remove(0);
+    assertEquals(2, new DataFrame(frame.getBytes()).getFieldCount());
+    frame.add("more", true);
+    assertEquals(frame, new DataFrame(frame.getBytes()));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    frame.writeTo(out);
+    assertArrayEquals(frame.getBytes(), out.toByteArray());
+    assertEquals(frame.getFingerprint(), new DataFrame(frame.getBytes()).getFingerprint());
+  }
+
+
+
+
+  @Test
+  public void compact() throws DataFrameException, IOException {
+    DataFrame frame = new DataFrame();
+    frame.add("name", "status");
+    frame.add("count", 1);
+    frame.add("total", 1234567890123L);
+    frame.add("ratio", 0.5D);
+    frame.add("ok", true);
+    frame.add("none", null);
+    frame.add("child", new DataFrame().set("id", 7));
+    frame.add("wire", new DataFrame(new DataFrame().set("id", 8).getBytes()));
+    byte[] expected = frame.getBytes();
+    DataFrame copy = (DataFrame)frame.clone();
+
+    // all the values share one array and encode as before
+    assertSame(frame.compact(), frame);
+    byte[] slab = frame.fields.get(0).value;
+    for (int i = 1; i < 6; i++) {
+      assertSame(slab, frame.fields.get(i).value);
+    }
+    assertEquals(6 + 2 + 8 + 8 + 1, slab.length);
+    assertArrayEquals(expected, frame.getBytes());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    frame.writeTo(out);
+    assertArrayEquals(expected, out.toByteArray());
+    assertEquals(copy, frame);
+    assertEquals(copy.hashCode(), frame.hashCode());
+    assertEquals(copy.toString(), frame.toString());
+    assertArrayEquals(expected, FrameCodec.of(copy).encode(frame));
+
+    assertEquals("status", frame.getAsString("name"));
+    assertEquals(1, frame.getAsInt("count"));
+    assertEquals(1234567890123L, frame.getAsLong("total"));
+    assertEquals(0.5D, frame.getAsDouble("ratio"), 0);
+    assertTrue(frame.getAsBoolean("ok"));
+    assertTrue(frame.getField("none").isNull());
+    assertArrayEquals(new byte[] { 0, 1 }, frame.getField("count").getValue());
+    assertEquals(7, frame.getAsFrame("child").getAsInt("id"));
+
+    // fixed-size values change in place, anything else leaves the slab
+    frame.put("count", 2);
+    assertSame(slab, frame.fields.get(1).value);
+    frame.put("name", "other");
+    assertNotSame(slab, frame.fields.get(0).value);
+    assertEquals("other", frame.getAsString("name"));
+    assertEquals(2, new DataFrame(frame.getBytes()).getAsInt("count"));
+
+    // the clone was not affected
+    assertArrayEquals(expected, copy.getBytes());
+    assertEquals(1, copy.getAsInt("count"));
+
+    frame.clear();
+    assertTrue(frame.isEmpty());
+  }
+
+
+
+
   @Test
   public void clear() {
     DataFrame frame = new DataFrame();
@@ -922,6 +1644,65 @@ public class DataFrameTest {
     assertTrue(frame.getFieldCount() == 0);
     assertTrue(frame.isEmpty());
   }
-  
-  
+
+
+
+  @Test
+  public void primitiveArrays() throws DataFrameException {
+    double[] samples = new double[10000];
+    for (int x = 0; x < samples.length; x++) {
+      samples[x] = Math.sin(x);
+    }
+    DataFrame frame = new DataFrame();
+    frame.add("samples", samples);
+    frame.add("counts", new int[] { 1, -2, 3 });
+    frame.add("levels", new short[] { -4, 5 });
+    frame.add("flags", new boolean[] { true, false, true });
+    frame.add("labels", new String[] { "a", null, "c" });
+    frame.add("mixed", new Object[] { 1, 2L, (short)3 });
+    frame.add("scalar", 5);
+    assertTrue(frame.getField("samples").isArray());
+    assertEquals(8 * samples.length + ArrayType.PACKED_HEADER, frame.getField("samples").getValue().length);
+
+    DataFrame decoded = new DataFrame(frame.getBytes()).compact();
+    assertEquals(frame, decoded);
+    assertArrayEquals(samples, decoded.getAsDoubleArray("samples"), 0);
+    assertArrayEquals(new int[] { 1, -2, 3 }, decoded.getAsIntArray("counts"));
+    assertArrayEquals(new int[] { 1, -2, 3 }, decoded.getAsIntArray(1));
+    assertArrayEquals(new long[] { -4, 5 }, decoded.getAsLongArray("levels"));
+    assertArrayEquals(new double[] { -4, 5 }, decoded.getAsDoubleArray("levels"), 0);
+    assertArrayEquals(new double[] { 1, -2 }, new DataFrame().set("n", new long[] { 1, -2 }).getAsDoubleArray("n"), 0);
+    assertArrayEquals(new long[] { 1, -2, 3 }, decoded.getAsLongArray("counts"));
+    assertArrayEquals(new double[] { 1, -2, 3 }, decoded.getAsDoubleArray("counts"), 0);
+    assertTrue(Arrays.equals(new boolean[] { true, false, true }, decoded.getAsBooleanArray("flags")));
+    assertArrayEquals(new String[] { "a", null, "c" }, decoded.getAsStringArray("labels"));
+    assertArrayEquals(new String[] { "1", "-2", "3" }, decoded.getAsStringArray("counts"));
+    assertTrue(decoded.getObject("counts") instanceof int[]);
+
+    // arrays of typed elements are converted
+    assertArrayEquals(new int[] { 1, 2, 3 }, decoded.getAsIntArray("mixed"));
+    assertArrayEquals(new double[] { 1, 2, 3 }, decoded.getAsDoubleArray("mixed"), 0);
+
+    assertEquals("{\"counts\":[1,-2,3],\"flags\":[true,false,true]}", new DataFrame().set("counts", new int[] { 1, -2, 3 }).set("flags", new boolean[] { true, false, true }).toString());
+
+    try {
+      decoded.getAsIntArray("scalar");
+      fail("scalar converted to an array");
+    } catch (DataFrameException e) {
+      // expected
+    }
+    try {
+      decoded.getAsIntArray("samples");
+      fail("doubles converted to integers");
+    } catch (DataFrameException e) {
+      // expected
+    }
+    try {
+      decoded.getAsIntArray("missing");
+      fail("missing field converted");
+    } catch (DataFrameException e) {
+      // expected
+    }
+  }
+
 }
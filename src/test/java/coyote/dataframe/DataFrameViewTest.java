@@ -0,0 +1,206 @@
+/*
+ *
+ */
+package coyote.dataframe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+
+/**
+ *
+ */
+public class DataFrameViewTest {
+
+  private static DataFrame sample() {
+    DataFrame child = new DataFrame();
+    child.add("id", 42);
+    child.add("tag", "inner");
+
+    DataFrame frame = new DataFrame();
+    frame.add("name", "Bob");
+    frame.add("age", 35);
+    frame.add("big", 9876543210L);
+    frame.add("neg", -7);
+    frame.add("ratio", 0.5D);
+    frame.add("flag", true);
+    frame.add("child", child);
+    frame.add("café", "latte");
+    frame.add("empty", null);
+    return frame;
+  }
+
+
+
+
+  @Test
+  public void testFieldTable() {
+    DataFrame frame = sample();
+    DataFrameView view = new DataFrameView(frame.getBytes());
+    assertEquals(frame.getFieldCount(), view.getFieldCount());
+    for (int x = 0; x < frame.getFieldCount(); x++) {
+      assertEquals(frame.getField(x).getName(), view.getName(x));
+      assertEquals(frame.getField(x).getType(), view.getType(x));
+    }
+    assertNull(view.getName(99));
+    assertEquals(-1, view.getType(-1));
+  }
+
+
+
+
+  @Test
+  public void testLookup() throws DataFrameException {
+    DataFrameView view = new DataFrameView(sample().getBytes());
+    assertEquals(0, view.indexOf("name"));
+    assertEquals(7, view.indexOf("café"));
+    assertEquals(-1, view.indexOf("cafe"));
+    assertEquals(-1, view.indexOf("nam"));
+    assertTrue(view.contains("ratio"));
+    assertFalse(view.contains("Ratio"));
+    assertEquals("Bob", view.getAsString("name"));
+    assertEquals("latte", view.getObject("café"));
+    assertNull(view.getObject("empty"));
+    assertNull(view.getObject("missing"));
+    assertEquals(-1, view.indexOf(null));
+
+    // a null name matches the first unnamed field
+    DataFrame frame = sample();
+    frame.add("anonymous");
+    view = new DataFrameView(frame.getBytes());
+    assertEquals(frame.getFieldCount() - 1, view.indexOf(null));
+    assertEquals("anonymous", view.getObject(null));
+  }
+
+
+
+
+  @Test
+  public void testPrimitives() throws DataFrameException {
+    DataFrameView view = new DataFrameView(sample().getBytes());
+    assertEquals(35, view.getAsInt("age"));
+    assertEquals(-7, view.getAsInt("neg"));
+    assertEquals(9876543210L, view.getAsLong("big"));
+    assertEquals(0.5D, view.getAsDouble("ratio"), 0D);
+    assertEquals(35D, view.getAsDouble("age"), 0D);
+    assertTrue(view.getAsBoolean("flag"));
+    assertTrue(view.getAsBoolean("age"));
+
+    try {
+      view.getAsInt("big");
+      fail("value should not fit in an int");
+    } catch (DataFrameException e) {
+      // expected
+    }
+    try {
+      view.getAsLong("name");
+      fail("string is not a number");
+    } catch (DataFrameException e) {
+      // expected
+    }
+    try {
+      view.getAsLong("missing");
+      fail("field does not exist");
+    } catch (DataFrameException e) {
+      // expected
+    }
+  }
+
+
+
+
+  @Test
+  public void testNestedView() throws DataFrameException {
+    DataFrameView view = new DataFrameView(sample().getBytes());
+    DataFrameView child = view.getAsView("child");
+    assertNotNull(child);
+    assertEquals(2, child.getFieldCount());
+    assertEquals(42, child.getAsInt("id"));
+    assertEquals("inner", child.getAsString("tag"));
+    assertNull(view.getAsView("missing"));
+    try {
+      view.getAsView("name");
+      fail("field is not a frame");
+    } catch (DataFrameException e) {
+      // expected
+    }
+  }
+
+
+
+
+  @Test
+  public void testDirectBufferRegion() throws DataFrameException {
+    byte[] data = sample().getBytes();
+    ByteBuffer buffer = ByteBuffer.allocateDirect(data.length + 10);
+    buffer.position(5);
+    buffer.put(data);
+    buffer.flip();
+    buffer.position(5);
+    int limit = buffer.limit();
+
+    DataFrameView view = new DataFrameView(buffer, 5, data.length);
+    assertEquals("Bob", view.getAsString("name"));
+    assertEquals(35, view.getAsInt("age"));
+    assertTrue(Arrays.equals(data, view.getBytes()));
+    assertEquals(5, buffer.position());
+    assertEquals(limit, buffer.limit());
+
+    DataFrame copy = view.toFrame();
+    assertEquals(sample().getFieldCount(), copy.getFieldCount());
+    assertEquals("inner", copy.getAsFrame("child").getAsString("tag"));
+
+    view = new DataFrameView(buffer);
+    assertEquals(data.length, view.getLength());
+    assertEquals(9876543210L, view.getAsLong("big"));
+  }
+
+
+
+
+  @Test
+  public void testGetField() {
+    DataFrameView view = new DataFrameView(sample().getBytes());
+    DataField field = view.getField("age");
+    assertNotNull(field);
+    assertEquals("age", field.getName());
+    assertEquals(35, field.getObjectValue());
+    assertNull(view.getField("missing"));
+  }
+
+
+
+
+  @Test
+  public void testEmpty() {
+    DataFrameView view = new DataFrameView(new byte[0]);
+    assertTrue(view.isEmpty());
+    assertEquals(0, view.getFieldCount());
+    assertEquals(-1, view.indexOf("any"));
+  }
+
+
+
+
+  @Test
+  public void testTruncated() {
+    byte[] data = sample().getBytes();
+    DataFrameView view = new DataFrameView(data, 0, data.length - 3);
+    try {
+      view.getFieldCount();
+      fail("truncated data should not decode");
+    } catch (DecodeException e) {
+      // expected
+    }
+  }
+
+}
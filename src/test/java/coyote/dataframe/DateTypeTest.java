@@ -4,8 +4,10 @@
 package coyote.dataframe;
 
 //import static org.junit.Assert.*;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.text.SimpleDateFormat;
@@ -147,4 +149,69 @@ public class DateTypeTest {
     assertTrue( datatype.getSize() == 8 );
   }
 
+
+
+
+  @Test
+  public void testParse()
+  {
+    Calendar expected = new GregorianCalendar( 2018, Calendar.MARCH, 4, 5, 6, 7 );
+    expected.set( Calendar.MILLISECOND, 890 );
+    assertEquals( expected.getTime(), datatype.parse( "2018-03-04T05:06:07.890" ) );
+    assertEquals( expected.getTime(), datatype.parse( "2018-03-04 05:06:07.890" ) );
+    assertEquals( expected.getTime(), datatype.parse( " 2018-03-04 05:06:07.89 " ) );
+    assertEquals( expected.getTime(), datatype.parse( "2018-3-4 5:6:7.890" ) );
+    expected.set( Calendar.MILLISECOND, 0 );
+    assertEquals( expected.getTime(), datatype.parse( "2018-03-04T05:06:07" ) );
+
+    expected = new GregorianCalendar( 2018, Calendar.MARCH, 4 );
+    assertEquals( expected.getTime(), datatype.parse( "2018-03-04" ) );
+    assertEquals( expected.getTime(), datatype.parse( "2018-3-4" ) );
+    assertEquals( expected.getTime(), datatype.parse( "3/4/2018" ) );
+    assertEquals( expected.getTime(), datatype.parse( "03-04-2018" ) );
+    assertEquals( expected.getTime(), datatype.parse( "3/4/18" ) );
+    expected.set( Calendar.DAY_OF_MONTH, 1 );
+    assertEquals( expected.getTime(), datatype.parse( "3/2018" ) );
+
+    // explicit offsets
+    assertEquals( new Date( 1520139967890L ), datatype.parse( "2018-03-04T05:06:07.890Z" ) );
+    assertEquals( new Date( 1520139967000L ), datatype.parse( "2018-03-04T05:06:07Z" ) );
+    assertEquals( new Date( 1520139967890L ), datatype.parse( "2018-03-04T00:06:07.890-05" ) );
+    assertEquals( new Date( 1520139967890L ), datatype.parse( "2018-03-04T10:36:07.890+0530" ) );
+    assertEquals( new Date( 1520139967890L ), datatype.parse( "2018-03-04T10:36:07.890+05:30" ) );
+
+    // not dates
+    assertNull( datatype.parse( null ) );
+    assertNull( datatype.parse( "" ) );
+    assertNull( datatype.parse( "yesterday" ) );
+    assertNull( datatype.parse( "2018-02-30" ) );
+    assertNull( datatype.parse( "13/1/2018" ) );
+    assertNull( datatype.parse( "2018-03-04T25:06:07" ) );
+    assertNull( datatype.parse( "12345" ) );
+    assertNull( datatype.parse( "2018-01-01T00:00:00+18:30" ) );
+    assertNull( datatype.parse( "2018-01-01T00:00:00-18:01" ) );
+    assertEquals( new Date( 1514700000000L ), datatype.parse( "2018-01-01T00:00:00+18:00" ) );
+  }
+
+
+
+
+  @Test
+  public void testStringValue()
+  {
+    Date date = new Date( 1520139967890L );
+    String text = datatype.stringValue( datatype.encode( date ) );
+    assertEquals( date, datatype.parse( text ) );
+    assertEquals( new SimpleDateFormat( "yyyy-MM-dd'T'HH:mm:ss.SSSX" ).format( date ), text );
+
+    // dates before the Gregorian calendar are formatted as they always were
+    date = new Date( -62135751600000L );
+    text = datatype.stringValue( datatype.encode( date ) );
+    assertEquals( new SimpleDateFormat( "yyyy-MM-dd'T'HH:mm:ss.SSSX" ).format( date ), text );
+    assertEquals( date, datatype.parse( text ) );
+    Calendar julian = new GregorianCalendar( 1000, Calendar.FEBRUARY, 29 );
+    assertEquals( julian.getTime(), datatype.parse( "1000-02-29" ) );
+    assertTrue( datatype.stringValue( datatype.encode( julian.getTime() ) ).startsWith( "1000-02-29T00:00:00.000" ) );
+  }
+
 }
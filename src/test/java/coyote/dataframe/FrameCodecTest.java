@@ -0,0 +1,69 @@
+/*
+ *
+ */
+package coyote.dataframe;
+
+import static coyote.dataframe.SampleFrames.message;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+
+/**
+ *
+ */
+public class FrameCodecTest {
+
+  @Test
+  public void roundTrip() throws DataFrameException {
+    FrameCodec codec = FrameCodec.of(message(1, 16));
+    for (int x = 0; x < 10; x++) {
+      DataFrame frame = message(x, 16);
+      assertTrue(codec.matches(frame));
+      byte[] data = codec.encode(frame);
+      assertArrayEquals(frame.getBytes(), data);
+
+      DataFrame decoded = codec.decode(data);
+      assertEquals(frame, decoded);
+      assertEquals(x * 0.25D, decoded.getAsDouble("price"), 0);
+      assertEquals(frame.getAsFrame("header"), decoded.getAsFrame("header"));
+      for (int i = 0; i < frame.getFieldCount(); i++) {
+        assertEquals(frame.getField(i).toString(), decoded.getField(i).toString());
+      }
+    }
+  }
+
+
+
+
+  @Test
+  public void otherLayouts() {
+    FrameCodec codec = FrameCodec.of(message(1, 16));
+
+    // different types, names or number of fields use the generic encoding
+    DataFrame frame = message(1, 16);
+    frame.put("price", "many");
+    assertFalse(codec.matches(frame));
+    assertArrayEquals(frame.getBytes(), codec.encode(frame));
+    assertEquals(frame, codec.decode(frame.getBytes()));
+
+    frame = message(1, 16);
+    frame.add("extra", 1);
+    assertFalse(codec.matches(frame));
+    assertEquals(frame, codec.decode(codec.encode(frame)));
+
+    frame = message(1, 16);
+    frame.remove("active");
+    assertFalse(codec.matches(frame));
+    assertEquals(frame, codec.decode(codec.encode(frame)));
+
+    frame = new DataFrame().set("price", 1.0D);
+    assertEquals(frame, codec.decode(frame.getBytes()));
+  }
+
+}
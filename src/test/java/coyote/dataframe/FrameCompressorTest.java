@@ -0,0 +1,194 @@
+/*
+ *
+ */
+package coyote.dataframe;
+
+import static coyote.dataframe.SampleFrames.message;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+/**
+ *
+ */
+public class FrameCompressorTest {
+
+  @Test
+  public void roundTrip() {
+    FrameCompressor compressor = new FrameCompressor();
+    DataFrame frame = message(1, 20000);
+    byte[] original = frame.getBytes();
+    byte[] compressed = compressor.encode(frame);
+    assertTrue(compressed.length < original.length / 10);
+    assertEquals(0, compressed[0]);
+    assertEquals(DataFrame.EXTENSION, compressed[1]);
+    assertEquals(DataFrame.COMPRESSED_FORMAT, compressed[2]);
+    assertEquals(DeflateCodec.ID, compressed[3]);
+
+    // readers detect the compression themselves
+    assertEquals(frame, new DataFrame(compressed));
+    assertArrayEquals(original, new DataFrame(compressed).getBytes());
+
+    // small frames are not compressed
+    DataFrame small = new DataFrame().set("seq", 1);
+    assertArrayEquals(small.getBytes(), compressor.encode(small));
+
+    // neither are those which do not get smaller
+    byte[] noise = new byte[4096];
+    new Random(24).nextBytes(noise);
+    DataFrame random = new DataFrame().set("noise", noise);
+    assertArrayEquals(random.getBytes(), compressor.encode(random));
+  }
+
+
+
+
+  @Test
+  public void threshold() {
+    DataFrame frame = message(2, 20000);
+    int size = frame.getBytes().length;
+    assertArrayEquals(frame.getBytes(), new FrameCompressor(new DeflateCodec(9), size + 1).encode(frame));
+    assertTrue(new FrameCompressor(new DeflateCodec(1), size).encode(frame).length < size);
+  }
+
+
+
+
+  /**
+   * A codec registered under a different identifier.
+   */
+  private static class CustomCodec extends DeflateCodec {
+    @Override
+    public byte getId() {
+      return 42;
+    }
+  }
+
+
+
+
+  @Test
+  public void pluggableCodecs() {
+    assertTrue(FrameCompressor.getCodec(DeflateCodec.ID) instanceof DeflateCodec);
+    FrameCompressor compressor = new FrameCompressor(new CustomCodec(), 0);
+    assertSame(FrameCompressor.getCodec((byte)42), FrameCompressor.register(new CustomCodec()));
+    byte[] compressed = compressor.encode(message(3, 20000));
+    assertEquals(42, compressed[3]);
+    assertEquals(message(3, 20000), new DataFrame(compressed));
+
+    try {
+      FrameCompressor.register(new DeflateCodec() {
+        @Override
+        public byte getId() {
+          return 42;
+        }
+      });
+      fail("conflicting codec registered");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+
+
+
+  @Test
+  public void invalidData() {
+    byte[] compressed = new FrameCompressor().encode(message(4, 20000));
+
+    byte[] unknown = compressed.clone();
+    unknown[3] = 99;
+    try {
+      new DataFrame(unknown);
+      fail("unregistered codec decoded");
+    } catch (DecodeException e) {
+      assertTrue(e.getMessage().contains("not registered"));
+    }
+
+    byte[] corrupt = compressed.clone();
+    Arrays.fill(corrupt, FrameCompressor.HEADER_SIZE, FrameCompressor.HEADER_SIZE + 8, (byte)0x55);
+    try {
+      new DataFrame(corrupt);
+      fail("corrupt data decoded");
+    } catch (DecodeException e) {
+      // expected
+    }
+
+    try {
+      new DataFrame(Arrays.copyOf(compressed, compressed.length - 10));
+      fail("truncated data decoded");
+    } catch (DecodeException e) {
+      // expected
+    }
+
+    byte[] longer = compressed.clone();
+    longer[7]++;
+    try {
+      new DataFrame(longer);
+      fail("wrong length decoded");
+    } catch (DecodeException e) {
+      // expected
+    }
+
+    byte[] shorter = compressed.clone();
+    shorter[7]--;
+    try {
+      new DataFrame(shorter);
+      fail("wrong length decoded");
+    } catch (DecodeException e) {
+      // expected
+    }
+
+    // sizes are checked before anything is allocated
+    byte[] huge = Arrays.copyOf(compressed, 16);
+    huge[4] = 0x7F;
+    huge[5] = (byte)0xFF;
+    huge[6] = (byte)0xF0;
+    huge[7] = 0;
+    try {
+      new DataFrame(huge);
+      fail("oversized frame decoded");
+    } catch (DecodeException e) {
+      assertTrue(e.getMessage().contains("exceeds"));
+    }
+
+    FrameCompressor.setMaxFrameSize(1 << 30);
+    try {
+      new DataFrame(huge);
+      fail("disproportionate frame decoded");
+    } catch (DecodeException e) {
+      assertTrue(e.getMessage().contains("exceeds"));
+    } finally {
+      FrameCompressor.setMaxFrameSize(FrameInputStream.DEFAULT_MAX_FRAME_SIZE);
+    }
+  }
+
+
+
+
+  @Test
+  public void maxFrameSize() {
+    DataFrame frame = message(5, 20000);
+    byte[] compressed = new FrameCompressor().encode(frame);
+    FrameCompressor.setMaxFrameSize(frame.getBytes().length - 1);
+    try {
+      new DataFrame(compressed);
+      fail("frame over the limit decoded");
+    } catch (DecodeException e) {
+      assertTrue(e.getMessage().contains("exceeds"));
+    } finally {
+      FrameCompressor.setMaxFrameSize(FrameInputStream.DEFAULT_MAX_FRAME_SIZE);
+    }
+    assertEquals(FrameInputStream.DEFAULT_MAX_FRAME_SIZE, FrameCompressor.getMaxFrameSize());
+    assertEquals(frame, new DataFrame(compressed));
+  }
+
+}
@@ -0,0 +1,231 @@
+/*
+ *
+ */
+package coyote.dataframe;
+
+import static coyote.dataframe.SampleFrames.message;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+/**
+ *
+ */
+public class FrameDecoderTest {
+
+  private static byte[] stream(int count) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    FrameOutputStream out = new FrameOutputStream(bytes);
+    for (int x = 0; x < count; x++) {
+      out.writeFrame(message(x, (x % 10) * 50));
+    }
+    return bytes.toByteArray();
+  }
+
+
+
+
+  /**
+   * A non-blocking channel which accepts only a few octets at a time.
+   */
+  private static class SlowChannel implements GatheringByteChannel {
+    final ByteArrayOutputStream received = new ByteArrayOutputStream();
+    int capacity = 0;
+    int calls = 0;
+
+
+
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) {
+      calls++;
+      long retval = 0;
+      for (int i = offset; i < offset + length && capacity > 0; i++) {
+        while (srcs[i].hasRemaining() && capacity > 0) {
+          received.write(srcs[i].get());
+          capacity--;
+          retval++;
+        }
+      }
+      return retval;
+    }
+
+
+
+
+    @Override
+    public long write(ByteBuffer[] srcs) {
+      return write(srcs, 0, srcs.length);
+    }
+
+
+
+
+    @Override
+    public int write(ByteBuffer src) {
+      return (int)write(new ByteBuffer[] { src });
+    }
+
+
+
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+
+
+
+    @Override
+    public void close() {}
+  }
+
+
+
+
+  @Test
+  public void reassembly() throws IOException {
+    byte[] data = stream(200);
+    Random random = new Random(22);
+    for (int max : new int[] { 1, 3, 17, 256, 4096, data.length }) {
+      for (boolean direct : new boolean[] { false, true }) {
+        FrameDecoder decoder = new FrameDecoder();
+        List<DataFrame> frames = new ArrayList<DataFrame>();
+        ByteBuffer chunk = direct ? ByteBuffer.allocateDirect(max) : ByteBuffer.allocate(max);
+        int pos = 0;
+        while (pos < data.length) {
+          // chunks are reused for each read like a channel's buffer
+          int n = Math.min(data.length - pos, 1 + random.nextInt(max));
+          chunk.clear();
+          chunk.put(data, pos, n);
+          chunk.flip();
+          pos += n;
+          decoder.decode(chunk, frames::add);
+          assertFalse(chunk.hasRemaining());
+        }
+        assertFalse(decoder.hasPartial());
+        assertEquals(200, frames.size());
+        for (int x = 0; x < 200; x++) {
+          assertEquals(message(x, (x % 10) * 50), frames.get(x));
+        }
+      }
+    }
+  }
+
+
+
+
+  @Test
+  public void views() throws IOException {
+    byte[] data = stream(50);
+    FrameDecoder decoder = new FrameDecoder();
+    List<Integer> seqs = new ArrayList<Integer>();
+    int half = data.length / 2 + 3;
+    decoder.decodeViews(ByteBuffer.wrap(data, 0, half), view -> seqs.add(getSeq(view)));
+    assertTrue(decoder.hasPartial());
+    int count = decoder.decodeViews(ByteBuffer.wrap(data, half, data.length - half), view -> seqs.add(getSeq(view)));
+    assertTrue(count > 0);
+    assertEquals(50, seqs.size());
+    for (int x = 0; x < 50; x++) {
+      assertEquals(x, seqs.get(x).intValue());
+    }
+
+    // lengths beyond the limit are rejected before anything is allocated
+    decoder = new FrameDecoder(100);
+    try {
+      decoder.decode(ByteBuffer.wrap(new byte[] { 0x7F, 0, 0, 0 }), frame -> fail("decoded"));
+      fail("oversized frame accepted");
+    } catch (DecodeException e) {
+      // expected
+    }
+  }
+
+
+
+
+  private static int getSeq(DataFrameView view) {
+    try {
+      return view.getAsInt("seq");
+    } catch (DataFrameException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+
+
+
+  @Test
+  public void gatherWrites() throws IOException {
+    FrameEncoder encoder = new FrameEncoder();
+    long total = 0;
+    for (int x = 0; x < 100; x++) {
+      DataFrame frame = message(x, (x % 10) * 50);
+      if (x % 3 == 0) {
+        // retained wire formats are written without copying
+        frame.getBytes();
+        frame.getBytes();
+      }
+      total += encoder.add(frame);
+    }
+    assertEquals(total, encoder.getPending());
+
+    SlowChannel channel = new SlowChannel();
+    while (encoder.hasPending()) {
+      channel.capacity = 1000;
+      boolean done = encoder.write(channel);
+      assertEquals(!encoder.hasPending(), done);
+    }
+    assertTrue(encoder.write(channel));
+    assertEquals(0, encoder.getPending());
+    // one write of many frames per round, and one finding the channel full
+    assertTrue(channel.calls <= 2 * (total / 1000 + 2));
+    assertArrayEquals(stream(100), channel.received.toByteArray());
+  }
+
+
+
+
+  @Test
+  public void streamsNeedNotHaveAllDataAvailable() throws IOException {
+    byte[] data = message(9, 450).getBytes();
+    // a stream delivering one octet at a time and reporting nothing available
+    InputStream trickle = new ByteArrayInputStream(data) {
+      @Override
+      public synchronized int read(byte[] b, int off, int len) {
+        return super.read(b, off, Math.min(len, 1));
+      }
+
+
+
+
+      @Override
+      public synchronized int available() {
+        return 0;
+      }
+    };
+    DataInputStream in = new DataInputStream(trickle);
+    DataFrame frame = new DataFrame();
+    while (frame.getFieldCount() < message(9, 450).getFieldCount()) {
+      frame.add(new DataField(in));
+    }
+    assertEquals(message(9, 450), frame);
+  }
+
+}
@@ -0,0 +1,155 @@
+/*
+ *
+ */
+package coyote.dataframe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+
+/**
+ *
+ */
+public class FrameDeltaTest {
+
+  private static DataFrame state() {
+    DataFrame frame = new DataFrame();
+    for (int x = 0; x < 50; x++) {
+      frame.add("field" + x, "value of field " + x);
+    }
+    frame.add("count", 1);
+    frame.add("child", new DataFrame().set("id", 7).set("name", "a child frame with some content").set("grandchild", new DataFrame().set("level", 2).set("text", "more content in here")));
+    return frame;
+  }
+
+
+
+
+  /**
+   * Send the delta over the wire and apply it to a copy of the first frame.
+   */
+  private static void assertDelta(DataFrame from, DataFrame to) throws DataFrameException {
+    FrameDelta delta = FrameDelta.diff(from, to);
+    DataFrame receiver = new DataFrame(from.getBytes());
+    receiver.apply(new FrameDelta(delta.getBytes()));
+    assertEquals(to, receiver);
+    assertEquals(to.toString(), receiver.toString());
+  }
+
+
+
+
+  @Test
+  public void equalFrames() throws DataFrameException {
+    FrameDelta delta = FrameDelta.diff(state(), state());
+    assertTrue(delta.isEmpty());
+    assertEquals(0, delta.getBytes().length);
+    assertDelta(state(), state());
+  }
+
+
+
+
+  @Test
+  public void changedFields() throws DataFrameException {
+    DataFrame from = state();
+    DataFrame to = state();
+    to.put("count", 2);
+    to.put("field7", "changed");
+
+    FrameDelta delta = FrameDelta.diff(from, to);
+    assertFalse(delta.isEmpty());
+    assertTrue(delta.getBytes().length < from.getBytes().length / 10);
+    assertDelta(from, to);
+  }
+
+
+
+
+  @Test
+  public void addedAndRemovedFields() throws DataFrameException {
+    DataFrame from = state();
+    DataFrame to = state();
+    to.remove("field3");
+    to.remove("field40");
+    to.add("extra", true);
+    to.add("more", 3.5D);
+    assertDelta(from, to);
+    assertDelta(to, from);
+  }
+
+
+
+
+  @Test
+  public void nestedFrames() throws DataFrameException {
+    DataFrame from = state();
+    DataFrame to = state();
+    to.getAsFrame("child").getAsFrame("grandchild").put("level", 3);
+    FrameDelta delta = FrameDelta.diff(from, to);
+    assertTrue(delta.getBytes().length < to.getAsFrame("child").getBytes().length);
+    assertDelta(from, to);
+
+    // nested frames held still encoded
+    assertDelta(new DataFrame(from.getBytes()), new DataFrame(to.getBytes()));
+
+    // replaced and emptied frames
+    to.put("child", "no longer a frame");
+    assertDelta(from, to);
+    assertDelta(to, from);
+    to.put("child", new DataFrame());
+    assertDelta(from, to);
+    assertDelta(to, from);
+  }
+
+
+
+
+  @Test
+  public void unmatchedFields() throws DataFrameException {
+    // reordered fields
+    DataFrame from = state();
+    DataFrame to = state();
+    to.remove("field0");
+    to.add("field0", "value of field 0");
+    assertFalse(FrameDelta.diff(from, to).isEmpty());
+    assertDelta(from, to);
+
+    // arrays and duplicate names
+    DataFrame array = new DataFrame().set(1).set(2).set(3);
+    DataFrame changed = new DataFrame().set(1).set(4).set(3);
+    assertDelta(array, changed);
+    to.add("list", array);
+    from.add("list", changed);
+    from.add("list", changed);
+    assertDelta(from, to);
+    assertDelta(to, from);
+    assertDelta(from, new DataFrame());
+    assertDelta(new DataFrame(), from);
+  }
+
+
+
+
+  @Test
+  public void missingNestedFrame() throws DataFrameException {
+    DataFrame from = state();
+    DataFrame to = state();
+    to.getAsFrame("child").put("id", 8);
+    FrameDelta delta = FrameDelta.diff(from, to);
+
+    DataFrame other = state();
+    other.remove("child");
+    try {
+      other.apply(delta);
+      fail("delta should not apply");
+    } catch (DataFrameException e) {
+      // expected
+    }
+  }
+
+}
@@ -0,0 +1,100 @@
+/*
+ *
+ */
+package coyote.dataframe;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+
+/**
+ *
+ */
+public class FrameSchemaTest {
+
+  @Test
+  public void roundTrip() {
+    DataFrame frame = new DataFrame();
+    frame.add("sensorIdentifier", "pump-7");
+    frame.add("temperatureCelsius", 21.5);
+    frame.add("operational", true);
+    frame.add("readings", new DataFrame().set("low", 1).set("high", 9));
+    FrameSchema schema = FrameSchema.register(new FrameSchema(1601, frame));
+    try {
+      assertTrue(schema.matches(frame));
+      byte[] data = schema.encode(frame);
+      int names = 0;
+      for (String name : schema.getNames()) {
+        names += 1 + name.length();
+      }
+      assertEquals(frame.getBytes().length - names + 7, data.length);
+
+      DataFrame decoded = new DataFrame(data);
+      assertEquals(frame, decoded);
+      assertEquals(21.5, decoded.getAsDouble("temperatureCelsius"), 0);
+
+      // extra trailing fields keep their names
+      frame.add("note", "extra");
+      decoded = new DataFrame(schema.encode(frame));
+      assertEquals(frame, decoded);
+      assertEquals("extra", decoded.getAsString("note"));
+    } catch (DataFrameException e) {
+      fail(e.getMessage());
+    } finally {
+      FrameSchema.unregister(1601);
+    }
+  }
+
+
+
+
+  @Test
+  public void nonMatchingFrames() {
+    FrameSchema schema = new FrameSchema(1602, "a", "b");
+    DataFrame frame = new DataFrame().set("b", 1).set("a", 2);
+    assertFalse(schema.matches(frame));
+    assertArrayEquals(frame.getBytes(), schema.encode(frame));
+    assertFalse(schema.matches(new DataFrame().set("a", 1)));
+    assertTrue(schema.matches(new DataFrame().set("a", 1).set("b", 2).set("c", 3)));
+  }
+
+
+
+
+  @Test
+  public void registration() {
+    FrameSchema schema = new FrameSchema(1603, "a", "b");
+    byte[] data = schema.encode(new DataFrame().set("a", 1).set("b", 2));
+    try {
+      new DataFrame(data);
+      fail("schema is not registered");
+    } catch (DecodeException e) {
+      // expected
+    }
+
+    assertSame(schema, FrameSchema.register(schema));
+    try {
+      assertSame(schema, FrameSchema.register(new FrameSchema(1603, "a", "b")));
+      assertSame(schema, FrameSchema.get(1603));
+      assertEquals(Arrays.asList("a", "b"), schema.getNames());
+      try {
+        FrameSchema.register(new FrameSchema(1603, "a", "c"));
+        fail("conflicting schema registered");
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+      assertEquals(new DataFrame().set("a", 1).set("b", 2), new DataFrame(data));
+    } finally {
+      FrameSchema.unregister(1603);
+    }
+  }
+
+}
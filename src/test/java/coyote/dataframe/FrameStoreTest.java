@@ -0,0 +1,97 @@
+/*
+ *
+ */
+package coyote.dataframe;
+
+import static coyote.dataframe.SampleFrames.message;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+
+/**
+ *
+ */
+public class FrameStoreTest {
+
+  @Test
+  public void putAndGet() throws DataFrameException {
+    FrameStore store = new FrameStore(4096);
+    for (int x = 0; x < 5000; x++) {
+      store.put("key" + x, message(x, 0));
+    }
+    assertEquals(5000, store.size());
+    assertTrue(store.getAllocatedMemory() > 4096);
+    assertTrue(store.getUsedMemory() <= store.getAllocatedMemory());
+
+    for (int x = 0; x < 5000; x += 7) {
+      DataFrame frame = store.get("key" + x);
+      assertEquals(message(x, 0), frame);
+      assertEquals("message " + x, frame.getAsString("text"));
+    }
+    assertNull(store.get("missing"));
+    assertFalse(store.contains("missing"));
+
+    // fields are decoded without decoding the frame
+    assertEquals(42, new DataFrame(store.getField("key42", "seq")).getAsInt("seq"));
+    assertEquals("7", store.getField("key42", null).getStringValue());
+    assertEquals(8, store.getView("key42").getFieldCount());
+    assertEquals(message(42, 0).getAsFrame("header"), store.getField("key42", "header").getObjectValue());
+    assertNull(store.getField("key42", "nothing"));
+    assertNull(store.getField("missing", "id"));
+
+    // the wire format is available without copying
+    ByteBuffer buffer = store.getBuffer("key42");
+    assertTrue(buffer.isReadOnly());
+    assertTrue(buffer.isDirect());
+    assertEquals(message(42, 0).getEncodedSize(), buffer.remaining());
+    assertArrayEquals(message(42, 0).getBytes(), store.getBytes("key42"));
+  }
+
+
+
+
+  @Test
+  public void replaceAndRemove() {
+    FrameStore store = new FrameStore(256);
+    for (int x = 0; x < 2000; x++) {
+      store.put("key" + x, message(x, 0));
+    }
+    long used = store.getUsedMemory();
+
+    store.put("key10", message(-10, 0));
+    assertEquals(2000, store.size());
+    assertEquals(message(-10, 0), store.get("key10"));
+
+    for (int x = 0; x < 2000; x += 2) {
+      assertTrue(store.remove("key" + x));
+    }
+    assertFalse(store.remove("key0"));
+    assertEquals(1000, store.size());
+    assertTrue(store.getUsedMemory() < used);
+    for (int x = 0; x < 2000; x++) {
+      assertEquals(x % 2 == 1, store.contains("key" + x));
+    }
+    assertEquals(message(1999, 0), store.get("key1999"));
+
+    // frames larger than a chunk get a chunk of their own
+    DataFrame large = new DataFrame().set("data", new byte[1000]);
+    store.put("large", large);
+    assertEquals(large, store.get("large"));
+    assertEquals(message(1, 0), store.get("key1"));
+
+    store.clear();
+    assertEquals(0, store.size());
+    assertEquals(0, store.getAllocatedMemory());
+    assertNull(store.get("key1"));
+    store.put("key1", message(1, 0));
+    assertEquals(message(1, 0), store.get("key1"));
+  }
+
+}
@@ -0,0 +1,173 @@
+/*
+ *
+ */
+package coyote.dataframe;
+
+import static coyote.dataframe.SampleFrames.message;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+
+/**
+ *
+ */
+public class FrameStreamTest {
+
+  /**
+   * A non-blocking channel which has only a few octets available at a time.
+   */
+  private static class TrickleChannel implements ReadableByteChannel {
+    private final byte[] data;
+    private int position = 0;
+    private int reads = 0;
+
+
+
+
+    TrickleChannel(byte[] data) {
+      this.data = data;
+    }
+
+
+
+
+    @Override
+    public int read(ByteBuffer dst) {
+      if (position == data.length) {
+        return -1;
+      }
+      // every other read finds nothing available
+      if (reads++ % 2 == 0) {
+        return 0;
+      }
+      int n = Math.min(Math.min(7, dst.remaining()), data.length - position);
+      dst.put(data, position, n);
+      position += n;
+      return n;
+    }
+
+
+
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+
+
+
+    @Override
+    public void close() {}
+  }
+
+
+
+
+  @Test
+  public void streams() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    FrameOutputStream out = new FrameOutputStream(bytes);
+    int total = 0;
+    for (int x = 0; x < 20; x++) {
+      total += out.writeFrame(message(x, x * 100));
+    }
+    out.close();
+    assertEquals(total, bytes.size());
+
+    FrameInputStream in = new FrameInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    for (int x = 0; x < 20; x++) {
+      assertEquals(message(x, x * 100), in.readFrame());
+    }
+    assertNull(in.readFrame());
+    in.close();
+
+    // a stream ending within a frame
+    byte[] data = Arrays.copyOf(bytes.toByteArray(), bytes.size() - 1);
+    in = new FrameInputStream(new ByteArrayInputStream(data));
+    try {
+      for (int x = 0; x < 20; x++) {
+        assertEquals(message(x, x * 100), in.readFrame());
+      }
+      fail("truncated frame read");
+    } catch (EOFException e) {
+      // expected
+    }
+
+    // frames larger than the limit are rejected before being read
+    in = new FrameInputStream(new ByteArrayInputStream(bytes.toByteArray()), message(0, 0).getEncodedSize());
+    assertEquals(message(0, 0), in.readFrame());
+    try {
+      in.readFrame();
+      fail("oversized frame read");
+    } catch (DecodeException e) {
+      // expected
+    }
+  }
+
+
+
+
+  @Test
+  public void channels() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    FrameChannelWriter writer = new FrameChannelWriter(Channels.newChannel(bytes));
+    for (int x = 0; x < 100; x++) {
+      writer.writeFrame(message(x, x * 100));
+    }
+    ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+    FrameOutputStream out = new FrameOutputStream(streamed);
+    for (int x = 0; x < 100; x++) {
+      out.writeFrame(message(x, x * 100));
+    }
+    assertTrue(Arrays.equals(streamed.toByteArray(), bytes.toByteArray()));
+
+    // a blocking channel delivers whole frames
+    FrameChannelReader reader = new FrameChannelReader(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())));
+    for (int x = 0; x < 100; x++) {
+      assertEquals(message(x, x * 100), reader.readFrame());
+    }
+    assertNull(reader.readFrame());
+    assertTrue(reader.isEnded());
+
+    // a non-blocking channel delivers frames as they are completed
+    reader = new FrameChannelReader(new TrickleChannel(bytes.toByteArray()));
+    int seq = 0;
+    int empty = 0;
+    while (!reader.isEnded()) {
+      DataFrame frame = reader.readFrame();
+      if (frame != null) {
+        assertEquals(message(seq, seq * 100), frame);
+        seq++;
+      } else {
+        empty++;
+      }
+    }
+    assertEquals(100, seq);
+    assertTrue(empty > 100);
+
+    reader = new FrameChannelReader(new TrickleChannel(Arrays.copyOf(bytes.toByteArray(), 10)));
+    try {
+      while (!reader.isEnded()) {
+        assertNull(reader.readFrame());
+      }
+      fail("truncated frame read");
+    } catch (EOFException e) {
+      assertTrue(reader.isEnded());
+    }
+  }
+
+}
@@ -0,0 +1,203 @@
+/*
+ *
+ */
+package coyote.dataframe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+
+/**
+ *
+ */
+public class ImmutableDataFrameTest {
+
+  private static DataFrame sample() {
+    DataFrame frame = new DataFrame();
+    frame.add("name", "Bob");
+    frame.add("age", 35);
+    frame.add("child", new DataFrame().set("id", 7));
+    return frame;
+  }
+
+
+
+
+  private static void assertRejected(Runnable change) {
+    try {
+      change.run();
+      fail("change should have been rejected");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+
+
+
+
+  @Test
+  public void testSharesFields() throws DataFrameException {
+    DataFrame frame = sample();
+    ImmutableDataFrame frozen = frame.freeze();
+    assertEquals(frame, frozen);
+    assertNotSame(frame.getField("name"), frozen.getField("name"));
+    assertSame(frame.getField("name").value, frozen.getField("name").value);
+    assertTrue(frozen.getField("name").isFrozen());
+    assertFalse(frame.getField("name").isFrozen());
+    assertSame(frozen.getField("name"), frozen.getField("name").freeze());
+    frame.getField("name").setName("nom");
+    assertEquals("Bob", frozen.getAsString("name"));
+    assertEquals("Bob", frame.getAsString("nom"));
+    assertSame(frozen, frozen.freeze());
+    assertTrue(frozen.getAsFrame("child") instanceof ImmutableDataFrame);
+    assertFalse(frame.getAsFrame("child") instanceof ImmutableDataFrame);
+  }
+
+
+
+
+  @Test
+  public void testRejectsChanges() {
+    final ImmutableDataFrame frozen = sample().freeze();
+    assertRejected(() -> frozen.add("more", 1));
+    assertRejected(() -> frozen.add(new DataField("more", 1)));
+    assertRejected(() -> frozen.put("age", 36));
+    assertRejected(() -> frozen.put("age", "old"));
+    assertRejected(() -> frozen.put("new", 36L));
+    assertRejected(() -> frozen.put((Object)"age", (Object)36));
+    assertRejected(() -> frozen.set("more", 1));
+    assertRejected(() -> frozen.remove("name"));
+    assertRejected(() -> frozen.remove((Object)"name"));
+    assertRejected(() -> frozen.removeAll("name"));
+    assertRejected(() -> frozen.replace("name", "Alice"));
+    assertRejected(() -> frozen.clear());
+    assertRejected(() -> frozen.merge(new DataFrame().set("age", 1)));
+    assertRejected(() -> frozen.populate(new DataFrame().set("age", 1)));
+    assertRejected(() -> frozen.setFields(new ArrayList<DataField>()));
+    assertRejected(() -> frozen.setArrayBias(true));
+    assertRejected(() -> frozen.getFields().remove(0));
+    assertRejected(() -> frozen.getFields().clear());
+    assertRejected(() -> frozen.getFields().set(0, new DataField("x", 1)));
+    assertRejected(() -> frozen.getFields().subList(0, 1).clear());
+    assertRejected(() -> {
+      Iterator<DataField> it = frozen.getFields().iterator();
+      it.next();
+      it.remove();
+    });
+    assertRejected(() -> frozen.getField("name").setName("nom"));
+    assertRejected(() -> {
+      try {
+        frozen.getAsFrame("child").put("id", 8);
+      } catch (DataFrameException e) {
+        fail(e.getMessage());
+      }
+    });
+    assertEquals(sample(), frozen);
+  }
+
+
+
+
+  @Test
+  public void testSourceRemainsMutable() throws DataFrameException {
+    DataFrame frame = sample();
+    ImmutableDataFrame frozen = frame.freeze();
+    long fingerprint = frozen.getFingerprint();
+
+    frame.put("age", 36);
+    frame.put("name", "Alice");
+    frame.getAsFrame("child").put("id", 8);
+    frame.add("more", true);
+    frame.getField("more").setName("extra");
+
+    assertEquals(36, frame.getAsInt("age"));
+    assertEquals("Alice", frame.getAsString("name"));
+    assertEquals(8, frame.getAsFrame("child").getAsInt("id"));
+    assertFalse(frame.getField("age").isFrozen());
+    assertTrue(frame.contains("extra"));
+    assertFalse(frozen.contains("extra"));
+
+    // fields of the source are never frozen, even those left unchanged
+    frame.getField("child").setName("kid");
+    assertEquals(8, frame.getAsFrame("kid").getAsInt("id"));
+    assertTrue(frozen.contains("child"));
+
+    assertEquals(sample(), frozen);
+    assertEquals(35, frozen.getAsInt("age"));
+    assertEquals(7, frozen.getAsFrame("child").getAsInt("id"));
+    assertEquals(fingerprint, frozen.getFingerprint());
+
+    // clones are mutable copies
+    DataFrame copy = (DataFrame)frozen.clone();
+    copy.put("age", 40);
+    copy.getAsFrame("child").put("id", 9);
+    assertEquals(40, copy.getAsInt("age"));
+    assertEquals(35, frozen.getAsInt("age"));
+  }
+
+
+
+
+  @Test
+  public void testEncodedChildren() throws DataFrameException {
+    // nested frames which have not been decoded yet
+    DataFrame frame = new DataFrame(sample().getBytes());
+    ImmutableDataFrame frozen = frame.freeze();
+    assertTrue(frozen.getAsFrame("child") instanceof ImmutableDataFrame);
+
+    frame.getAsFrame("child").put("id", 8);
+    assertEquals(8, frame.getAsFrame("child").getAsInt("id"));
+    assertEquals(7, frozen.getAsFrame("child").getAsInt("id"));
+  }
+
+
+
+
+  @Test
+  public void testSharedAcrossThreads() throws Exception {
+    DataFrame frame = new DataFrame();
+    for (int x = 0; x < 100; x++) {
+      frame.add("field" + x, x);
+    }
+    frame.add("child", new DataFrame(sample().getBytes()));
+    final ImmutableDataFrame frozen = frame.freeze();
+    final long fingerprint = frame.getFingerprint();
+
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    try {
+      ArrayList<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+      for (int t = 0; t < 32; t++) {
+        results.add(pool.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws Exception {
+            for (int x = 99; x >= 0; x--) {
+              if (frozen.getAsInt("field" + x) != x || frozen.indexOfIgnoreCase("FIELD" + x) != x) {
+                return false;
+              }
+            }
+            return frozen.getAsFrame("child").getAsInt("age") == 35 && frozen.getFingerprint() == fingerprint;
+          }
+        }));
+      }
+      for (Future<Boolean> result : results) {
+        assertTrue(result.get());
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+}
@@ -0,0 +1,42 @@
+/*
+ *
+ */
+package coyote.dataframe;
+
+import java.util.Date;
+
+
+/**
+ * Frames shared by the tests of the wire formats, streams and stores.
+ */
+final class SampleFrames {
+
+  private SampleFrames() {}
+
+
+
+
+  /**
+   * Create a frame with fields of the common types, a nested frame and an
+   * unnamed field.
+   *
+   * @param seq distinguishes the frame; placed in the "seq" field and used in
+   *        the values of most others
+   * @param size the number of octets in the "data" field
+   *
+   * @return a new frame equal to any other created with the same arguments.
+   */
+  static DataFrame message(int seq, int size) {
+    DataFrame frame = new DataFrame();
+    frame.add("seq", seq);
+    frame.add("text", "message " + seq);
+    frame.add("price", seq * 0.25D);
+    frame.add("active", seq % 2 == 0);
+    frame.add("time", new Date(1500000000000L + seq));
+    frame.add("data", new byte[size]);
+    frame.add("header", new DataFrame().set("id", seq).set("note", "the same text over and over again"));
+    frame.add(null, (short)7);
+    return frame;
+  }
+
+}
@@ -9,6 +9,7 @@ package coyote.dataframe.marshal;
 
 //import static org.junit.Assert.*;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -150,6 +151,23 @@ public class JSONMarshalTest {
 
 
 
+  @Test
+  public void arrayWithNulls() throws Exception {
+    DataFrame frame = new DataFrame().set("s", new String[]{"a", "b", null}).set("o", new Object[]{1, null, true});
+    String expected = "{\"s\":[\"a\",\"b\",null],\"o\":[1,null,true]}";
+    assertEquals(expected, JSONMarshaler.marshal(frame));
+    assertEquals(expected, JSONMarshaler.marshal(new DataFrame(frame.getBytes())));
+
+    String formatted = JSONMarshaler.toFormattedString(frame);
+    assertFalse(formatted.matches("(?s).*\\n\\s*\\n.*"));
+    DataFrame parsed = JSONMarshaler.marshal(formatted).get(0);
+    assertEquals(3, parsed.getAsFrame("s").getFieldCount());
+    assertNull(parsed.getAsFrame("s").getObject(2));
+  }
+
+
+
+
   @Test
   public void testRealObject() throws Exception {
     //String json = "[{\"message_stats\":{\"deliver_get\":2,\"deliver_get_details\":{\"rate\":0.0},\"get_no_ack\":2,\"get_no_ack_details\":{\"rate\":0.0},\"publish\":2,\"publish_details\":{\"rate\":0.0}},\"messages\":0,\"messages_details\":{\"rate\":0.0},\"messages_ready\":0,\"messages_ready_details\":{\"rate\":0.0},\"messages_unacknowledged\":0,\"messages_unacknowledged_details\":{\"rate\":0.0},\"name\":\"/\",\"tracing\":false}]";
@@ -321,4 +339,35 @@ public class JSONMarshalTest {
 
   }
 
+
+
+
+  @Test
+  public void readDeeplyNested() throws DataFrameException {
+    int depth = 500;
+    StringBuilder json = new StringBuilder();
+    for (int x = 0; x < depth; x++) {
+      json.append("{\"level\":").append(x).append(",\"child\":");
+    }
+    json.append("[1,2,3]");
+    for (int x = 0; x < depth; x++) {
+      json.append('}');
+    }
+
+    List<DataFrame> results = JSONMarshaler.marshal(json.toString());
+    assertTrue(results.size() == 1);
+    DataFrame frame = results.get(0);
+
+    // nested frames are held as the parsed objects
+    DataFrame child = frame.getAsFrame("child");
+    assertTrue(child == frame.getAsFrame("child"));
+
+    DataFrame copy = new DataFrame(frame.getBytes());
+    for (int x = 0; x < depth; x++) {
+      assertEquals(x, copy.getAsInt("level"));
+      copy = copy.getAsFrame("child");
+    }
+    assertEquals(3, copy.getFieldCount());
+  }
+
 }
@@ -0,0 +1,306 @@
+/*
+ *
+ */
+package coyote.dataframe.marshal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import coyote.dataframe.DataFrame;
+import coyote.dataframe.DataFrameException;
+
+
+/**
+ *
+ */
+public class ObjectFrameTest {
+
+  public enum Status {
+    ACTIVE, RETIRED
+  }
+
+  /** Bound through public accessors. */
+  public static class Part {
+    @FrameField
+    private String name;
+    @FrameField("qty")
+    private int quantity;
+    @FrameField
+    private double weight;
+    @FrameField
+    private boolean stocked;
+
+
+
+
+    public String getName() {
+      return name;
+    }
+
+
+
+
+    public void setName( String name ) {
+      this.name = name;
+    }
+
+
+
+
+    public int getQuantity() {
+      return quantity;
+    }
+
+
+
+
+    public void setQuantity( int quantity ) {
+      this.quantity = quantity;
+    }
+
+
+
+
+    public double getWeight() {
+      return weight;
+    }
+
+
+
+
+    public void setWeight( double weight ) {
+      this.weight = weight;
+    }
+
+
+
+
+    public boolean isStocked() {
+      return stocked;
+    }
+
+
+
+
+    public void setStocked( boolean stocked ) {
+      this.stocked = stocked;
+    }
+  }
+
+  /** Bound through its private fields. */
+  static class Assembly {
+    @FrameField
+    private long serial;
+    @FrameField
+    private short revision;
+    @FrameField
+    private byte grade;
+    @FrameField
+    private float tolerance;
+    @FrameField
+    private Status status;
+    @FrameField
+    private Date built;
+    @FrameField
+    private Integer rating;
+    @FrameField
+    private Part primary;
+    @FrameField
+    private List<Part> parts;
+    @FrameField
+    private List<String> tags;
+    private String ignored;
+  }
+
+  /** Refers to other instances of its own class. */
+  static class Node {
+    @FrameField
+    private String label;
+    @FrameField
+    private Node next;
+    @FrameField
+    private List<Node> children = new ArrayList<Node>();
+  }
+
+  /** Fails in its accessor. */
+  public static class Faulty {
+    @FrameField
+    private int value;
+
+
+
+
+    public int getValue() {
+      throw new OutOfMemoryError( "simulated" );
+    }
+
+
+
+
+    public void setValue( int value ) {
+      this.value = value;
+    }
+  }
+
+
+
+
+  private static Part part( String name, int quantity ) {
+    Part retval = new Part();
+    retval.setName( name );
+    retval.setQuantity( quantity );
+    retval.setWeight( quantity * 1.5 );
+    retval.setStocked( quantity > 1 );
+    return retval;
+  }
+
+
+
+
+  @Test
+  public void simpleObject() throws DataFrameException {
+    ObjectFrame marshaler = new ObjectFrame();
+    DataFrame frame = marshaler.marshal( part( "bolt", 3 ) );
+    assertEquals( 4, frame.getFieldCount() );
+    assertEquals( "bolt", frame.getAsString( "name" ) );
+    assertEquals( 3, frame.getAsInt( "qty" ) );
+    assertEquals( 4.5, frame.getAsDouble( "weight" ), 0 );
+    assertTrue( frame.getAsBoolean( "stocked" ) );
+
+    Part part = marshaler.marshal( frame, Part.class );
+    assertEquals( "bolt", part.getName() );
+    assertEquals( 3, part.getQuantity() );
+    assertEquals( 4.5, part.getWeight(), 0 );
+    assertTrue( part.isStocked() );
+
+    // values are converted and missing fields are left alone
+    part = marshaler.marshal( new DataFrame().set( "qty", "12" ), Part.class );
+    assertEquals( 12, part.getQuantity() );
+    assertNull( part.getName() );
+
+    assertNull( marshaler.marshal( null ) );
+    assertNull( marshaler.marshal( null, Part.class ) );
+  }
+
+
+
+
+  @Test
+  public void nestedObjects() throws DataFrameException {
+    Assembly assembly = new Assembly();
+    assembly.serial = 1234567890123L;
+    assembly.revision = 7;
+    assembly.grade = -2;
+    assembly.tolerance = 0.25F;
+    assembly.status = Status.RETIRED;
+    assembly.built = new Date( 1500000000000L );
+    assembly.rating = 5;
+    assembly.primary = part( "frame", 1 );
+    assembly.parts = Arrays.asList( part( "bolt", 4 ), part( "nut", 8 ) );
+    assembly.tags = new ArrayList<String>();
+    assembly.ignored = "ignored";
+
+    ObjectFrame marshaler = new ObjectFrame();
+    DataFrame frame = marshaler.marshal( assembly );
+    assertEquals( 1234567890123L, frame.getAsLong( "serial" ) );
+    assertEquals( "RETIRED", frame.getAsString( "status" ) );
+    assertEquals( "frame", frame.getAsFrame( "primary" ).getAsString( "name" ) );
+    assertEquals( 2, frame.getAsFrame( "parts" ).getFieldCount() );
+    assertTrue( frame.contains( "tags" ) );
+    assertTrue( !frame.contains( "ignored" ) );
+
+    // survive the trip over the wire
+    Assembly copy = marshaler.marshal( new DataFrame( frame.getBytes() ), Assembly.class );
+    assertEquals( assembly.serial, copy.serial );
+    assertEquals( assembly.revision, copy.revision );
+    assertEquals( assembly.grade, copy.grade );
+    assertEquals( assembly.tolerance, copy.tolerance, 0 );
+    assertEquals( assembly.status, copy.status );
+    assertEquals( assembly.built, copy.built );
+    assertEquals( assembly.rating, copy.rating );
+    assertEquals( "frame", copy.primary.getName() );
+    assertEquals( 2, copy.parts.size() );
+    assertEquals( "nut", copy.parts.get( 1 ).getName() );
+    assertEquals( 8, copy.parts.get( 1 ).getQuantity() );
+    assertNotNull( copy.tags );
+    assertTrue( copy.tags.isEmpty() );
+    assertNull( copy.ignored );
+  }
+
+
+
+
+  @Test
+  public void incompatibleValues() {
+    try {
+      new ObjectFrame().marshal( new DataFrame().set( "primary", "frame" ), Assembly.class );
+      fail( "string assigned to a bound class" );
+    } catch ( MarshalException e ) {
+      // expected
+    }
+    try {
+      new ObjectFrame().marshal( new DataFrame(), String.class );
+      fail( "class without bound fields" );
+    } catch ( MarshalException e ) {
+      // expected
+    }
+  }
+
+
+
+
+  @Test
+  public void cycles() {
+    Node root = new Node();
+    root.label = "root";
+    Node leaf = new Node();
+    leaf.label = "leaf";
+
+    // the same object may appear more than once
+    root.next = leaf;
+    root.children.add( leaf );
+    DataFrame frame = new ObjectFrame().marshal( root );
+    assertEquals( "leaf", ( (DataFrame)frame.getObject( "next" ) ).getAsString( "label" ) );
+
+    leaf.next = root;
+    try {
+      new ObjectFrame().marshal( root );
+      fail( "cycle marshaled" );
+    } catch ( MarshalException e ) {
+      assertTrue( e.getMessage().contains( "cycle" ) );
+    }
+
+    leaf.next = null;
+    root.children.add( root );
+    try {
+      new ObjectFrame().marshal( root );
+      fail( "cycle marshaled" );
+    } catch ( MarshalException e ) {
+      assertTrue( e.getMessage().contains( "cycle" ) );
+    }
+  }
+
+
+
+
+  @Test
+  public void errorsAreNotWrapped() {
+    try {
+      new ObjectFrame().marshal( new Faulty() );
+      fail( "error swallowed" );
+    } catch ( OutOfMemoryError e ) {
+      assertEquals( "simulated", e.getMessage() );
+    }
+  }
+
+}
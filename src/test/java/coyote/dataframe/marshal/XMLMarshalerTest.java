@@ -168,4 +168,32 @@ public class XMLMarshalerTest {
     fail("Not yet implemented");
   }
 
+
+
+
+  @Test
+  public void readDeeplyNested() throws Exception {
+    int depth = 200;
+    StringBuilder xml = new StringBuilder();
+    for (int x = 0; x < depth; x++) {
+      xml.append("<level").append(x).append('>');
+    }
+    xml.append("<leaf>value</leaf>");
+    for (int x = depth - 1; x >= 0; x--) {
+      xml.append("</level").append(x).append('>');
+    }
+
+    List<DataFrame> frames = XMLMarshaler.marshal(xml.toString());
+    assertNotNull(frames);
+    DataFrame frame = frames.get(0);
+    assertTrue(frame.getAsFrame("level0") == frame.getAsFrame("level0"));
+
+    DataFrame copy = new DataFrame(frame.getBytes());
+    for (int x = 0; x < depth; x++) {
+      copy = copy.getAsFrame("level" + x);
+      assertNotNull(copy);
+    }
+    assertEquals("value", copy.getAsString("leaf"));
+  }
+
 }